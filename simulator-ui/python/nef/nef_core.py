@@ -11,6 +11,7 @@ from ca.nengo.math import Function,PDFTools
 from ca.nengo.model import StructuralException
 from ca.nengo.io import FileManager
 import java
+import jarray
 import warnings
 
 from java.util import ArrayList
@@ -172,6 +173,29 @@ class Network:
                 storage_name='quick'+java.io.File.separator+storage_name
         else:
             storage_name=''
+        ef=self._make_ensemble_factory(neurons,dimensions,tau_rc=tau_rc,tau_ref=tau_ref,
+                                       max_rate=max_rate,intercept=intercept,encoders=encoders,
+                                       decoder_noise=decoder_noise,eval_points=eval_points,
+                                       node_factory=node_factory,decoder_sign=decoder_sign)
+        if isinstance(radius,list):
+            r=radius
+        else:
+            r=[radius]*dimensions
+
+        parent,name=self._parse_name(name)
+
+        n=ef.make(name,neurons,r,storage_name,False)
+        self._set_up_ensemble(n,noise=noise,noise_frequency=noise_frequency,mode=mode)
+        if add_to_network: parent.addNode(n)
+        return n
+
+    def _make_ensemble_factory(self,neurons,dimensions,
+                               tau_rc=0.02,tau_ref=0.002,
+                               max_rate=(200,400),intercept=(-1,1),
+                               encoders=None,decoder_noise=0.1,eval_points=None,
+                               node_factory=None,decoder_sign=None,**ignored):
+        """Create the NEFEnsembleFactoryImpl that :py:func:`nef.Network.make()` uses for the given parameters."""
+        if intercept is None: intercept=(-1,1)
         ef=NEFEnsembleFactoryImpl()
         if node_factory is not None:
             ef.nodeFactory=node_factory
@@ -205,14 +229,10 @@ class Network:
                 raise Exception('Dimensions of evaluation points (%d) must match specified ensemble dimensions (%d)' %
                                 (len(eval_points[0]), dimensions))
             ef.evalPointFactory=generators.FixedEvalPointGenerator(eval_points)
-        if isinstance(radius,list):
-            r=radius
-        else:
-            r=[radius]*dimensions
-
-        parent,name=self._parse_name(name)
+        return ef
 
-        n=ef.make(name,neurons,r,storage_name,False)
+    def _set_up_ensemble(self,n,noise=None,noise_frequency=1000,mode='spike',**ignored):
+        """Apply the noise and simulation mode settings of :py:func:`nef.Network.make()` to a new ensemble."""
         if noise is not None:
             for nn in n.nodes:
                 nn.noise=NoiseFactory.makeRandomNoise(noise_frequency,IndicatorPDF(-noise,noise))
@@ -221,8 +241,6 @@ class Network:
             n.mode=SimulationMode.RATE
         elif mode=='direct' or mode==SimulationMode.DIRECT:
             n.mode=SimulationMode.DIRECT
-        if add_to_network: parent.addNode(n)
-        return n
     
     def _parse_name(self,name):
         """ Split name by delimiter '.'.
@@ -288,12 +306,30 @@ class Network:
         nodes=[]
         storage_code=args.get('storage_code','')
         encoders=args.get('encoders',None)
-        for i in range(length):
-            if '%' in storage_code: args['storage_code']=storage_code%i
-            if encoders is not None and isinstance(encoders[0][0],(tuple,list)):
-                args['encoders']=encoders[i%len(encoders)]
-            n=self.make('%d'%i,neurons,dimensions,add_to_network=False,**args)
-            nodes.append(n)
+        per_node_encoders=encoders is not None and isinstance(encoders[0][0],(tuple,list))
+        quick=args.get('quick',None)
+        if quick is None: quick=self.defaults['quick']
+        if (neurons>0 and not quick and not per_node_encoders and args.get('seed',None) is None
+                and self.seed is None and self.fixed_seed is None):
+            # nothing is stored or seeded per element, so the elements can be built together
+            # (on several threads) with NEFEnsembleFactoryImpl.make(String[],...)
+            ef=self._make_ensemble_factory(neurons,dimensions,**args)
+            radius=args.get('radius',1)
+            if isinstance(radius,list):
+                r=radius
+            else:
+                r=[radius]*dimensions
+            names=jarray.array(['%d'%i for i in range(length)],java.lang.String)
+            for n in ef.make(names,neurons,r):
+                self._set_up_ensemble(n,**args)
+                nodes.append(n)
+        else:
+            for i in range(length):
+                if '%' in storage_code: args['storage_code']=storage_code%i
+                if per_node_encoders:
+                    args['encoders']=encoders[i%len(encoders)]
+                n=self.make('%d'%i,neurons,dimensions,add_to_network=False,**args)
+                nodes.append(n)
 
         parent,name=self._parse_name(name)    
         ensemble=NetworkArrayImpl(name,nodes)
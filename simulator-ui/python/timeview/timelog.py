@@ -1,6 +1,17 @@
 import math
 import threading
 
+import jarray
+from ca.nengo.util.impl import DataChannel
+
+def to_floats(v):
+    """Returns the values as a Java float[], or None if they aren't numbers (e.g. text)."""
+    if isinstance(v,basestring): return None
+    try:
+        return jarray.array([float(x) for x in v],'f')
+    except (TypeError,ValueError):
+        return None
+
 class TimeLogItem:
     def __init__(self,parent,func,args=(),kwargs={},type=None,offset=0):
         self.semaphore=threading.Semaphore()
@@ -13,19 +24,53 @@ class TimeLogItem:
         self.offset=offset
         self.type=type
         self.length=None
+        self.channel=None  # numeric values are kept in a DataChannel instead of self.data
+        self.missing=set() # ticks in the channel whose values couldn't be computed
         self.tick()
     def tick(self,limit=None):
-        self.semaphore.acquire()
         try:
             v=self.func(*self.args,**self.kwargs)
         except Exception,e:
             import java
             java.lang.System.out.println("Tick error: %s %s %s\n%s"%(self.func,self.args,self.kwargs,e))
             v=None
-        if self.length is None: self.length=len(v)
+        if self.channel is not None:
+            channel=self.channel
+            if limit is not None and limit!=channel.capacity:
+                channel.capacity=limit
+            values=None
+            if v is not None: values=to_floats(v)
+            if values is None:
+                # get() reports this tick as None; filters see zeros
+                self.missing=self.missing|set([channel.end])  # replaced, not changed, since readers iterate over it
+                values=jarray.zeros(self.length,'f')
+            channel.write(values)  # copies the values, and never waits for readers
+            if len(self.missing)>0:
+                first=channel.start
+                self.missing=set([t for t in self.missing if t>=first])
+            return
+        if self.length is None and v is not None:
+            values=to_floats(v)
+            if values is not None:
+                # earlier ticks all failed, and are left out of the channel's history
+                channel=DataChannel(len(values),self.parent.tick_limit,self.offset+len(self.data))
+                channel.write(values)
+                self.semaphore.acquire()
+                del self.data[:]
+                self.filtered={}
+                self.semaphore.release()
+                self.length=len(values)
+                self.channel=channel
+                return
+            # not numeric (e.g. text), so keep values in a list
+        self.semaphore.acquire()
+        if v is None: pass
+        elif self.length is None: self.length=len(v)
         else:
             if len(v)<self.length: v=v+[0]*(self.length-len(v))
             elif len(v)>self.length: v=v[:self.length]    
+        # copy, since origins may reuse their output arrays on later steps
+        if v is not None: v=v[:]
         self.data.append(v)
         if limit is not None and len(self.data)>limit:
             delta=len(self.data)-limit
@@ -37,6 +82,12 @@ class TimeLogItem:
                     self.filtered[k]=v[delta:]
         self.semaphore.release()
     def reset(self):
+        if self.channel is not None:
+            self.offset=0
+            self.missing=set()
+            self.channel.reset(0)
+            self.tick()
+            return
         self.semaphore.acquire()
         del self.data[:]
         self.filtered={}
@@ -66,8 +117,16 @@ class TimeLogItem:
         return f        
 
     def get(self,start=None,count=None,dt_tau=None):
+        if self.channel is not None:
+            if start is None: start=0
+            if count is None: count=int(self.channel.end-start)
+            r=list(self.channel.get(start,count,dt_tau or 0))
+            if dt_tau is None:
+                for t in list(self.missing):
+                    if start<=t<start+count: r[int(t-start)]=None
+            return r
         self.semaphore.acquire()
-        if dt_tau is None:
+        if dt_tau is None or self.length is None:  # nothing to filter if every tick failed
             d=self.data
         else:
             self.semaphore.release()
@@ -89,7 +148,11 @@ class TimeLogItem:
         return r
 
     def get_first(self):
-        return self.data[0]
+        if self.channel is not None:
+            return self.channel.first
+        for v in self.data:
+            if v is not None: return v
+        return None
 
 class TimeLog:
     def __init__(self):
@@ -112,6 +112,8 @@ public class FileManager {
 	}
 
 	/**
+	 * Note: ensembles stored in the compact format of NEFEnsembleFile are also loaded.
+	 *
 	 * @param source Serialized file to load
 	 * @return Object represented by the serialized file
 	 * @throws IOException if there's a problem writing to disk
@@ -119,6 +121,10 @@ public class FileManager {
 	 *   not known in this context
 	 */
 	public Object load(File source) throws IOException, ClassNotFoundException {
+		if (NEFEnsembleFile.isEnsembleFile(source)) {
+			return NEFEnsembleFile.read(source);
+		}
+
 		FileInputStream fis = new FileInputStream(source);
 
 		ObjectInputStream ois = new ObjectInputStream(fis);
@@ -0,0 +1,466 @@
+/*
+The contents of this file are subject to the Mozilla Public License Version 1.1
+(the "License"); you may not use this file except in compliance with the License.
+You may obtain a copy of the License at http://www.mozilla.org/MPL/
+
+Software distributed under the License is distributed on an "AS IS" basis, WITHOUT
+WARRANTY OF ANY KIND, either express or implied. See the License for the specific
+language governing rights and limitations under the License.
+
+The Original Code is "NEFEnsembleFile.java". Description:
+"A compact binary file format for NEFEnsembles"
+
+The Initial Developer of the Original Code is Bryan Tripp & Centre for Theoretical Neuroscience, University of Waterloo. Copyright (C) 2006-2008. All Rights Reserved.
+
+Alternatively, the contents of this file may be used under the terms of the GNU
+Public License license (the GPL License), in which case the provisions of GPL
+License are applicable  instead of those above. If you wish to allow use of your
+version of this file only under the terms of the GPL License and not to allow
+others to use your version of this file under the MPL, indicate your decision
+by deleting the provisions above and replace  them with the notice and other
+provisions required by the GPL License.  If you do not delete the provisions above,
+a recipient may use your version of this file under either the MPL or the GPL License.
+*/
+
+package ca.nengo.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import ca.nengo.math.ApproximatorFactory;
+import ca.nengo.math.Function;
+import ca.nengo.model.Node;
+import ca.nengo.model.Origin;
+import ca.nengo.model.SimulationMode;
+import ca.nengo.model.StructuralException;
+import ca.nengo.model.Units;
+import ca.nengo.model.nef.NEFEnsemble;
+import ca.nengo.model.nef.NEFNode;
+import ca.nengo.model.nef.impl.DecodedOrigin;
+import ca.nengo.model.nef.impl.NEFEnsembleImpl;
+import ca.nengo.model.nef.impl.TuningCurves;
+import ca.nengo.model.neuron.Neuron;
+import ca.nengo.model.neuron.impl.ExpandableSpikingNeuron;
+import ca.nengo.model.neuron.impl.LIFSpikeGenerator;
+import ca.nengo.model.neuron.impl.LinearSynapticIntegrator;
+import ca.nengo.model.neuron.impl.SpikingNeuron;
+
+/**
+ * <p>A compact binary file format for NEFEnsembles, used for the ensemble database (see
+ * NEFEnsembleFactoryImpl.make(..., storageName, overwrite)).</p>
+ *
+ * <p>Encoders, evaluation points, decoders and neuron parameters (gains, biases and time constants)
+ * are written as contiguous blocks of primitives, and are read back through a large buffer, so
+ * loading is limited by I/O rather than by deserialization. Only the few values that aren't
+ * numbers (decoded Functions and the ApproximatorFactory) are serialized. Files start with a magic
+ * number and a format version.</p>
+ *
+ * <p>Only ensembles like those made by NEFEnsembleFactoryImpl can be written (see canWrite(...)):
+ * NEFEnsembleImpls of LIF neurons without noise or terminations, with plain DecodedOrigins. Other
+ * properties (e.g. documentation) and the ensemble's cached LinearApproximators aren't stored;
+ * approximators are made again if origins are added after loading.</p>
+ */
+public class NEFEnsembleFile {
+
+	private static final int MAGIC = 0x4E454645; //"NEFE"
+	private static final int VERSION = 2; //version 2 adds unscaled evaluation points
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * @param node A Node
+	 * @return True if the Node can be written in this format
+	 */
+	public static boolean canWrite(Node node) {
+		if (node == null || node.getClass() != NEFEnsembleImpl.class) {
+			return false;
+		}
+
+		NEFEnsembleImpl ensemble = (NEFEnsembleImpl) node;
+		Node[] nodes = ensemble.getNodes();
+		if (nodes.length == 0 || ensemble.getTerminations().length > 0) {
+			return false;
+		}
+
+		Units units = null;
+		for (int i = 0; i < nodes.length; i++) {
+			if ( !(nodes[i] instanceof NEFNode) || !TuningCurves.hasClosedForm((NEFNode) nodes[i], Neuron.AXON)) {
+				return false;
+			}
+			Units nodeUnits = ((LinearSynapticIntegrator) ((SpikingNeuron) nodes[i]).getIntegrator()).getCurrentUnits();
+			if (units != null && nodeUnits != units) {
+				return false;
+			}
+			units = nodeUnits;
+		}
+
+		Origin[] origins = ensemble.getOrigins();
+		for (int i = 0; i < origins.length; i++) {
+			if (origins[i] instanceof DecodedOrigin) {
+				DecodedOrigin origin = (DecodedOrigin) origins[i];
+				if (origin.getClass() != DecodedOrigin.class || origin.getNoise() != null
+						|| origin.getSTPDynamics() != null || origin.getExpressModel() != null) {
+					return false;
+				}
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * @param file A file
+	 * @return True if the file starts with the magic number of this format
+	 */
+	public static boolean isEnsembleFile(File file) {
+		if (!file.isFile() || file.length() < 8) {
+			return false;
+		}
+
+		try {
+			DataInputStream dis = new DataInputStream(new FileInputStream(file));
+			try {
+				return dis.readInt() == MAGIC;
+			} finally {
+				dis.close();
+			}
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * @param ensemble An ensemble for which canWrite(...) is true
+	 * @param destination File in which to write the ensemble
+	 * @throws IOException if there's a problem writing to disk
+	 */
+	public static void write(NEFEnsemble ensemble, File destination) throws IOException {
+		if (!canWrite(ensemble)) {
+			throw new IllegalArgumentException("Ensemble " + ensemble.getName() + " can't be written in this format");
+		}
+
+		NEFEnsembleImpl impl = (NEFEnsembleImpl) ensemble;
+		Node[] nodes = impl.getNodes();
+		int n = nodes.length;
+		int dim = impl.getDimension();
+		float[][] evalPoints = impl.getEvalPoints();
+		float[][] unscaledEvalPoints = impl.getUnscaledEvalPoints();
+
+		List<DecodedOrigin> origins = new ArrayList<DecodedOrigin>();
+		Origin[] allOrigins = impl.getOrigins();
+		for (int i = 0; i < allOrigins.length; i++) {
+			if (allOrigins[i] instanceof DecodedOrigin) {
+				origins.add((DecodedOrigin) allOrigins[i]);
+			}
+		}
+
+		byte[] expandable = new byte[n];
+		float[][] parameters = new float[7][n]; //scale, bias, tauRC, tauRef, generator time step, initial voltage, integrator time step
+		for (int i = 0; i < n; i++) {
+			SpikingNeuron neuron = (SpikingNeuron) nodes[i];
+			LIFSpikeGenerator generator = (LIFSpikeGenerator) neuron.getGenerator();
+			expandable[i] = (byte) (neuron instanceof ExpandableSpikingNeuron ? 1 : 0);
+			parameters[0][i] = neuron.getScale();
+			parameters[1][i] = neuron.getBias();
+			parameters[2][i] = generator.getTauRC();
+			parameters[3][i] = generator.getTauRef();
+			parameters[4][i] = generator.getMaxTimeStep();
+			parameters[5][i] = generator.getInitialVoltage();
+			parameters[6][i] = ((LinearSynapticIntegrator) neuron.getIntegrator()).getMaxTimeStep();
+		}
+		Units units = ((LinearSynapticIntegrator) ((SpikingNeuron) nodes[0]).getIntegrator()).getCurrentUnits();
+
+		Function[][] functions = new Function[origins.size()][];
+		for (int i = 0; i < functions.length; i++) {
+			functions[i] = origins.get(i).getFunctions();
+		}
+		ByteArrayOutputStream objects = new ByteArrayOutputStream();
+		ObjectOutputStream oos = new ObjectOutputStream(objects);
+		oos.writeObject(impl.getApproximatorFactory());
+		oos.writeObject(functions);
+		oos.close();
+
+		FileOutputStream fos = new FileOutputStream(destination);
+		try {
+			Output out = new Output(fos.getChannel());
+			out.putInt(MAGIC);
+			out.putInt(VERSION);
+			out.putString(impl.getName());
+			out.putString(impl.getMode().name());
+			out.putInt(n);
+			out.putInt(dim);
+			out.putInt(evalPoints.length);
+			out.putInt(unscaledEvalPoints.length);
+			out.putFloats(impl.getRadii());
+			float[][] encoders = impl.getEncoders();
+			for (int i = 0; i < n; i++) {
+				out.putFloats(encoders[i]);
+			}
+			for (int i = 0; i < evalPoints.length; i++) {
+				out.putFloats(evalPoints[i]);
+			}
+			for (int i = 0; i < unscaledEvalPoints.length; i++) {
+				out.putFloats(unscaledEvalPoints[i]);
+			}
+			out.putBytes(expandable);
+			for (int p = 0; p < parameters.length; p++) {
+				out.putFloats(parameters[p]);
+			}
+			out.putString(units.name());
+			for (int i = 0; i < n; i++) {
+				out.putString(nodes[i].getName());
+			}
+
+			out.putInt(origins.size());
+			for (int o = 0; o < origins.size(); o++) {
+				DecodedOrigin origin = origins.get(o);
+				float[][] decoders = origin.getDecoders();
+				out.putString(origin.getName());
+				out.putString(origin.getNodeOrigin());
+				out.putInt(functions[o].length);
+				for (int i = 0; i < n; i++) {
+					out.putFloats(decoders[i]);
+				}
+			}
+
+			byte[] objectBytes = objects.toByteArray();
+			out.putInt(objectBytes.length);
+			out.putBytes(objectBytes);
+			out.flush();
+		} finally {
+			fos.close();
+		}
+	}
+
+	/**
+	 * @param source A file written by write(...)
+	 * @return The ensemble in the file
+	 * @throws IOException if the file can't be read or isn't in this format
+	 */
+	public static NEFEnsemble read(File source) throws IOException {
+		FileInputStream fis = new FileInputStream(source);
+		try {
+			return read(new Input(fis.getChannel()), source);
+		} finally {
+			fis.close();
+		}
+	}
+
+	private static NEFEnsemble read(Input in, File source) throws IOException {
+		if (in.getInt() != MAGIC) {
+			throw new IOException(source + " is not an ensemble file");
+		}
+		int version = in.getInt();
+		if (version != VERSION) {
+			throw new IOException("Unsupported ensemble file version " + version + " in " + source);
+		}
+
+		String name = in.getString();
+		SimulationMode mode = SimulationMode.valueOf(in.getString());
+		int n = in.getInt();
+		int dim = in.getInt();
+		int numEvalPoints = in.getInt();
+		int numUnscaledEvalPoints = in.getInt();
+		float[] radii = in.getFloats(dim);
+		float[][] encoders = in.getMatrix(n, dim);
+		float[][] evalPoints = in.getMatrix(numEvalPoints, dim);
+		float[][] unscaledEvalPoints = in.getMatrix(numUnscaledEvalPoints, dim);
+		byte[] expandable = new byte[n];
+		in.getBytes(expandable);
+		float[][] parameters = in.getMatrix(7, n);
+		Units units = Units.valueOf(in.getString());
+		String[] names = new String[n];
+		for (int i = 0; i < n; i++) {
+			names[i] = in.getString();
+		}
+
+		int numOrigins = in.getInt();
+		String[] originNames = new String[numOrigins];
+		String[] nodeOrigins = new String[numOrigins];
+		float[][][] decoders = new float[numOrigins][][];
+		for (int o = 0; o < numOrigins; o++) {
+			originNames[o] = in.getString();
+			nodeOrigins[o] = in.getString();
+			int numFunctions = in.getInt();
+			decoders[o] = in.getMatrix(n, numFunctions);
+		}
+
+		byte[] objectBytes = new byte[in.getInt()];
+		in.getBytes(objectBytes);
+		ApproximatorFactory factory;
+		Function[][] functions;
+		try {
+			ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(objectBytes));
+			factory = (ApproximatorFactory) ois.readObject();
+			functions = (Function[][]) ois.readObject();
+			ois.close();
+		} catch (ClassNotFoundException e) {
+			throw new IOException("Can't read functions in " + source, e);
+		}
+
+		NEFNode[] nodes = new NEFNode[n];
+		for (int i = 0; i < n; i++) {
+			LinearSynapticIntegrator integrator = new LinearSynapticIntegrator(parameters[6][i], units);
+			LIFSpikeGenerator generator = new LIFSpikeGenerator(parameters[4][i], parameters[2][i], parameters[3][i], parameters[5][i]);
+			nodes[i] = (expandable[i] != 0)
+				? new ExpandableSpikingNeuron(integrator, generator, parameters[0][i], parameters[1][i], names[i])
+				: new SpikingNeuron(integrator, generator, parameters[0][i], parameters[1][i], names[i]);
+		}
+
+		//the constructor scales the unscaled points by the radii; points set by setEvalPoints(...) are then restored
+		try {
+			NEFEnsembleImpl result = new NEFEnsembleImpl(name, nodes, encoders, factory, unscaledEvalPoints, radii);
+			result.setEvalPoints(evalPoints);
+			for (int o = 0; o < numOrigins; o++) {
+				result.addDecodedOrigin(new DecodedOrigin(result, originNames[o], result.getNodes(), nodeOrigins[o],
+						functions[o], decoders[o]));
+			}
+			if (mode != SimulationMode.DEFAULT) {
+				result.setMode(mode);
+			}
+			return result;
+		} catch (StructuralException e) {
+			throw new IOException("Can't make ensemble from " + source, e);
+		}
+	}
+
+	//reads primitives from a channel through a buffer
+	private static class Input {
+
+		private final FileChannel myChannel;
+		private final ByteBuffer myBuffer;
+
+		public Input(FileChannel channel) {
+			myChannel = channel;
+			myBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+			myBuffer.flip(); //nothing buffered yet
+		}
+
+		public int getInt() throws IOException {
+			require(4);
+			return myBuffer.getInt();
+		}
+
+		public String getString() throws IOException {
+			byte[] bytes = new byte[getInt()];
+			getBytes(bytes);
+			return new String(bytes, "UTF-8");
+		}
+
+		public void getBytes(byte[] values) throws IOException {
+			int offset = 0;
+			while (offset < values.length) {
+				require(1);
+				int count = Math.min(values.length - offset, myBuffer.remaining());
+				myBuffer.get(values, offset, count);
+				offset += count;
+			}
+		}
+
+		public float[] getFloats(int length) throws IOException {
+			float[] result = new float[length];
+			int offset = 0;
+			while (offset < length) {
+				require(4);
+				int count = Math.min(length - offset, myBuffer.remaining() / 4);
+				myBuffer.asFloatBuffer().get(result, offset, count);
+				myBuffer.position(myBuffer.position() + 4 * count);
+				offset += count;
+			}
+			return result;
+		}
+
+		//a matrix that was written one row after another
+		public float[][] getMatrix(int rows, int cols) throws IOException {
+			float[] values = getFloats(rows * cols);
+			float[][] result = new float[rows][cols];
+			for (int i = 0; i < rows; i++) {
+				System.arraycopy(values, i * cols, result[i], 0, cols);
+			}
+			return result;
+		}
+
+		//reads from the channel until at least the given number of bytes are buffered
+		private void require(int bytes) throws IOException {
+			if (myBuffer.remaining() < bytes) {
+				myBuffer.compact();
+				while (myBuffer.position() < bytes) {
+					if (myChannel.read(myBuffer) < 0) {
+						throw new EOFException("Unexpected end of ensemble file");
+					}
+				}
+				myBuffer.flip();
+			}
+		}
+	}
+
+	//buffers primitives for writing to a channel
+	private static class Output {
+
+		private final FileChannel myChannel;
+		private final ByteBuffer myBuffer;
+
+		public Output(FileChannel channel) {
+			myChannel = channel;
+			myBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+		}
+
+		public void putInt(int value) throws IOException {
+			reserve(4);
+			myBuffer.putInt(value);
+		}
+
+		public void putString(String value) throws IOException {
+			byte[] bytes = value.getBytes("UTF-8");
+			putInt(bytes.length);
+			putBytes(bytes);
+		}
+
+		public void putBytes(byte[] values) throws IOException {
+			if (values.length > myBuffer.remaining()) {
+				flush();
+				myChannel.write(ByteBuffer.wrap(values));
+			} else {
+				myBuffer.put(values);
+			}
+		}
+
+		public void putFloats(float[] values) throws IOException {
+			int offset = 0;
+			while (offset < values.length) {
+				reserve(4);
+				int count = Math.min(values.length - offset, myBuffer.remaining() / 4);
+				myBuffer.asFloatBuffer().put(values, offset, count);
+				myBuffer.position(myBuffer.position() + 4 * count);
+				offset += count;
+			}
+		}
+
+		public void flush() throws IOException {
+			myBuffer.flip();
+			while (myBuffer.hasRemaining()) {
+				myChannel.write(myBuffer);
+			}
+			myBuffer.clear();
+		}
+
+		private void reserve(int bytes) throws IOException {
+			if (myBuffer.remaining() < bytes) {
+				flush();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,238 @@
+/*
+The contents of this file are subject to the Mozilla Public License Version 1.1
+(the "License"); you may not use this file except in compliance with the License.
+You may obtain a copy of the License at http://www.mozilla.org/MPL/
+
+Software distributed under the License is distributed on an "AS IS" basis, WITHOUT
+WARRANTY OF ANY KIND, either express or implied. See the License for the specific
+language governing rights and limitations under the License.
+
+The Original Code is "ProbeFileReader.java". Description:
+"Reads probe data written by ProbeFileWriter"
+
+The Initial Developer of the Original Code is Bryan Tripp & Centre for Theoretical Neuroscience, University of Waterloo. Copyright (C) 2006-2008. All Rights Reserved.
+
+Alternatively, the contents of this file may be used under the terms of the GNU
+Public License license (the GPL License), in which case the provisions of GPL
+License are applicable  instead of those above. If you wish to allow use of your
+version of this file only under the terms of the GPL License and not to allow
+others to use your version of this file under the MPL, indicate your decision
+by deleting the provisions above and replace  them with the notice and other
+provisions required by the GPL License.  If you do not delete the provisions above,
+a recipient may use your version of this file under either the MPL or the GPL License.
+*/
+
+package ca.nengo.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import ca.nengo.model.Units;
+import ca.nengo.util.TimeSeries;
+import ca.nengo.util.impl.TimeSeriesImpl;
+
+/**
+ * <p>Reads probe data written by ca.nengo.sim.impl.ProbeFileWriter. The file is memory-mapped,
+ * and times and values are read a column at a time, so a single dimension of a long recording
+ * can be read without reading the others.</p>
+ *
+ * <p>The file starts with a header (MAGIC, VERSION, the name of the probed state, the dimension
+ * and the name of the Units of each dimension), followed by blocks of samples. Each block has
+ * the number of samples it contains, then the times of the samples, and then the values of the
+ * samples in each dimension, one dimension after another. Strings are written as their length
+ * in bytes followed by UTF-8 bytes. If the file ends with an incomplete block (e.g. because the
+ * simulation was killed), the complete blocks are read.</p>
+ */
+public class ProbeFileReader {
+
+	/**
+	 * Number at the start of each file ("PROB")
+	 */
+	public static final int MAGIC = 0x50524F42;
+
+	/**
+	 * Version of the file format
+	 */
+	public static final int VERSION = 1;
+
+	private final MappedByteBuffer myBuffer;
+	private final String myName;
+	private final Units[] myUnits;
+	private int[] myBlockOffsets; //position of the times in each block
+	private int[] myBlockSizes;
+	private int myLength;
+
+	/**
+	 * @param file A file written by ProbeFileWriter
+	 * @throws IOException if the file can't be read or isn't in this format
+	 */
+	public ProbeFileReader(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			if (raf.length() > Integer.MAX_VALUE) {
+				throw new IOException(file + " is too large to be mapped");
+			}
+			myBuffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+		} finally {
+			raf.close();
+		}
+
+		if (myBuffer.remaining() < 8 || myBuffer.getInt() != MAGIC) {
+			throw new IOException(file + " is not a probe file");
+		}
+		int version = myBuffer.getInt();
+		if (version != VERSION) {
+			throw new IOException("Unsupported probe file version " + version + " in " + file);
+		}
+
+		try {
+			myName = getString(myBuffer);
+			int dimension = myBuffer.getInt();
+			if (dimension < 0 || dimension > myBuffer.remaining() / 4) {
+				throw new IOException("Invalid dimension " + dimension + " in " + file);
+			}
+			myUnits = new Units[dimension];
+			for (int i = 0; i < myUnits.length; i++) {
+				myUnits[i] = Units.valueOf(getString(myBuffer));
+			}
+		} catch (BufferUnderflowException e) {
+			throw new IOException("Header of " + file + " is truncated", e);
+		} catch (IllegalArgumentException e) {
+			throw new IOException("Unknown units in " + file, e);
+		}
+
+		findBlocks();
+	}
+
+	private void findBlocks() {
+		int capacity = 16;
+		myBlockOffsets = new int[capacity];
+		myBlockSizes = new int[capacity];
+		int numBlocks = 0;
+		myLength = 0;
+
+		int position = myBuffer.position();
+		while (myBuffer.limit() - position >= 4) {
+			int size = myBuffer.getInt(position);
+			long end = position + 4 + 4L * size * (myUnits.length + 1);
+			if (size < 0 || end > myBuffer.limit()) {
+				break;
+			}
+
+			if (numBlocks == capacity) {
+				capacity *= 2;
+				int[] offsets = new int[capacity];
+				int[] sizes = new int[capacity];
+				System.arraycopy(myBlockOffsets, 0, offsets, 0, numBlocks);
+				System.arraycopy(myBlockSizes, 0, sizes, 0, numBlocks);
+				myBlockOffsets = offsets;
+				myBlockSizes = sizes;
+			}
+			myBlockOffsets[numBlocks] = position + 4;
+			myBlockSizes[numBlocks] = size;
+			numBlocks++;
+			myLength += size;
+			position = (int) end;
+		}
+
+		int[] offsets = new int[numBlocks];
+		int[] sizes = new int[numBlocks];
+		System.arraycopy(myBlockOffsets, 0, offsets, 0, numBlocks);
+		System.arraycopy(myBlockSizes, 0, sizes, 0, numBlocks);
+		myBlockOffsets = offsets;
+		myBlockSizes = sizes;
+	}
+
+	private static String getString(ByteBuffer buffer) throws IOException {
+		int length = buffer.getInt();
+		if (length < 0 || length > buffer.remaining()) {
+			throw new IOException("Invalid string length " + length);
+		}
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		return new String(bytes, "UTF-8");
+	}
+
+	/**
+	 * @return Name of the probed state
+	 */
+	public String getName() {
+		return myName;
+	}
+
+	/**
+	 * @return Dimension of the values
+	 */
+	public int getDimension() {
+		return myUnits.length;
+	}
+
+	/**
+	 * @return Units of each dimension of the values
+	 */
+	public Units[] getUnits() {
+		return myUnits.clone();
+	}
+
+	/**
+	 * @return Number of samples in the file
+	 */
+	public int getLength() {
+		return myLength;
+	}
+
+	/**
+	 * @return Times of all samples
+	 */
+	public float[] getTimes() {
+		return readColumn(0);
+	}
+
+	/**
+	 * @param dimension Dimension of the values
+	 * @return Values of all samples in the given dimension
+	 */
+	public float[] getColumn(int dimension) {
+		if (dimension < 0 || dimension >= myUnits.length) {
+			throw new IndexOutOfBoundsException("Dimension " + dimension + " is outside of 0 to " + (myUnits.length - 1));
+		}
+		return readColumn(dimension + 1);
+	}
+
+	//column 0 holds the times, and column d+1 holds dimension d
+	private float[] readColumn(int column) {
+		float[] result = new float[myLength];
+		int index = 0;
+		ByteBuffer buffer = myBuffer.duplicate();
+		for (int i = 0; i < myBlockOffsets.length; i++) {
+			buffer.position(myBlockOffsets[i] + 4 * column * myBlockSizes[i]);
+			buffer.asFloatBuffer().get(result, index, myBlockSizes[i]);
+			index += myBlockSizes[i];
+		}
+		return result;
+	}
+
+	/**
+	 * @return All samples in the file
+	 */
+	public TimeSeries getTimeSeries() {
+		float[] times = getTimes();
+		float[][] values = new float[myLength][myUnits.length];
+		for (int d = 0; d < myUnits.length; d++) {
+			float[] column = getColumn(d);
+			for (int i = 0; i < myLength; i++) {
+				values[i][d] = column[i];
+			}
+		}
+
+		TimeSeriesImpl result = new TimeSeriesImpl(times, values, getUnits());
+		result.setName(myName);
+		return result;
+	}
+
+}
@@ -54,6 +54,16 @@ public interface LinearApproximator extends Serializable, Cloneable {
 	 */
 	public float[] findCoefficients(Function target);
 
+	/**
+	 * Finds coefficients for several targets at once. Implementations may share work between the
+	 * targets (e.g. to find decoders for high-dimensional origins).
+	 *
+	 * @param targets Functions to approximate
+	 * @return coefficients for each target (first dimension), as would be returned by
+	 * 		findCoefficients(Function)
+	 */
+	public float[][] findCoefficients(Function[] targets);
+
 	/**
 	 * @return Valid clone
 	 * @throws CloneNotSupportedException if clone can't be made
@@ -37,6 +37,7 @@ import java.util.Random;
 public class PDFTools {
 	
 	private static final Random ourRandom = new Random();
+	private static final ThreadLocal<Random> ourThreadRandom = new ThreadLocal<Random>();
 
 	/**
 	 * Note: PDF treated as univariate (only first dimension considered). 
@@ -76,7 +77,8 @@ public class PDFTools {
 	 * @return A random sample between 0 and 1
 	 */
 	public static double random() {
-		return ourRandom.nextDouble();
+		Random random = ourThreadRandom.get();
+		return (random == null) ? ourRandom.nextDouble() : random.nextDouble();
 	}
 	
 	/**
@@ -85,5 +87,26 @@ public class PDFTools {
 	public static void setSeed(long seed) {
 		ourRandom.setSeed(seed);
 	}
+
+	/**
+	 * @return Source of random() on the calling thread (null if the shared source is used)
+	 */
+	public static Random getThreadRandom() {
+		return ourThreadRandom.get();
+	}
+
+	/**
+	 * Replaces the shared source of random() on the calling thread. Work that is split between
+	 * threads can then give the same results regardless of how the threads are interleaved.
+	 *
+	 * @param random Source of random() on the calling thread (null to use the shared source)
+	 */
+	public static void setThreadRandom(Random random) {
+		if (random == null) {
+			ourThreadRandom.remove();
+		} else {
+			ourThreadRandom.set(random);
+		}
+	}
 	
 }
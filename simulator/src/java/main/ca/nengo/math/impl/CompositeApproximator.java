@@ -112,6 +112,17 @@ public class CompositeApproximator implements LinearApproximator {
 		return result;
 	}
 
+	/**
+	 * @see ca.nengo.math.LinearApproximator#findCoefficients(ca.nengo.math.Function[])
+	 */
+	public float[][] findCoefficients(Function[] targets) {
+		float[][] result = new float[targets.length][];
+		for (int i = 0; i < targets.length; i++) {
+			result[i] = findCoefficients(targets[i]);
+		}
+		return result;
+	}
+
 	private static class FunctionWrapper extends AbstractFunction {
 
 		private static final long serialVersionUID = 1L;
@@ -0,0 +1,607 @@
+/*
+The contents of this file are subject to the Mozilla Public License Version 1.1
+(the "License"); you may not use this file except in compliance with the License.
+You may obtain a copy of the License at http://www.mozilla.org/MPL/
+
+Software distributed under the License is distributed on an "AS IS" basis, WITHOUT
+WARRANTY OF ANY KIND, either express or implied. See the License for the specific
+language governing rights and limitations under the License.
+
+The Original Code is "ConjugateGradientApproximator.java". Description:
+"A LinearApproximator that minimizes weighted squared error by conjugate gradient, without
+  inverting the correlation matrix"
+
+The Initial Developer of the Original Code is Bryan Tripp & Centre for Theoretical Neuroscience, University of Waterloo. Copyright (C) 2006-2008. All Rights Reserved.
+
+Alternatively, the contents of this file may be used under the terms of the GNU
+Public License license (the GPL License), in which case the provisions of GPL
+License are applicable  instead of those above. If you wish to allow use of your
+version of this file only under the terms of the GPL License and not to allow
+others to use your version of this file under the MPL, indicate your decision
+by deleting the provisions above and replace  them with the notice and other
+provisions required by the GPL License.  If you do not delete the provisions above,
+a recipient may use your version of this file under either the MPL or the GPL License.
+*/
+
+package ca.nengo.math.impl;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+
+import ca.nengo.math.ApproximatorFactory;
+import ca.nengo.math.Function;
+import ca.nengo.math.LinearApproximator;
+import ca.nengo.util.Environment;
+import ca.nengo.util.MU;
+import ca.nengo.util.impl.PhaseBarrier;
+import ca.nengo.util.impl.SpinPhaseBarrier;
+
+/**
+ * <p>A LinearApproximator that minimizes the same weighted integral of squared error as
+ * WeightedCostApproximator, but solves (GAMMA + s^2 I) PHI = UPSILON by conjugate gradient
+ * instead of finding the pseudoinverse of GAMMA.</p>
+ *
+ * <p>GAMMA is never formed. Each iteration multiplies by it as A W A' / K (where A holds the
+ * values of the component functions at the K evaluation points, and W the cost at each point)
+ * in two passes over the values, which are shared between threads (started once for each call to
+ * findCoefficients(...), and reused for every product). Memory is therefore
+ * proportional to the size of the values rather than to the square of the number of components,
+ * and time is proportional to the size of the values times the number of iterations. This
+ * makes approximators with many thousands of components practical.</p>
+ *
+ * <p>Rather than adding random noise to the values, the expected effect of that noise on GAMMA
+ * (its variance s^2 times the mean cost, on the diagonal) is added directly, so the result is
+ * deterministic and doesn't depend on the number of threads. Iteration stops when the norm of
+ * the residual falls below the tolerance times the norm of UPSILON. The diagonal of GAMMA is
+ * used as a preconditioner.</p>
+ */
+public class ConjugateGradientApproximator implements LinearApproximator {
+
+	private static Logger ourLogger = Logger.getLogger(ConjugateGradientApproximator.class);
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Default relative tolerance of the residual
+	 */
+	public static final float DEFAULT_TOLERANCE = 1e-4f;
+
+	private static final int CHUNK = 256; //components or evaluation points per unit of work shared between threads
+	private static final long MIN_PARALLEL_WORK = 100000; //smaller products are found on the calling thread
+
+	private static int ourNumThreads = Runtime.getRuntime().availableProcessors();
+
+	private float[][] myEvalPoints;
+	private float[][] myValues;
+	private float[] myCostWeights; //cost function at each evaluation point
+	private float myRidge; //added to the diagonal of GAMMA
+	private double[] myPreconditioner; //inverse of the diagonal of GAMMA + ridge
+	private float myTolerance;
+	private int myMaxIterations;
+	private final boolean myQuiet;
+	private int myIterations;
+
+	/**
+	 * @return Maximum number of threads used in each product with GAMMA
+	 */
+	public static int getNumThreads() {
+		return ourNumThreads;
+	}
+
+	/**
+	 * @param numThreads Maximum number of threads used in each product with GAMMA
+	 */
+	public static void setNumThreads(int numThreads) {
+		ourNumThreads = Math.max(1, numThreads);
+	}
+
+	/**
+	 * @param evaluationPoints Points at which error is evaluated (should be uniformly
+	 * 		distributed, as the sum of error at these points is treated as an integral
+	 * 		over the domain of interest)
+	 * @param values The values of whatever functions are being combined, at the
+	 * 		evaluationPoints. The first dimension makes up the list of functions, and the
+	 * 		second the values of these functions at each evaluation point.
+	 * @param costFunction A cost function that weights squared error over the domain of
+	 * 		evaluation points
+	 * @param noise Standard deviation of noise in the values (to reduce sensitivity to
+	 * 		simulation noise) as a proportion of the maximum absolute value over all values
+	 * @param tolerance Iteration stops when the norm of the residual is less than this
+	 * 		proportion of the norm of UPSILON
+	 * @param maxIterations Maximum number of iterations for each target (zero or less means
+	 * 		the number of components)
+	 * @param quiet Turn off logging?
+	 */
+	public ConjugateGradientApproximator(float[][] evaluationPoints, float[][] values, Function costFunction,
+			float noise, float tolerance, int maxIterations, boolean quiet) {
+		assert MU.isMatrix(evaluationPoints);
+		assert MU.isMatrix(values);
+		assert evaluationPoints.length == values[0].length;
+
+		myEvalPoints = evaluationPoints;
+		myValues = MU.clone(values);
+		myTolerance = tolerance;
+		myMaxIterations = maxIterations > 0 ? maxIterations : values.length;
+		myQuiet = quiet;
+
+		myCostWeights = new float[evaluationPoints.length];
+		float meanWeight = 0;
+		for (int k = 0; k < myCostWeights.length; k++) {
+			myCostWeights[k] = costFunction.map(evaluationPoints[k]);
+			meanWeight += myCostWeights[k] / myCostWeights.length;
+		}
+
+		float maxValue = 0;
+		for (int i = 0; i < myValues.length; i++) {
+			for (int k = 0; k < myValues[i].length; k++) {
+				maxValue = Math.max(maxValue, Math.abs(myValues[i][k]));
+			}
+		}
+		float SD = noise * maxValue;
+		myRidge = SD * SD * meanWeight;
+
+		myPreconditioner = new double[myValues.length];
+		for (int i = 0; i < myValues.length; i++) {
+			double sum = 0;
+			for (int k = 0; k < myCostWeights.length; k++) {
+				sum += myValues[i][k] * myValues[i][k] * myCostWeights[k];
+			}
+			double diagonal = sum / myCostWeights.length + myRidge;
+			myPreconditioner[i] = diagonal > 0 ? 1 / diagonal : 1;
+		}
+	}
+
+	/**
+	 * @see ca.nengo.math.LinearApproximator#getEvalPoints()
+	 */
+	public float[][] getEvalPoints() {
+		return myEvalPoints;
+	}
+
+	/**
+	 * @see ca.nengo.math.LinearApproximator#getValues()
+	 */
+	public float[][] getValues() {
+		return myValues;
+	}
+
+	/**
+	 * @return Relative tolerance of the residual at which iteration stops
+	 */
+	public float getTolerance() {
+		return myTolerance;
+	}
+
+	/**
+	 * @param tolerance Relative tolerance of the residual at which iteration stops
+	 */
+	public void setTolerance(float tolerance) {
+		myTolerance = tolerance;
+	}
+
+	/**
+	 * @return Largest number of iterations needed for any target in the last call to findCoefficients(...)
+	 */
+	public int getIterations() {
+		return myIterations;
+	}
+
+	/**
+	 * @see ca.nengo.math.LinearApproximator#findCoefficients(ca.nengo.math.Function)
+	 */
+	public float[] findCoefficients(Function target) {
+		return findCoefficients(new Function[]{target})[0];
+	}
+
+	/**
+	 * Iterates for all targets together, so that each pass over the values serves every target
+	 * that hasn't yet converged.
+	 *
+	 * @see ca.nengo.math.LinearApproximator#findCoefficients(ca.nengo.math.Function[])
+	 */
+	public float[][] findCoefficients(Function[] targets) {
+		double[][] weightedTargets = new double[targets.length][myEvalPoints.length];
+		for (int t = 0; t < targets.length; t++) {
+			for (int k = 0; k < myEvalPoints.length; k++) {
+				weightedTargets[t][k] = targets[t].map(myEvalPoints[k]) * myCostWeights[k];
+			}
+		}
+
+		int numChunks = (Math.max(myValues.length, myCostWeights.length) + CHUNK - 1) / CHUNK;
+		long cost = (long) myValues.length * myCostWeights.length * targets.length;
+		Workers workers = new Workers(cost < MIN_PARALLEL_WORK ? 1 : Math.min(Environment.limitThreads(ourNumThreads), numChunks));
+		try {
+			return solve(weightedTargets, workers);
+		} finally {
+			workers.stop();
+		}
+	}
+
+	//preconditioned conjugate gradient for each target, with the products by GAMMA shared between targets
+	private float[][] solve(double[][] weightedTargets, Workers workers) {
+		int numTargets = weightedTargets.length;
+		int n = myValues.length;
+
+		double[][] upsilon = new double[numTargets][n];
+		multiplyValues(weightedTargets, null, upsilon, workers);
+
+		double[][] x = new double[numTargets][n];
+		double[][] r = new double[numTargets][];
+		double[][] p = new double[numTargets][n];
+		double[][] q = new double[numTargets][n];
+		double[] rz = new double[numTargets];
+		double[] threshold = new double[numTargets];
+		boolean[] done = new boolean[numTargets];
+		int numActive = 0;
+		for (int t = 0; t < numTargets; t++) {
+			r[t] = upsilon[t].clone();
+			for (int i = 0; i < n; i++) {
+				p[t][i] = myPreconditioner[i] * r[t][i];
+			}
+			rz[t] = dot(r[t], p[t]);
+			threshold[t] = myTolerance * Math.sqrt(dot(upsilon[t], upsilon[t]));
+			done[t] = threshold[t] == 0; //zero UPSILON gives zero coefficients
+			if (!done[t]) {
+				numActive++;
+			}
+		}
+
+		int iteration = 0;
+		while (numActive > 0 && iteration < myMaxIterations) {
+			iteration++;
+
+			double[][] activeP = new double[numActive][];
+			double[][] activeQ = new double[numActive][];
+			int a = 0;
+			for (int t = 0; t < numTargets; t++) {
+				if (!done[t]) {
+					activeP[a] = p[t];
+					activeQ[a] = q[t];
+					a++;
+				}
+			}
+			multiplyGamma(activeP, activeQ, workers);
+
+			for (int t = 0; t < numTargets; t++) {
+				if (done[t]) {
+					continue;
+				}
+				double pq = dot(p[t], q[t]);
+				if (pq <= 0) { //GAMMA is singular in the search direction (only possible with no noise)
+					done[t] = true;
+					numActive--;
+					continue;
+				}
+
+				double alpha = rz[t] / pq;
+				double rr = 0;
+				for (int i = 0; i < n; i++) {
+					x[t][i] += alpha * p[t][i];
+					r[t][i] -= alpha * q[t][i];
+					rr += r[t][i] * r[t][i];
+				}
+				if (Math.sqrt(rr) <= threshold[t]) {
+					done[t] = true;
+					numActive--;
+					continue;
+				}
+
+				double rzNew = 0;
+				for (int i = 0; i < n; i++) {
+					rzNew += r[t][i] * myPreconditioner[i] * r[t][i];
+				}
+				double beta = rzNew / rz[t];
+				for (int i = 0; i < n; i++) {
+					p[t][i] = myPreconditioner[i] * r[t][i] + beta * p[t][i];
+				}
+				rz[t] = rzNew;
+			}
+		}
+		myIterations = iteration;
+
+		if (numActive > 0) {
+			ourLogger.warn("Conjugate gradient did not converge for " + numActive + " of " + numTargets
+					+ " targets in " + iteration + " iterations");
+		} else if (!myQuiet) {
+			ourLogger.info("Conjugate gradient converged in " + iteration + " iterations");
+		}
+
+		float[][] result = new float[numTargets][n];
+		for (int t = 0; t < numTargets; t++) {
+			for (int i = 0; i < n; i++) {
+				result[t][i] = (float) x[t][i];
+			}
+		}
+		return result;
+	}
+
+	//result = (GAMMA + ridge) vectors, as A W A' vectors / K + ridge vectors
+	private void multiplyGamma(final double[][] vectors, double[][] result, Workers workers) {
+		final double[][] weighted = new double[vectors.length][myCostWeights.length];
+		final float[][] values = myValues;
+		final float[] weights = myCostWeights;
+
+		//weighted = W A' vectors, a chunk of evaluation points at a time
+		workers.run(new Chunked(myCostWeights.length, (long) myValues.length * myCostWeights.length * vectors.length) {
+			protected void runChunk(int start, int end) {
+				for (int i = 0; i < values.length; i++) {
+					float[] a = values[i];
+					for (int j = 0; j < vectors.length; j++) {
+						double c = vectors[j][i];
+						if (c != 0) {
+							double[] w = weighted[j];
+							for (int k = start; k < end; k++) {
+								w[k] += c * a[k];
+							}
+						}
+					}
+				}
+				for (int j = 0; j < vectors.length; j++) {
+					for (int k = start; k < end; k++) {
+						weighted[j][k] *= weights[k];
+					}
+				}
+			}
+		});
+
+		multiplyValues(weighted, vectors, result, workers);
+	}
+
+	//result = A weighted / K (+ ridge ridgeVectors, if given), a chunk of components at a time
+	private void multiplyValues(final double[][] weighted, final double[][] ridgeVectors, final double[][] result, Workers workers) {
+		final float[][] values = myValues;
+		final int numPoints = myCostWeights.length;
+		final double ridge = myRidge;
+
+		workers.run(new Chunked(myValues.length, (long) myValues.length * numPoints * weighted.length) {
+			protected void runChunk(int start, int end) {
+				for (int i = start; i < end; i++) {
+					float[] a = values[i];
+					for (int j = 0; j < weighted.length; j++) {
+						double[] w = weighted[j];
+						double sum = 0;
+						for (int k = 0; k < numPoints; k++) {
+							sum += a[k] * w[k];
+						}
+						result[j][i] = sum / numPoints + (ridgeVectors == null ? 0 : ridge * ridgeVectors[j][i]);
+					}
+				}
+			}
+		});
+	}
+
+	private static double dot(double[] a, double[] b) {
+		double result = 0;
+		for (int i = 0; i < a.length; i++) {
+			result += a[i] * b[i];
+		}
+		return result;
+	}
+
+	//threads that are started once per solve, and run the chunks of each product between phases of a barrier
+	private static class Workers {
+
+		private final PhaseBarrier myBarrier;
+		private Chunked myWork; //published to the workers by the start of each phase
+
+		public Workers(int numThreads) {
+			if (numThreads > 1) {
+				myBarrier = new SpinPhaseBarrier(numThreads);
+				for (int i = 0; i < numThreads; i++) {
+					Thread worker = new Worker(i);
+					worker.setName("ConjugateGradient" + i);
+					worker.setDaemon(true);
+					worker.start();
+				}
+			} else {
+				myBarrier = null;
+			}
+		}
+
+		//runs the given work on the workers if there is enough of it, otherwise on the calling thread
+		public void run(Chunked work) {
+			if (myBarrier == null || work.myCost < MIN_PARALLEL_WORK) {
+				work.run();
+			} else {
+				myWork = work;
+				try {
+					myBarrier.runPhase();
+				} catch (InterruptedException e) {
+					throw new IllegalStateException("Conjugate gradient threads were stopped", e);
+				}
+			}
+			if (work.myError != null) {
+				throw work.myError;
+			}
+		}
+
+		public void stop() {
+			if (myBarrier != null) {
+				myBarrier.release();
+			}
+		}
+
+		private class Worker extends Thread {
+
+			private final int myIndex;
+
+			public Worker(int index) {
+				myIndex = index;
+			}
+
+			public void run() {
+				try {
+					myBarrier.workerWait(myIndex);
+					while (true) {
+						myWork.run();
+						myBarrier.workerFinished(myIndex);
+					}
+				} catch (InterruptedException e) {
+				}
+			}
+		}
+	}
+
+	//work that is split into chunks of CHUNK indices, which are claimed by threads until there are none left
+	private abstract static class Chunked implements Runnable {
+
+		private final int mySize;
+		private final long myCost;
+		private final AtomicInteger myNext = new AtomicInteger();
+		private volatile RuntimeException myError;
+
+		public Chunked(int size, long cost) {
+			mySize = size;
+			myCost = cost;
+		}
+
+		public void run() {
+			try {
+				int start;
+				while ((start = myNext.getAndAdd(CHUNK)) < mySize && myError == null) {
+					runChunk(start, Math.min(start + CHUNK, mySize));
+				}
+			} catch (RuntimeException e) {
+				myError = e;
+			}
+		}
+
+		protected abstract void runChunk(int start, int end);
+	}
+
+	@Override
+	public LinearApproximator clone() throws CloneNotSupportedException {
+		ConjugateGradientApproximator result = (ConjugateGradientApproximator) super.clone();
+		result.myEvalPoints = MU.clone(myEvalPoints);
+		result.myValues = MU.clone(myValues);
+		result.myCostWeights = myCostWeights.clone();
+		result.myPreconditioner = myPreconditioner.clone();
+		return result;
+	}
+
+	/**
+	 * An ApproximatorFactory that produces ConjugateGradientApproximators. This is an alternative to
+	 * WeightedCostApproximator.Factory for very large ensembles.
+	 */
+	public static class Factory implements ApproximatorFactory {
+
+		private static final long serialVersionUID = 1L;
+
+		private float myNoise;
+		private float myTolerance;
+		private int myMaxIterations;
+		private boolean myQuiet;
+
+		/**
+		 * @param noise Noise in component functions (proportion of largest value over all functions)
+		 */
+		public Factory(float noise) {
+			this(noise, DEFAULT_TOLERANCE);
+		}
+
+		/**
+		 * @param noise Noise in component functions (proportion of largest value over all functions)
+		 * @param tolerance Relative tolerance of the residual at which iteration stops
+		 */
+		public Factory(float noise, float tolerance) {
+			this(noise, tolerance, -1, false);
+		}
+
+		/**
+		 * @param noise Noise in component functions (proportion of largest value over all functions)
+		 * @param tolerance Relative tolerance of the residual at which iteration stops
+		 * @param maxIterations Maximum number of iterations for each target (zero or less means
+		 * 		the number of components)
+		 * @param quiet Turn off logging?
+		 */
+		public Factory(float noise, float tolerance, int maxIterations, boolean quiet) {
+			myNoise = noise;
+			myTolerance = tolerance;
+			myMaxIterations = maxIterations;
+			myQuiet = quiet;
+		}
+
+		/**
+		 * @return Noise in component functions (proportion of largest value over all functions)
+		 */
+		public float getNoise() {
+			return myNoise;
+		}
+
+		/**
+		 * @param noise Noise in component functions (proportion of largest value over all functions)
+		 */
+		public void setNoise(float noise) {
+			myNoise = noise;
+		}
+
+		/**
+		 * @return Relative tolerance of the residual at which iteration stops
+		 */
+		public float getTolerance() {
+			return myTolerance;
+		}
+
+		/**
+		 * @param tolerance Relative tolerance of the residual at which iteration stops
+		 */
+		public void setTolerance(float tolerance) {
+			myTolerance = tolerance;
+		}
+
+		/**
+		 * @return Maximum number of iterations for each target (zero or less means the number of components)
+		 */
+		public int getMaxIterations() {
+			return myMaxIterations;
+		}
+
+		/**
+		 * @param maxIterations Maximum number of iterations for each target (zero or less means the
+		 * 		number of components)
+		 */
+		public void setMaxIterations(int maxIterations) {
+			myMaxIterations = maxIterations;
+		}
+
+		/**
+		 * @return Whether or not information will be printed out to console during make process.
+		 */
+		public boolean getQuiet() {
+			return myQuiet;
+		}
+
+		/**
+		 * @param quiet Controls whether or not information will be printed out to console during make process.
+		 */
+		public void setQuiet(boolean quiet) {
+			myQuiet = quiet;
+		}
+
+		/**
+		 * @see ca.nengo.math.ApproximatorFactory#getApproximator(float[][], float[][])
+		 */
+		public LinearApproximator getApproximator(float[][] evalPoints, float[][] values) {
+			return new ConjugateGradientApproximator(evalPoints, values, getCostFunction(evalPoints[0].length),
+					myNoise, myTolerance, myMaxIterations, myQuiet);
+		}
+
+		/**
+		 * Note: override to use non-uniform error weighting.
+		 *
+		 * @param dimension Dimension of the function to be approximated
+		 * @return A function over the input space that defines relative importance of error at each point (defaults
+		 * 		to a ConstantFunction)
+		 */
+		public Function getCostFunction(int dimension) {
+			return new ConstantFunction(dimension, 1);
+		}
+
+		@Override
+		public ApproximatorFactory clone() throws CloneNotSupportedException {
+			return (ApproximatorFactory) super.clone();
+		}
+
+	}
+
+}
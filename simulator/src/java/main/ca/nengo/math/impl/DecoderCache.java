@@ -0,0 +1,405 @@
+/*
+The contents of this file are subject to the Mozilla Public License Version 1.1
+(the "License"); you may not use this file except in compliance with the License.
+You may obtain a copy of the License at http://www.mozilla.org/MPL/
+
+Software distributed under the License is distributed on an "AS IS" basis, WITHOUT
+WARRANTY OF ANY KIND, either express or implied. See the License for the specific
+language governing rights and limitations under the License.
+
+The Original Code is "DecoderCache.java". Description:
+"On-disk cache of decoding solutions, keyed by the content of their inputs"
+
+The Initial Developer of the Original Code is Bryan Tripp & Centre for Theoretical Neuroscience, University of Waterloo. Copyright (C) 2006-2008. All Rights Reserved.
+
+Alternatively, the contents of this file may be used under the terms of the GNU
+Public License license (the GPL License), in which case the provisions of GPL
+License are applicable  instead of those above. If you wish to allow use of your
+version of this file only under the terms of the GPL License and not to allow
+others to use your version of this file under the MPL, indicate your decision
+by deleting the provisions above and replace  them with the notice and other
+provisions required by the GPL License.  If you do not delete the provisions above,
+a recipient may use your version of this file under either the MPL or the GPL License.
+*/
+
+package ca.nengo.math.impl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.apache.log4j.Logger;
+
+/**
+ * <p>An optional on-disk cache of the results of WeightedCostApproximator: the inverse of the
+ * GAMMA matrix (along with the noisy values from which it was found), and the coefficients
+ * (decoders) found for each target.</p>
+ *
+ * <p>Entries are addressed by a hash of everything that determines them (evaluation points,
+ * values, noise, number of singular values, cost function values), so building a model whose
+ * neurons and evaluation points haven't changed since the last run reuses the earlier solution
+ * rather than solving again. The cache is disabled unless a directory is set with
+ * setDirectory(...). Problems reading or writing the cache are logged and otherwise ignored,
+ * so that they fall back to solving as usual.</p>
+ */
+public class DecoderCache {
+
+	private static Logger ourLogger = Logger.getLogger(DecoderCache.class);
+
+	private static final int GAMMA_MAGIC = 0x4e474d31; //"NGM1"
+	private static final int DECODERS_MAGIC = 0x4e444331; //"NDC1"
+	private static final String GAMMA_EXTENSION = ".gamma";
+	private static final String DECODERS_EXTENSION = ".decoders";
+
+	private static File ourDirectory = null;
+
+	/**
+	 * @return Directory in which cached solutions are stored (null if caching is disabled)
+	 */
+	public static File getDirectory() {
+		return ourDirectory;
+	}
+
+	/**
+	 * @param directory Directory in which to store cached solutions (created if necessary), or
+	 * 		null to disable caching
+	 */
+	public static void setDirectory(File directory) {
+		if (directory != null) {
+			directory.mkdirs();
+		}
+		ourDirectory = directory;
+	}
+
+	/**
+	 * @return True if a cache directory has been set
+	 */
+	public static boolean isEnabled() {
+		return ourDirectory != null;
+	}
+
+	/**
+	 * Deletes all cached solutions from the cache directory.
+	 */
+	public static void clear() {
+		File directory = ourDirectory;
+		File[] files = (directory == null) ? null : directory.listFiles();
+		if (files != null) {
+			for (int i = 0; i < files.length; i++) {
+				String name = files[i].getName();
+				if (name.endsWith(GAMMA_EXTENSION) || name.endsWith(DECODERS_EXTENSION)) {
+					files[i].delete();
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param key Key of the inputs to an approximator (see Key)
+	 * @return The cached solution, or null if there isn't one
+	 */
+	public static Solution loadSolution(String key) {
+		File file = getFile(key, GAMMA_EXTENSION);
+		if (file == null || !file.exists()) {
+			return null;
+		}
+
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			try {
+				checkMagic(in, GAMMA_MAGIC, file);
+				float[][] noisyValues = new float[in.readInt()][];
+				int numPoints = in.readInt();
+				for (int i = 0; i < noisyValues.length; i++) {
+					noisyValues[i] = readFloats(in, numPoints);
+				}
+				double[][] gammaInverse = new double[in.readInt()][];
+				for (int i = 0; i < gammaInverse.length; i++) {
+					gammaInverse[i] = new double[gammaInverse.length];
+					for (int j = 0; j < gammaInverse.length; j++) {
+						gammaInverse[i][j] = in.readDouble();
+					}
+				}
+				return new Solution(noisyValues, gammaInverse);
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			ourLogger.warn("Can't read cached decoding solution " + file, e);
+			return null;
+		}
+	}
+
+	/**
+	 * @param key Key of the inputs to an approximator (see Key)
+	 * @param solution Solution to store
+	 */
+	public static void storeSolution(String key, Solution solution) {
+		File file = getFile(key, GAMMA_EXTENSION);
+		if (file == null) {
+			return;
+		}
+
+		try {
+			File temp = getTempFile(file);
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+			try {
+				out.writeInt(GAMMA_MAGIC);
+				float[][] noisyValues = solution.getNoisyValues();
+				out.writeInt(noisyValues.length);
+				out.writeInt(noisyValues.length > 0 ? noisyValues[0].length : 0);
+				for (int i = 0; i < noisyValues.length; i++) {
+					writeFloats(out, noisyValues[i]);
+				}
+				double[][] gammaInverse = solution.getGammaInverse();
+				out.writeInt(gammaInverse.length);
+				for (int i = 0; i < gammaInverse.length; i++) {
+					for (int j = 0; j < gammaInverse.length; j++) {
+						out.writeDouble(gammaInverse[i][j]);
+					}
+				}
+			} finally {
+				out.close();
+			}
+			commit(temp, file);
+		} catch (IOException e) {
+			ourLogger.warn("Can't write cached decoding solution " + file, e);
+		}
+	}
+
+	/**
+	 * @param key Key of an approximator and a target (see Key)
+	 * @return Cached coefficients, or null if there are none
+	 */
+	public static float[] loadCoefficients(String key) {
+		File file = getFile(key, DECODERS_EXTENSION);
+		if (file == null || !file.exists()) {
+			return null;
+		}
+
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			try {
+				checkMagic(in, DECODERS_MAGIC, file);
+				return readFloats(in, in.readInt());
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			ourLogger.warn("Can't read cached decoders " + file, e);
+			return null;
+		}
+	}
+
+	/**
+	 * @param key Key of an approximator and a target (see Key)
+	 * @param coefficients Coefficients to store
+	 */
+	public static void storeCoefficients(String key, float[] coefficients) {
+		File file = getFile(key, DECODERS_EXTENSION);
+		if (file == null) {
+			return;
+		}
+
+		try {
+			File temp = getTempFile(file);
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+			try {
+				out.writeInt(DECODERS_MAGIC);
+				out.writeInt(coefficients.length);
+				writeFloats(out, coefficients);
+			} finally {
+				out.close();
+			}
+			commit(temp, file);
+		} catch (IOException e) {
+			ourLogger.warn("Can't write cached decoders " + file, e);
+		}
+	}
+
+	private static File getFile(String key, String extension) {
+		File directory = ourDirectory;
+		return (directory == null) ? null : new File(directory, key + extension);
+	}
+
+	//entries are written under a temporary name and then renamed, so that readers never see partial files
+	private static File getTempFile(File file) throws IOException {
+		return File.createTempFile(file.getName(), ".tmp", file.getParentFile());
+	}
+
+	private static void commit(File temp, File file) throws IOException {
+		if (!temp.renameTo(file)) {
+			file.delete();
+			if (!temp.renameTo(file)) {
+				temp.delete();
+				throw new IOException("Can't rename " + temp + " to " + file);
+			}
+		}
+	}
+
+	private static void checkMagic(DataInputStream in, int magic, File file) throws IOException {
+		if (in.readInt() != magic) {
+			throw new IOException("Unexpected file format in " + file);
+		}
+	}
+
+	private static float[] readFloats(DataInputStream in, int length) throws IOException {
+		float[] result = new float[length];
+		for (int i = 0; i < length; i++) {
+			result[i] = in.readFloat();
+		}
+		return result;
+	}
+
+	private static void writeFloats(DataOutputStream out, float[] values) throws IOException {
+		for (int i = 0; i < values.length; i++) {
+			out.writeFloat(values[i]);
+		}
+	}
+
+	/**
+	 * A GAMMA inverse along with the noisy values from which it was found (which are needed to
+	 * find coefficients that are consistent with it).
+	 */
+	public static class Solution {
+
+		private final float[][] myNoisyValues;
+		private final double[][] myGammaInverse;
+
+		/**
+		 * @param noisyValues Values with noise, as used to find GAMMA
+		 * @param gammaInverse Pseudoinverse of GAMMA
+		 */
+		public Solution(float[][] noisyValues, double[][] gammaInverse) {
+			myNoisyValues = noisyValues;
+			myGammaInverse = gammaInverse;
+		}
+
+		/**
+		 * @return Values with noise, as used to find GAMMA
+		 */
+		public float[][] getNoisyValues() {
+			return myNoisyValues;
+		}
+
+		/**
+		 * @return Pseudoinverse of GAMMA
+		 */
+		public double[][] getGammaInverse() {
+			return myGammaInverse;
+		}
+	}
+
+	/**
+	 * Builds a cache key as a hash of a sequence of values.
+	 */
+	public static class Key {
+
+		private final MessageDigest myDigest;
+		private String myHash;
+
+		/**
+		 * @param kind Kind of entry (so that different kinds of entries with the same inputs have different keys)
+		 */
+		public Key(String kind) {
+			try {
+				myDigest = MessageDigest.getInstance("SHA-1");
+			} catch (NoSuchAlgorithmException e) {
+				throw new IllegalStateException(e);
+			}
+			add(kind);
+		}
+
+		/**
+		 * @param value A value to include in the key
+		 * @return This key
+		 */
+		public Key add(String value) {
+			add(value.length());
+			for (int i = 0; i < value.length(); i++) {
+				char c = value.charAt(i);
+				myDigest.update((byte) (c >>> 8));
+				myDigest.update((byte) c);
+			}
+			return this;
+		}
+
+		/**
+		 * @param value A value to include in the key
+		 * @return This key
+		 */
+		public Key add(int value) {
+			if (myHash != null) {
+				throw new IllegalStateException("Can't add to a key after it has been used");
+			}
+			myDigest.update((byte) (value >>> 24));
+			myDigest.update((byte) (value >>> 16));
+			myDigest.update((byte) (value >>> 8));
+			myDigest.update((byte) value);
+			return this;
+		}
+
+		/**
+		 * @param value A value to include in the key
+		 * @return This key
+		 */
+		public Key add(float value) {
+			return add(Float.floatToIntBits(value));
+		}
+
+		/**
+		 * @param values Values to include in the key
+		 * @return This key
+		 */
+		public Key add(float[] values) {
+			add(values.length);
+			byte[] bytes = new byte[values.length * 4];
+			for (int i = 0; i < values.length; i++) {
+				int bits = Float.floatToIntBits(values[i]);
+				bytes[4*i] = (byte) (bits >>> 24);
+				bytes[4*i+1] = (byte) (bits >>> 16);
+				bytes[4*i+2] = (byte) (bits >>> 8);
+				bytes[4*i+3] = (byte) bits;
+			}
+			myDigest.update(bytes);
+			return this;
+		}
+
+		/**
+		 * @param values Values to include in the key
+		 * @return This key
+		 */
+		public Key add(float[][] values) {
+			add(values.length);
+			for (int i = 0; i < values.length; i++) {
+				add(values[i]);
+			}
+			return this;
+		}
+
+		/**
+		 * @return The key, as a hexadecimal string (after which no more values can be added)
+		 */
+		@Override
+		public String toString() {
+			if (myHash == null) {
+				byte[] hash = myDigest.digest();
+				StringBuilder result = new StringBuilder(hash.length * 2);
+				for (int i = 0; i < hash.length; i++) {
+					result.append(Character.forDigit((hash[i] >>> 4) & 0xf, 16));
+					result.append(Character.forDigit(hash[i] & 0xf, 16));
+				}
+				myHash = result.toString();
+			}
+			return myHash;
+		}
+	}
+
+}
@@ -0,0 +1,281 @@
+/*
+The contents of this file are subject to the Mozilla Public License Version 1.1
+(the "License"); you may not use this file except in compliance with the License.
+You may obtain a copy of the License at http://www.mozilla.org/MPL/
+
+Software distributed under the License is distributed on an "AS IS" basis, WITHOUT
+WARRANTY OF ANY KIND, either express or implied. See the License for the specific
+language governing rights and limitations under the License.
+
+The Original Code is "GramMatrix.java". Description:
+"Multithreaded construction of weighted Gram (correlation) matrices"
+
+The Initial Developer of the Original Code is Bryan Tripp & Centre for Theoretical Neuroscience, University of Waterloo. Copyright (C) 2006-2008. All Rights Reserved.
+
+Alternatively, the contents of this file may be used under the terms of the GNU
+Public License license (the GPL License), in which case the provisions of GPL
+License are applicable  instead of those above. If you wish to allow use of your
+version of this file only under the terms of the GPL License and not to allow
+others to use your version of this file under the MPL, indicate your decision
+by deleting the provisions above and replace  them with the notice and other
+provisions required by the GPL License.  If you do not delete the provisions above,
+a recipient may use your version of this file under either the MPL or the GPL License.
+*/
+
+package ca.nengo.math.impl;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ca.nengo.util.Environment;
+import ca.nengo.util.impl.PhaseBarrier;
+import ca.nengo.util.impl.SpinPhaseBarrier;
+
+/**
+ * <p>Builds weighted Gram matrices of the form G_ij = sum_k w_k a_i(k) a_j(k) / K, where a_i(k)
+ * is the value of function i at evaluation point k, w_k is the weight (e.g. cost) of point k and
+ * K is the number of points. This is the GAMMA matrix used to find decoders.</p>
+ *
+ * <p>Only the lower triangle is computed (the upper triangle is copied from it). The work is
+ * split into square tiles of rows that are shared between threads, and each tile runs over
+ * the evaluation points in chunks so that the rows it needs stay in cache. The sum for each
+ * element is accumulated in the same order as a straightforward triple loop, so the result
+ * doesn't depend on the number of threads.</p>
+ *
+ * <p>To build a matrix from evaluation points a chunk at a time, use an Accumulator, which
+ * keeps one set of threads for all the chunks.</p>
+ */
+public class GramMatrix {
+
+	private static final int BLOCK_ROWS = 64;
+	private static final int BLOCK_POINTS = 512;
+
+	private static int ourNumThreads = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * @return Maximum number of threads used to build each matrix
+	 */
+	public static int getNumThreads() {
+		return ourNumThreads;
+	}
+
+	/**
+	 * @param numThreads Maximum number of threads used to build each matrix
+	 */
+	public static void setNumThreads(int numThreads) {
+		ourNumThreads = Math.max(1, numThreads);
+	}
+
+	/**
+	 * @param values Values of functions at evaluation points (first dimension is for each function)
+	 * @param weights Weight of each evaluation point
+	 * @return Weighted Gram matrix of the functions, averaged over evaluation points
+	 */
+	public static double[][] find(float[][] values, float[] weights) {
+		Accumulator accumulator = new Accumulator(values.length);
+		try {
+			accumulator.add(values, weights);
+			return accumulator.finish();
+		} finally {
+			accumulator.stop();
+		}
+	}
+
+	/**
+	 * Adds weighted sums of products of function values to the lower triangle of the given sums,
+	 * so that a Gram matrix can be built from evaluation points a chunk at a time. The result is
+	 * the same as if all points were given at once.
+	 *
+	 * @param values Values of functions at some evaluation points (first dimension is for each function)
+	 * @param weights Weight of each of these evaluation points
+	 * @param sums Sums to which to add (n x n for n functions; only the lower triangle is used)
+	 */
+	public static void accumulate(float[][] values, float[] weights, double[][] sums) {
+		Accumulator accumulator = new Accumulator(sums);
+		try {
+			accumulator.add(values, weights);
+		} finally {
+			accumulator.stop();
+		}
+	}
+
+	/**
+	 * Turns sums from accumulate(...) into a Gram matrix, by averaging over evaluation points and
+	 * copying the lower triangle to the upper triangle.
+	 *
+	 * @param sums Sums from accumulate(...), which are replaced with the Gram matrix
+	 * @param numPoints Total number of evaluation points
+	 */
+	public static void finish(double[][] sums, int numPoints) {
+		for (int i = 0; i < sums.length; i++) {
+			for (int j = 0; j <= i; j++) {
+				sums[i][j] = sums[i][j] / numPoints;
+				sums[j][i] = sums[i][j];
+			}
+		}
+	}
+
+	/**
+	 * Builds a Gram matrix from evaluation points that are added a chunk at a time. The threads
+	 * are started when the accumulator is made, and wait between chunks; stop() must be called
+	 * when the accumulator is no longer needed.
+	 */
+	public static class Accumulator {
+
+		private final double[][] mySums;
+		private final int[] myTileRows;
+		private final int[] myTileCols;
+		private final PhaseBarrier myBarrier;
+		private Builder myWork; //published to the workers by the start of each phase
+		private int myNumPoints;
+
+		/**
+		 * @param numFunctions Number of functions (the matrix is numFunctions x numFunctions)
+		 */
+		public Accumulator(int numFunctions) {
+			this(new double[numFunctions][numFunctions]);
+		}
+
+		private Accumulator(double[][] sums) {
+			mySums = sums;
+			int numBlocks = (sums.length + BLOCK_ROWS - 1) / BLOCK_ROWS;
+			int numTiles = numBlocks * (numBlocks + 1) / 2;
+			myTileRows = new int[numTiles];
+			myTileCols = new int[numTiles];
+			int t = 0;
+			for (int i = 0; i < numBlocks; i++) {
+				for (int j = 0; j <= i; j++) {
+					myTileRows[t] = i;
+					myTileCols[t] = j;
+					t++;
+				}
+			}
+
+			int numThreads = Math.min(Environment.limitThreads(ourNumThreads), numTiles);
+			if (numThreads > 1) {
+				myBarrier = new SpinPhaseBarrier(numThreads);
+				for (int i = 0; i < numThreads; i++) {
+					Thread worker = new Worker(i);
+					worker.setName("GramMatrix" + i);
+					worker.setDaemon(true);
+					worker.start();
+				}
+			} else {
+				myBarrier = null;
+			}
+		}
+
+		/**
+		 * @param values Values of functions at some evaluation points (first dimension is for each function)
+		 * @param weights Weight of each of these evaluation points
+		 */
+		public void add(float[][] values, float[] weights) {
+			Builder work = new Builder(values, weights, mySums, myTileRows, myTileCols);
+			if (myBarrier == null) {
+				work.run();
+			} else {
+				myWork = work;
+				try {
+					myBarrier.runPhase();
+				} catch (InterruptedException e) {
+					throw new IllegalStateException("Gram matrix threads were stopped", e);
+				}
+			}
+			if (work.myError != null) {
+				throw work.myError;
+			}
+			myNumPoints += weights.length;
+		}
+
+		/**
+		 * @return Weighted Gram matrix of the functions, averaged over all evaluation points added so far
+		 */
+		public double[][] finish() {
+			GramMatrix.finish(mySums, myNumPoints);
+			return mySums;
+		}
+
+		/**
+		 * Stops the threads.
+		 */
+		public void stop() {
+			if (myBarrier != null) {
+				myBarrier.release();
+			}
+		}
+
+		private class Worker extends Thread {
+
+			private final int myIndex;
+
+			public Worker(int index) {
+				myIndex = index;
+			}
+
+			public void run() {
+				try {
+					myBarrier.workerWait(myIndex);
+					while (true) {
+						myWork.run();
+						myBarrier.workerFinished(myIndex);
+					}
+				} catch (InterruptedException e) {
+				}
+			}
+		}
+	}
+
+	//computes tiles of the lower triangle until there are none left
+	private static class Builder implements Runnable {
+
+		private final float[][] myValues;
+		private final float[] myWeights;
+		private final double[][] myResult;
+		private final int[] myTileRows;
+		private final int[] myTileCols;
+		private final AtomicInteger myNextTile = new AtomicInteger();
+		private volatile RuntimeException myError;
+
+		public Builder(float[][] values, float[] weights, double[][] result, int[] tileRows, int[] tileCols) {
+			myValues = values;
+			myWeights = weights;
+			myResult = result;
+			myTileRows = tileRows;
+			myTileCols = tileCols;
+		}
+
+		public void run() {
+			try {
+				int tile;
+				while ((tile = myNextTile.getAndIncrement()) < myTileRows.length && myError == null) {
+					runTile(myTileRows[tile] * BLOCK_ROWS, myTileCols[tile] * BLOCK_ROWS);
+				}
+			} catch (RuntimeException e) {
+				myError = e;
+			}
+		}
+
+		private void runTile(int rowStart, int colStart) {
+			int rowEnd = Math.min(rowStart + BLOCK_ROWS, myValues.length);
+			int colEnd = Math.min(colStart + BLOCK_ROWS, myValues.length);
+			float[] w = myWeights;
+
+			for (int kStart = 0; kStart < w.length; kStart += BLOCK_POINTS) {
+				int kEnd = Math.min(kStart + BLOCK_POINTS, w.length);
+				for (int i = rowStart; i < rowEnd; i++) {
+					float[] a = myValues[i];
+					double[] row = myResult[i];
+					int end = Math.min(colEnd, i + 1);
+					for (int j = colStart; j < end; j++) {
+						float[] b = myValues[j];
+						double sum = row[j];
+						for (int k = kStart; k < kEnd; k++) {
+							sum += a[k] * b[k] * w[k];
+						}
+						row[j] = sum;
+					}
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,527 @@
+/*
+The contents of this file are subject to the Mozilla Public License Version 1.1
+(the "License"); you may not use this file except in compliance with the License.
+You may obtain a copy of the License at http://www.mozilla.org/MPL/
+
+Software distributed under the License is distributed on an "AS IS" basis, WITHOUT
+WARRANTY OF ANY KIND, either express or implied. See the License for the specific
+language governing rights and limitations under the License.
+
+The Original Code is "SymmetricEigenDecomposition.java". Description:
+"Multithreaded eigendecomposition of symmetric matrices"
+
+The Initial Developer of the Original Code is Bryan Tripp & Centre for Theoretical Neuroscience, University of Waterloo. Copyright (C) 2006-2008. All Rights Reserved.
+
+Alternatively, the contents of this file may be used under the terms of the GNU
+Public License license (the GPL License), in which case the provisions of GPL
+License are applicable  instead of those above. If you wish to allow use of your
+version of this file only under the terms of the GPL License and not to allow
+others to use your version of this file under the MPL, indicate your decision
+by deleting the provisions above and replace  them with the notice and other
+provisions required by the GPL License.  If you do not delete the provisions above,
+a recipient may use your version of this file under either the MPL or the GPL License.
+*/
+
+package ca.nengo.math.impl;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import Jama.util.Maths;
+import ca.nengo.util.Environment;
+import ca.nengo.util.impl.PhaseBarrier;
+import ca.nengo.util.impl.SpinPhaseBarrier;
+
+/**
+ * <p>Eigendecomposition of a real symmetric matrix, A = V D V', where D is diagonal and V is
+ * orthogonal. This is used to find the pseudoinverse of symmetric matrices (such as the GAMMA
+ * matrices used to find decoders) much faster than by singular value decomposition.</p>
+ *
+ * <p>The algorithm is the same as that of Jama's EigenvalueDecomposition (Householder
+ * tridiagonalization followed by the implicit QL method, from EISPACK's tred2 and tql2), but
+ * the O(n^3) parts are arranged to work along rows, and are split between threads for
+ * large matrices.</p>
+ *
+ * <p>Rows are shared out in chunks of ROW_CHUNK. Sums over rows are kept separately for each
+ * chunk and then added in chunk order, so the results are the same to the last bit regardless
+ * of the number of threads or of which thread takes which chunk.</p>
+ */
+public class SymmetricEigenDecomposition {
+
+	private static final int MIN_PARALLEL_SIZE = 64; //smaller matrices are decomposed on one thread
+	private static final long MIN_PARALLEL_WORK = 16384; //smaller loops run on the calling thread
+	private static final int ROW_CHUNK = 32; //rows in each unit of work (independent of the number of threads)
+
+	private static int ourNumThreads = Runtime.getRuntime().availableProcessors();
+
+	private final int n;
+	private final double[][] V; //eigenvectors (columns)
+	private final double[] d; //eigenvalues
+	private final double[] e;
+
+	private int myNumThreads;
+	private double[][] myPartials; //partial sums over the rows of each chunk
+	private PhaseBarrier myBarrier;
+	private Worker[] myWorkers;
+	private RowTask myTask;
+	private int myTaskSize;
+	private final AtomicInteger myNextRow = new AtomicInteger();
+	private volatile RuntimeException myError;
+
+	/**
+	 * @return Maximum number of threads used for each decomposition
+	 */
+	public static int getNumThreads() {
+		return ourNumThreads;
+	}
+
+	/**
+	 * @param numThreads Maximum number of threads used for each decomposition
+	 */
+	public static void setNumThreads(int numThreads) {
+		ourNumThreads = Math.max(1, numThreads);
+	}
+
+	/**
+	 * @param matrix A symmetric square matrix (only the lower triangle is used). It is not modified.
+	 */
+	public SymmetricEigenDecomposition(double[][] matrix) {
+		n = matrix.length;
+		V = new double[n][];
+		for (int i = 0; i < n; i++) {
+			V[i] = matrix[i].clone();
+		}
+		d = new double[n];
+		e = new double[n];
+
+		myNumThreads = (n >= MIN_PARALLEL_SIZE) ? Environment.limitThreads(ourNumThreads) : 1;
+		myPartials = new double[(n + ROW_CHUNK - 1) / ROW_CHUNK][n];
+		try {
+			if (myNumThreads > 1) {
+				startWorkers();
+			}
+			if (n > 0) {
+				tred2();
+				tql2();
+				sort();
+			}
+		} finally {
+			stopWorkers();
+		}
+	}
+
+	/**
+	 * @return Eigenvalues, in decreasing order of magnitude
+	 */
+	public double[] getEigenvalues() {
+		return d.clone();
+	}
+
+	/**
+	 * @return Matrix with an eigenvector in each column, in the order of getEigenvalues()
+	 */
+	public double[][] getEigenvectors() {
+		double[][] result = new double[n][];
+		for (int i = 0; i < n; i++) {
+			result[i] = V[i].clone();
+		}
+		return result;
+	}
+
+	/**
+	 * @param numValues Number of eigenvalues to use (those of largest magnitude); others are treated as zero
+	 * @return Pseudoinverse of the decomposed matrix, V D" V', where " denotes pseudoinverse
+	 */
+	public double[][] pseudoInverse(final int numValues) {
+		final double[][] result = new double[n][n];
+		final double[] inverse = new double[numValues];
+		for (int c = 0; c < numValues; c++) {
+			inverse[c] = 1d / d[c];
+		}
+
+		try {
+			if (myNumThreads > 1) {
+				startWorkers();
+			}
+			//lower triangle
+			final double[][] scratch = new double[Math.max(1, myNumThreads)][numValues];
+			forRows(n, (long) n * n * numValues / 2, new RowTask() {
+				public void run(int worker, int from, int to) {
+					double[] scaled = scratch[worker];
+					for (int i = from; i < to; i++) {
+						double[] a = V[i];
+						for (int c = 0; c < numValues; c++) {
+							scaled[c] = a[c] * inverse[c];
+						}
+						double[] row = result[i];
+						for (int j = 0; j <= i; j++) {
+							double[] b = V[j];
+							double sum = 0;
+							for (int c = 0; c < numValues; c++) {
+								sum += scaled[c] * b[c];
+							}
+							row[j] = sum;
+						}
+					}
+				}
+			});
+		} finally {
+			stopWorkers();
+		}
+
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < i; j++) {
+				result[j][i] = result[i][j];
+			}
+		}
+		return result;
+	}
+
+	//Householder reduction to tridiagonal form (see Jama's EigenvalueDecomposition.tred2())
+	private void tred2() {
+		for (int j = 0; j < n; j++) {
+			d[j] = V[n-1][j];
+		}
+
+		for (int i = n-1; i > 0; i--) {
+			// Scale to avoid under/overflow.
+			double scale = 0.0;
+			double h = 0.0;
+			for (int k = 0; k < i; k++) {
+				scale = scale + Math.abs(d[k]);
+			}
+			if (scale == 0.0) {
+				e[i] = d[i-1];
+				for (int j = 0; j < i; j++) {
+					d[j] = V[i-1][j];
+					V[i][j] = 0.0;
+					V[j][i] = 0.0;
+				}
+			} else {
+				// Generate Householder vector.
+				for (int k = 0; k < i; k++) {
+					d[k] /= scale;
+					h += d[k] * d[k];
+				}
+				double f = d[i-1];
+				double g = Math.sqrt(h);
+				if (f > 0) {
+					g = -g;
+				}
+				e[i] = scale * g;
+				h = h - f * g;
+				d[i-1] = f - g;
+				for (int j = 0; j < i; j++) {
+					V[j][i] = d[j];
+				}
+
+				// Apply similarity transformation to remaining columns: e = A d, from the lower triangle of A
+				final int size = i;
+				forRows(size, (long) size * size / 2, new RowTask() {
+					public void run(int worker, int from, int to) {
+						double[] partial = myPartials[from / ROW_CHUNK];
+						for (int k = from; k < to; k++) {
+							double[] row = V[k];
+							double dk = d[k];
+							double sum = 0;
+							for (int j = 0; j < k; j++) {
+								sum += row[j] * d[j];
+								partial[j] += row[j] * dk;
+							}
+							partial[k] += sum + row[k] * dk;
+						}
+					}
+				});
+				gatherPartials(e, i, size);
+
+				f = 0.0;
+				for (int j = 0; j < i; j++) {
+					e[j] /= h;
+					f += e[j] * d[j];
+				}
+				double hh = f / (h + h);
+				for (int j = 0; j < i; j++) {
+					e[j] -= hh * d[j];
+				}
+				forRows(size, (long) size * size / 2, new RowTask() {
+					public void run(int worker, int from, int to) {
+						for (int k = from; k < to; k++) {
+							double[] row = V[k];
+							double ek = e[k];
+							double dk = d[k];
+							for (int j = 0; j <= k; j++) {
+								row[j] -= (d[j] * ek + e[j] * dk);
+							}
+						}
+					}
+				});
+				for (int j = 0; j < i; j++) {
+					d[j] = V[i-1][j];
+					V[i][j] = 0.0;
+				}
+			}
+			d[i] = h;
+		}
+
+		// Accumulate transformations.
+		final double[] u = new double[n];
+		final double[] g = new double[n];
+		for (int i = 0; i < n-1; i++) {
+			V[n-1][i] = V[i][i];
+			V[i][i] = 1.0;
+			double h = d[i+1];
+			if (h != 0.0) {
+				for (int k = 0; k <= i; k++) {
+					u[k] = V[k][i+1];
+					d[k] = u[k] / h;
+				}
+
+				// g = V' u, then V = V - d g'
+				final int size = i + 1;
+				forRows(size, (long) size * size, new RowTask() {
+					public void run(int worker, int from, int to) {
+						double[] partial = myPartials[from / ROW_CHUNK];
+						for (int k = from; k < to; k++) {
+							double[] row = V[k];
+							double uk = u[k];
+							for (int j = 0; j < size; j++) {
+								partial[j] += uk * row[j];
+							}
+						}
+					}
+				});
+				gatherPartials(g, size, size);
+				forRows(size, (long) size * size, new RowTask() {
+					public void run(int worker, int from, int to) {
+						for (int k = from; k < to; k++) {
+							double[] row = V[k];
+							double dk = d[k];
+							for (int j = 0; j < size; j++) {
+								row[j] -= g[j] * dk;
+							}
+						}
+					}
+				});
+			}
+			for (int k = 0; k <= i; k++) {
+				V[k][i+1] = 0.0;
+			}
+		}
+		for (int j = 0; j < n; j++) {
+			d[j] = V[n-1][j];
+			V[n-1][j] = 0.0;
+		}
+		V[n-1][n-1] = 1.0;
+		e[0] = 0.0;
+	}
+
+	//Symmetric tridiagonal QL algorithm (see Jama's EigenvalueDecomposition.tql2())
+	private void tql2() {
+		for (int i = 1; i < n; i++) {
+			e[i-1] = e[i];
+		}
+		e[n-1] = 0.0;
+
+		final double[] cs = new double[n];
+		final double[] sn = new double[n];
+		double f = 0.0;
+		double tst1 = 0.0;
+		double eps = Math.pow(2.0, -52.0);
+		for (int l = 0; l < n; l++) {
+			// Find small subdiagonal element
+			tst1 = Math.max(tst1, Math.abs(d[l]) + Math.abs(e[l]));
+			int m = l;
+			while (m < n) {
+				if (Math.abs(e[m]) <= eps * tst1) {
+					break;
+				}
+				m++;
+			}
+
+			// If m == l, d[l] is an eigenvalue, otherwise, iterate.
+			if (m > l) {
+				do {
+					// Compute implicit shift
+					double g = d[l];
+					double p = (d[l+1] - g) / (2.0 * e[l]);
+					double r = Maths.hypot(p, 1.0);
+					if (p < 0) {
+						r = -r;
+					}
+					d[l] = e[l] / (p + r);
+					d[l+1] = e[l] * (p + r);
+					double dl1 = d[l+1];
+					double h = g - d[l];
+					for (int i = l+2; i < n; i++) {
+						d[i] -= h;
+					}
+					f = f + h;
+
+					// Implicit QL transformation. The rotations are applied to V afterwards, a row at a time.
+					p = d[m];
+					double c = 1.0;
+					double c2 = c;
+					double c3 = c;
+					double el1 = e[l+1];
+					double s = 0.0;
+					double s2 = 0.0;
+					for (int i = m-1; i >= l; i--) {
+						c3 = c2;
+						c2 = c;
+						s2 = s;
+						g = c * e[i];
+						h = c * p;
+						r = Maths.hypot(p, e[i]);
+						e[i+1] = s * r;
+						s = e[i] / r;
+						c = p / r;
+						p = c * d[i] - s * g;
+						d[i+1] = h + s * (c * g + s * d[i]);
+						cs[i] = c;
+						sn[i] = s;
+					}
+
+					final int first = l;
+					final int last = m - 1;
+					forRows(n, (long) n * (m - l) * 4, new RowTask() {
+						public void run(int worker, int from, int to) {
+							for (int k = from; k < to; k++) {
+								double[] row = V[k];
+								for (int i = last; i >= first; i--) {
+									double hk = row[i+1];
+									row[i+1] = sn[i] * row[i] + cs[i] * hk;
+									row[i] = cs[i] * row[i] - sn[i] * hk;
+								}
+							}
+						}
+					});
+
+					p = -s * s2 * c3 * el1 * e[l] / dl1;
+					e[l] = s * p;
+					d[l] = c * p;
+
+					// Check for convergence.
+				} while (Math.abs(e[l]) > eps * tst1);
+			}
+			d[l] = d[l] + f;
+			e[l] = 0.0;
+		}
+	}
+
+	//sorts eigenvalues (and vectors) by decreasing magnitude
+	private void sort() {
+		Integer[] order = new Integer[n];
+		for (int i = 0; i < n; i++) {
+			order[i] = Integer.valueOf(i);
+		}
+		final double[] values = d.clone();
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				return Double.compare(Math.abs(values[b.intValue()]), Math.abs(values[a.intValue()]));
+			}
+		});
+
+		double[] temp = new double[n];
+		for (int i = 0; i < n; i++) {
+			d[i] = values[order[i].intValue()];
+		}
+		for (int k = 0; k < n; k++) {
+			double[] row = V[k];
+			for (int i = 0; i < n; i++) {
+				temp[i] = row[order[i].intValue()];
+			}
+			System.arraycopy(temp, 0, row, 0, n);
+		}
+	}
+
+	//sums the first (length) partial sums of the chunks of a task over (size) rows into the given
+	//array, in chunk order, and clears them
+	private void gatherPartials(double[] result, int length, int size) {
+		int numChunks = (size + ROW_CHUNK - 1) / ROW_CHUNK;
+		for (int j = 0; j < length; j++) {
+			double sum = 0;
+			for (int c = 0; c < numChunks; c++) {
+				sum += myPartials[c][j];
+				myPartials[c][j] = 0;
+			}
+			result[j] = sum;
+		}
+	}
+
+	//runs the task over the given number of rows, a chunk at a time, split between threads if there is enough work
+	private void forRows(int size, long work, RowTask task) {
+		if (myWorkers == null || work < MIN_PARALLEL_WORK) {
+			for (int from = 0; from < size; from += ROW_CHUNK) {
+				task.run(0, from, Math.min(from + ROW_CHUNK, size));
+			}
+			return;
+		}
+
+		myTask = task;
+		myTaskSize = size;
+		myNextRow.set(0);
+		try {
+			myBarrier.runPhase();
+		} catch (InterruptedException e) {
+			throw new IllegalStateException("Decomposition threads were stopped", e);
+		}
+		if (myError != null) {
+			RuntimeException error = myError;
+			myError = null;
+			throw error;
+		}
+	}
+
+	private void startWorkers() {
+		myBarrier = new SpinPhaseBarrier(myNumThreads);
+		myWorkers = new Worker[myNumThreads];
+		for (int i = 0; i < myNumThreads; i++) {
+			myWorkers[i] = new Worker(i);
+			myWorkers[i].setName("EigenThread" + i);
+			myWorkers[i].setDaemon(true);
+			myWorkers[i].start();
+		}
+	}
+
+	private void stopWorkers() {
+		if (myWorkers != null) {
+			myBarrier.release();
+			myWorkers = null;
+			myBarrier = null;
+		}
+	}
+
+	//work on a range of rows within one chunk (starting at a multiple of ROW_CHUNK), by the given thread
+	private static interface RowTask {
+		public void run(int worker, int from, int to);
+	}
+
+	private class Worker extends Thread {
+
+		private final int myIndex;
+
+		public Worker(int index) {
+			myIndex = index;
+		}
+
+		public void run() {
+			try {
+				myBarrier.workerWait(myIndex);
+				while (true) {
+					try {
+						int from;
+						while ((from = myNextRow.getAndAdd(ROW_CHUNK)) < myTaskSize) {
+							myTask.run(myIndex, from, Math.min(from + ROW_CHUNK, myTaskSize));
+						}
+					} catch (RuntimeException e) {
+						myError = e;
+					}
+					myBarrier.workerFinished(myIndex);
+				}
+			} catch (InterruptedException e) {
+			}
+		}
+	}
+
+}
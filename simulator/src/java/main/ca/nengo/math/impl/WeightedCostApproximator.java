@@ -28,7 +28,7 @@ a recipient may use your version of this file under either the MPL or the GPL Li
  */
 package ca.nengo.math.impl;
 
-import java.io.FileNotFoundException;
+import java.io.Serializable;
 import java.util.Random;
 
 import org.apache.log4j.Logger;
@@ -38,6 +38,7 @@ import Jama.SingularValueDecomposition;
 import ca.nengo.math.ApproximatorFactory;
 import ca.nengo.math.Function;
 import ca.nengo.math.LinearApproximator;
+import ca.nengo.math.PDFTools;
 import ca.nengo.util.MU;
 import ca.nengo.util.Memory;
 
@@ -47,6 +48,13 @@ import ca.nengo.util.Memory;
  *
  * <p>Uses the Moore-Penrose pseudoinverse.</p>
  *
+ * <p>If a DecoderCache directory is set, the GAMMA inverse and coefficients are stored there,
+ * and reused by later approximators with the same inputs.</p>
+ *
+ * <p>Values can also be streamed from a ValueSource a chunk of evaluation points at a time, rather
+ * than stored (see the ValueSource constructor). This reduces peak memory when there are many
+ * components.</p>
+ *
  * TODO: test
  *
  * @author Bryan Tripp
@@ -56,14 +64,24 @@ public class WeightedCostApproximator implements LinearApproximator {
 	private static Logger ourLogger = Logger.getLogger(WeightedCostApproximator.class);
 	private static final long serialVersionUID = 1L;
 
+	private static int ourChunkValues = 1 << 20;
+
 	private float[][] myEvalPoints;
-	private final float[][] myValues;
+	private float[][] myValues;
 	private float[][] myNoisyValues;
 	private Function myCostFunction;
+	private float[] myCostWeights; //cost function at each evaluation point
 	private int mySignalLength;
 	private final boolean myQuiet;
 
 	private double[][] myGammaInverse;
+	private float myAbsNoiseSD; //standard deviation of noise added to values
+	private boolean myRegularized; //true if myGammaInverse is the inverse of GAMMA + noise variance (see regularize())
+	private String myCacheKey; //key of this approximator's inputs in the DecoderCache (null if not cached)
+
+	private ValueSource mySource; //source of streamed values (null if values are stored)
+	private int myChunkSize; //number of evaluation points in each chunk of streamed values
+	private long myNoiseSeed; //seed of noise added to each chunk of streamed values
 
 	private static boolean myUseGPU = false;
 	private static boolean canUseGPU;
@@ -115,6 +133,21 @@ public class WeightedCostApproximator implements LinearApproximator {
 		return myGPUErrorMessage;
 	}
 
+	/**
+	 * @return Approximate number of values in each chunk of values streamed from a ValueSource
+	 */
+	public static int getChunkValues() {
+		return ourChunkValues;
+	}
+
+	/**
+	 * @param chunkValues Approximate number of values in each chunk of values streamed from a ValueSource
+	 * 		(larger chunks take more memory but may be evaluated more efficiently)
+	 */
+	public static void setChunkValues(int chunkValues) {
+		ourChunkValues = Math.max(1, chunkValues);
+	}
+
 	private static native boolean hasGPU();
 	
 	@SuppressWarnings("unused")
@@ -157,7 +190,7 @@ public class WeightedCostApproximator implements LinearApproximator {
 
 		myCostFunction = costFunction;
 
-		calcGamma(absNoiseSD, nSV);
+		calcGamma(noise, absNoiseSD, nSV);
 	}
 	
 	/**
@@ -215,7 +248,7 @@ public class WeightedCostApproximator implements LinearApproximator {
 
 		myCostFunction = costFunction;
 
-		calcGamma(absNoiseSD, nSV);
+		calcGamma(noise, absNoiseSD, nSV);
 
 	}
 
@@ -239,15 +272,87 @@ public class WeightedCostApproximator implements LinearApproximator {
 	public WeightedCostApproximator(float[][] evaluationPoints, float[][] values, Function costFunction, float noise, int nSV) {
 		this(evaluationPoints, values, costFunction, noise, nSV, false);
 	}
+
+	/**
+	 * <p>Streams values from the given source instead of storing them. GAMMA is accumulated from chunks of
+	 * evaluation points, and values are found again, a chunk at a time, each time coefficients are found.
+	 * Only the evaluation points and GAMMA" are kept, so memory doesn't grow with the number of evaluation
+	 * points times the number of components.</p>
+	 *
+	 * <p>Noise is generated from a seed for each chunk, so that it is the same each time values are
+	 * found. The GPU, the DecoderCache and incremental updates (removeComponents(...) etc.) aren't used
+	 * with streamed values.</p>
+	 *
+	 * @param evaluationPoints Points at which error is evaluated (should be uniformly
+	 * 		distributed, as the sum of error at these points is treated as an integral
+	 * 		over the domain of interest)
+	 * @param source Source of the values of whatever functions are being combined, at the
+	 * 		evaluationPoints
+	 * @param costFunction A cost function that weights squared error over the domain of
+	 * 		evaluation points
+	 * @param noise Standard deviation of Gaussian noise to add to values (to reduce
+	 * 		sensitivity to simulation noise) as a proportion of the maximum absolute
+	 * 		value over all values
+	 * @param nSV Number of singular values to keep from the singular value
+	 *      decomposition (SVD)
+	 * @param quiet Turn off logging?
+	 */
+	public WeightedCostApproximator(float[][] evaluationPoints, ValueSource source, Function costFunction, float noise, int nSV, boolean quiet) {
+		assert MU.isMatrix(evaluationPoints);
+
+		myEvalPoints = evaluationPoints;
+		mySource = source;
+		myCostFunction = costFunction;
+		myQuiet = quiet;
+		mySignalLength = -1;
+		myChunkSize = Math.max(1, Math.min(evaluationPoints.length, ourChunkValues / Math.max(1, source.getNumComponents())));
+		myNoiseSeed = (long) (PDFTools.random() * Long.MAX_VALUE);
+
+		float maxValue = 0f;
+		for (int start = 0; start < myEvalPoints.length; start += myChunkSize) {
+			maxValue = Math.max(maxValue, maxAbs(source.getValues(getChunkPoints(start))));
+		}
+		myAbsNoiseSD = noise * maxValue;
+
+		if(!myQuiet) {
+			Memory.report("before gamma");
+		}
+		double[][] gamma = findGamma();
+		if(!myQuiet) {
+			Memory.report("before inverse");
+		}
+		myGammaInverse = pseudoInverse(gamma, myAbsNoiseSD*myAbsNoiseSD, nSV);
+		if(!myQuiet) {
+			Memory.report("after inverse");
+		}
+	}
 	
 	/**
-	 * Calculate the gamma matrix.
+	 * Calculate the gamma matrix, or load its inverse from the DecoderCache.
 	 * 
+	 * @param noise Noise as a proportion of the maximum absolute value
 	 * @param absNoiseSD standard deviation of noise that was added to myNoisyValues
 	 * @param nSV Number of singular values to keep from the singular value
 	 *      decomposition (SVD)
 	 */
-	private void calcGamma(float absNoiseSD, int nSV) {
+	private void calcGamma(float noise, float absNoiseSD, int nSV) {
+		myAbsNoiseSD = absNoiseSD;
+		if (DecoderCache.isEnabled()) {
+			myCacheKey = new DecoderCache.Key("gamma").add(getClass().getName()).add(myEvalPoints).add(myValues)
+				.add(getCostWeights()).add(noise).add(nSV).add(mySignalLength).toString();
+			DecoderCache.Solution cached = DecoderCache.loadSolution(myCacheKey);
+			if (cached != null && cached.getGammaInverse().length == myValues.length
+					&& MU.isMatrix(cached.getNoisyValues()) && cached.getNoisyValues().length == myValues.length
+					&& cached.getNoisyValues()[0].length == myValues[0].length) {
+				if(!myQuiet) {
+					ourLogger.info("Using cached decoding solution " + myCacheKey);
+				}
+				myNoisyValues = cached.getNoisyValues();
+				myGammaInverse = cached.getGammaInverse();
+				return;
+			}
+		}
+
 		if(!myQuiet) {
             Memory.report("before gamma");
         }
@@ -274,9 +379,19 @@ public class WeightedCostApproximator implements LinearApproximator {
             }
 
 		}
+
+		if (myCacheKey != null) {
+			DecoderCache.storeSolution(myCacheKey, new DecoderCache.Solution(myNoisyValues, myGammaInverse));
+		}
 	}
 
 	private float addNoise(float[][] values, float noise) {
+		float SD = noise * maxAbs(values);
+		addAbsoluteNoise(values, SD);
+		return SD;
+	}
+
+	private static float maxAbs(float[][] values) {
 		float maxValue = 0f;
 		for (float[] value : values) {
 			for (float element : value) {
@@ -285,8 +400,10 @@ public class WeightedCostApproximator implements LinearApproximator {
                 }
 			}
 		}
+		return maxValue;
+	}
 
-		float SD = noise * maxValue;
+	private static void addAbsoluteNoise(float[][] values, float SD) {
 		GaussianPDF pdf = new GaussianPDF(0f, SD*SD);
 
 		for (int i = 0; i < values.length; i++) {
@@ -294,8 +411,6 @@ public class WeightedCostApproximator implements LinearApproximator {
 				values[i][j] += pdf.sample()[0];
 			}
 		}
-
-		return SD;
 	}
 	
 	@SuppressWarnings("unused")
@@ -333,10 +448,19 @@ public class WeightedCostApproximator implements LinearApproximator {
 	}
 
 	/**
+	 * Note: streamed values are found again from the ValueSource.
+	 *
 	 * @see ca.nengo.math.LinearApproximator#getValues()
 	 */
     public float[][] getValues() {
-		return myValues;
+		return (mySource == null) ? myValues : mySource.getValues(myEvalPoints);
+	}
+
+	/**
+	 * @return True if values are streamed from a ValueSource rather than stored
+	 */
+	public boolean isStreaming() {
+		return mySource != null;
 	}
 
 //	private static void testPlot(float[][] evaluationPoints, float[][] values) {
@@ -367,6 +491,8 @@ public class WeightedCostApproximator implements LinearApproximator {
 
 	/**
 	 * Override this method to use a different pseudoinverse implementation (eg clustered).
+	 * Symmetric matrices (such as GAMMA) are inverted by eigendecomposition, which runs on
+	 * multiple threads (see SymmetricEigenDecomposition.setNumThreads(...)); others by SVD.
 	 *
 	 * @param matrix Any matrix
 	 * @param minSV Hint as to smallest singular value to use
@@ -374,145 +500,55 @@ public class WeightedCostApproximator implements LinearApproximator {
 	 * @return The pseudoinverse of the given matrix
 	 */
 	public double[][] pseudoInverse(double[][] matrix, float minSV, int nSV) {
-		double[][] result=null;
-
-		Random random=new Random();
-
-		Runtime runtime=Runtime.getRuntime();
-//		int hashCode=java.util.Arrays.hashCode(matrix);
-//		int testpos = 0;
-
-		String parent=System.getProperty("user.dir");
-		java.io.File path=new java.io.File(parent,"external");
-		String filename="matrix_"+random.nextLong();
-
-	 	try {
-			// TODO: separate this out into a helper method, so we can do this sort of thing for other calculations as well
-	 		java.io.File pinvfile = new java.io.File(path,"pseudoInverse");
+		if (isSymmetric(matrix)) {
+			//eigenvalue magnitudes are the singular values of a symmetric matrix
+			SymmetricEigenDecomposition eig = new SymmetricEigenDecomposition(matrix);
+			double[] values = eig.getEigenvalues();
 
-			if(pinvfile.exists())
-			{
-
-				java.io.File file=new java.io.File(path,filename);
-				if (file.canRead()) {
-                    file.delete();
-                }
-				java.io.File file2=new java.io.File(path,filename+".inv");
-				if (file2.canRead()) {
-                    file2.delete();
-                }
-
-				java.nio.channels.FileChannel channel=new java.io.RandomAccessFile(file,"rw").getChannel();
-	//			java.nio.ByteBuffer buffer=channel.map(java.nio.channels.FileChannel.MapMode.READ_WRITE, 0, matrix.length*matrix.length*4);
-				java.nio.ByteBuffer buffer= java.nio.ByteBuffer.allocate(matrix.length*matrix.length*4);
-				buffer.rewind();
-
-
-				buffer.order(java.nio.ByteOrder.BIG_ENDIAN);
-				for (double[] element : matrix) {
-					for (int j=0; j<matrix.length; j++) {
-						buffer.putFloat((float)(element[j]));
-					}
-				}
-				buffer.rewind();
-
-				channel.write(buffer);
-				channel.force(true);
-	            channel.close();
-
-				if (System.getProperty("os.name").startsWith("Windows")) {
-					Process process=runtime.exec("cmd /c pseudoInverse.bat "+filename+" "+filename+".inv"+" "+minSV+" "+nSV,null,path);
-					process.waitFor();
-				} else {
-					Process process=runtime.exec("external"+java.io.File.separatorChar+"pseudoInverse external/"+filename+" external/"+filename+".inv"+" "+minSV+" "+nSV,null,null);
-					process.waitFor();
-
-					java.io.InputStream s=process.getErrorStream();
-					if (s.available()>0) {
-						System.out.println("external error:");
-						while (s.available()>0) {
-							System.out.write(s.read());
-						}
-					}
-					java.io.InputStream s2=process.getInputStream();
-					if (s2.available()>0) {
-						System.out.println("external output:");
-						while (s2.available()>0) {
-							System.out.write(s2.read());
-						}
-					}
-				}
-
-				// matrix file cleaned up in finally block
-
-				channel=new java.io.RandomAccessFile(file2,"r").getChannel();
-	//			buffer=channel.map(java.nio.channels.FileChannel.MapMode.READ_ONLY, 0, matrix.length*matrix.length*4);
-				buffer= java.nio.ByteBuffer.allocate(matrix.length*matrix.length*4);
-				channel.read(buffer);
-				buffer.rewind();
-
-				double[][] inv=new double[matrix.length][];
-
-				for (int i=0; i<matrix.length; i++) {
-					double[] row=new double[matrix.length];
-					for (int j=0; j<matrix.length; j++) {
-						row[j]=buffer.getFloat();
-					}
-					inv[i]=row;
-				}
-				result=inv;
-
-				// Close all file handles
-	            channel.close();
-
-	            // channel file cleaned up in finally block
-			}
-		} catch (FileNotFoundException e) {
-			System.err.println("File not found: " + e);
-		} catch (java.io.IOException e) {
-			//e.printStackTrace();
-            System.err.println("WeightedCostApproximator.pseudoInverse() - IO Exception: " + e);
-		} catch (InterruptedException e) {
-            System.err.println("WeightedCostApproximator.pseudoInverse() - Interrupted: " + e);
-			//e.printStackTrace();
-		} catch (Exception e){
-            System.err.println("WeightedCostApproximator.pseudoInverse() - Gen Exception: " + e);
-            //e.printStackTrace();
-        } finally {
-        	java.io.File file=new java.io.File(path,filename);
-			if (file.exists()) {
-                file.delete();
-            }
-			java.io.File file2=new java.io.File(path,filename+".inv");
-			if (file2.exists()) {
-                file2.delete();
-            }
-        }
+			int i = 0;
+			while (i < values.length && Math.abs(values[i]) > minSV && (nSV <= 0 || i < nSV)) {
+				i++;
+			}
 
-		if (result==null) {
+			if(!myQuiet) {
+				ourLogger.info("Using " + i + " singular values for pseudo-inverse");
+			}
 
+			return eig.pseudoInverse(i);
+		} else {
 			Matrix m = new Matrix(matrix);
 			SingularValueDecomposition svd = m.svd();
 			Matrix sInv = svd.getS().inverse();
 
 			int i = 0;
 			while (i < svd.getS().getRowDimension() && svd.getS().get(i, i) > minSV && (nSV <= 0 || i < nSV)) {
-                i++;
-            }
+				i++;
+			}
 
 			if(!myQuiet) {
-                ourLogger.info("Using " + i + " singular values for pseudo-inverse");
-            }
+				ourLogger.info("Using " + i + " singular values for pseudo-inverse");
+			}
 
 			for (int j = i; j < matrix.length; j++) {
 				sInv.set(j, j, 0d);
 			}
 
-			result = svd.getV().times(sInv).times(svd.getU().transpose()).getArray();
-
+			return svd.getV().times(sInv).times(svd.getU().transpose()).getArray();
 		}
+	}
 
-		return result;
+	private static boolean isSymmetric(double[][] matrix) {
+		for (int i = 0; i < matrix.length; i++) {
+			if (matrix[i].length != matrix.length) {
+				return false;
+			}
+			for (int j = 0; j < i; j++) {
+				if (matrix[i][j] != matrix[j][i]) {
+					return false;
+				}
+			}
+		}
+		return true;
 	}
 
 	/**
@@ -524,30 +560,28 @@ public class WeightedCostApproximator implements LinearApproximator {
 	 * @see ca.nengo.math.LinearApproximator#findCoefficients(ca.nengo.math.Function)
 	 */
     public float[] findCoefficients(Function target) {
-    	if(mySignalLength != -1)
-    		System.err.println("Warning, finding coefficients using a function on WeightedCostApproximator initialized with signals");
-    	
-		float[] targetValues = new float[myEvalPoints.length];
-		for (int i = 0; i < targetValues.length; i++) {
-			targetValues[i] = target.map(myEvalPoints[i]);
-		}
-
-		float[] upsilon = new float[myNoisyValues.length];
-		for (int i = 0; i < myNoisyValues.length; i++) {
-			for (int j = 0; j < myEvalPoints.length; j++) {
-				upsilon[i] += myNoisyValues[i][j] * targetValues[j] * myCostFunction.map(myEvalPoints[j]);
-			}
-			upsilon[i] = upsilon[i] / myEvalPoints.length;
-		}
+		return findCoefficients(new Function[]{target})[0];
+	}
 
-		float[] result = new float[myNoisyValues.length];
-		for (int i = 0; i < myNoisyValues.length; i++) {
-			for (int j = 0; j < myNoisyValues.length; j++) {
-				result[i] += myGammaInverse[i][j] * upsilon[j];
+	/**
+	 * Finds coefficients for all targets together, with one pass over the noisy values to find
+	 * UPSILON for every target, and one product of GAMMA" with the resulting matrix.
+	 *
+	 * @see ca.nengo.math.LinearApproximator#findCoefficients(ca.nengo.math.Function[])
+	 */
+	public float[][] findCoefficients(Function[] targets) {
+		if(mySignalLength != -1)
+			System.err.println("Warning, finding coefficients using a function on WeightedCostApproximator initialized with signals");
+
+		float[][] targetValues = new float[targets.length][];
+		for (int t = 0; t < targets.length; t++) {
+			targetValues[t] = new float[myEvalPoints.length];
+			for (int i = 0; i < myEvalPoints.length; i++) {
+				targetValues[t][i] = targets[t].map(myEvalPoints[i]);
 			}
 		}
 
-		return result;
+		return solve(targetValues);
 	}
     
     /**
@@ -558,72 +592,456 @@ public class WeightedCostApproximator implements LinearApproximator {
      * @return coefficients (weights on the output of each neuron)
      */
     public float[] findCoefficients(float[] targetSignal) {
+		return findCoefficients(new float[][]{targetSignal})[0];
+    }
+
+	/**
+	 * Similar to findCoefficients(ca.nengo.math.Function[]), but finds coefficients for target signals
+	 * (over time) rather than target functions.
+	 *
+	 * @param targetSignals signals over time that the coefficients should fit to (first dimension for each signal)
+	 * @return coefficients for each signal (weights on the output of each neuron)
+	 */
+	public float[][] findCoefficients(float[][] targetSignals) {
     	if(mySignalLength == -1)
     		System.err.println("Warning, finding coefficients using a signal on WeightedCostApproximator initialized with points");
-    	if(targetSignal.length != mySignalLength)
-    	{
-    		System.err.println("Warning, finding coefficients with a different length target signal than evaluation signals (" + 
-    				targetSignal.length + " vs " + mySignalLength + ")");
-    		//could do some interpolation/subsampling to match them up, for now we'll just do the rough measure of 
-    		//chopping/repeating the end of the target signal
-    		float[] newSignal = new float[mySignalLength];
-    		for(int i=0; i < mySignalLength; i++)
-    			newSignal[i] = targetSignal[Math.min(i,targetSignal.length-1)];
-    		targetSignal = newSignal;
-    	}
-    	
-    	//repeat target signal however many times were used to generate the evalPoints (to match the number of evaluation signals)
-    	float[] targetValues = new float[myEvalPoints.length];
-    	int numRepeat = myEvalPoints.length/mySignalLength;
-    	for(int i=0; i < numRepeat; i++)
-    	{
-    		for(int j=0; j < mySignalLength; j++)
-    			targetValues[i*mySignalLength+j] = targetSignal[j];
-    	}
-    	
-    	float[] upsilon = new float[myNoisyValues.length];
-		for (int i = 0; i < myNoisyValues.length; i++) {
+
+		float[][] targetValues = new float[targetSignals.length][];
+		for (int t = 0; t < targetSignals.length; t++) {
+			float[] targetSignal = targetSignals[t];
+	    	if(targetSignal.length != mySignalLength)
+	    	{
+	    		System.err.println("Warning, finding coefficients with a different length target signal than evaluation signals (" + 
+	    				targetSignal.length + " vs " + mySignalLength + ")");
+	    		//could do some interpolation/subsampling to match them up, for now we'll just do the rough measure of 
+	    		//chopping/repeating the end of the target signal
+	    		float[] newSignal = new float[mySignalLength];
+	    		for(int i=0; i < mySignalLength; i++)
+	    			newSignal[i] = targetSignal[Math.min(i,targetSignal.length-1)];
+	    		targetSignal = newSignal;
+	    	}
+
+	    	//repeat target signal however many times were used to generate the evalPoints (to match the number of evaluation signals)
+	    	targetValues[t] = new float[myEvalPoints.length];
+	    	int numRepeat = myEvalPoints.length/mySignalLength;
+	    	for(int i=0; i < numRepeat; i++)
+	    	{
+	    		for(int j=0; j < mySignalLength; j++)
+	    			targetValues[t][i*mySignalLength+j] = targetSignal[j];
+	    	}
+		}
+
+		return solve(targetValues);
+	}
+
+	//PHI = GAMMA" UPSILON for each target's values at the evaluation points (loaded from the DecoderCache if possible)
+	private float[][] solve(float[][] targetValues) {
+		int n = myGammaInverse.length;
+		float[][] result = new float[targetValues.length][];
+
+		String[] keys = null;
+		int numSolve = targetValues.length;
+		if (myCacheKey != null && DecoderCache.isEnabled()) {
+			keys = new String[targetValues.length];
+			numSolve = 0;
+			for (int t = 0; t < targetValues.length; t++) {
+				keys[t] = new DecoderCache.Key("decoders").add(myCacheKey).add(targetValues[t]).toString();
+				float[] cached = DecoderCache.loadCoefficients(keys[t]);
+				if (cached != null && cached.length == n) {
+					result[t] = cached;
+				} else {
+					numSolve++;
+				}
+			}
+		}
+		if (numSolve == 0) {
+			return result;
+		}
+
+		//targets that weren't cached, arranged by evaluation point so that each noisy value is read once
+		int[] solveIndices = new int[numSolve];
+		for (int t = 0, k = 0; t < targetValues.length; t++) {
+			if (result[t] == null) {
+				solveIndices[k++] = t;
+			}
+		}
+		float[][] targetsByPoint = new float[myEvalPoints.length][numSolve];
+		for (int k = 0; k < numSolve; k++) {
+			float[] values = targetValues[solveIndices[k]];
 			for (int j = 0; j < myEvalPoints.length; j++) {
-				upsilon[i] += myNoisyValues[i][j] * targetValues[j] * myCostFunction.map(myEvalPoints[j]);
+				targetsByPoint[j][k] = values[j];
 			}
-			upsilon[i] = upsilon[i] / myEvalPoints.length;
 		}
 
-		float[] result = new float[myNoisyValues.length];
-		for (int i = 0; i < myNoisyValues.length; i++) {
-			for (int j = 0; j < myNoisyValues.length; j++) {
-				result[i] += myGammaInverse[i][j] * upsilon[j];
+		float[][] upsilon = new float[n][numSolve];
+		if (mySource == null) {
+			accumulateUpsilon(myNoisyValues, 0, targetsByPoint, upsilon);
+		} else {
+			for (int start = 0; start < myEvalPoints.length; start += myChunkSize) {
+				accumulateUpsilon(getNoisyChunk(start), start, targetsByPoint, upsilon);
+			}
+		}
+		for (int i = 0; i < n; i++) {
+			float[] row = upsilon[i];
+			for (int k = 0; k < numSolve; k++) {
+				row[k] = row[k] / myEvalPoints.length;
 			}
 		}
 
+		float[][] coefficients = new float[n][numSolve];
+		for (int i = 0; i < n; i++) {
+			double[] gammaInverse = myGammaInverse[i];
+			float[] row = coefficients[i];
+			for (int j = 0; j < n; j++) {
+				double g = gammaInverse[j];
+				float[] u = upsilon[j];
+				for (int k = 0; k < numSolve; k++) {
+					row[k] += g * u[k];
+				}
+			}
+		}
+
+		for (int k = 0; k < numSolve; k++) {
+			int t = solveIndices[k];
+			result[t] = new float[n];
+			for (int i = 0; i < n; i++) {
+				result[t][i] = coefficients[i][k];
+			}
+			if (keys != null) {
+				DecoderCache.storeCoefficients(keys[t], result[t]);
+			}
+		}
 		return result;
-    }
+	}
 
-	private double[][] findGamma() {
+	//adds < cost(x) x a_i(x) > over the evaluation points from offset on, without dividing by the number of points
+	private void accumulateUpsilon(float[][] noisyValues, int offset, float[][] targetsByPoint, float[][] upsilon) {
+		float[] costWeights = getCostWeights();
+		int numSolve = upsilon.length > 0 ? upsilon[0].length : 0;
+		for (int i = 0; i < noisyValues.length; i++) {
+			float[] values = noisyValues[i];
+			float[] row = upsilon[i];
+			for (int j = 0; j < values.length; j++) {
+				float value = values[j];
+				float weight = costWeights[offset + j];
+				float[] targets = targetsByPoint[offset + j];
+				for (int k = 0; k < numSolve; k++) {
+					row[k] += value * targets[k] * weight;
+				}
+			}
+		}
+	}
 
-		double[][] result = new double[myNoisyValues.length][];
-//		double[][] nativeResult = new double[myNoisyValues.length][];
+	//evaluation points of the chunk of streamed values that starts at the given point
+	private float[][] getChunkPoints(int start) {
+		float[][] result = new float[Math.min(myChunkSize, myEvalPoints.length - start)][];
+		System.arraycopy(myEvalPoints, start, result, 0, result.length);
+		return result;
+	}
 
+	//streamed values with noise, for the chunk of evaluation points that starts at the given point
+	private float[][] getNoisyChunk(int start) {
+		float[][] result = mySource.getValues(getChunkPoints(start));
+		Random random = new Random(myNoiseSeed + start);
 		for (int i = 0; i < result.length; i++) {
-			result[i] = new double[myNoisyValues.length];
 			for (int j = 0; j < result[i].length; j++) {
-				for (int k = 0; k < myEvalPoints.length; k++) {
-					result[i][j] += myNoisyValues[i][k] * myNoisyValues[j][k] * myCostFunction.map(myEvalPoints[k]);
+				result[i][j] += (float) random.nextGaussian() * myAbsNoiseSD;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Removes component functions (e.g. neurons that have been removed from an ensemble), and
+	 * updates GAMMA" to match the remaining components, in O(n^2 k) time for k removed components
+	 * (see also regularize()).
+	 *
+	 * @param indices Indices of components to remove
+	 */
+	public void removeComponents(int[] indices) {
+		checkStored();
+		regularize();
+		int n = myGammaInverse.length;
+		boolean[] removed = new boolean[n];
+		for (int i = 0; i < indices.length; i++) {
+			removed[indices[i]] = true;
+		}
+		int[] kept = new int[n - indices.length];
+		for (int i = 0, k = 0; i < n; i++) {
+			if (!removed[i]) {
+				kept[k++] = i;
+			}
+		}
+
+		//for GAMMA" = [A B; B' C], with C corresponding to the removed components, the inverse of the rest is A - B C" B'
+		int r = indices.length;
+		double[][] C = new double[r][r];
+		for (int a = 0; a < r; a++) {
+			for (int b = 0; b < r; b++) {
+				C[a][b] = (myGammaInverse[indices[a]][indices[b]] + myGammaInverse[indices[b]][indices[a]]) / 2;
+			}
+		}
+		double[][] CInverse = (r > 0) ? pseudoInverse(C, 0f, -1) : C;
+
+		double[][] BCInverse = new double[kept.length][r];
+		for (int i = 0; i < kept.length; i++) {
+			double[] row = myGammaInverse[kept[i]];
+			for (int a = 0; a < r; a++) {
+				double sum = 0;
+				for (int b = 0; b < r; b++) {
+					sum += row[indices[b]] * CInverse[b][a];
 				}
-				result[i][j] = result[i][j] / myEvalPoints.length;
+				BCInverse[i][a] = sum;
 			}
 		}
 
+		double[][] result = new double[kept.length][kept.length];
+		for (int i = 0; i < kept.length; i++) {
+			double[] row = myGammaInverse[kept[i]];
+			double[] bc = BCInverse[i];
+			for (int j = 0; j < kept.length; j++) {
+				double sum = row[kept[j]];
+				for (int a = 0; a < r; a++) {
+					sum -= bc[a] * myGammaInverse[indices[a]][kept[j]];
+				}
+				result[i][j] = sum;
+			}
+		}
+
+		myGammaInverse = result;
+		myValues = select(myValues, kept);
+		myNoisyValues = select(myNoisyValues, kept);
+		myCacheKey = null;
+	}
+
+	/**
+	 * Adds component functions (e.g. neurons that have been added to an ensemble) after the existing
+	 * ones, and updates GAMMA" to include them, in O(n^2 k + n k m) time for k new components and m
+	 * evaluation points (see also regularize()). Noise is added to the new values as it was to the
+	 * original ones.
+	 *
+	 * @param values Values of the new components at the evaluation points (first dimension is for each component)
+	 */
+	public void addComponents(float[][] values) {
+		checkStored();
+		regularize();
+		int n = myGammaInverse.length;
+		int k = values.length;
+		float[][] noisyValues = MU.clone(values);
+		addAbsoluteNoise(noisyValues, myAbsNoiseSD);
+
+		//GAMMA with new components is [A B; B' D], where A is the old GAMMA
+		float[] costWeights = getCostWeights();
+		double[][] B = new double[n][k];
+		for (int i = 0; i < n; i++) {
+			for (int a = 0; a < k; a++) {
+				B[i][a] = correlate(myNoisyValues[i], noisyValues[a], costWeights);
+			}
+		}
+		double[][] D = new double[k][k];
+		for (int a = 0; a < k; a++) {
+			for (int b = 0; b <= a; b++) {
+				D[a][b] = correlate(noisyValues[a], noisyValues[b], costWeights);
+				D[b][a] = D[a][b];
+			}
+			D[a][a] += myAbsNoiseSD * myAbsNoiseSD;
+		}
+
+		//with E = A" B and the Schur complement S = D - B' E, the inverse is [A" + E S" E', -E S"; -S" E', S"]
+		double[][] E = new double[n][k];
+		for (int i = 0; i < n; i++) {
+			double[] row = myGammaInverse[i];
+			for (int a = 0; a < k; a++) {
+				double sum = 0;
+				for (int j = 0; j < n; j++) {
+					sum += row[j] * B[j][a];
+				}
+				E[i][a] = sum;
+			}
+		}
+		double[][] S = new double[k][k];
+		for (int a = 0; a < k; a++) {
+			for (int b = 0; b <= a; b++) {
+				double sum = D[a][b];
+				for (int i = 0; i < n; i++) {
+					sum -= B[i][a] * E[i][b];
+				}
+				S[a][b] = sum;
+				S[b][a] = sum;
+			}
+		}
+		double[][] SInverse = (k > 0) ? pseudoInverse(S, 0f, -1) : S;
+
+		double[][] ESInverse = new double[n][k];
+		for (int i = 0; i < n; i++) {
+			for (int a = 0; a < k; a++) {
+				double sum = 0;
+				for (int b = 0; b < k; b++) {
+					sum += E[i][b] * SInverse[b][a];
+				}
+				ESInverse[i][a] = sum;
+			}
+		}
+
+		double[][] result = new double[n + k][n + k];
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < n; j++) {
+				double sum = myGammaInverse[i][j];
+				for (int a = 0; a < k; a++) {
+					sum += ESInverse[i][a] * E[j][a];
+				}
+				result[i][j] = sum;
+			}
+			for (int a = 0; a < k; a++) {
+				result[i][n+a] = -ESInverse[i][a];
+				result[n+a][i] = -ESInverse[i][a];
+			}
+		}
+		for (int a = 0; a < k; a++) {
+			for (int b = 0; b < k; b++) {
+				result[n+a][n+b] = SInverse[a][b];
+			}
+		}
+
+		myGammaInverse = result;
+		myValues = append(myValues, MU.clone(values));
+		myNoisyValues = append(myNoisyValues, noisyValues);
+		myCacheKey = null;
+	}
+
+	/**
+	 * Replaces component functions in place (e.g. neurons of an ensemble that have been changed),
+	 * by removing them and adding their new values (see removeComponents(...) and addComponents(...)).
+	 *
+	 * @param indices Indices of components to replace
+	 * @param values New values of these components at the evaluation points
+	 */
+	public void replaceComponents(int[] indices, float[][] values) {
+		checkStored();
+		regularize();
+		int n = myGammaInverse.length;
+		removeComponents(indices);
+		addComponents(values);
+
+		//the replaced components are now at the end; move them back to their places
+		boolean[] replaced = new boolean[n];
+		for (int i = 0; i < indices.length; i++) {
+			replaced[indices[i]] = true;
+		}
+		int[] source = new int[n];
+		int next = 0;
+		for (int i = 0; i < n; i++) {
+			if (!replaced[i]) {
+				source[i] = next++;
+			}
+		}
+		for (int a = 0; a < indices.length; a++) {
+			source[indices[a]] = next++;
+		}
+
+		double[][] result = new double[n][n];
+		for (int i = 0; i < n; i++) {
+			double[] row = myGammaInverse[source[i]];
+			for (int j = 0; j < n; j++) {
+				result[i][j] = row[source[j]];
+			}
+		}
+		myGammaInverse = result;
+		myValues = select(myValues, source);
+		myNoisyValues = select(myNoisyValues, source);
+	}
+
+	/**
+	 * Prepares for incremental updates (removeComponents(...) etc.), which need an actual inverse
+	 * rather than a pseudoinverse in which small singular values are discarded. The first time this
+	 * is called, GAMMA" is replaced with the inverse of GAMMA + s^2 I, where s is the standard deviation
+	 * of the noise added to values. This is another standard way of regularizing decoders against noise.
+	 * It takes about as long as the original solution, but later updates are fast.
+	 */
+	public void regularize() {
+		if (!myRegularized) {
+			double[][] gamma = findGamma();
+			for (int i = 0; i < gamma.length; i++) {
+				gamma[i][i] += myAbsNoiseSD * myAbsNoiseSD;
+			}
+			myGammaInverse = (gamma.length > 0) ? pseudoInverse(gamma, 0f, -1) : gamma;
+			myRegularized = true;
+			myCacheKey = null;
+		}
+	}
+
+	private void checkStored() {
+		if (mySource != null) {
+			throw new IllegalStateException("Components can't be updated when values are streamed");
+		}
+	}
+
+	//weighted correlation of two functions over the evaluation points, as in GAMMA
+	private static double correlate(float[] a, float[] b, float[] weights) {
+		double sum = 0;
+		for (int k = 0; k < weights.length; k++) {
+			sum += a[k] * b[k] * weights[k];
+		}
+		return sum / weights.length;
+	}
+
+	private static float[][] select(float[][] rows, int[] indices) {
+		float[][] result = new float[indices.length][];
+		for (int i = 0; i < indices.length; i++) {
+			result[i] = rows[indices[i]];
+		}
+		return result;
+	}
+
+	private static float[][] append(float[][] rows, float[][] moreRows) {
+		float[][] result = new float[rows.length + moreRows.length][];
+		System.arraycopy(rows, 0, result, 0, rows.length);
+		System.arraycopy(moreRows, 0, result, rows.length, moreRows.length);
 		return result;
 	}
 
+	//GAMMA_ij = < cost(x) a_i(x) a_j(x) >, built on multiple threads (see GramMatrix)
+	private double[][] findGamma() {
+		if (mySource == null) {
+			return GramMatrix.find(myNoisyValues, getCostWeights());
+		}
+
+		//one set of threads for all the chunks
+		float[] costWeights = getCostWeights();
+		GramMatrix.Accumulator accumulator = new GramMatrix.Accumulator(mySource.getNumComponents());
+		try {
+			for (int start = 0; start < myEvalPoints.length; start += myChunkSize) {
+				float[] weights = new float[Math.min(myChunkSize, myEvalPoints.length - start)];
+				System.arraycopy(costWeights, start, weights, 0, weights.length);
+				accumulator.add(getNoisyChunk(start), weights);
+			}
+			return accumulator.finish();
+		} finally {
+			accumulator.stop();
+		}
+	}
+
+	//the cost function is evaluated once per evaluation point, rather than in every sum
+	private float[] getCostWeights() {
+		if (myCostWeights == null) {
+			float[] weights = new float[myEvalPoints.length];
+			for (int k = 0; k < weights.length; k++) {
+				weights[k] = myCostFunction.map(myEvalPoints[k]);
+			}
+			myCostWeights = weights;
+		}
+		return myCostWeights;
+	}
+
 	@Override
 	public LinearApproximator clone() throws CloneNotSupportedException {
 		WeightedCostApproximator result = (WeightedCostApproximator) super.clone();
 
 		result.myCostFunction = myCostFunction.clone();
 		result.myEvalPoints = MU.clone(myEvalPoints);
-		result.myNoisyValues = MU.clone(myNoisyValues);
+		if (myNoisyValues != null) {
+			result.myNoisyValues = MU.clone(myNoisyValues);
+		}
 
 		result.myGammaInverse = new double[myGammaInverse.length][];
 		for (int i = 0; i < myGammaInverse.length; i++) {
@@ -634,6 +1052,25 @@ public class WeightedCostApproximator implements LinearApproximator {
 	}
 
 
+	/**
+	 * Finds values of component functions on demand, for WeightedCostApproximators that stream
+	 * values rather than storing them.
+	 */
+	public static interface ValueSource extends Serializable {
+
+		/**
+		 * @return Number of component functions
+		 */
+		public int getNumComponents();
+
+		/**
+		 * @param evalPoints Points at which to evaluate the component functions
+		 * @return Values of the component functions at these points (first dimension is for each function)
+		 */
+		public float[][] getValues(float[][] evalPoints);
+
+	}
+
 	/**
 	 * An ApproximatorFactory that produces WeightedCostApproximators.
 	 *
@@ -646,6 +1083,7 @@ public class WeightedCostApproximator implements LinearApproximator {
 		private float myNoise;
 		private int myNSV;
 		private boolean myQuiet;
+		private boolean myStreaming;
 
 		/**
 		 * @param noise Random noise to add to component functions (proportion of largest value over all functions)
@@ -728,6 +1166,22 @@ public class WeightedCostApproximator implements LinearApproximator {
 			myQuiet = quiet;
 		}
 
+		/**
+		 * @return True if callers that can provide a ValueSource should use
+		 * 		getApproximator(float[][], ValueSource), to reduce memory use
+		 */
+		public boolean getStreaming() {
+			return myStreaming;
+		}
+
+		/**
+		 * @param streaming True if callers that can provide a ValueSource should use
+		 * 		getApproximator(float[][], ValueSource), to reduce memory use
+		 */
+		public void setStreaming(boolean streaming) {
+			myStreaming = streaming;
+		}
+
 
 		/**
 		 * @see ca.nengo.math.ApproximatorFactory#getApproximator(float[][], float[][])
@@ -749,6 +1203,18 @@ public class WeightedCostApproximator implements LinearApproximator {
         	return new WeightedCostApproximator(evaluationSignals, values, getCostFunction(evaluationSignals[0].length), myNoise, myNSV, myQuiet);
         }
 
+		/**
+		 * Similar to getApproximator(float[][], float[][]) but streams values from the given source
+		 * rather than storing them (see the corresponding WeightedCostApproximator constructor).
+		 *
+		 * @param evalPoints Points at which component functions are evaluated
+		 * @param source Source of the values of component functions at the evalPoints
+		 * @return A LinearApproximator that can be used to approximate new Functions as a weighted sum of the components
+		 */
+		public LinearApproximator getApproximator(float[][] evalPoints, ValueSource source) {
+			return new WeightedCostApproximator(evalPoints, source, getCostFunction(evalPoints[0].length), myNoise, myNSV, myQuiet);
+		}
+
 		/**
 		 * Note: override to use non-uniform error weighting.
 		 *
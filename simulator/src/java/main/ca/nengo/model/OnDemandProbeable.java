@@ -0,0 +1,51 @@
+/*
+The contents of this file are subject to the Mozilla Public License Version 1.1 
+(the "License"); you may not use this file except in compliance with the License. 
+You may obtain a copy of the License at http://www.mozilla.org/MPL/
+
+Software distributed under the License is distributed on an "AS IS" basis, WITHOUT
+WARRANTY OF ANY KIND, either express or implied. See the License for the specific 
+language governing rights and limitations under the License.
+
+The Original Code is "OnDemandProbeable.java". Description: 
+"A Probeable that keeps a detailed history only while it is probed"
+
+The Initial Developer of the Original Code is Bryan Tripp & Centre for Theoretical Neuroscience, University of Waterloo. Copyright (C) 2006-2008. All Rights Reserved.
+
+Alternatively, the contents of this file may be used under the terms of the GNU 
+Public License license (the GPL License), in which case the provisions of GPL 
+License are applicable  instead of those above. If you wish to allow use of your 
+version of this file only under the terms of the GPL License and not to allow 
+others to use your version of this file under the MPL, indicate your decision 
+by deleting the provisions above and replace  them with the notice and other 
+provisions required by the GPL License.  If you do not delete the provisions above,
+a recipient may use your version of this file under either the MPL or the GPL License.
+*/
+
+package ca.nengo.model;
+
+/**
+ * <p>A Probeable that keeps a detailed history of a state only while something is probing it.
+ * Otherwise getHistory(...) may give only the value at the end of the most recent step, so that
+ * no history has to be stored on every step just in case it is asked for.</p>
+ *
+ * <p>Requests are counted, so the history is kept until each call to enableHistory(...) has been
+ * matched by a call to disableHistory(...).</p>
+ */
+public interface OnDemandProbeable extends Probeable {
+
+	/**
+	 * Requests a complete history of the given state from the next step on.
+	 *
+	 * @param stateName A state variable name. Unknown names are ignored.
+	 */
+	public void enableHistory(String stateName);
+
+	/**
+	 * Withdraws a request made with enableHistory(...).
+	 *
+	 * @param stateName A state variable name. Unknown names are ignored.
+	 */
+	public void disableHistory(String stateName);
+
+}
@@ -154,7 +154,7 @@ public class EnsembleOrigin implements Origin {
 			values[i] = ((SpikeOutput) o).getValues()[0];
 		}
 		
-		return new SpikeOutputImpl(values, units, origins[0].getValues().getTime());
+		return SparseSpikeOutputImpl.fromSpikes(values, units, origins[0].getValues().getTime());
 	}
 
 	private static PreciseSpikeOutput composePreciseSpikeOutput(Origin[] origins, Units units) throws SimulationException {
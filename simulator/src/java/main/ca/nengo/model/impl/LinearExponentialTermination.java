@@ -33,6 +33,7 @@ import ca.nengo.model.PlasticNodeTermination;
 import ca.nengo.model.PreciseSpikeOutput;
 import ca.nengo.model.RealOutput;
 import ca.nengo.model.SimulationException;
+import ca.nengo.model.SparseSpikeOutput;
 import ca.nengo.model.SpikeOutput;
 import ca.nengo.model.StructuralException;
 
@@ -321,6 +322,23 @@ public class LinearExponentialTermination implements PlasticNodeTermination {
 
     private float combineSpikes(SpikeOutput input, float[] weights) {
         float result = 0;
+
+        if (input instanceof SparseSpikeOutput) { //only visit the channels that spiked
+            int[] indices = ((SparseSpikeOutput) input).getSpikeIndices();
+            if (myWeightProbabilities!=null) {
+                for (int i = 0; i < indices.length; i++) {
+                    if (random.nextFloat()<myWeightProbabilities[indices[i]]) {
+                        result += weights[indices[i]];
+                    }
+                }
+            } else {
+                for (int i = 0; i < indices.length; i++) {
+                    result += weights[indices[i]];
+                }
+            }
+            return result;
+        }
+
         boolean[] spikes = input.getValues();
 
         if (myWeightProbabilities!=null) {
@@ -28,6 +28,7 @@ a recipient may use your version of this file under either the MPL or the GPL Li
 package ca.nengo.model.impl;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Properties;
@@ -39,6 +40,7 @@ import ca.nengo.model.Origin;
 import ca.nengo.model.PreciseSpikeOutput;
 import ca.nengo.model.RealOutput;
 import ca.nengo.model.SimulationException;
+import ca.nengo.model.SparseSpikeOutput;
 import ca.nengo.model.SpikeOutput;
 import ca.nengo.model.StructuralException;
 import ca.nengo.model.Termination;
@@ -700,26 +702,43 @@ public class NetworkArrayImpl extends NetworkImpl {
 				}
 				
 				return new PreciseSpikeOutputImpl(vals, unit, time);
-			} else if(v0 instanceof RealOutputImpl) {
+			} else if(v0 instanceof RealOutput) {
 				float[] vals = new float[myDimensions];
 				int d=0;
 				for(int i=0; i < myOrigins.length; i++) {
-					float[] ovals = ((RealOutputImpl)myOrigins[i].getValues()).getValues();
+					float[] ovals = ((RealOutput)myOrigins[i].getValues()).getValues();
 					for(int j=0; j < ovals.length; j++)
 						vals[d++] = ovals[j];
 				}
 				
 				return new RealOutputImpl(vals, unit, time);
-			} else if(v0 instanceof SpikeOutputImpl) {
-				boolean[] vals = new boolean[myDimensions];
-				int d=0;
+			} else if(v0 instanceof SpikeOutput) {
+				// concatenate the lists of spiking channels, offset by the position of each origin
+				int numSpikes = 0;
+				SpikeOutput[] outputs = new SpikeOutput[myOrigins.length];
 				for(int i=0; i < myOrigins.length; i++) {
-					boolean[] ovals = ((SpikeOutputImpl)myOrigins[i].getValues()).getValues();
-					for(int j=0; j < ovals.length; j++)
-						vals[d++] = ovals[j];
+					outputs[i] = (SpikeOutput) myOrigins[i].getValues();
+					numSpikes += (outputs[i] instanceof SparseSpikeOutput)
+						? ((SparseSpikeOutput) outputs[i]).getSpikeIndices().length : outputs[i].getDimension();
+				}
+				
+				int[] indices = new int[numSpikes];
+				int n=0, d=0;
+				for(int i=0; i < myOrigins.length; i++) {
+					if(outputs[i] instanceof SparseSpikeOutput) {
+						int[] oindices = ((SparseSpikeOutput) outputs[i]).getSpikeIndices();
+						for(int j=0; j < oindices.length; j++)
+							indices[n++] = d + oindices[j];
+					} else {
+						boolean[] ovals = outputs[i].getValues();
+						for(int j=0; j < ovals.length; j++)
+							if(ovals[j])
+								indices[n++] = d + j;
+					}
+					d += outputs[i].getDimension();
 				}
 				
-				return new SpikeOutputImpl(vals, unit, time);
+				return new SparseSpikeOutputImpl(n == indices.length ? indices : Arrays.copyOf(indices, n), myDimensions, unit, time);
 			} else {
 				System.err.println("Unknown type in ArrayOrigin.getValues()");
 				return null;
@@ -47,6 +47,7 @@ import ca.nengo.model.Ensemble;
 import ca.nengo.model.InstantaneousOutput;
 import ca.nengo.model.Network;
 import ca.nengo.model.Node;
+import ca.nengo.model.OnDemandProbeable;
 import ca.nengo.model.Origin;
 import ca.nengo.model.Probeable;
 import ca.nengo.model.Projection;
@@ -75,7 +76,7 @@ import ca.nengo.util.impl.ScriptGenerator;
  *
  * @author Bryan Tripp
  */
-public class NetworkImpl implements Network, VisiblyMutable, VisiblyMutable.Listener, TaskSpawner {
+public class NetworkImpl implements Network, OnDemandProbeable, VisiblyMutable, VisiblyMutable.Listener, TaskSpawner {
 
 	/**
 	 * Default name for a Network
@@ -629,6 +630,29 @@ public class NetworkImpl implements Network, VisiblyMutable, VisiblyMutable.List
 		return p.getHistory(n);
 	}
 
+	/**
+	 * Passes the request on to the Probeable whose state is exposed under the given name (unless
+	 * that is this Network, e.g. a NetworkArray exposing its own origins, which provides its own history).
+	 *
+	 * @see ca.nengo.model.OnDemandProbeable#enableHistory(java.lang.String)
+	 */
+	public void enableHistory(String stateName) {
+		Probeable p = myProbeables.get(stateName);
+		if (p != this && p instanceof OnDemandProbeable) {
+			((OnDemandProbeable) p).enableHistory(myProbeableStates.get(stateName));
+		}
+	}
+
+	/**
+	 * @see ca.nengo.model.OnDemandProbeable#disableHistory(java.lang.String)
+	 */
+	public void disableHistory(String stateName) {
+		Probeable p = myProbeables.get(stateName);
+		if (p != this && p instanceof OnDemandProbeable) {
+			((OnDemandProbeable) p).disableHistory(myProbeableStates.get(stateName));
+		}
+	}
+
 	/**
 	 * @see ca.nengo.model.Probeable#listStates()
 	 */
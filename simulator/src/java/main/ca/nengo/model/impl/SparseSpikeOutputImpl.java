@@ -0,0 +1,132 @@
+/*
+The contents of this file are subject to the Mozilla Public License Version 1.1 
+(the "License"); you may not use this file except in compliance with the License. 
+You may obtain a copy of the License at http://www.mozilla.org/MPL/
+
+Software distributed under the License is distributed on an "AS IS" basis, WITHOUT
+WARRANTY OF ANY KIND, either express or implied. See the License for the specific 
+language governing rights and limitations under the License.
+
+The Original Code is "SparseSpikeOutputImpl.java". Description: 
+"Default implementation of SparseSpikeOutput"
+
+The Initial Developer of the Original Code is Bryan Tripp & Centre for Theoretical Neuroscience, University of Waterloo. Copyright (C) 2006-2008. All Rights Reserved.
+
+Alternatively, the contents of this file may be used under the terms of the GNU 
+Public License license (the GPL License), in which case the provisions of GPL 
+License are applicable  instead of those above. If you wish to allow use of your 
+version of this file only under the terms of the GPL License and not to allow 
+others to use your version of this file under the MPL, indicate your decision 
+by deleting the provisions above and replace  them with the notice and other 
+provisions required by the GPL License.  If you do not delete the provisions above,
+a recipient may use your version of this file under either the MPL or the GPL License.
+*/
+
+package ca.nengo.model.impl;
+
+import ca.nengo.model.SparseSpikeOutput;
+import ca.nengo.model.SpikeOutput;
+import ca.nengo.model.Units;
+
+/**
+ * Default implementation of SparseSpikeOutput. The dense array of spikes is only made if
+ * getValues() is called.
+ */
+public class SparseSpikeOutputImpl implements SparseSpikeOutput {
+
+	private static final long serialVersionUID = 1L;
+
+	private int[] mySpikeIndices;
+	private int myDimension;
+	private Units myUnits;
+	private float myTime;
+	private transient volatile boolean[] myValues;
+
+	/**
+	 * @param spikeIndices @see #getSpikeIndices()
+	 * @param dimension Number of channels
+	 * @param units @see #getUnits()
+	 * @param time @see #getTime()
+	 */
+	public SparseSpikeOutputImpl(int[] spikeIndices, int dimension, Units units, float time) {
+		mySpikeIndices = spikeIndices;
+		myDimension = dimension;
+		myUnits = units;
+		myTime = time;
+	}
+
+	/**
+	 * @param spikes Instantaneous output in each channel (true means spike). This array is
+	 * 		returned by getValues() and should not be modified afterwards.
+	 * @param units @see #getUnits()
+	 * @param time @see #getTime()
+	 * @return Equivalent sparse output
+	 */
+	public static SparseSpikeOutputImpl fromSpikes(boolean[] spikes, Units units, float time) {
+		int n = 0;
+		for (int i = 0; i < spikes.length; i++) {
+			if (spikes[i]) {
+				n++;
+			}
+		}
+		int[] indices = new int[n];
+		n = 0;
+		for (int i = 0; i < spikes.length; i++) {
+			if (spikes[i]) {
+				indices[n++] = i;
+			}
+		}
+		SparseSpikeOutputImpl result = new SparseSpikeOutputImpl(indices, spikes.length, units, time);
+		result.myValues = spikes;
+		return result;
+	}
+
+	/**
+	 * @see ca.nengo.model.SparseSpikeOutput#getSpikeIndices()
+	 */
+	public int[] getSpikeIndices() {
+		return mySpikeIndices;
+	}
+
+	/**
+	 * @see ca.nengo.model.SpikeOutput#getValues()
+	 */
+	public boolean[] getValues() {
+		boolean[] result = myValues;
+		if (result == null) {
+			result = new boolean[myDimension];
+			for (int i = 0; i < mySpikeIndices.length; i++) {
+				result[mySpikeIndices[i]] = true;
+			}
+			myValues = result;
+		}
+		return result;
+	}
+
+	/**
+	 * @see ca.nengo.model.InstantaneousOutput#getUnits()
+	 */
+	public Units getUnits() {
+		return myUnits;
+	}
+
+	/**
+	 * @see ca.nengo.model.InstantaneousOutput#getDimension()
+	 */
+	public int getDimension() {
+		return myDimension;
+	}
+
+	/**
+	 * @see ca.nengo.model.InstantaneousOutput#getTime()
+	 */
+	public float getTime() {
+		return myTime;
+	}
+
+	@Override
+	public SpikeOutput clone() throws CloneNotSupportedException {
+		return new SparseSpikeOutputImpl(mySpikeIndices.clone(), myDimension, myUnits, myTime);
+	}
+
+}
@@ -500,7 +500,8 @@ public class DecodableEnsembleImpl extends PlasticEnsembleImpl implements Decoda
 						stateName + "\"), probing origin by default");
 			
 		    origin.setRequiredOnCPU(true);
-			float[] vals = ((RealOutput) origin.getValues()).getValues();
+			//copied because DecodedOrigins reuse their output arrays
+			float[] vals = ((RealOutput) origin.getValues()).getValues().clone();
 			Units[] units = new Units[vals.length];
 			for (int i = 0; i < vals.length; i++) {
 				units[i] = origin.getValues().getUnits();
@@ -27,6 +27,8 @@ a recipient may use your version of this file under either the MPL or the GPL Li
  */
 package ca.nengo.model.nef.impl;
 
+import java.util.Arrays;
+
 import org.apache.log4j.Logger;
 
 import ca.nengo.config.ConfigUtil;
@@ -55,6 +57,7 @@ import ca.nengo.model.impl.RealOutputImpl;
 import ca.nengo.model.nef.DecodableEnsemble;
 import ca.nengo.model.nef.ExpressModel;
 import ca.nengo.model.nef.NEFEnsemble;
+import ca.nengo.model.neuron.impl.LIFPopulation;
 import ca.nengo.model.plasticity.ShortTermPlastic;
 import ca.nengo.util.MU;
 import ca.nengo.util.TimeSeries;
@@ -95,6 +98,11 @@ public class DecodedOrigin implements Origin, Resettable, SimulationMode.ModeCon
 	private boolean myRequiredOnCPU;
 	private ExpressModel myExpressModel;
 
+	//node-level origins are looked up once, and outputs alternate between two reused buffers
+	private transient Origin[] myNodeOrigins;
+	private transient ReusableOutput[] myOutputBuffers;
+	private transient int myOutputBufferIndex;
+
 	/**
 	 * With this constructor, decoding vectors are generated using default settings.
 	 *
@@ -321,10 +329,10 @@ public class DecodedOrigin implements Origin, Resettable, SimulationMode.ModeCon
 			result[i] = new float[functions.length];
 		}
 
+		float[][] coeffs = approximator.findCoefficients(functions);
 		for (int j = 0; j < functions.length; j++) {
-			float[] coeffs = approximator.findCoefficients(functions[j]);
 			for (int i = 0; i < nodes.length; i++) {
-				result[i][j] = coeffs[i];
+				result[i][j] = coeffs[j][i];
 			}
 		}
 
@@ -337,10 +345,10 @@ public class DecodedOrigin implements Origin, Resettable, SimulationMode.ModeCon
 			result[i] = new float[targetSignal.length];
 		}
 
+		float[][] coeffs = ((WeightedCostApproximator)approximator).findCoefficients(targetSignal);
 		for (int j = 0; j < targetSignal.length; j++) {
-			float[] coeffs = ((WeightedCostApproximator)approximator).findCoefficients(targetSignal[j]);
 			for (int i = 0; i < nodes.length; i++) {
-				result[i][j] = coeffs[i];
+				result[i][j] = coeffs[j][i];
 			}
 		}
 
@@ -464,10 +472,15 @@ public class DecodedOrigin implements Origin, Resettable, SimulationMode.ModeCon
 					" but state dimension is " + state.length);
 		}
 
-		float[] values = new float[myFunctions.length];
+		float[] values = nextOutputBuffer();
 		float stepSize = endTime - startTime;
 
-		mySTPHistory = new float[myNodes.length];
+		if (mySTPHistory == null || mySTPHistory.length != myNodes.length) {
+			mySTPHistory = new float[myNodes.length];
+		} else if (mySTPDynamicsTemplate != null) {
+			Arrays.fill(mySTPHistory, 0);
+		}
+
 		if (myMode == SimulationMode.DIRECT) {
 			for (int i = 0; i < values.length; i++) {
 				values[i] = myFunctions[i].map(state);
@@ -482,29 +495,30 @@ public class DecodedOrigin implements Origin, Resettable, SimulationMode.ModeCon
 				myExpressModel = new DefaultExpressModel(this);
 			}
 			
-			values = myExpressModel.getOutput(startTime, state, values);
+			float[] expressValues = myExpressModel.getOutput(startTime, state, values);
+			if (expressValues != values) {
+				System.arraycopy(expressValues, 0, values, 0, values.length);
+			}
 		} else {
-			for (int i = 0; i < myNodes.length; i++) {
-				try {
-					InstantaneousOutput o = myNodes[i].getOrigin(myNodeOrigin).getValues();
-
-					float val = 0;
-					if (o instanceof SpikeOutput) {
-						val = ((SpikeOutput) o).getValues()[0] ? 1f / stepSize : 0f;
-					} else if (o instanceof RealOutput) {
-						val = ((RealOutput) o).getValues()[0];
-					} else {
-						throw new Error("Node output is of type " + o.getClass().getName()
-							+ ". DecodedOrigin can only deal with RealOutput and SpikeOutput, so it apparently has to be updated");
-					}
-
-					float[] decoder = getDynamicDecoder(i, val, startTime, endTime);
+			//activities are available directly if the parent ensemble runs its neurons as a population
+			LIFPopulation population = (myNode instanceof NEFEnsembleImpl)
+					? ((NEFEnsembleImpl) myNode).getPopulation(myNodeOrigin) : null;
+			float[] activities = (population == null) ? null : population.getActivities();
+
+			if (population != null && population.getMode() == SimulationMode.DEFAULT && mySTPDynamicsTemplate == null) {
+				//only the neurons that spiked contribute
+				int[] spikeIndices = population.getSpikeIndices();
+				int numSpikes = population.getNumSpikes();
+				for (int k = 0; k < numSpikes; k++) {
+					int i = spikeIndices[k];
+					float val = activities[i];
+					float[] decoder = myDecoders[i];
 					for (int j = 0; j < values.length; j++) {
 						values[j] += val * decoder[j];
 					}
-				} catch (StructuralException e) {
-					throw new SimulationException(e);
 				}
+			} else {
+				decodeAll(values, activities, stepSize, startTime, endTime);
 			}
 		}
 		
@@ -515,7 +529,84 @@ public class DecodedOrigin implements Origin, Resettable, SimulationMode.ModeCon
 		}
 
 		myTime = endTime;
-		myOutput = new RealOutputImpl(values, Units.UNK, endTime);
+		ReusableOutput output = myOutputBuffers[myOutputBufferIndex];
+		output.myTime = endTime;
+		myOutput = output;
+	}
+
+	/**
+	 * Adds the decoded activity of every Node into the given values.
+	 *
+	 * @param values Output values to add to
+	 * @param activities Node activities, if available from the ensemble's population (otherwise
+	 * 		they are read from the Node Origins)
+	 * @param stepSize Length of the time step
+	 * @param startTime simulation time of timestep onset
+	 * @param endTime simulation time of timestep end
+	 */
+	private void decodeAll(float[] values, float[] activities, float stepSize, float startTime, float endTime)
+			throws SimulationException {
+		Origin[] nodeOrigins = (activities == null) ? getNodeOrigins() : null;
+
+		for (int i = 0; i < myNodes.length; i++) {
+			float val = 0;
+			if (activities != null) {
+				val = activities[i];
+			} else {
+				InstantaneousOutput o = nodeOrigins[i].getValues();
+
+				if (o instanceof SpikeOutput) {
+					val = ((SpikeOutput) o).getValues()[0] ? 1f / stepSize : 0f;
+				} else if (o instanceof RealOutput) {
+					val = ((RealOutput) o).getValues()[0];
+				} else {
+					throw new Error("Node output is of type " + o.getClass().getName()
+						+ ". DecodedOrigin can only deal with RealOutput and SpikeOutput, so it apparently has to be updated");
+				}
+			}
+
+			if (val == 0 && mySTPDynamicsTemplate == null) {
+				continue; //silent Nodes contribute nothing (but STP has to see them)
+			}
+
+			float[] decoder = getDynamicDecoder(i, val, startTime, endTime);
+			for (int j = 0; j < values.length; j++) {
+				values[j] += val * decoder[j];
+			}
+		}
+	}
+
+	/**
+	 * @return The output buffer to fill in this step (zeroed). Buffers alternate, so that the
+	 * 		output of the previous step is still intact while this one is being computed.
+	 */
+	private float[] nextOutputBuffer() {
+		if (myOutputBuffers == null || myOutputBuffers[0].myValues.length != myFunctions.length) {
+			myOutputBuffers = new ReusableOutput[]{
+					new ReusableOutput(myFunctions.length), new ReusableOutput(myFunctions.length)};
+		}
+		myOutputBufferIndex = 1 - myOutputBufferIndex;
+		float[] result = myOutputBuffers[myOutputBufferIndex].myValues;
+		Arrays.fill(result, 0);
+		return result;
+	}
+
+	/**
+	 * @return The node-level Origin from which each Node's output is decoded
+	 */
+	private Origin[] getNodeOrigins() throws SimulationException {
+		if (myNodeOrigins == null || myNodeOrigins.length != myNodes.length) {
+			Origin[] nodeOrigins = new Origin[myNodes.length];
+			try {
+				for (int i = 0; i < myNodes.length; i++) {
+					nodeOrigins[i] = myNodes[i].getOrigin(myNodeOrigin);
+				}
+			} catch (StructuralException e) {
+				throw new SimulationException(e);
+			}
+			myNodeOrigins = nodeOrigins;
+		}
+		return myNodeOrigins;
 	}
 
 	private float[] getDynamicDecoder(int i, float input, float startTime, float endTime) {
@@ -535,10 +626,13 @@ public class DecodedOrigin implements Origin, Resettable, SimulationMode.ModeCon
 		if (mySTPHistory == null) {
             mySTPHistory = new float[myNodes.length];
         }
-		return new TimeSeriesImpl(new float[]{myTime}, new float[][]{mySTPHistory}, Units.uniform(Units.UNK, mySTPHistory.length));
+		return new TimeSeriesImpl(new float[]{myTime}, new float[][]{mySTPHistory.clone()}, Units.uniform(Units.UNK, mySTPHistory.length));
 	}
 
 	/**
+	 * Note that the array underlying the returned output is reused for the output two
+	 * steps later, so callers that keep values across steps should copy them.
+	 *
 	 * @see ca.nengo.model.Origin#getValues()
 	 */
 	public InstantaneousOutput getValues() throws SimulationException {
@@ -571,7 +665,7 @@ public class DecodedOrigin implements Origin, Resettable, SimulationMode.ModeCon
 	/**
 	 * @return Name of Node-level Origin on which this DecodedOrigin is based
 	 */
-	protected String getNodeOrigin() {
+	public String getNodeOrigin() {
 		return myNodeOrigin;
 	}
 
@@ -608,6 +702,9 @@ public class DecodedOrigin implements Origin, Resettable, SimulationMode.ModeCon
 			result.myNodes = de.getNodes();
 			result.myNode = de;
 			result.myOutput = (RealOutput) myOutput.clone();
+			result.myNodeOrigins = null;
+			result.myOutputBuffers = null;
+			result.mySTPHistory = null;
             if (myNoise != null) {
 			    result.setNoise(myNoise.clone());
             }
@@ -646,6 +743,7 @@ public class DecodedOrigin implements Origin, Resettable, SimulationMode.ModeCon
 	 */
 	public void redefineNodes(Node[] nodes, LinearApproximator approximator) {
 		myNodes=nodes;
+		myNodeOrigins = null;
 		rebuildDecoder(approximator);
 	}
 	
@@ -656,4 +754,41 @@ public class DecodedOrigin implements Origin, Resettable, SimulationMode.ModeCon
     public boolean getRequiredOnCPU(){
         return myRequiredOnCPU;
     }
+
+	/**
+	 * A RealOutput whose values are overwritten in later steps.
+	 */
+	private static class ReusableOutput implements RealOutput {
+
+		private static final long serialVersionUID = 1L;
+
+		private final float[] myValues;
+		private float myTime;
+
+		public ReusableOutput(int dimension) {
+			myValues = new float[dimension];
+		}
+
+		public float[] getValues() {
+			return myValues;
+		}
+
+		public Units getUnits() {
+			return Units.UNK;
+		}
+
+		public int getDimension() {
+			return myValues.length;
+		}
+
+		public float getTime() {
+			return myTime;
+		}
+
+		@Override
+		public RealOutput clone() throws CloneNotSupportedException {
+			return new RealOutputImpl(myValues.clone(), Units.UNK, myTime);
+		}
+	}
+
 }
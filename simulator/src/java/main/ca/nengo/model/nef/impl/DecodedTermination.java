@@ -32,6 +32,7 @@ import ca.nengo.dynamics.Integrator;
 import ca.nengo.dynamics.LinearSystem;
 import ca.nengo.dynamics.impl.CanonicalModel;
 import ca.nengo.dynamics.impl.LTISystem;
+import ca.nengo.dynamics.impl.SimpleLTISystem;
 import ca.nengo.model.InstantaneousOutput;
 import ca.nengo.model.Node;
 import ca.nengo.model.Probeable;
@@ -93,7 +94,18 @@ public class DecodedTermination implements Termination, Resettable, Probeable {
 	private float myTau;
 	private boolean myModulatory;
 	private float[][] myInitialState;
-	private boolean myValuesSet;
+	private boolean myValuesSet;
+
+	//first-order LTI dynamics (dx/dt = ax + bu, y = cx + du) are updated in closed form
+	private boolean myFirstOrder;
+	private float myA;
+	private float myB;
+	private float myC;
+	private float myD;
+	private float myDecayStepSize;
+	private float myDecay;
+	private float myInputGain;
+	private float[] myDynamicsInputs;
 
 	/**
 	 * @param node The parent Node
@@ -139,13 +151,14 @@ public class DecodedTermination implements Termination, Resettable, Probeable {
 
 				//maintain state if there is state
 				if (myDynamics != null && myDynamics[i] != null) {
-					newDynamics[i].setState(myDynamics[i].getState());
+					newDynamics[i].setState(myDynamics[i].getState().clone());
 				}
 			} catch (CloneNotSupportedException e) {
 				throw new Error("The clone() operation is not supported by the given dynamics object");
 			}
 		}
 		myDynamics = newDynamics;
+		findFirstOrderCoefficients();
 
 		//zero corresponding initial state if necessary
 		if (myInitialState == null || myInitialState[0].length != newDynamics[0].getState().length) {
@@ -153,6 +166,21 @@ public class DecodedTermination implements Termination, Resettable, Probeable {
 		}
 	}
 
+	//recognizes single-state LTI dynamics, for which the exact discrete-time update can be used
+	private void findFirstOrderCoefficients() {
+		myFirstOrder = (myDynamicsTemplate.getClass() == LTISystem.class || myDynamicsTemplate.getClass() == SimpleLTISystem.class)
+			&& myDynamicsTemplate.getState().length == 1;
+
+		if (myFirstOrder) {
+			LTISystem system = (LTISystem) myDynamicsTemplate;
+			myA = system.getA(0)[0][0];
+			myB = system.getB(0)[0][0];
+			myC = system.getC(0)[0][0];
+			myD = system.getD(0)[0][0];
+			myDecayStepSize = -1;
+		}
+	}
+
 	/**
 	 * @param bias Intrinsic bias that is added to inputs to this termination
 	 */
@@ -209,14 +237,33 @@ public class DecodedTermination implements Termination, Resettable, Probeable {
 			setValues(new RealOutputImpl(new float[getDimensions()], Units.UNK, 0.0f));
 		}
 
-		float[][] transform = getTransform();
-		if (myScalingTermination != null) {
-			float scale = myScalingTermination.getOutput()[0];
-			transform = MU.prod(transform, scale);
+		float scale = (myScalingTermination == null) ? 1 : myScalingTermination.getOutput()[0];
+		float[] input = myInputValues.getValues();
+		if (myDynamicsInputs == null || myDynamicsInputs.length != myTransform.length) {
+			myDynamicsInputs = new float[myTransform.length];
+		}
+		float[] dynamicsInputs = myDynamicsInputs;
+		for (int i = 0; i < dynamicsInputs.length; i++) {
+			float[] row = myTransform[i];
+			float sum = 0;
+			for (int j = 0; j < row.length; j++) {
+				sum += row[j] * input[j];
+			}
+			dynamicsInputs[i] = scale * sum;
 		}
-		float[] dynamicsInputs = MU.prod(transform, myInputValues.getValues());
-		float[] result = new float[dynamicsInputs.length];
 
+		if (myFirstOrder) {
+			float[] result = myOutputValues;
+			if (result == null || result.length != dynamicsInputs.length) {
+				result = new float[dynamicsInputs.length];
+			}
+			runFirstOrder(dynamicsInputs, result, endTime - startTime);
+			myTime = endTime;
+			myOutputValues = result;
+			return;
+		}
+
+		float[] result = new float[dynamicsInputs.length];
 		for (int i = 0; i < myDynamics.length; i++) {
 			float[] inVal  = new float[]{dynamicsInputs[i]};
 			if(myTau <= endTime-startTime) {
@@ -236,8 +283,27 @@ public class DecodedTermination implements Termination, Resettable, Probeable {
 		myOutputValues = result;
 	}
 
+	/*
+	 * Exact update of first-order dynamics over a step with constant input:
+	 * x(t+dt) = e^(a dt) x(t) + (e^(a dt) - 1)/a b u.
+	 */
+	private void runFirstOrder(float[] inputs, float[] result, float stepSize) {
+		if (stepSize != myDecayStepSize) {
+			myDecay = (float) Math.exp(myA * stepSize);
+			myInputGain = (myA == 0) ? stepSize * myB : (myDecay - 1) / myA * myB;
+			myDecayStepSize = stepSize;
+		}
+
+		for (int i = 0; i < inputs.length; i++) {
+			float[] state = myDynamics[i].getState();
+			float x = myDecay * state[0] + myInputGain * inputs[i];
+			state[0] = x;
+			result[i] = myC * x + myD * inputs[i];
+		}
+	}
+
 	/**
-	 * This method should be called after run(...).
+	 * This method should be called after run(...). The returned array may be reused in later steps.
 	 *
 	 * @return Output of dynamical system -- of interest at end of run(...)
 	 */
@@ -277,7 +343,8 @@ public class DecodedTermination implements Termination, Resettable, Probeable {
 
 	private void resetInitialState() {
 		for (int i = 0; myDynamics != null && i < myDynamics.length; i++) {
-			float[] state = myInitialState != null ? myInitialState[i] : new float[myDynamics[i].getState().length];
+			//copied because state may be updated in place
+			float[] state = myInitialState != null ? myInitialState[i].clone() : new float[myDynamics[i].getState().length];
 			myDynamics[i].setState(state);
 		}
 	}
@@ -437,7 +504,7 @@ public class DecodedTermination implements Termination, Resettable, Probeable {
 	public TimeSeries getHistory(String stateName) throws SimulationException {
 		if (stateName.equals(OUTPUT)) {
 			return new TimeSeriesImpl(new float[]{myTime},
-					new float[][]{myOutputValues}, Units.uniform(Units.UNK, myOutputValues.length));
+					new float[][]{myOutputValues.clone()}, Units.uniform(Units.UNK, myOutputValues.length));
 		} else {
 			throw new SimulationException("The state '" + stateName + "' is unknown");
 		}
@@ -482,6 +549,7 @@ public class DecodedTermination implements Termination, Resettable, Probeable {
 			if (myOutputValues != null) {
                 result.myOutputValues = myOutputValues.clone();
             }
+			result.myDynamicsInputs = null;
 			result.myScalingTermination = myScalingTermination; //refer to same copy
 			result.myStaticBias = myStaticBias.clone();
 			result.setNode(node);
@@ -29,12 +29,17 @@ package ca.nengo.model.nef.impl;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
 
 import org.apache.log4j.Logger;
 
 import ca.nengo.io.FileManager;
+import ca.nengo.io.NEFEnsembleFile;
 import ca.nengo.math.ApproximatorFactory;
 import ca.nengo.math.Function;
+import ca.nengo.math.PDFTools;
 import ca.nengo.math.impl.IdentityFunction;
 import ca.nengo.math.impl.IndicatorPDF;
 import ca.nengo.math.impl.WeightedCostApproximator;
@@ -47,6 +52,7 @@ import ca.nengo.model.nef.NEFEnsembleFactory;
 import ca.nengo.model.nef.NEFNode;
 import ca.nengo.model.neuron.Neuron;
 import ca.nengo.model.neuron.impl.LIFNeuronFactory;
+import ca.nengo.util.Environment;
 import ca.nengo.util.MU;
 import ca.nengo.util.VectorGenerator;
 import ca.nengo.util.VisiblyMutableUtils;
@@ -63,6 +69,8 @@ public class NEFEnsembleFactoryImpl implements NEFEnsembleFactory, java.io.Seria
 
 	private static Logger ourLogger = Logger.getLogger(NEFEnsembleFactoryImpl.class);
 
+	private static int ourNumThreads = Runtime.getRuntime().availableProcessors();
+
 	private ApproximatorFactory myApproximatorFactory;
 	private VectorGenerator myEncoderFactory;
 	private VectorGenerator myEvalPointFactory;
@@ -79,6 +87,20 @@ public class NEFEnsembleFactoryImpl implements NEFEnsembleFactory, java.io.Seria
 		myNodeFactory = new LIFNeuronFactory(.02f, .002f, new IndicatorPDF(200f, 400f), new IndicatorPDF(-.9f, .9f));
 	}
 
+	/**
+	 * @return Maximum number of ensembles that are built at once by make(String[], ...)
+	 */
+	public static int getNumThreads() {
+		return ourNumThreads;
+	}
+
+	/**
+	 * @param numThreads Maximum number of ensembles that are built at once by make(String[], ...)
+	 */
+	public static void setNumThreads(int numThreads) {
+		ourNumThreads = Math.max(1, numThreads);
+	}
+
 	/**
 	 * @see ca.nengo.model.nef.NEFEnsembleFactory#getApproximatorFactory()
 	 */
@@ -174,7 +196,11 @@ public class NEFEnsembleFactoryImpl implements NEFEnsembleFactory, java.io.Seria
                 try {
                     // Set the ensemble's factory to null to allow saving with customized ensemble factories
                     result.setEnsembleFactory(null);
-                    fm.save(result, ensembleFile);
+                    if (NEFEnsembleFile.canWrite(result)) {
+                        NEFEnsembleFile.write(result, ensembleFile); // compact format that loads quickly
+                    } else {
+                        fm.save(result, ensembleFile);
+                    }
                 } catch (IOException e) {
                     ourLogger.error("Failed to save file " + ensembleFile.getAbsolutePath(), e);
                 }
@@ -192,6 +218,145 @@ public class NEFEnsembleFactoryImpl implements NEFEnsembleFactory, java.io.Seria
 		return result;
 	}
 
+	/**
+	 * Makes several ensembles with the same parameters at once (e.g. the parts of a NetworkArrayImpl).
+	 *
+	 * @param names Name of each new ensemble
+	 * @param n Number of nodes in each ensemble
+	 * @param dim Dimension of each ensemble
+	 * @return The new ensembles, in the order of their names
+	 * @throws StructuralException if an ensemble can't be made
+	 * @see #make(String[], int, float[])
+	 */
+	public NEFEnsemble[] make(String[] names, int n, int dim) throws StructuralException {
+		return make(names, n, MU.uniform(1, dim, 1)[0]);
+	}
+
+	/**
+	 * <p>Makes several ensembles with the same parameters at once (e.g. the parts of a NetworkArrayImpl).</p>
+	 *
+	 * <p>Nodes, encoders and evaluation points are made for one ensemble after another, and then the
+	 * ensembles are built, including tuning curves and decoders, on up to getNumThreads() threads. The
+	 * parallel steps within each build share the same number of threads between them (see
+	 * Environment.setThreadLimit(...)), so building several ensembles doesn't oversubscribe the CPUs. Each
+	 * ensemble draws random numbers from its own generator (see PDFTools.setThreadRandom(...)), which is
+	 * seeded in turn from PDFTools.random(), so the results don't depend on the number of threads.
+	 * Note that construct(...) and addDefaultOrigins(...) may be called on several threads at once.</p>
+	 *
+	 * @param names Name of each new ensemble
+	 * @param n Number of nodes in each ensemble
+	 * @param radii Radius of encoded region in each dimension
+	 * @return The new ensembles, in the order of their names
+	 * @throws StructuralException if an ensemble can't be made
+	 */
+	public NEFEnsemble[] make(final String[] names, int n, final float[] radii) throws StructuralException {
+		final Random[] randoms = new Random[names.length];
+		for (int i = 0; i < names.length; i++) {
+			randoms[i] = new Random((long) (PDFTools.random() * Long.MAX_VALUE));
+		}
+
+		//the node factory and vector generators may not be thread-safe, so their parts are made in turn
+		final NEFNode[][] nodes = new NEFNode[names.length][];
+		final float[][][] encoders = new float[names.length][][];
+		final float[][][] evalPoints = new float[names.length][][];
+		Random oldRandom = PDFTools.getThreadRandom();
+		try {
+			for (int i = 0; i < names.length; i++) {
+				PDFTools.setThreadRandom(randoms[i]);
+				nodes[i] = makeNodes(n);
+				encoders[i] = myEncoderFactory.genVectors(n, radii.length);
+				evalPoints[i] = getEvalPointFactory().genVectors(getNumEvalPoints(radii.length), radii.length);
+			}
+		} finally {
+			PDFTools.setThreadRandom(oldRandom);
+		}
+
+		final NEFEnsemble[] result = new NEFEnsemble[names.length];
+		final boolean[] singular = new boolean[names.length];
+		final Exception[] errors = new Exception[names.length];
+		final AtomicInteger next = new AtomicInteger();
+
+		//the thread budget is shared out between the builders, so that their own parallel steps
+		//(GramMatrix, TuningCurves, etc.) don't start a full set of threads on each builder
+		int budget = Environment.limitThreads(ourNumThreads);
+		int numThreads = Math.min(budget, names.length);
+		final int innerThreads = Math.max(1, budget / Math.max(1, numThreads));
+		Runnable builder = new Runnable() {
+			public void run() {
+				Environment.setThreadLimit(innerThreads);
+				int i;
+				while ((i = next.getAndIncrement()) < names.length) {
+					PDFTools.setThreadRandom(randoms[i]);
+					try {
+						result[i] = construct(names[i], nodes[i], encoders[i], myApproximatorFactory, evalPoints[i], radii);
+						addDefaultOrigins(result[i]);
+						result[i].setEnsembleFactory(NEFEnsembleFactoryImpl.this);
+					} catch (RuntimeException e) {
+						if (e.getMessage() != null && e.getMessage().equals("Matrix is singular.")) {
+							singular[i] = true;
+						} else {
+							errors[i] = e;
+						}
+					} catch (StructuralException e) {
+						errors[i] = e;
+					} finally {
+						PDFTools.setThreadRandom(null);
+					}
+				}
+			}
+		};
+
+		int oldLimit = Environment.getThreadLimit();
+		Thread[] threads = new Thread[Math.max(0, numThreads - 1)];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread(builder, "EnsembleBuilder" + i);
+			threads[i].setDaemon(true);
+			threads[i].start();
+		}
+		try {
+			builder.run();
+		} finally {
+			PDFTools.setThreadRandom(oldRandom);
+			Environment.setThreadLimit(oldLimit);
+		}
+
+		boolean interrupted = false;
+		for (int i = 0; i < threads.length; i++) {
+			while (threads[i].isAlive()) {
+				try {
+					threads[i].join();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+
+		for (int i = 0; i < names.length; i++) {
+			if (errors[i] instanceof StructuralException) {
+				throw (StructuralException) errors[i];
+			} else if (errors[i] != null) {
+				throw (RuntimeException) errors[i];
+			}
+		}
+
+		//as in make(...), ensembles with singular activities are made again with new nodes
+		try {
+			for (int i = 0; i < names.length; i++) {
+				if (singular[i]) {
+					PDFTools.setThreadRandom(randoms[i]);
+					result[i] = doMake(names[i], n, radii, 1);
+				}
+			}
+		} finally {
+			PDFTools.setThreadRandom(oldRandom);
+		}
+
+		return result;
+	}
+
 	/**
 	 * @see ca.nengo.model.nef.NEFEnsembleFactory#setApproximatorFactory(ca.nengo.math.ApproximatorFactory)
 	 */
@@ -226,26 +391,7 @@ public class NEFEnsembleFactoryImpl implements NEFEnsembleFactory, java.io.Seria
 		try
 		{
 			int dim = radii.length;
-			NEFNode[] nodes = new NEFNode[n];
-
-			if(n < 1) {
-                ourLogger.error("Calling doMake with n = " + n);
-            }
-
-			for (int i = 0; i < n; i++) {
-				Node node = myNodeFactory.make("node" + i);
-				if ( !(node instanceof NEFNode) ) {
-					throw new StructuralException("Nodes must be NEFNodes");
-				}
-				nodes[i] = (NEFNode) node;
-
-				nodes[i].setMode(SimulationMode.CONSTANT_RATE);
-				if ( !nodes[i].getMode().equals(SimulationMode.CONSTANT_RATE) ) {
-					throw new StructuralException("Neurons in an NEFEnsemble must support CONSTANT_RATE mode");
-				}
-
-				nodes[i].setMode(SimulationMode.DEFAULT);
-			}
+			NEFNode[] nodes = makeNodes(n);
 
 			float[][] encoders = myEncoderFactory.genVectors(n, dim);
 			float[][] evalPoints = getEvalPointFactory().genVectors(getNumEvalPoints(dim), dim);
@@ -275,6 +421,31 @@ public class NEFEnsembleFactoryImpl implements NEFEnsembleFactory, java.io.Seria
 		}
 	}
 
+	//makes nodes with the node factory, and checks that they can be used in an NEFEnsemble
+	private NEFNode[] makeNodes(int n) throws StructuralException {
+		NEFNode[] nodes = new NEFNode[n];
+
+		if(n < 1) {
+            ourLogger.error("Calling doMake with n = " + n);
+        }
+
+		for (int i = 0; i < n; i++) {
+			Node node = myNodeFactory.make("node" + i);
+			if ( !(node instanceof NEFNode) ) {
+				throw new StructuralException("Nodes must be NEFNodes");
+			}
+			nodes[i] = (NEFNode) node;
+
+			nodes[i].setMode(SimulationMode.CONSTANT_RATE);
+			if ( !nodes[i].getMode().equals(SimulationMode.CONSTANT_RATE) ) {
+				throw new StructuralException("Neurons in an NEFEnsemble must support CONSTANT_RATE mode");
+			}
+
+			nodes[i].setMode(SimulationMode.DEFAULT);
+		}
+		return nodes;
+	}
+
 	/**
 	 * This method is exposed so that it can be over-ridden to change behaviour.
 	 *
@@ -61,6 +61,7 @@ import ca.nengo.model.nef.NEFEnsembleFactory;
 import ca.nengo.model.nef.NEFNode;
 import ca.nengo.model.neuron.Neuron;
 import ca.nengo.model.neuron.impl.LIFNeuronFactory;
+import ca.nengo.model.neuron.impl.LIFPopulation;
 import ca.nengo.model.neuron.impl.LIFSpikeGenerator;
 import ca.nengo.model.neuron.impl.SpikeGeneratorOrigin;
 import ca.nengo.model.neuron.impl.SpikingNeuron;
@@ -117,6 +118,16 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 
 	private boolean myUseGPU;
 
+	private boolean myUsePopulation;
+	private transient LIFPopulation myPopulation;
+	private transient boolean myPopulationValid;
+
+	//reused by run(...) for encoding
+	private transient float[] myRadialInputs;
+	private transient float[] myBiasValues;
+	private transient float[][] myBiasEncoders;
+	private transient float[] myScaledState;
+
 	/**
 	 * @param name Unique name of Ensemble
 	 * @param nodes Nodes that make up the Ensemble
@@ -154,6 +165,7 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 		myDirectModeIntegrator = new EulerIntegrator(.001f);
 
 		myUseGPU = true;
+		myUsePopulation = false;
 	}
 
 	/**
@@ -177,6 +189,29 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 		return myUseGPU && (getMode() == SimulationMode.DEFAULT || getMode() == SimulationMode.RATE);
 	}
 
+	/**
+	 * Population mode advances all neurons in one loop over flat arrays of state (see LIFPopulation),
+	 * rather than running each Node object in turn. It only takes effect if all the Nodes are LIF
+	 * SpikingNeurons without Node-level Terminations or Noise; otherwise the Nodes are run as usual.
+	 * While it is in effect, Node state is written back to the Node objects when they are requested
+	 * through getNodes(), and the Nodes' "current" Origins are not updated.
+	 *
+	 * @param use Run neurons as a population where possible?
+	 */
+	public void setUsePopulation(boolean use) {
+		synchronized (this) {
+			myUsePopulation = use;
+			invalidatePopulation();
+		}
+	}
+
+	/**
+	 * @return True if neurons are run as a population where possible (see setUsePopulation)
+	 */
+	public boolean getUsePopulation() {
+		return myUsePopulation;
+	}
+
 	/**
 	 * @param radii A list of radii of encoded area along each dimension; uniform
 	 * 		radius along each dimension can be specified with a list of length 1
@@ -242,9 +277,7 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 					String nodeOrigin=origin.getNodeOrigin();
 					// recalculate the decoders
 					if (!myReuseApproximators || !myDecodingApproximators.containsKey(nodeOrigin)) {
-						float[][] outputs = getConstantOutputs(myEvalPoints, nodeOrigin);
-						LinearApproximator approximator = getApproximatorFactory().getApproximator(myEvalPoints, outputs);
-						myDecodingApproximators.put(nodeOrigin, approximator);
+						myDecodingApproximators.put(nodeOrigin, makeApproximator(nodeOrigin));
 					}
 
 					origin.rebuildDecoder(myDecodingApproximators.get(nodeOrigin));
@@ -286,6 +319,14 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
         return myEvalPoints.clone();
     }
 
+	/**
+	 * @return A copy of the evaluation points given to the constructor, before they were scaled by
+	 * 		the radii (these are scaled again by setRadii(...))
+	 */
+	public float[][] getUnscaledEvalPoints() {
+		return myUnscaledEvalPoints.clone();
+	}
+
 	/**
 	 * @param dynamics DynamicalSystem that models internal neuron dynamics at the ensemble level, when
 	 * 		the ensemble runs in direct mode. The input and output dimensions must equal the dimension of the
@@ -329,20 +370,85 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 	 * @throws StructuralException If CONSTANT_RATE is not supported by any Node
 	 */
 	protected float[][] getConstantOutputs(float[][] evalPoints, String origin) throws StructuralException {
-		NEFNode[] nodes = (NEFNode[]) getNodes();
-		float[][] result = new float[nodes.length][];
+		return getConstantOutputs(evalPoints, origin, range(0, getNodes().length));
+	}
+
+	//as above, for the Nodes with the given indices
+	private float[][] getConstantOutputs(float[][] evalPoints, String origin, int[] indices) throws StructuralException {
+		Node[] allNodes = getNodes();
+		NEFNode[] nodes = new NEFNode[indices.length];
+		float[][] encoders = new float[indices.length][];
+		for (int i = 0; i < indices.length; i++) {
+			nodes[i] = (NEFNode) allNodes[indices[i]];
+			encoders[i] = myEncoders[indices[i]];
+		}
 
+		//neurons with a closed-form rate are evaluated together (see TuningCurves), and others one at a time
+		float[][] result = TuningCurves.evaluate(nodes, encoders, myRadiiAreOne ? null : myInverseRadii, evalPoints, origin);
 		for (int i = 0; i < nodes.length; i++) {
-			try {
-				result[i] = getConstantOutput(i, evalPoints, origin);
-			} catch (SimulationException e) {
-				throw new StructuralException("Node " + i + " does not have the Origin " + origin);
+			if (result[i] == null) {
+				try {
+					result[i] = getConstantOutput(indices[i], evalPoints, origin);
+				} catch (SimulationException e) {
+					throw new StructuralException("Node " + indices[i] + " does not have the Origin " + origin);
+				}
 			}
 		}
 
 		return result;
 	}
 
+	/**
+	 * Makes a LinearApproximator for decoding the given Origin of the Nodes at the evaluation points. If the
+	 * ApproximatorFactory is a WeightedCostApproximator.Factory that streams values, Node outputs are found
+	 * in chunks as they are needed, rather than all at once and kept.
+	 *
+	 * @param nodeOrigin Name of Origin from which to collect output for each Node
+	 * @return New LinearApproximator
+	 * @throws StructuralException If CONSTANT_RATE is not supported by any Node
+	 */
+	private LinearApproximator makeApproximator(String nodeOrigin) throws StructuralException {
+		ApproximatorFactory factory = getApproximatorFactory();
+		if (factory instanceof WeightedCostApproximator.Factory && ((WeightedCostApproximator.Factory) factory).getStreaming()) {
+			try {
+				return ((WeightedCostApproximator.Factory) factory).getApproximator(myEvalPoints, new ConstantOutputSource(nodeOrigin));
+			} catch (RuntimeException e) {
+				if (e.getCause() instanceof StructuralException) {
+					throw (StructuralException) e.getCause();
+				}
+				throw e;
+			}
+		}
+
+		float[][] outputs = getConstantOutputs(myEvalPoints, nodeOrigin);
+		return factory.getApproximator(myEvalPoints, outputs);
+	}
+
+	//finds outputs of all Nodes on demand, for streaming WeightedCostApproximators (these read the
+	//Nodes as they are when used, so they are dropped when the Nodes change; see forgetStreamingApproximators())
+	private class ConstantOutputSource implements WeightedCostApproximator.ValueSource {
+
+		private static final long serialVersionUID = 1L;
+
+		private final String myNodeOrigin;
+
+		public ConstantOutputSource(String nodeOrigin) {
+			myNodeOrigin = nodeOrigin;
+		}
+
+		public int getNumComponents() {
+			return getNodes().length;
+		}
+
+		public float[][] getValues(float[][] evalPoints) {
+			try {
+				return getConstantOutputs(evalPoints, myNodeOrigin);
+			} catch (StructuralException e) {
+				throw new RuntimeException(e);
+			}
+		}
+	}
+
 	/**
 	 * @param nodeIndex Index of Node for which to find output at various inputs
 	 * @param evalPoints Vector points at which to find output (each one must have same dimension as
@@ -515,9 +621,7 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 	 */
     public Origin addDecodedOrigin(String name, Function[] functions, String nodeOrigin) throws StructuralException {
 		if (!myReuseApproximators || !myDecodingApproximators.containsKey(nodeOrigin)) {
-			float[][] outputs = getConstantOutputs(myEvalPoints, nodeOrigin);
-			LinearApproximator approximator = getApproximatorFactory().getApproximator(myEvalPoints, outputs);
-			myDecodingApproximators.put(nodeOrigin, approximator);
+			myDecodingApproximators.put(nodeOrigin, makeApproximator(nodeOrigin));
 		}
 
 		DecodedOrigin result = new DecodedOrigin(this, name, getNodes(), nodeOrigin, functions, myDecodingApproximators.get(nodeOrigin));
@@ -923,10 +1027,14 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 		synchronized (this) {
 			try{
 				float[] state = new float[myDimension];
-				Map<String, Float> bias = new HashMap<String, Float>(5);
 
 				//run terminations and sum state ...
 				DecodedTermination[] dts = super.getDecodedTerminations();
+				if (myBiasValues == null || myBiasValues.length < dts.length) {
+					myBiasValues = new float[dts.length];
+					myBiasEncoders = new float[dts.length][];
+				}
+				int numBias = 0;
 				for (DecodedTermination t : dts) {
 					t.run(startTime, endTime);
 					float[] output = t.getOutput();
@@ -934,17 +1042,19 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 					boolean isModulatory = t.getModulatory();
 					//TODO: handle modulatory bias input
 					if (t instanceof BiasTermination) {
-						String baseName = ((BiasTermination) t).getBaseTerminationName();
-						if (!bias.containsKey(baseName)) {
-                            bias.put(baseName, new Float(0));
-                        }
 						if (!isModulatory) {
-                            bias.put(baseName, new Float(bias.get(baseName).floatValue() + output[0]));
-                        }
+							//bias and interneuron terminations both act through the bias encoders
+							String baseName = ((BiasTermination) t).getBaseTerminationName();
+							myBiasValues[numBias] = output[0];
+							myBiasEncoders[numBias] = ((BiasTermination) myDecodedTerminations.get(baseName+BIAS_SUFFIX)).getBiasEncoders();
+							numBias++;
+						}
 					} else {
 						if (!isModulatory) {
-                            state = MU.sum(state, output);
-                        }
+							for (int i = 0; i < state.length; i++) {
+								state[i] += output[i];
+							}
+						}
 					}
 
 				}
@@ -968,10 +1078,18 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 					// TODO Have plasticity work in DIRECT mode
 				} else {
 					//multiply state by encoders (cosine tuning), set radial input of each Neuron and run ...
-					Node[] nodes = getNodes();
-					for (int i = 0; i < nodes.length; i++) {
-						((NEFNode) nodes[i]).setRadialInput(getRadialInput(state, i) +
-						        getBiasInput(bias, myDecodedTerminations, i));
+					LIFPopulation population = getPopulation();
+					if (population != null) {
+						encode(state, numBias, population.getInput());
+					} else {
+						Node[] nodes = super.getNodes();
+						if (myRadialInputs == null || myRadialInputs.length != nodes.length) {
+							myRadialInputs = new float[nodes.length];
+						}
+						encode(state, numBias, myRadialInputs);
+						for (int i = 0; i < nodes.length; i++) {
+							((NEFNode) nodes[i]).setRadialInput(myRadialInputs[i]);
+						}
 					}
 					super.run(startTime, endTime);
 				}
@@ -982,17 +1100,128 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 		}
 	}
 
-	// @param bias Bias input (related to avoidance of negative weights with interneurons)
-	private static float getBiasInput(Map<String, Float> bias, Map<String, DecodedTermination> dt, int node) {
-		float sumBias = 0;
-		Iterator<String> it = bias.keySet().iterator();
-		while (it.hasNext()) {
-			String baseName = it.next();
-			float netBias = bias.get(baseName).floatValue();
-			float biasEncoder = ((BiasTermination) dt.get(baseName+BIAS_SUFFIX)).getBiasEncoders()[node];
-			sumBias += netBias * biasEncoder;
+	/**
+	 * Runs the neurons as a LIFPopulation if population mode is in effect.
+	 *
+	 * @see ca.nengo.model.impl.AbstractEnsemble#runNodes(float, float)
+	 */
+	@Override
+	protected void runNodes(float startTime, float endTime) throws SimulationException {
+		if (myPopulation == null) {
+			super.runNodes(startTime, endTime);
+		} else {
+			myPopulation.run(startTime, endTime);
+			if (myPopulation.getMode() == SimulationMode.DEFAULT) {
+				setSpikePattern(myPopulation.getActivities(), endTime);
+			}
+		}
+	}
+
+	/**
+	 * @return The LIFPopulation that runs this ensemble's neurons, or null if population mode is
+	 * 		off or the neurons are not compatible with it
+	 */
+	private LIFPopulation getPopulation() {
+		if (!myPopulationValid) {
+			Node[] nodes = super.getNodes();
+			myPopulation = (myUsePopulation && LIFPopulation.isCompatible(nodes)) ? new LIFPopulation(nodes) : null;
+			myPopulationValid = true;
+		}
+		return myPopulation;
+	}
+
+	/**
+	 * Writes population state back to the Node objects, and discards the population so that
+	 * it is rebuilt (with fresh parameters) on the next step.
+	 */
+	private void invalidatePopulation() {
+		if (myPopulation != null) {
+			myPopulation.writeState();
+		}
+		myPopulation = null;
+		myPopulationValid = false;
+	}
+
+	/**
+	 * @param nodeOrigin Name of a Node-level Origin
+	 * @return The population that ran the Nodes in the most recent step, if population mode is in
+	 * 		effect and its activities are the output of the given Origin, otherwise null (in which
+	 * 		case the Node Origins must be used)
+	 */
+	LIFPopulation getPopulation(String nodeOrigin) {
+		return Neuron.AXON.equals(nodeOrigin) ? myPopulation : null;
+	}
+
+	/**
+	 * Brings the Node objects up to date if population mode is in effect, since the caller may
+	 * inspect or modify them.
+	 *
+	 * @see ca.nengo.model.impl.AbstractEnsemble#getNodes()
+	 */
+	@Override
+	public Node[] getNodes() {
+		synchronized (this) {
+			invalidatePopulation();
+		}
+		return super.getNodes();
+	}
+
+	@Override
+	protected void fireVisibleChangeEvent() {
+		synchronized (this) {
+			invalidatePopulation();
+		}
+		super.fireVisibleChangeEvent();
+	}
+
+	/**
+	 * @see ca.nengo.model.nef.impl.DecodableEnsembleImpl#getHistory(java.lang.String)
+	 */
+	@Override
+	public TimeSeries getHistory(String stateName) throws SimulationException {
+		synchronized (this) {
+			if (myPopulation != null && !myDecodedOrigins.containsKey(stateName)
+					&& !myDecodedTerminations.containsKey(stateName) && !stateName.endsWith(":STP")) {
+				myPopulation.writeState();
+			}
+		}
+		return super.getHistory(stateName);
+	}
+
+	/**
+	 * Finds the radial input to every node in one pass: encoders times the (scaled) state, plus
+	 * bias encoders times bias input (related to avoidance of negative weights with interneurons).
+	 *
+	 * @param state State vector
+	 * @param numBias Number of bias inputs in myBiasValues and myBiasEncoders
+	 * @param result Array into which radial input to each node is written
+	 */
+	private void encode(float[] state, int numBias, float[] result) {
+		float[] scaled = state;
+		if (!myRadiiAreOne) {
+			if (myScaledState == null || myScaledState.length != state.length) {
+				myScaledState = new float[state.length];
+			}
+			scaled = myScaledState;
+			for (int j = 0; j < state.length; j++) {
+				scaled[j] = state[j] * myInverseRadii[j];
+			}
+		}
+
+		float[][] encoders = myEncoders;
+		float[] biasValues = myBiasValues;
+		float[][] biasEncoders = myBiasEncoders;
+		for (int i = 0; i < result.length; i++) {
+			float[] encoder = encoders[i];
+			float sum = 0;
+			for (int j = 0; j < scaled.length; j++) {
+				sum += encoder[j] * scaled[j];
+			}
+			for (int b = 0; b < numBias; b++) {
+				sum += biasValues[b] * biasEncoders[b][i];
+			}
+			result[i] = sum;
 		}
-		return sumBias;
 	}
 
 	/**
@@ -1002,10 +1231,18 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 	 */
 	public float getRadialInput(float[] state, int node) {
 		//scale state to unit circle if necessary
-		if (!myRadiiAreOne) {
-            state = MU.prodElementwise(state, myInverseRadii);
-        }
-		return MU.prod(state, myEncoders[node]);
+		float[] encoder = myEncoders[node];
+		float result = 0;
+		if (myRadiiAreOne) {
+			for (int j = 0; j < state.length; j++) {
+				result += state[j] * encoder[j];
+			}
+		} else {
+			for (int j = 0; j < state.length; j++) {
+				result += state[j] * myInverseRadii[j] * encoder[j];
+			}
+		}
+		return result;
 	}
 
 	/**
@@ -1046,6 +1283,10 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 	 */
 	@Override
     public void reset(boolean randomize) {
+		synchronized (this) {
+			myPopulation = null;
+			myPopulationValid = false;
+		}
 		super.reset(randomize);
 
 		
@@ -1078,6 +1319,12 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 		return getNodes().length;
 	}
 
+	/**
+	 * Existing neurons (and their encoders) are kept, and neurons are added or removed at the end.
+	 * Decoders are updated incrementally where possible (see updateDecoders(...)).
+	 *
+	 * @see ca.nengo.model.nef.NEFEnsemble#setNodeCount(int)
+	 */
     public void setNodeCount(int n) throws StructuralException {
 		if (myEnsembleFactory==null) {
 			throw new StructuralException("Error changing node count: EnsembleFactory has not been set");
@@ -1086,12 +1333,14 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 			throw new StructuralException("Error changing node count: Cannot have "+n+" neurons");
 		}
 
-
+		NEFNode[] oldNodes = (NEFNode[]) getNodes();
+		int numKept = Math.min(n, oldNodes.length);
 		NEFNode[] nodes = new NEFNode[n];
+		System.arraycopy(oldNodes, 0, nodes, 0, numKept);
 
 		NodeFactory nodeFactory=myEnsembleFactory.getNodeFactory();
 
-		for (int i = 0; i < n; i++) {
+		for (int i = numKept; i < n; i++) {
 			Node node = nodeFactory.make("node" + i);
 			if ( !(node instanceof NEFNode) ) {
 				throw new StructuralException("Nodes must be NEFNodes");
@@ -1107,30 +1356,84 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 		}
 		redefineNodes(nodes);
 
-		myEncoders = myEnsembleFactory.getEncoderFactory().genVectors(n, getDimension());
+		float[][] encoders = new float[n][];
+		System.arraycopy(myEncoders, 0, encoders, 0, numKept);
+		if (n > numKept) {
+			float[][] newEncoders = myEnsembleFactory.getEncoderFactory().genVectors(n - numKept, getDimension());
+			System.arraycopy(newEncoders, 0, encoders, numKept, newEncoders.length);
+		}
+		myEncoders = encoders;
 
+		updateDecoders(oldNodes.length, new int[0]);
 
-		myDecodingApproximators.clear();
+		fireVisibleChangeEvent();
+	}
 
-		// update the decoders for any existing origins
-		Origin[] origins = getOrigins();
-		for (Origin origin2 : origins) {
+	/**
+	 * Recalculates the decoders of all decoded Origins after neurons have been changed, added or
+	 * removed. Where an existing approximator allows it (see WeightedCostApproximator.replaceComponents(...)
+	 * etc.), it is updated for just the neurons that have changed, rather than being rebuilt.
+	 *
+	 * @param oldCount Number of neurons before any were added or removed (at the end)
+	 * @param changed Indices of neurons (among the first oldCount) whose outputs have changed
+	 * @throws StructuralException if neuron outputs can't be found
+	 */
+	private void updateDecoders(int oldCount, int[] changed) throws StructuralException {
+		NEFNode[] nodes = (NEFNode[]) getNodes();
+		int n = nodes.length;
+		Map<String, LinearApproximator> approximators = new HashMap<String, LinearApproximator>(10);
+
+		for (Origin origin2 : getOrigins()) {
 			if (origin2 instanceof DecodedOrigin) {
-				DecodedOrigin origin=((DecodedOrigin) origin2);
-				String nodeOrigin=origin.getNodeOrigin();
-				// recalculate the decoders
-				if (!myReuseApproximators || !myDecodingApproximators.containsKey(nodeOrigin)) {
-					float[][] outputs = getConstantOutputs(myEvalPoints, nodeOrigin);
-					LinearApproximator approximator = getApproximatorFactory().getApproximator(myEvalPoints, outputs);
-					myDecodingApproximators.put(nodeOrigin, approximator);
+				DecodedOrigin origin = (DecodedOrigin) origin2;
+				String nodeOrigin = origin.getNodeOrigin();
+
+				LinearApproximator approximator = approximators.get(nodeOrigin);
+				if (approximator == null || !myReuseApproximators) {
+					LinearApproximator old = myDecodingApproximators.get(nodeOrigin);
+					if (myReuseApproximators && old instanceof WeightedCostApproximator
+							&& !((WeightedCostApproximator) old).isStreaming() && old.getValues().length == oldCount) {
+						WeightedCostApproximator wca = (WeightedCostApproximator) old;
+						if (changed.length > 0) {
+							wca.replaceComponents(changed, getConstantOutputs(myEvalPoints, nodeOrigin, changed));
+						}
+						if (n < oldCount) {
+							wca.removeComponents(range(n, oldCount));
+						} else if (n > oldCount) {
+							wca.addComponents(getConstantOutputs(myEvalPoints, nodeOrigin, range(oldCount, n)));
+						}
+						approximator = wca;
+					} else {
+						approximator = makeApproximator(nodeOrigin);
+					}
+					approximators.put(nodeOrigin, approximator);
 				}
-					origin.redefineNodes(nodes,myDecodingApproximators.get(nodeOrigin));
+				origin.redefineNodes(nodes, approximator);
 			}
 		}
 
-		fireVisibleChangeEvent();
+		myDecodingApproximators.clear();
+		myDecodingApproximators.putAll(approximators);
+	}
 
+	//drops cached approximators that stream Node outputs, which would otherwise disagree with the
+	//GAMMA they found from the outputs before the Nodes changed
+	private void forgetStreamingApproximators() {
+		Iterator<LinearApproximator> it = myDecodingApproximators.values().iterator();
+		while (it.hasNext()) {
+			LinearApproximator approximator = it.next();
+			if (approximator instanceof WeightedCostApproximator && ((WeightedCostApproximator) approximator).isStreaming()) {
+				it.remove();
+			}
+		}
+	}
 
+	private static int[] range(int start, int end) {
+		int[] result = new int[end - start];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = start + i;
+		}
+		return result;
 	}
 
 	@Override
@@ -1200,6 +1503,12 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 		result.myInverseRadii = myInverseRadii.clone();
 		result.myRadii = myRadii.clone();
 		result.myUnscaledEvalPoints = MU.clone(myUnscaledEvalPoints);
+		result.myPopulation = null;
+		result.myPopulationValid = false;
+		result.myRadialInputs = null;
+		result.myBiasValues = null;
+		result.myBiasEncoders = null;
+		result.myScaledState = null;
 		return result;
 	}
 
@@ -1291,23 +1600,59 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 	 * @param saveRelays if true, do nothing if there is only one node in this population
 	 */
 	public void killNeurons(float killrate, boolean saveRelays)
+	{
+		kill(killrate, saveRelays);
+	}
+
+	/**
+	 * Stops a given percentage of neurons in this population from firing, optionally re-optimizing
+	 * the decoders of the surviving neurons to compensate. Decoders are updated for just the killed
+	 * neurons where possible (see updateDecoders(...)), which is much faster than rebuilding them
+	 * when few neurons are killed.
+	 *
+	 * @param killrate the percentage of neurons to stop firing
+	 * @param saveRelays if true, do nothing if there is only one node in this population
+	 * @param updateDecoders if true, recalculate decoders without the killed neurons
+	 * @throws StructuralException if the decoders can't be recalculated
+	 */
+	public void killNeurons(float killrate, boolean saveRelays, boolean updateDecoders) throws StructuralException
+	{
+		int[] killed = kill(killrate, saveRelays);
+		if (updateDecoders && killed.length > 0) {
+			updateDecoders(getNodes().length, killed);
+		}
+	}
+
+	//kills neurons as in killNeurons(...), and returns the indices of neurons that were killed
+	private int[] kill(float killrate, boolean saveRelays)
 	{
 		Random rand = new Random();
 
 		Node[] neurons = getNodes();
 
 		if(saveRelays && (neurons.length == 1)) {
-            return;
+            return new int[0];
         }
 
-		for (Node neuron : neurons) {
+		int[] killed = new int[neurons.length];
+		int numKilled = 0;
+		for (int i = 0; i < neurons.length; i++) {
 			if(rand.nextFloat() < killrate)
 			{
-				SpikingNeuron n = (SpikingNeuron)neuron;
+				SpikingNeuron n = (SpikingNeuron)neurons[i];
 				n.setBias(0.0f);
 				n.setScale(0.0f);
+				killed[numKilled++] = i;
 			}
 		}
+
+		if (numKilled > 0) {
+			forgetStreamingApproximators();
+		}
+
+		int[] result = new int[numKilled];
+		System.arraycopy(killed, 0, result, 0, numKilled);
+		return result;
 	}
 
 //	/**
@@ -74,7 +74,7 @@ public class NEFUtil {
 				for (int i = 0; i < input.length; i++) {
 					if (mode.equals(SimulationMode.DIRECT) || mode.equals(SimulationMode.EXPRESS)) {
 						origin.run(input[i], 0f, 1f);
-						output[i] = ((RealOutput) origin.getValues()).getValues();					
+						output[i] = ((RealOutput) origin.getValues()).getValues().clone();					
 					} else {
 						for (int j = 0; j < nodes.length; j++) {
 							float radialInput = 0;
@@ -92,7 +92,7 @@ public class NEFUtil {
 							}
 						}
 						origin.run(null, (float) i * dt, (float) (i+1) * dt);
-						output[i] = ((RealOutput) origin.getValues()).getValues();
+						output[i] = ((RealOutput) origin.getValues()).getValues().clone();
 					}				
 				}
 				ensemble.setMode(oldMode);
@@ -0,0 +1,226 @@
+/*
+The contents of this file are subject to the Mozilla Public License Version 1.1
+(the "License"); you may not use this file except in compliance with the License.
+You may obtain a copy of the License at http://www.mozilla.org/MPL/
+
+Software distributed under the License is distributed on an "AS IS" basis, WITHOUT
+WARRANTY OF ANY KIND, either express or implied. See the License for the specific
+language governing rights and limitations under the License.
+
+The Original Code is "TuningCurves.java". Description:
+"Bulk evaluation of the constant-rate outputs of NEF neurons"
+
+The Initial Developer of the Original Code is Bryan Tripp & Centre for Theoretical Neuroscience, University of Waterloo. Copyright (C) 2006-2008. All Rights Reserved.
+
+Alternatively, the contents of this file may be used under the terms of the GNU
+Public License license (the GPL License), in which case the provisions of GPL
+License are applicable  instead of those above. If you wish to allow use of your
+version of this file only under the terms of the GPL License and not to allow
+others to use your version of this file under the MPL, indicate your decision
+by deleting the provisions above and replace  them with the notice and other
+provisions required by the GPL License.  If you do not delete the provisions above,
+a recipient may use your version of this file under either the MPL or the GPL License.
+*/
+
+package ca.nengo.model.nef.impl;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ca.nengo.model.nef.NEFNode;
+import ca.nengo.model.neuron.Neuron;
+import ca.nengo.model.neuron.impl.ExpandableSpikingNeuron;
+import ca.nengo.model.neuron.impl.LIFSpikeGenerator;
+import ca.nengo.model.neuron.impl.LinearSynapticIntegrator;
+import ca.nengo.model.neuron.impl.SpikingNeuron;
+import ca.nengo.util.Environment;
+
+/**
+ * <p>Finds the constant-rate outputs of an ensemble's neurons at many evaluation points at once,
+ * for neurons that have a closed-form rate (currently plain LIF neurons with no synaptic input or
+ * noise). This gives the same values as running each neuron in CONSTANT_RATE mode at each point,
+ * without changing the neurons' state, and neurons are split between threads.</p>
+ *
+ * <p>Neurons without a closed form are left for the caller to evaluate one at a time.</p>
+ */
+public class TuningCurves {
+
+	private static final int CHUNK_NODES = 16;
+	private static final long MIN_PARALLEL_WORK = 100000; //fewer node-points are evaluated on the calling thread
+
+	private static int ourNumThreads = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * @return Maximum number of threads used to evaluate each ensemble
+	 */
+	public static int getNumThreads() {
+		return ourNumThreads;
+	}
+
+	/**
+	 * @param numThreads Maximum number of threads used to evaluate each ensemble
+	 */
+	public static void setNumThreads(int numThreads) {
+		ourNumThreads = Math.max(1, numThreads);
+	}
+
+	/**
+	 * @param node A neuron
+	 * @param origin Name of an Origin of the neuron
+	 * @return True if the constant-rate output of the given Origin can be found in closed form
+	 */
+	public static boolean hasClosedForm(NEFNode node, String origin) {
+		if (!Neuron.AXON.equals(origin)
+				|| (node.getClass() != SpikingNeuron.class && node.getClass() != ExpandableSpikingNeuron.class)) {
+			return false;
+		}
+
+		SpikingNeuron neuron = (SpikingNeuron) node;
+		return neuron.getNoise() == null
+			&& neuron.getIntegrator().getClass() == LinearSynapticIntegrator.class
+			&& neuron.getTerminations().length == 0
+			&& neuron.getGenerator().getClass() == LIFSpikeGenerator.class;
+	}
+
+	/**
+	 * @param nodes Neurons of an ensemble
+	 * @param encoders Encoding vector of each neuron
+	 * @param inverseRadii Inverse of the ensemble's radius in each dimension (null if all radii are one)
+	 * @param evalPoints Points at which to find output (each with the dimension of the encoders)
+	 * @param origin Name of the Origin from which to collect output for each neuron
+	 * @return Output of each neuron at each evaluation point (1st dimension corresponds to neuron),
+	 * 		or null for neurons that don't have a closed form (see hasClosedForm(...))
+	 */
+	public static float[][] evaluate(NEFNode[] nodes, float[][] encoders, float[] inverseRadii, float[][] evalPoints, String origin) {
+		float[][] result = new float[nodes.length][];
+
+		//parameters of neurons that have a closed form
+		int[] indices = new int[nodes.length];
+		float[] scales = new float[nodes.length];
+		float[] biases = new float[nodes.length];
+		float[] tauRCs = new float[nodes.length];
+		float[] tauRefs = new float[nodes.length];
+		int numClosed = 0;
+		for (int i = 0; i < nodes.length; i++) {
+			if (hasClosedForm(nodes[i], origin)) {
+				SpikingNeuron neuron = (SpikingNeuron) nodes[i];
+				LIFSpikeGenerator generator = (LIFSpikeGenerator) neuron.getGenerator();
+				indices[numClosed] = i;
+				scales[numClosed] = neuron.getScale();
+				biases[numClosed] = neuron.getBias();
+				tauRCs[numClosed] = generator.getTauRC();
+				tauRefs[numClosed] = generator.getTauRef();
+				numClosed++;
+			}
+		}
+		if (numClosed == 0) {
+			return result;
+		}
+
+		//points are scaled to the unit circle once, rather than for each neuron
+		float[][] points = evalPoints;
+		if (inverseRadii != null) {
+			points = new float[evalPoints.length][];
+			for (int p = 0; p < evalPoints.length; p++) {
+				points[p] = new float[evalPoints[p].length];
+				for (int j = 0; j < points[p].length; j++) {
+					points[p][j] = evalPoints[p][j] * inverseRadii[j];
+				}
+			}
+		}
+
+		Evaluator evaluator = new Evaluator(indices, numClosed, scales, biases, tauRCs, tauRefs, encoders, points, result);
+		int numThreads = (long) numClosed * evalPoints.length < MIN_PARALLEL_WORK ? 1
+				: Math.min(Environment.limitThreads(ourNumThreads), (numClosed + CHUNK_NODES - 1) / CHUNK_NODES);
+		Thread[] threads = new Thread[numThreads - 1];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread(evaluator, "TuningCurves" + i);
+			threads[i].setDaemon(true);
+			threads[i].start();
+		}
+		evaluator.run();
+
+		boolean interrupted = false;
+		for (int i = 0; i < threads.length; i++) {
+			while (threads[i].isAlive()) {
+				try {
+					threads[i].join();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		if (evaluator.myError != null) {
+			throw evaluator.myError;
+		}
+
+		return result;
+	}
+
+	//evaluates chunks of neurons until there are none left
+	private static class Evaluator implements Runnable {
+
+		private final int[] myIndices;
+		private final int myNumNodes;
+		private final float[] myScales;
+		private final float[] myBiases;
+		private final float[] myTauRCs;
+		private final float[] myTauRefs;
+		private final float[][] myEncoders;
+		private final float[][] myPoints;
+		private final float[][] myResult;
+		private final AtomicInteger myNextNode = new AtomicInteger();
+		private volatile RuntimeException myError;
+
+		public Evaluator(int[] indices, int numNodes, float[] scales, float[] biases, float[] tauRCs, float[] tauRefs,
+				float[][] encoders, float[][] points, float[][] result) {
+			myIndices = indices;
+			myNumNodes = numNodes;
+			myScales = scales;
+			myBiases = biases;
+			myTauRCs = tauRCs;
+			myTauRefs = tauRefs;
+			myEncoders = encoders;
+			myPoints = points;
+			myResult = result;
+		}
+
+		public void run() {
+			try {
+				int start;
+				while ((start = myNextNode.getAndAdd(CHUNK_NODES)) < myNumNodes && myError == null) {
+					int end = Math.min(start + CHUNK_NODES, myNumNodes);
+					for (int n = start; n < end; n++) {
+						myResult[myIndices[n]] = evaluate(n);
+					}
+				}
+			} catch (RuntimeException e) {
+				myError = e;
+			}
+		}
+
+		//same arithmetic as SpikingNeuron.run(...) and LIFSpikeGenerator in CONSTANT_RATE mode
+		private float[] evaluate(int n) {
+			float[] encoder = myEncoders[myIndices[n]];
+			float scale = myScales[n];
+			float bias = myBiases[n];
+			float tauRC = myTauRCs[n];
+			float tauRef = myTauRefs[n];
+
+			float[] result = new float[myPoints.length];
+			for (int p = 0; p < myPoints.length; p++) {
+				float[] point = myPoints[p];
+				float radialInput = 0;
+				for (int j = 0; j < point.length; j++) {
+					radialInput += point[j] * encoder[j];
+				}
+				float current = bias + scale * radialInput;
+				result[p] = current > 1 ? 1f / ( tauRef - tauRC * ((float) Math.log(1 - 1/current)) ) : 0;
+			}
+			return result;
+		}
+	}
+
+}
@@ -87,15 +87,9 @@ public class ALIFSpikeGenerator implements SpikeGenerator, Probeable {
 	private float myN;
 	private float myTimeSinceLastSpike;
 
-	private float[] myTime;
-	private float[] myVHistory;
-	private float[] myNHistory;
-	private float[] myRateHistory;
-
-	private static final float[] ourNullTime = new float[0];
-	private static final float[] ourNullVHistory = new float[0];
-	private static final float[] ourNullNHistory = new float[0];
-	private static final float[] ourNullRateHistory = new float[0];
+	//history is one sample per step, so it is kept as scalars and only copied into arrays on request
+	private float myTime; //NaN before the first step
+	private float myRate;
 
 	/**
 	 * Uses default parameters
@@ -209,7 +203,7 @@ public class ALIFSpikeGenerator implements SpikeGenerator, Probeable {
 				myV = 0;
 			}
 
-			myRateHistory = new float[]{spikeTime>=0 ? 1f/dt : 0};
+			myRate = spikeTime>=0 ? 1f/dt : 0;
 
 			if (myMode.equals(SimulationMode.DEFAULT)) {
                 result = new SpikeOutputImpl(new boolean[]{spikeTime>=0f}, Units.SPIKES, time[time.length-1]);
@@ -220,18 +214,16 @@ public class ALIFSpikeGenerator implements SpikeGenerator, Probeable {
 			float rate = I > 1 ? 1f / ( myTauRef - myTauRC * ((float) Math.log(1f - 1f/I)) ) : 0;
 			myN += (rate * dt) * myIncN; //analog of # spikes X increment
 
-			myRateHistory = new float[]{rate};
+			myRate = rate;
 			result = new RealOutputImpl(new float[]{rate}, Units.SPIKES_PER_S, time[time.length-1]);
 		} else {
 			float rate = I_in > 1 ? 1f / ( myTauRef - myTauRC * ((float) Math.log(1f - 1f/I_in)) ) : 0;
 
-			myRateHistory = new float[]{rate};
+			myRate = rate;
 			result = new RealOutputImpl(new float[]{rate}, Units.SPIKES_PER_S, time[time.length-1]);
 		}
 
-		myTime = new float[]{time[time.length-1]};
-		myNHistory = new float[]{myN};
-		myVHistory = new float[]{myV};
+		myTime = time[time.length-1];
 
 		return result;
 	}
@@ -274,10 +266,8 @@ public class ALIFSpikeGenerator implements SpikeGenerator, Probeable {
 		myTimeSinceLastSpike = myTauRef;
 		myN = 0;
 		myV = myInitialVoltage;
-		myTime = ourNullTime;
-		myVHistory = ourNullVHistory;
-		myNHistory = ourNullNHistory;
-		myRateHistory = ourNullRateHistory;
+		myTime = Float.NaN;
+		myRate = 0;
 	}
 
 	/**
@@ -301,13 +291,15 @@ public class ALIFSpikeGenerator implements SpikeGenerator, Probeable {
 	 */
 	public TimeSeries getHistory(String stateName) throws SimulationException {
 		TimeSeries1D result = null;
+		boolean hasRun = !Float.isNaN(myTime);
+		float[] times = hasRun ? new float[]{myTime} : new float[0];
 
 		if (stateName.equals("V")) {
-			result = new TimeSeries1DImpl(myTime, myVHistory, Units.AVU);
+			result = new TimeSeries1DImpl(times, hasRun ? new float[]{myV} : new float[0], Units.AVU);
 		} else if (stateName.equalsIgnoreCase("N")) {
-			result = new TimeSeries1DImpl(myTime, myNHistory, Units.UNK);
+			result = new TimeSeries1DImpl(times, hasRun ? new float[]{myN} : new float[0], Units.UNK);
 		} else if (stateName.equalsIgnoreCase("rate")) {
-			result = new TimeSeries1DImpl(myTime, myRateHistory, Units.SPIKES_PER_S);
+			result = new TimeSeries1DImpl(times, hasRun ? new float[]{myRate} : new float[0], Units.SPIKES_PER_S);
 		} else {
 			throw new SimulationException("The state name " + stateName + " is unknown.");
 		}
@@ -336,12 +328,7 @@ public class ALIFSpikeGenerator implements SpikeGenerator, Probeable {
     
 	@Override
 	public SpikeGenerator clone() throws CloneNotSupportedException {
-		ALIFSpikeGenerator result = (ALIFSpikeGenerator) super.clone();
-		result.myNHistory = myNHistory.clone();
-		result.myRateHistory = myRateHistory.clone();
-		result.myTime = myTime.clone();
-		result.myVHistory = myVHistory.clone();
-		return result;
+		return (ALIFSpikeGenerator) super.clone();
 	}
 
 	/**
@@ -41,6 +41,7 @@ import java.util.Properties;
 
 import ca.nengo.math.impl.InterpolatedFunction;
 import ca.nengo.model.InstantaneousOutput;
+import ca.nengo.model.OnDemandProbeable;
 import ca.nengo.model.Probeable;
 import ca.nengo.model.SimulationException;
 import ca.nengo.model.SimulationMode;
@@ -63,9 +64,12 @@ import ca.nengo.util.impl.TimeSeries1DImpl;
  * u is a membrane recovery variable;
  * a, b, c, and d are modifiable parameters</p>
  *
+ * <p>The history of v and u over each step is only kept while they are probed (see
+ * enableHistory(...)). Otherwise getHistory(...) gives their values at the end of the most recent step.</p>
+ *
  * @author Hussein, Bryan
  */
-public class IzhikevichSpikeGenerator implements SpikeGenerator, Probeable {
+public class IzhikevichSpikeGenerator implements SpikeGenerator, OnDemandProbeable {
 
 	private static final long serialVersionUID = 1L;
 
@@ -184,9 +188,11 @@ public class IzhikevichSpikeGenerator implements SpikeGenerator, Probeable {
 	private double myVoltage;
 	private double myRecovery;
 
-	private float[] myTime;
+	private float[] myTime; //null if no history was kept in the most recent step
 	private float[] myVoltageHistory;
 	private float[] myRecoveryHistory;
+	private float myEndTime; //end of the most recent step
+	private int myNumHistoryRequests;
 	private float mySpikeRate;
 
 	private SimulationMode myMode;
@@ -363,14 +369,22 @@ public class IzhikevichSpikeGenerator implements SpikeGenerator, Probeable {
 		int steps = (int) Math.ceil((len - 1e-5) / myMaxTimeStep);
 		float dt = len / steps;
 
-		myTime = new float[steps];
-		myVoltageHistory = new float[steps];
-		myRecoveryHistory = new float[steps];
+		boolean keepHistory = myNumHistoryRequests > 0;
+		if (keepHistory) {
+			myTime = new float[steps];
+			myVoltageHistory = new float[steps];
+			myRecoveryHistory = new float[steps];
+		} else {
+			myTime = null;
+			myVoltageHistory = null;
+			myRecoveryHistory = null;
+		}
+		myEndTime = time[time.length - 1];
 
 		boolean spiking = false;
 		for (int i = 0; i < steps; i++) {
-			myTime[i] = time[0] + i*dt;
-			double I = InterpolatedFunction.interpolate(time, current, myTime[i]+dt/2f);
+			float t = time[0] + i*dt;
+			double I = InterpolatedFunction.interpolate(time, current, t+dt/2f);
 
 			if (myVoltage >= Vth) {
 				spiking = true;
@@ -380,10 +394,14 @@ public class IzhikevichSpikeGenerator implements SpikeGenerator, Probeable {
 
 			myVoltage += 500 * dt * (0.04*myVoltage*myVoltage + 5*myVoltage + 140 - myRecovery + I);
 			myVoltage += 500 * dt * (0.04*myVoltage*myVoltage + 5*myVoltage + 140 - myRecovery + I);
-			myVoltageHistory[i] = (float) myVoltage;
 
 			myRecovery += 1000 * dt * (myA*(myB*myVoltage - myRecovery));
-			myRecoveryHistory[i] = (float) myRecovery;
+
+			if (keepHistory) {
+				myTime[i] = t;
+				myVoltageHistory[i] = (float) myVoltage;
+				myRecoveryHistory[i] = (float) myRecovery;
+			}
 		}
 
 		return spiking;
@@ -396,9 +414,17 @@ public class IzhikevichSpikeGenerator implements SpikeGenerator, Probeable {
 		TimeSeries1D result = null;
 
 		if (stateName.equals(V)) {
-			result = new TimeSeries1DImpl(myTime, myVoltageHistory, Units.AVU);
+			if (myTime == null) {
+				result = new TimeSeries1DImpl(new float[]{myEndTime}, new float[]{(float) myVoltage}, Units.AVU);
+			} else {
+				result = new TimeSeries1DImpl(myTime, myVoltageHistory, Units.AVU);
+			}
 		} else if (stateName.equals(U)){
-			result = new TimeSeries1DImpl(myTime, myRecoveryHistory, Units.UNK);
+			if (myTime == null) {
+				result = new TimeSeries1DImpl(new float[]{myEndTime}, new float[]{(float) myRecovery}, Units.UNK);
+			} else {
+				result = new TimeSeries1DImpl(myTime, myRecoveryHistory, Units.UNK);
+			}
 		} else {
 			throw new SimulationException("The state name " + stateName + " is unknown.");
 		}
@@ -406,6 +432,24 @@ public class IzhikevichSpikeGenerator implements SpikeGenerator, Probeable {
 		return result;
 	}
 
+	/**
+	 * @see ca.nengo.model.OnDemandProbeable#enableHistory(java.lang.String)
+	 */
+	public void enableHistory(String stateName) {
+		if (stateName.equals(V) || stateName.equals(U)) {
+			myNumHistoryRequests++;
+		}
+	}
+
+	/**
+	 * @see ca.nengo.model.OnDemandProbeable#disableHistory(java.lang.String)
+	 */
+	public void disableHistory(String stateName) {
+		if ((stateName.equals(V) || stateName.equals(U)) && myNumHistoryRequests > 0) {
+			myNumHistoryRequests--;
+		}
+	}
+
 	/**
 	 * @see Probeable#listStates()
 	 */
@@ -433,9 +477,12 @@ public class IzhikevichSpikeGenerator implements SpikeGenerator, Probeable {
 	@Override
 	public SpikeGenerator clone() throws CloneNotSupportedException {
 		IzhikevichSpikeGenerator result = (IzhikevichSpikeGenerator) super.clone();
-		result.myTime = myTime.clone();
-		result.myVoltageHistory = myVoltageHistory.clone();
-		result.myRecoveryHistory = myRecoveryHistory.clone();
+		if (myTime != null) {
+			result.myTime = myTime.clone();
+			result.myVoltageHistory = myVoltageHistory.clone();
+			result.myRecoveryHistory = myRecoveryHistory.clone();
+		}
+		result.myNumHistoryRequests = 0; //the copy isn't probed
 		return result;
 	}
 
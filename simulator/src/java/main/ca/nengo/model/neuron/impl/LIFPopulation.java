@@ -0,0 +1,306 @@
+/*
+The contents of this file are subject to the Mozilla Public License Version 1.1
+(the "License"); you may not use this file except in compliance with the License.
+You may obtain a copy of the License at http://www.mozilla.org/MPL/
+
+Software distributed under the License is distributed on an "AS IS" basis, WITHOUT
+WARRANTY OF ANY KIND, either express or implied. See the License for the specific
+language governing rights and limitations under the License.
+
+The Original Code is "LIFPopulation.java". Description:
+"Structure-of-arrays state for a population of LIF SpikingNeurons, advanced in a single loop"
+
+The Initial Developer of the Original Code is Bryan Tripp & Centre for Theoretical Neuroscience, University of Waterloo. Copyright (C) 2006-2008. All Rights Reserved.
+
+Alternatively, the contents of this file may be used under the terms of the GNU
+Public License license (the GPL License), in which case the provisions of GPL
+License are applicable  instead of those above. If you wish to allow use of your
+version of this file only under the terms of the GPL License and not to allow
+others to use your version of this file under the MPL, indicate your decision
+by deleting the provisions above and replace  them with the notice and other
+provisions required by the GPL License.  If you do not delete the provisions above,
+a recipient may use your version of this file under either the MPL or the GPL License.
+*/
+
+package ca.nengo.model.neuron.impl;
+
+import ca.nengo.model.InstantaneousOutput;
+import ca.nengo.model.Node;
+import ca.nengo.model.SimulationMode;
+import ca.nengo.model.StructuralException;
+import ca.nengo.model.Units;
+import ca.nengo.model.impl.RealOutputImpl;
+import ca.nengo.model.impl.SpikeOutputImpl;
+import ca.nengo.model.neuron.Neuron;
+
+/**
+ * <p>Keeps the state and parameters of a population of LIF SpikingNeurons in flat primitive
+ * arrays, and advances all of them in one loop. This gives the same results as running each
+ * SpikingNeuron in turn, without the per-object dispatch.</p>
+ *
+ * <p>The population only applies to SpikingNeurons with a LinearSynapticIntegrator that has
+ * no Terminations, a LIFSpikeGenerator, and no Noise (see isCompatible(...)), since in that case
+ * the current into each generator is constant over a step. Parameters are read from the
+ * neurons at construction. Spiking or rate output is passed on to each neuron's axon Origin
+ * every step, but the remaining neuron state (voltage, refractory time) is only written back
+ * when writeState(...) is called.</p>
+ */
+public class LIFPopulation {
+
+	private static final float Vth = 1;
+
+	private final SpikingNeuron[] myNeurons;
+	private final LIFSpikeGenerator[] myGenerators;
+	private final SpikeGeneratorOrigin[] myOrigins;
+	private final SimulationMode myMode;
+	private final float myIntegratorStepLimit;
+	private final float myGeneratorStepLimit;
+
+	private final float[] myBias;
+	private final float[] myScale;
+	private final float[] myInverseTauRC;
+	private final float[] myTauRC;
+	private final float[] myTauRef;
+
+	private final float[] myVoltage;
+	private final float[] myTimeSinceLastSpike;
+	private final float[] myInput;
+	private final float[] myActivities;
+	private final int[] mySpikeIndices;
+	private int myNumSpikes;
+	private float myTime;
+
+	/**
+	 * @param nodes Neurons that make up the population (must satisfy isCompatible(nodes))
+	 */
+	public LIFPopulation(Node[] nodes) {
+		if (!isCompatible(nodes)) {
+			throw new IllegalArgumentException("Nodes must be LIF SpikingNeurons with matching time steps, "
+					+ "no Terminations and no Noise");
+		}
+
+		int n = nodes.length;
+		myNeurons = new SpikingNeuron[n];
+		myGenerators = new LIFSpikeGenerator[n];
+		myOrigins = new SpikeGeneratorOrigin[n];
+		myBias = new float[n];
+		myScale = new float[n];
+		myInverseTauRC = new float[n];
+		myTauRC = new float[n];
+		myTauRef = new float[n];
+		myVoltage = new float[n];
+		myTimeSinceLastSpike = new float[n];
+		myInput = new float[n];
+		myActivities = new float[n];
+		mySpikeIndices = new int[n];
+
+		for (int i = 0; i < n; i++) {
+			SpikingNeuron neuron = (SpikingNeuron) nodes[i];
+			LIFSpikeGenerator generator = (LIFSpikeGenerator) neuron.getGenerator();
+			myNeurons[i] = neuron;
+			myGenerators[i] = generator;
+			try {
+				myOrigins[i] = (SpikeGeneratorOrigin) neuron.getOrigin(Neuron.AXON);
+			} catch (StructuralException e) {
+				throw new Error("SpikingNeuron should always have an axon Origin", e);
+			}
+			myBias[i] = neuron.getBias();
+			myScale[i] = neuron.getScale();
+			myTauRC[i] = generator.getTauRC();
+			myInverseTauRC[i] = 1 / generator.getTauRC();
+			myTauRef[i] = generator.getTauRef();
+			myVoltage[i] = generator.getVoltage();
+			myTimeSinceLastSpike[i] = generator.getTimeSinceLastSpike();
+		}
+
+		myMode = (n > 0) ? myGenerators[0].getMode() : SimulationMode.DEFAULT;
+		myIntegratorStepLimit = (n > 0) ? ((LinearSynapticIntegrator) myNeurons[0].getIntegrator()).getStepLimit() : 0;
+		myGeneratorStepLimit = (n > 0) ? myGenerators[0].getStepLimit() : 0;
+	}
+
+	/**
+	 * @param nodes A list of Nodes
+	 * @return True if the Nodes can be run as a LIFPopulation, i.e. they are all SpikingNeurons
+	 * 		with LIFSpikeGenerators, and LinearSynapticIntegrators without Terminations, no Noise,
+	 * 		the same time step limits, and the same non-PRECISE simulation mode.
+	 */
+	public static boolean isCompatible(Node[] nodes) {
+		if (nodes.length == 0) {
+			return false;
+		}
+
+		SimulationMode mode = null;
+		float integratorStepLimit = 0;
+		float generatorStepLimit = 0;
+		for (int i = 0; i < nodes.length; i++) {
+			if (nodes[i] == null || (nodes[i].getClass() != SpikingNeuron.class
+					&& nodes[i].getClass() != ExpandableSpikingNeuron.class)) {
+				return false;
+			}
+
+			SpikingNeuron neuron = (SpikingNeuron) nodes[i];
+			if (neuron.getNoise() != null
+					|| neuron.getGenerator().getClass() != LIFSpikeGenerator.class
+					|| neuron.getIntegrator().getClass() != LinearSynapticIntegrator.class
+					|| neuron.getIntegrator().getTerminations().length > 0) {
+				return false;
+			}
+
+			LIFSpikeGenerator generator = (LIFSpikeGenerator) neuron.getGenerator();
+			LinearSynapticIntegrator integrator = (LinearSynapticIntegrator) neuron.getIntegrator();
+			if (i == 0) {
+				mode = generator.getMode();
+				integratorStepLimit = integrator.getStepLimit();
+				generatorStepLimit = generator.getStepLimit();
+				if (mode == SimulationMode.PRECISE) {
+					return false;
+				}
+			} else if (generator.getMode() != mode
+					|| integrator.getStepLimit() != integratorStepLimit
+					|| generator.getStepLimit() != generatorStepLimit) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * @return Number of neurons in the population
+	 */
+	public int getSize() {
+		return myNeurons.length;
+	}
+
+	/**
+	 * @return Simulation mode in which the population runs (the mode of its neurons at construction)
+	 */
+	public SimulationMode getMode() {
+		return myMode;
+	}
+
+	/**
+	 * @return Buffer of radial inputs (one per neuron), to be filled in before each call to run(...)
+	 */
+	public float[] getInput() {
+		return myInput;
+	}
+
+	/**
+	 * @return Activity of each neuron in the most recent step. In DEFAULT mode this is 1/(step length)
+	 * 		for neurons that spiked and 0 for the rest; otherwise it is the firing rate. The array is
+	 * 		reused from step to step.
+	 */
+	public float[] getActivities() {
+		return myActivities;
+	}
+
+	/**
+	 * @return Indices of the neurons that spiked in the most recent step, in increasing order, in
+	 * 		the first getNumSpikes() elements. The array is reused from step to step.
+	 */
+	public int[] getSpikeIndices() {
+		return mySpikeIndices;
+	}
+
+	/**
+	 * @return Number of neurons that spiked in the most recent step (0 in rate modes)
+	 */
+	public int getNumSpikes() {
+		return myNumSpikes;
+	}
+
+	/**
+	 * Runs all neurons from startTime to endTime, using the current contents of getInput() as the
+	 * radial input to each neuron. Spiking or rate output is set on each neuron's axon Origin.
+	 *
+	 * @param startTime Simulation time at which the step starts
+	 * @param endTime Simulation time at which the step ends
+	 */
+	public void run(float startTime, float endTime) {
+		//reproduce the time grid that LinearSynapticIntegrator would pass to the generators
+		float len = endTime - startTime;
+		int integratorSteps = (int) Math.ceil(len / myIntegratorStepLimit);
+		float integratorDt = len / integratorSteps;
+		float lastTime = startTime + integratorSteps * integratorDt;
+
+		myNumSpikes = 0;
+		if (myMode == SimulationMode.CONSTANT_RATE || myMode == SimulationMode.RATE) {
+			runRate(lastTime);
+		} else {
+			runSpiking(lastTime - startTime, 1f / len, lastTime);
+		}
+
+		myTime = lastTime;
+	}
+
+	private void runRate(float lastTime) {
+		for (int i = 0; i < myNeurons.length; i++) {
+			float current = myBias[i] + myScale[i] * myInput[i];
+
+			//implicitly Vth == R == 1
+			float rate = current > 1 ? 1f / ( myTauRef[i] - myTauRC[i] * ((float) Math.log(1 - 1/current)) ) : 0;
+			myActivities[i] = rate;
+			myOrigins[i].setValues(new RealOutputImpl(new float[]{rate}, Units.SPIKES_PER_S, lastTime));
+		}
+	}
+
+	private void runSpiking(float len, float spikeActivity, float lastTime) {
+		int steps = (int) Math.ceil(len / myGeneratorStepLimit);
+		float dt = len / steps;
+
+		//outputs are immutable in practice, so all neurons can share them
+		InstantaneousOutput spike = new SpikeOutputImpl(new boolean[]{true}, Units.SPIKES, lastTime);
+		InstantaneousOutput noSpike = new SpikeOutputImpl(new boolean[]{false}, Units.SPIKES, lastTime);
+
+		float[] voltage = myVoltage;
+		float[] timeSinceLastSpike = myTimeSinceLastSpike;
+		for (int i = 0; i < myNeurons.length; i++) {
+			float I = myBias[i] + myScale[i] * myInput[i];
+			float inverseTauRC = myInverseTauRC[i];
+			float tauRef = myTauRef[i];
+			float V = voltage[i];
+			float tss = timeSinceLastSpike[i];
+			boolean spiking = false;
+
+			for (int j = 0; j < steps; j++) {
+				float dV = inverseTauRC * (I - V);
+				tss = tss + dt;
+				if (tss < tauRef) {
+					dV = 0;
+				} else if (tss < tauRef+dt) {
+					dV *= (tss-tauRef)/dt;
+				}
+				float previousV = V;
+				V = Math.max(0, V + dt*dV);
+
+				if (V >= Vth) {
+					float dSpike = (Vth-previousV)*dt/(V-previousV);
+					tss = dt-dSpike;
+					V = 0;
+					spiking = true;
+				}
+			}
+
+			voltage[i] = V;
+			timeSinceLastSpike[i] = tss;
+			myActivities[i] = spiking ? spikeActivity : 0f;
+			if (spiking) {
+				mySpikeIndices[myNumSpikes++] = i;
+			}
+			myOrigins[i].setValues(spiking ? spike : noSpike);
+		}
+	}
+
+	/**
+	 * Copies the dynamic state of the population (voltage, time since last spike, and radial input)
+	 * back into the individual neurons, so that they can be inspected or run on their own.
+	 */
+	public void writeState() {
+		for (int i = 0; i < myNeurons.length; i++) {
+			myGenerators[i].setState(myTime, myVoltage[i], myTimeSinceLastSpike[i]);
+			myNeurons[i].setRadialInput(myInput[i]);
+		}
+	}
+
+}
@@ -32,6 +32,7 @@ import java.util.Properties;
 import ca.nengo.math.PDF;
 import ca.nengo.math.impl.IndicatorPDF;
 import ca.nengo.model.InstantaneousOutput;
+import ca.nengo.model.OnDemandProbeable;
 import ca.nengo.model.Probeable;
 import ca.nengo.model.SimulationException;
 import ca.nengo.model.SimulationMode;
@@ -53,9 +54,12 @@ import ca.nengo.util.impl.TimeSeries1DImpl;
  * of the model, although transformations may be needed if it is desired to
  * convert to more realistic parameter ranges. </p>
  *
+ * <p>The voltage history over each step is only kept while it is probed (see enableHistory(...)).
+ * Otherwise getHistory("V") gives the voltage at the end of the most recent step.</p>
+ *
  * @author Bryan Tripp
  */
-public class LIFSpikeGenerator implements SpikeGenerator, Probeable {
+public class LIFSpikeGenerator implements SpikeGenerator, OnDemandProbeable {
 
 	private static final long serialVersionUID = 1L;
 
@@ -73,8 +77,10 @@ public class LIFSpikeGenerator implements SpikeGenerator, Probeable {
 
 	private float myPreviousVoltage; //for linear interpolation of when spike occurs
 
-	private float[] myTime;
+	private float[] myTime; //null if no history was kept in the most recent step
 	private float[] myVoltageHistory;
+	private float myEndTime; //end of the most recent step
+	private int myNumHistoryRequests;
 
 	private SimulationMode myMode;
 	private SimulationMode[] mySupportedModes;
@@ -163,6 +169,13 @@ public class LIFSpikeGenerator implements SpikeGenerator, Probeable {
 		myTauRef = tauRef;
 	}
 
+	/**
+	 * @return Initial condition on V
+	 */
+	public float getInitialVoltage() {
+		return myInitialVoltage;
+	}
+
 	public void reset(boolean randomize) {
 		myTimeSinceLastSpike = myTauRef;
 		myVoltage = myInitialVoltage;
@@ -248,17 +261,26 @@ public class LIFSpikeGenerator implements SpikeGenerator, Probeable {
 		int steps = (int) Math.ceil(len / myMaxTimeStep);
 		float dt = len / steps;
 
-		myTime = new float[steps];
-		myVoltageHistory = new float[steps];
-//		mySpikeTimes = new ArrayList(10);
-
 		int inputIndex = 0;
 
+		boolean keepHistory = myNumHistoryRequests > 0;
+		if (keepHistory) {
+			myTime = new float[steps];
+			myVoltageHistory = new float[steps];
+		} else {
+			myTime = null;
+			myVoltageHistory = null;
+		}
+		myEndTime = time[time.length - 1];
+
 		float spikeTimeFromLastTimeStep=-1;
 		for (int i = 0; i < steps; i++) {
-			myTime[i] = time[0] + i*dt;
+			float t = time[0] + i*dt;
+			if (keepHistory) {
+				myTime[i] = t;
+			}
 
-			while (time[inputIndex+1] <= myTime[i]) {
+			while (time[inputIndex+1] <= t) {
 				inputIndex++;
 			}
 			float I = current[inputIndex];
@@ -272,7 +294,9 @@ public class LIFSpikeGenerator implements SpikeGenerator, Probeable {
 			}
 			myPreviousVoltage = myVoltage;
 			myVoltage = Math.max(0, myVoltage + dt*dV);
-			myVoltageHistory[i] = myVoltage;
+			if (keepHistory) {
+				myVoltageHistory[i] = myVoltage;
+			}
 
 			if (myVoltage >= Vth) {
 				float dSpike=(Vth-myPreviousVoltage)*dt/(myVoltage-myPreviousVoltage);
@@ -293,6 +317,42 @@ public class LIFSpikeGenerator implements SpikeGenerator, Probeable {
 		return myVoltage;
 	}
 
+	/**
+	 * @return Time since the most recent spike (s)
+	 */
+	float getTimeSinceLastSpike() {
+		return myTimeSinceLastSpike;
+	}
+
+	/**
+	 * @return Integration time step limit, including the correction for float division
+	 */
+	float getStepLimit() {
+		return myMaxTimeStep;
+	}
+
+	/**
+	 * Overwrites the dynamic state of this generator, e.g. with state that has been advanced
+	 * elsewhere by a LIFPopulation. The voltage history is replaced with a single sample.
+	 *
+	 * @param time Simulation time at which the state applies
+	 * @param voltage Membrane voltage
+	 * @param timeSinceLastSpike Time since the most recent spike (s)
+	 */
+	void setState(float time, float voltage, float timeSinceLastSpike) {
+		myVoltage = voltage;
+		myPreviousVoltage = voltage;
+		myTimeSinceLastSpike = timeSinceLastSpike;
+		myEndTime = time;
+		if (myNumHistoryRequests > 0) {
+			myTime = new float[]{time};
+			myVoltageHistory = new float[]{voltage};
+		} else {
+			myTime = null;
+			myVoltageHistory = null;
+		}
+	}
+
 	//Note that no voltage history is available after a constant-rate run.
 	private float doConstantRateRun(float time, float current) {
 		myTime = ourNullTime;
@@ -317,7 +377,11 @@ public class LIFSpikeGenerator implements SpikeGenerator, Probeable {
 		TimeSeries1D result = null;
 
 		if (stateName.equals("V")) {
-			result = new TimeSeries1DImpl(myTime, myVoltageHistory, Units.AVU);
+			if (myTime == null) {
+				result = new TimeSeries1DImpl(new float[]{myEndTime}, new float[]{myVoltage}, Units.AVU);
+			} else {
+				result = new TimeSeries1DImpl(myTime, myVoltageHistory, Units.AVU);
+			}
 		} else {
 			throw new SimulationException("The state name " + stateName + " is unknown.");
 		}
@@ -325,6 +389,24 @@ public class LIFSpikeGenerator implements SpikeGenerator, Probeable {
 		return result;
 	}
 
+	/**
+	 * @see ca.nengo.model.OnDemandProbeable#enableHistory(java.lang.String)
+	 */
+	public void enableHistory(String stateName) {
+		if (stateName.equals("V")) {
+			myNumHistoryRequests++;
+		}
+	}
+
+	/**
+	 * @see ca.nengo.model.OnDemandProbeable#disableHistory(java.lang.String)
+	 */
+	public void disableHistory(String stateName) {
+		if (stateName.equals("V") && myNumHistoryRequests > 0) {
+			myNumHistoryRequests--;
+		}
+	}
+
 	/**
 	 * @see Probeable#listStates()
 	 */
@@ -353,8 +435,11 @@ public class LIFSpikeGenerator implements SpikeGenerator, Probeable {
 		LIFSpikeGenerator result = (LIFSpikeGenerator) super.clone();
 		result.mySupportedModes = new SimulationMode[mySupportedModes.length];
 		System.arraycopy(mySupportedModes, 0, result.mySupportedModes, 0, mySupportedModes.length);
-		result.myTime = myTime.clone();
-		result.myVoltageHistory = myVoltageHistory.clone();
+		if (myTime != null) {
+			result.myTime = myTime.clone();
+			result.myVoltageHistory = myVoltageHistory.clone();
+		}
+		result.myNumHistoryRequests = 0; //the copy isn't probed
 		return result;
 	}
 
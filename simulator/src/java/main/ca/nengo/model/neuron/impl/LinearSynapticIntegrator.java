@@ -155,6 +155,13 @@ public class LinearSynapticIntegrator implements ExpandableSynapticIntegrator {
 		return myMaxTimeStep / ourTimeStepCorrection;
 	}
 
+	/**
+	 * @return Integration time step limit, including the correction for float division
+	 */
+	float getStepLimit() {
+		return myMaxTimeStep;
+	}
+
 	/**
 	 * @param maxTimeStep maximum time step
 	 */
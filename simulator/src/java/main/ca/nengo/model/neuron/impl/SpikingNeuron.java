@@ -35,6 +35,7 @@ import java.util.Properties;
 import ca.nengo.model.InstantaneousOutput;
 import ca.nengo.model.Node;
 import ca.nengo.model.Noise;
+import ca.nengo.model.OnDemandProbeable;
 import ca.nengo.model.Origin;
 import ca.nengo.model.Probeable;
 import ca.nengo.model.RealOutput;
@@ -61,7 +62,7 @@ import ca.nengo.util.impl.TimeSeries1DImpl;
  *
  * @author Bryan Tripp
  */
-public class SpikingNeuron implements Neuron, Probeable, NEFNode {
+public class SpikingNeuron implements Neuron, OnDemandProbeable, NEFNode {
 
 	private static final long serialVersionUID = 1L;
 
@@ -223,6 +224,27 @@ public class SpikingNeuron implements Neuron, Probeable, NEFNode {
 		return result;
 	}
 
+	/**
+	 * Passes the request on to the SpikeGenerator, if it keeps history on demand. The
+	 * other states don't need any extra storage.
+	 *
+	 * @see ca.nengo.model.OnDemandProbeable#enableHistory(java.lang.String)
+	 */
+	public void enableHistory(String stateName) {
+		if (myGenerator instanceof OnDemandProbeable) {
+			((OnDemandProbeable) myGenerator).enableHistory(stateName);
+		}
+	}
+
+	/**
+	 * @see ca.nengo.model.OnDemandProbeable#disableHistory(java.lang.String)
+	 */
+	public void disableHistory(String stateName) {
+		if (myGenerator instanceof OnDemandProbeable) {
+			((OnDemandProbeable) myGenerator).disableHistory(stateName);
+		}
+	}
+
 	/**
 	 * @see ca.nengo.model.Probeable#listStates()
 	 */
@@ -280,13 +280,13 @@ public class DefaultPlotter extends Plotter {
 					nodes[j].run(0f, 0f);		
 				}
 				origin.run(null, 0f, 1f);
-				actualOutput[i] = ((RealOutput) origin.getValues()).getValues();
+				actualOutput[i] = ((RealOutput) origin.getValues()).getValues().clone();
 				
 				ensemble.setMode(SimulationMode.DIRECT);
 				float[] state = new float[ensemble.getDimension()];
 				state[0] = x[i];
 				origin.run(state, 0f, 1f);
-				idealOutput[i] = ((RealOutput) origin.getValues()).getValues();
+				idealOutput[i] = ((RealOutput) origin.getValues()).getValues().clone();
 			}
 			ensemble.setMode(mode);
 			
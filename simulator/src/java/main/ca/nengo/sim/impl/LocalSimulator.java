@@ -41,6 +41,7 @@ import ca.nengo.model.Ensemble;
 import ca.nengo.model.InstantaneousOutput;
 import ca.nengo.model.Network;
 import ca.nengo.model.Node;
+import ca.nengo.model.OnDemandProbeable;
 import ca.nengo.model.Probeable;
 import ca.nengo.model.Projection;
 import ca.nengo.model.SimulationException;
@@ -329,6 +330,10 @@ public class LocalSimulator implements Simulator, java.io.Serializable {
         if (!myProbeTasks.remove(probe.getProbeTask())) {
             throw new SimulationException("Probe could not be removed");
         }
+
+        if (probe.getTarget() instanceof OnDemandProbeable) {
+            ((OnDemandProbeable) probe.getTarget()).disableHistory(probe.getStateName());
+        }
         
         fireVisibleChangeEvent();
     }
@@ -380,7 +385,7 @@ public class LocalSimulator implements Simulator, java.io.Serializable {
     }
     
     public void makeNodeThreadPool() {
-    	myNodeThreadPool = new NodeThreadPool(myNetwork, myProbeTasks);
+    	myNodeThreadPool = NodeThreadPool.create(myNetwork, myProbeTasks);
     }
     
     public NodeThreadPool getNodeThreadPool() {
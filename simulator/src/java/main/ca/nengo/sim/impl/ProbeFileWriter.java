@@ -0,0 +1,389 @@
+/*
+The contents of this file are subject to the Mozilla Public License Version 1.1
+(the "License"); you may not use this file except in compliance with the License.
+You may obtain a copy of the License at http://www.mozilla.org/MPL/
+
+Software distributed under the License is distributed on an "AS IS" basis, WITHOUT
+WARRANTY OF ANY KIND, either express or implied. See the License for the specific
+language governing rights and limitations under the License.
+
+The Original Code is "ProbeFileWriter.java". Description:
+"Streams probe data to a binary file from a background thread"
+
+The Initial Developer of the Original Code is Bryan Tripp & Centre for Theoretical Neuroscience, University of Waterloo. Copyright (C) 2006-2008. All Rights Reserved.
+
+Alternatively, the contents of this file may be used under the terms of the GNU
+Public License license (the GPL License), in which case the provisions of GPL
+License are applicable  instead of those above. If you wish to allow use of your
+version of this file only under the terms of the GPL License and not to allow
+others to use your version of this file under the MPL, indicate your decision
+by deleting the provisions above and replace  them with the notice and other
+provisions required by the GPL License.  If you do not delete the provisions above,
+a recipient may use your version of this file under either the MPL or the GPL License.
+*/
+
+package ca.nengo.sim.impl;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+import ca.nengo.io.ProbeFileReader;
+import ca.nengo.model.Units;
+import ca.nengo.sim.SimulatorEvent;
+import ca.nengo.sim.SimulatorListener;
+import ca.nengo.util.Probe;
+import ca.nengo.util.TimeSeries;
+import ca.nengo.util.impl.ColumnTimeSeries;
+
+/**
+ * <p>Streams the samples collected by a Probe to a binary file as a simulation runs. This is
+ * an alternative to WriteToDiskSimulatorListener for long runs.</p>
+ *
+ * <p>After each step, samples that haven't been written yet are copied into a block of columns
+ * (times and each dimension of the values). Full blocks are written by a background thread
+ * through a FileChannel, so the simulation doesn't wait for the disk unless it gets more than
+ * QUEUE_CAPACITY blocks ahead. The file is written from the start of each run and closed when
+ * the run finishes; it can be read with ca.nengo.io.ProbeFileReader (see there for the format).
+ * If writing fails, the file is closed straight away. If the simulation itself fails, the file
+ * stays open until the next run starts, or until close() is called.</p>
+ *
+ * <p>The probe doesn't have to record its history (see Probe.connect(...)); in that case only
+ * the samples of each step are kept in memory. To write fewer samples, set the probe's sampling
+ * rate.</p>
+ *
+ * Example usage (Python syntax):
+ *   probe = network.getSimulator().addProbe("error", error.X, False)
+ *   network.simulator.addSimulatorListener(ProbeFileWriter(File("output/error.probe"), probe))
+ */
+public class ProbeFileWriter implements SimulatorListener {
+
+	private static Logger ourLogger = Logger.getLogger(ProbeFileWriter.class);
+
+	/**
+	 * Number of samples in each block
+	 */
+	public static final int BLOCK_SIZE = 1024;
+
+	/**
+	 * Number of blocks that can wait to be written before the simulation waits for the disk
+	 */
+	public static final int QUEUE_CAPACITY = 16;
+
+	private static final Block END = new Block(0); //tells the background thread to close the file
+
+	private final File myFile;
+	private final Probe myProbe;
+
+	private BlockingQueue<Block> myQueue;
+	private Writer myWriter;
+	private Block myBlock; //block being filled
+	private boolean myHeaderQueued;
+	private int myNextIndex; //index of next sample to write, if the probe's data are a ColumnTimeSeries
+	private float myLastTime; //time of last sample written, otherwise
+
+	/**
+	 * @param file The file to which samples are written. If it already exists, it will be overwritten.
+	 * @param probe The Probe from which samples are collected.
+	 */
+	public ProbeFileWriter(File file, Probe probe) {
+		myFile = file;
+		myProbe = probe;
+	}
+
+	/**
+	 * @return The file to which samples are written
+	 */
+	public File getFile() {
+		return myFile;
+	}
+
+	/**
+	 * Opens the file at the start of a run, writes new samples after each step, and closes the
+	 * file at the end of a run.
+	 *
+	 * @see ca.nengo.sim.SimulatorListener#processEvent(ca.nengo.sim.SimulatorEvent)
+	 */
+	public void processEvent(SimulatorEvent event) {
+		try {
+			if (event.getType() == SimulatorEvent.Type.STARTED) {
+				open();
+			} else if (event.getType() == SimulatorEvent.Type.STEP_TAKEN) {
+				collect();
+			} else if (event.getType() == SimulatorEvent.Type.FINISHED) {
+				close();
+			}
+		} catch (IOException e) {
+			ourLogger.error("Problem writing probe data to " + myFile, e);
+			closeQuietly();
+		} catch (RuntimeException e) {
+			closeQuietly();
+			throw e;
+		}
+	}
+
+	/**
+	 * Starts writing a new file (closing the file of a previous run if it is still open, e.g.
+	 * because that run failed).
+	 *
+	 * @throws IOException if the file can't be opened
+	 */
+	public synchronized void open() throws IOException {
+		closeQuietly();
+
+		FileOutputStream fos = new FileOutputStream(myFile);
+		myQueue = new ArrayBlockingQueue<Block>(QUEUE_CAPACITY);
+		myWriter = new Writer(fos.getChannel(), myQueue);
+		myWriter.setName("ProbeFileWriter");
+		myWriter.setDaemon(true);
+		myWriter.start();
+
+		myBlock = null;
+		myHeaderQueued = false;
+		myNextIndex = 0;
+		myLastTime = Float.NEGATIVE_INFINITY;
+	}
+
+	/**
+	 * Copies samples that haven't been written yet, and passes them on to be written if a block is full.
+	 */
+	public synchronized void collect() {
+		if (myWriter == null) {
+			return;
+		}
+
+		TimeSeries data = myProbe.getData();
+		if (data instanceof ColumnTimeSeries) {
+			ColumnTimeSeries columns = (ColumnTimeSeries) data;
+			if (columns.getLength() < myNextIndex) { //the probe has been reset
+				myNextIndex = 0;
+			}
+			for (; myNextIndex < columns.getLength(); myNextIndex++) {
+				Block block = getBlock(data);
+				int i = block.mySize++;
+				block.myTimes[i] = columns.getTime(myNextIndex);
+				for (int d = 0; d < block.myValues.length; d++) {
+					block.myValues[d][i] = columns.getValue(myNextIndex, d);
+				}
+				queueIfFull(block);
+			}
+		} else {
+			float[] times = data.getTimes();
+			float[][] values = data.getValues();
+			for (int j = 0; j < times.length; j++) {
+				if (times[j] > myLastTime) {
+					Block block = getBlock(data);
+					int i = block.mySize++;
+					block.myTimes[i] = times[j];
+					for (int d = 0; d < block.myValues.length; d++) {
+						block.myValues[d][i] = values[j][d];
+					}
+					myLastTime = times[j];
+					queueIfFull(block);
+				}
+			}
+		}
+	}
+
+	private Block getBlock(TimeSeries data) {
+		if (!myHeaderQueued) {
+			Block header = new Block(0);
+			header.myName = data.getName();
+			header.myUnits = data.getUnits();
+			put(header);
+			myHeaderQueued = true;
+		}
+		if (myBlock == null) {
+			myBlock = new Block(data.getDimension());
+		}
+		return myBlock;
+	}
+
+	private void queueIfFull(Block block) {
+		if (block.mySize == BLOCK_SIZE) {
+			put(block);
+			myBlock = null;
+		}
+	}
+
+	//waits uninterruptibly for space in the queue, unless the background thread has stopped
+	private void put(Block block) {
+		boolean interrupted = false;
+		while (myWriter.isAlive()) {
+			try {
+				if (myQueue.offer(block, 100, TimeUnit.MILLISECONDS)) {
+					break;
+				}
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Writes remaining samples and closes the file. Does nothing if the file isn't open.
+	 *
+	 * @throws IOException if there was a problem writing the file
+	 */
+	public synchronized void close() throws IOException {
+		if (myWriter == null) {
+			return;
+		}
+
+		if (!myHeaderQueued) { //no samples
+			Block header = new Block(0);
+			header.myName = myProbe.getStateName();
+			header.myUnits = new Units[0];
+			put(header);
+		}
+		if (myBlock != null) {
+			put(myBlock);
+			myBlock = null;
+		}
+		put(END);
+
+		boolean interrupted = false;
+		while (myWriter.isAlive()) {
+			try {
+				myWriter.join();
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+
+		IOException error = myWriter.myError;
+		myWriter = null;
+		myQueue = null;
+		if (error != null) {
+			throw error;
+		}
+	}
+
+	//closes the file as in close(), logging rather than throwing any problem writing it
+	private void closeQuietly() {
+		try {
+			close();
+		} catch (IOException e) {
+			ourLogger.error("Problem writing probe data to " + myFile, e);
+		}
+	}
+
+	//samples in columns, or the header if myUnits isn't null
+	private static class Block {
+
+		private final float[] myTimes;
+		private final float[][] myValues;
+		private int mySize;
+		private String myName;
+		private Units[] myUnits;
+
+		public Block(int dimension) {
+			myTimes = new float[BLOCK_SIZE];
+			myValues = new float[dimension][BLOCK_SIZE];
+		}
+	}
+
+	//writes blocks from the queue until it gets END
+	private static class Writer extends Thread {
+
+		private final FileChannel myChannel;
+		private final BlockingQueue<Block> myQueue;
+		private ByteBuffer myBuffer;
+		private volatile IOException myError;
+
+		public Writer(FileChannel channel, BlockingQueue<Block> queue) {
+			myChannel = channel;
+			myQueue = queue;
+		}
+
+		public void run() {
+			try {
+				Block block;
+				while ((block = myQueue.take()) != END) {
+					if (myError != null) {
+						continue; //keep emptying the queue so that the simulation doesn't wait
+					}
+					try {
+						if (block.myUnits != null) {
+							writeHeader(block);
+						} else {
+							writeBlock(block);
+						}
+					} catch (IOException e) {
+						myError = e;
+					} catch (RuntimeException e) {
+						myError = new IOException("Can't write block", e);
+					}
+				}
+			} catch (InterruptedException e) {
+			}
+
+			try {
+				myChannel.close();
+			} catch (IOException e) {
+				if (myError == null) {
+					myError = e;
+				}
+			}
+		}
+
+		private void writeHeader(Block header) throws IOException {
+			byte[] name = (header.myName == null ? "" : header.myName).getBytes("UTF-8");
+			byte[][] units = new byte[header.myUnits.length][];
+			int length = 16 + name.length;
+			for (int i = 0; i < units.length; i++) {
+				units[i] = header.myUnits[i].name().getBytes("UTF-8");
+				length += 4 + units[i].length;
+			}
+
+			ByteBuffer buffer = ByteBuffer.allocate(length);
+			buffer.putInt(ProbeFileReader.MAGIC);
+			buffer.putInt(ProbeFileReader.VERSION);
+			buffer.putInt(name.length);
+			buffer.put(name);
+			buffer.putInt(units.length);
+			for (int i = 0; i < units.length; i++) {
+				buffer.putInt(units[i].length);
+				buffer.put(units[i]);
+			}
+			write(buffer);
+		}
+
+		private void writeBlock(Block block) throws IOException {
+			int length = 4 + 4 * block.mySize * (block.myValues.length + 1);
+			if (myBuffer == null || myBuffer.capacity() < length) {
+				myBuffer = ByteBuffer.allocateDirect(4 + 4 * BLOCK_SIZE * (block.myValues.length + 1));
+			}
+			myBuffer.clear();
+			myBuffer.putInt(block.mySize);
+			myBuffer.asFloatBuffer().put(block.myTimes, 0, block.mySize);
+			myBuffer.position(myBuffer.position() + 4 * block.mySize);
+			for (int d = 0; d < block.myValues.length; d++) {
+				myBuffer.asFloatBuffer().put(block.myValues[d], 0, block.mySize);
+				myBuffer.position(myBuffer.position() + 4 * block.mySize);
+			}
+			write(myBuffer);
+		}
+
+		private void write(ByteBuffer buffer) throws IOException {
+			buffer.flip();
+			while (buffer.hasRemaining()) {
+				myChannel.write(buffer);
+			}
+		}
+	}
+
+}
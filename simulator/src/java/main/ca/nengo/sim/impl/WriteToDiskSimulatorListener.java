@@ -35,6 +35,8 @@ import java.io.IOException;
 import java.util.Calendar;
 
 import ca.nengo.util.Probe;
+import ca.nengo.util.TimeSeries;
+import ca.nengo.util.impl.ColumnTimeSeries;
 import ca.nengo.sim.SimulatorEvent;
 import ca.nengo.sim.SimulatorListener;
 
@@ -47,6 +49,9 @@ import ca.nengo.sim.SimulatorListener;
  * WriteToDiskSimulatorListener to a simulator instance, progress is saved to disk
  * after each recordInterval.
  * 
+ * For long runs with many samples, ProbeFileWriter is much faster (it writes a binary file
+ * from a background thread).
+ * 
  * Example usage (Python syntax):
  *   probe_error = network.getSimulator().addProbe("error",error.X,True)
  *   file_error = File("output/error.csv")
@@ -91,14 +96,13 @@ public class WriteToDiskSimulatorListener implements SimulatorListener {
 	        	myStartTime = Calendar.getInstance().getTimeInMillis();
 	        	myWriter = new BufferedWriter(new FileWriter(myFile));
 	        } else if (event.getType() == SimulatorEvent.Type.STEP_TAKEN) {
-	            float[] times = myTargetProbe.getData().getTimes();
+	            TimeSeries data = myTargetProbe.getData();
+	            float[] last = getLastSample(data);
 	            
-	            if (times[times.length - 1] >= myLastInterval) {
-	                float[][] data = myTargetProbe.getData().getValues();
-	
-	                myWriter.write(Float.toString(times[times.length-1]));
-	                for (int i=0; i < data[0].length; i++) {
-	                	myWriter.write("," + Float.toString(data[times.length-1][i]));
+	            if (last != null && last[0] >= myLastInterval) {
+	                myWriter.write(Float.toString(last[0]));
+	                for (int i=1; i < last.length; i++) {
+	                	myWriter.write("," + Float.toString(last[i]));
 	                }
 	                myWriter.newLine();
 	                myWriter.flush();
@@ -115,4 +119,29 @@ public class WriteToDiskSimulatorListener implements SimulatorListener {
 			System.err.println("IO Exception in WriteToDiskSimulatorListener:  " + e);
 		}
 	}
+	
+	//time followed by values of the most recent sample (null if there are no samples), without copying the whole history
+	private static float[] getLastSample(TimeSeries data) {
+		float[] result = null;
+		if (data instanceof ColumnTimeSeries) {
+			ColumnTimeSeries columns = (ColumnTimeSeries) data;
+			int last = columns.getLength() - 1;
+			if (last >= 0) {
+				result = new float[columns.getDimension() + 1];
+				result[0] = columns.getTime(last);
+				for (int i = 0; i < columns.getDimension(); i++) {
+					result[i+1] = columns.getValue(last, i);
+				}
+			}
+		} else {
+			float[] times = data.getTimes();
+			if (times.length > 0) {
+				float[] values = data.getValues()[times.length-1];
+				result = new float[values.length + 1];
+				result[0] = times[times.length-1];
+				System.arraycopy(values, 0, result, 1, values.length);
+			}
+		}
+		return result;
+	}
 }
@@ -43,6 +43,8 @@ public abstract class Environment {
 	 * Name of String property that contains path of user's working directory  
 	 */
 	public static String WORKING_DIRECTORY = "working-directory";	
+
+	private static final ThreadLocal<Integer> ourThreadLimit = new ThreadLocal<Integer>();
 	
 	
 	/**
@@ -58,4 +60,37 @@ public abstract class Environment {
 		System.setProperty(USER_INTERFACE, inUI ? "true" : "false");
 	}
 
+	/**
+	 * @return Maximum number of threads that parallel computations started on the calling 
+	 * 		thread may use (0 if there is no limit)
+	 */
+	public static int getThreadLimit() {
+		Integer limit = ourThreadLimit.get();
+		return (limit == null) ? 0 : limit.intValue();
+	}
+
+	/**
+	 * Limits the number of threads that parallel computations (e.g. GramMatrix, TuningCurves) 
+	 * use when they are started on the calling thread. This keeps work that is already split 
+	 * between threads from starting a full set of threads on each of them. 
+	 * 
+	 * @param limit Maximum number of threads (0 for no limit)
+	 */
+	public static void setThreadLimit(int limit) {
+		if (limit <= 0) {
+			ourThreadLimit.remove();
+		} else {
+			ourThreadLimit.set(Integer.valueOf(limit));
+		}
+	}
+
+	/**
+	 * @param numThreads Number of threads a parallel computation would like to use
+	 * @return numThreads, reduced if necessary to the calling thread's limit (see setThreadLimit(...))
+	 */
+	public static int limitThreads(int numThreads) {
+		int limit = getThreadLimit();
+		return (limit > 0 && limit < numThreads) ? limit : numThreads;
+	}
+
 }
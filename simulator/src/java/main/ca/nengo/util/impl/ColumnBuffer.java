@@ -0,0 +1,212 @@
+/*
+The contents of this file are subject to the Mozilla Public License Version 1.1
+(the "License"); you may not use this file except in compliance with the License.
+You may obtain a copy of the License at http://www.mozilla.org/MPL/
+
+Software distributed under the License is distributed on an "AS IS" basis, WITHOUT
+WARRANTY OF ANY KIND, either express or implied. See the License for the specific
+language governing rights and limitations under the License.
+
+The Original Code is "ColumnBuffer.java". Description:
+"Append-only storage of a vector time series in chunked primitive columns"
+
+The Initial Developer of the Original Code is Bryan Tripp & Centre for Theoretical Neuroscience, University of Waterloo. Copyright (C) 2006-2008. All Rights Reserved.
+
+Alternatively, the contents of this file may be used under the terms of the GNU
+Public License license (the GPL License), in which case the provisions of GPL
+License are applicable  instead of those above. If you wish to allow use of your
+version of this file only under the terms of the GPL License and not to allow
+others to use your version of this file under the MPL, indicate your decision
+by deleting the provisions above and replace  them with the notice and other
+provisions required by the GPL License.  If you do not delete the provisions above,
+a recipient may use your version of this file under either the MPL or the GPL License.
+*/
+
+package ca.nengo.util.impl;
+
+import java.io.Serializable;
+
+/**
+ * <p>Append-only storage of a vector time series, in which times and each dimension of the
+ * values are kept in separate primitive columns.</p>
+ *
+ * <p>Each column is a list of fixed-size chunks, so adding a sample never copies or
+ * allocates anything except a new chunk every CHUNK_SIZE (by default) samples (and, rarely, a larger
+ * array of chunk references, which grows by doubling). Samples aren't changed once they have
+ * been added, so readers can safely use the first getSize() samples (e.g. through a
+ * ColumnTimeSeries) while more samples are added.</p>
+ */
+public class ColumnBuffer implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Default number of samples in each chunk
+	 */
+	public static final int CHUNK_SIZE = 1024;
+
+	private final int myDimension;
+	private final int myChunkSize;
+	private float[][] myTimes; //[chunk][sample]
+	private float[][][] myValues; //[dimension][chunk][sample]
+	private int mySize;
+
+	/**
+	 * @param dimension Dimension of the values
+	 */
+	public ColumnBuffer(int dimension) {
+		this(dimension, CHUNK_SIZE);
+	}
+
+	/**
+	 * @param dimension Dimension of the values
+	 * @param chunkSize Number of samples in each chunk (e.g. fewer than CHUNK_SIZE for buffers that
+	 * 		will only hold a few samples)
+	 */
+	public ColumnBuffer(int dimension, int chunkSize) {
+		if (chunkSize < 1) {
+			throw new IllegalArgumentException("Chunk size must be at least 1");
+		}
+		myDimension = dimension;
+		myChunkSize = chunkSize;
+		myTimes = new float[1][];
+		myValues = new float[dimension][1][];
+	}
+
+	/**
+	 * @return Dimension of the values
+	 */
+	public int getDimension() {
+		return myDimension;
+	}
+
+	/**
+	 * @return Number of samples added so far
+	 */
+	public int getSize() {
+		return mySize;
+	}
+
+	/**
+	 * @param time Time of a new sample
+	 * @param values Values of the sample (length getDimension()), which are copied
+	 */
+	public void add(float time, float[] values) {
+		if (values.length != myDimension) {
+			throw new IllegalArgumentException("Expected values of dimension " + myDimension
+					+ " but got dimension " + values.length);
+		}
+
+		int chunk = mySize / myChunkSize;
+		int offset = mySize % myChunkSize;
+		if (offset == 0) {
+			addChunk(chunk);
+		}
+
+		myTimes[chunk][offset] = time;
+		for (int d = 0; d < myDimension; d++) {
+			myValues[d][chunk][offset] = values[d];
+		}
+		mySize++;
+	}
+
+	private void addChunk(int chunk) {
+		if (chunk == myTimes.length) {
+			int length = 2 * myTimes.length;
+			float[][] times = new float[length][];
+			System.arraycopy(myTimes, 0, times, 0, chunk);
+			for (int d = 0; d < myDimension; d++) {
+				float[][] values = new float[length][];
+				System.arraycopy(myValues[d], 0, values, 0, chunk);
+				myValues[d] = values;
+			}
+			myTimes = times;
+		}
+
+		myTimes[chunk] = new float[myChunkSize];
+		for (int d = 0; d < myDimension; d++) {
+			myValues[d][chunk] = new float[myChunkSize];
+		}
+	}
+
+	/**
+	 * @param index Index of a sample (less than getSize())
+	 * @return Time of the sample
+	 */
+	public float getTime(int index) {
+		checkIndex(index);
+		return myTimes[index / myChunkSize][index % myChunkSize];
+	}
+
+	/**
+	 * @param index Index of a sample (less than getSize())
+	 * @param dimension Dimension of the value
+	 * @return Value of the sample in the given dimension
+	 */
+	public float getValue(int index, int dimension) {
+		checkIndex(index);
+		return myValues[dimension][index / myChunkSize][index % myChunkSize];
+	}
+
+	/**
+	 * @param from Index of first sample
+	 * @param to Index after the last sample
+	 * @return Times of the samples
+	 */
+	public float[] getTimes(int from, int to) {
+		return copy(myTimes, from, to);
+	}
+
+	/**
+	 * @param dimension Dimension of the values
+	 * @param from Index of first sample
+	 * @param to Index after the last sample
+	 * @return Values of the samples in the given dimension
+	 */
+	public float[] getColumn(int dimension, int from, int to) {
+		return copy(myValues[dimension], from, to);
+	}
+
+	/**
+	 * @param from Index of first sample
+	 * @param to Index after the last sample
+	 * @return Values of the samples, one vector per sample (as in TimeSeries.getValues())
+	 */
+	public float[][] getRows(int from, int to) {
+		checkRange(from, to);
+		float[][] result = new float[to - from][myDimension];
+		for (int d = 0; d < myDimension; d++) {
+			float[][] chunks = myValues[d];
+			for (int i = from; i < to; i++) {
+				result[i - from][d] = chunks[i / myChunkSize][i % myChunkSize];
+			}
+		}
+		return result;
+	}
+
+	private float[] copy(float[][] chunks, int from, int to) {
+		checkRange(from, to);
+		float[] result = new float[to - from];
+		int i = from;
+		while (i < to) {
+			int offset = i % myChunkSize;
+			int length = Math.min(myChunkSize - offset, to - i);
+			System.arraycopy(chunks[i / myChunkSize], offset, result, i - from, length);
+			i += length;
+		}
+		return result;
+	}
+
+	private void checkIndex(int index) {
+		if (index < 0 || index >= mySize) {
+			throw new IndexOutOfBoundsException("Index " + index + " is outside of 0 to " + (mySize - 1));
+		}
+	}
+
+	private void checkRange(int from, int to) {
+		if (from < 0 || to > mySize || from > to) {
+			throw new IndexOutOfBoundsException("Range " + from + " to " + to + " is outside of 0 to " + mySize);
+		}
+	}
+
+}
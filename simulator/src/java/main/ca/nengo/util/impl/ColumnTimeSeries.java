@@ -0,0 +1,190 @@
+/*
+The contents of this file are subject to the Mozilla Public License Version 1.1
+(the "License"); you may not use this file except in compliance with the License.
+You may obtain a copy of the License at http://www.mozilla.org/MPL/
+
+Software distributed under the License is distributed on an "AS IS" basis, WITHOUT
+WARRANTY OF ANY KIND, either express or implied. See the License for the specific
+language governing rights and limitations under the License.
+
+The Original Code is "ColumnTimeSeries.java". Description:
+"A read-only TimeSeries view of the samples in a ColumnBuffer"
+
+The Initial Developer of the Original Code is Bryan Tripp & Centre for Theoretical Neuroscience, University of Waterloo. Copyright (C) 2006-2008. All Rights Reserved.
+
+Alternatively, the contents of this file may be used under the terms of the GNU
+Public License license (the GPL License), in which case the provisions of GPL
+License are applicable  instead of those above. If you wish to allow use of your
+version of this file only under the terms of the GPL License and not to allow
+others to use your version of this file under the MPL, indicate your decision
+by deleting the provisions above and replace  them with the notice and other
+provisions required by the GPL License.  If you do not delete the provisions above,
+a recipient may use your version of this file under either the MPL or the GPL License.
+*/
+
+package ca.nengo.util.impl;
+
+import java.io.ObjectStreamException;
+
+import ca.nengo.model.Units;
+import ca.nengo.util.TimeSeries;
+
+/**
+ * <p>A read-only TimeSeries view of the first samples in a ColumnBuffer. Making a view doesn't
+ * copy anything. Single samples and columns can be read directly (see getTime(...), getValue(...)
+ * and getColumn(...)); getTimes() and getValues() copy the samples into arrays the first time
+ * they are called.</p>
+ *
+ * <p>A view is serialized (and cloned) as a TimeSeriesImpl with the same samples.</p>
+ */
+public class ColumnTimeSeries implements TimeSeries {
+
+	private static final long serialVersionUID = 1L;
+
+	private final ColumnBuffer myBuffer;
+	private final int myLength;
+	private final Units[] myUnits;
+	private final String[] myLabels;
+	private String myName;
+
+	private transient float[] myTimes;
+	private transient float[][] myValues;
+
+	/**
+	 * @param buffer Buffer that contains the samples
+	 * @param length Number of samples in the view (at most buffer.getSize())
+	 * @param units Units of each dimension of the values
+	 */
+	public ColumnTimeSeries(ColumnBuffer buffer, int length, Units[] units) {
+		if (length > buffer.getSize()) {
+			throw new IllegalArgumentException("Buffer contains only " + buffer.getSize() + " samples");
+		}
+		if (units.length != buffer.getDimension()) {
+			throw new IllegalArgumentException("Values have dimension " + buffer.getDimension()
+					+ " but there are " + units.length + " units");
+		}
+
+		myBuffer = buffer;
+		myLength = length;
+		myUnits = units;
+		myLabels = new String[units.length];
+		for (int i = 0; i < myLabels.length; i++) {
+			myLabels[i] = String.valueOf(i+1);
+		}
+	}
+
+	/**
+	 * @see ca.nengo.util.TimeSeries#getName()
+	 */
+	public String getName() {
+		return myName;
+	}
+
+	/**
+	 * @param name Name of the TimeSeries
+	 */
+	public void setName(String name) {
+		myName = name;
+	}
+
+	/**
+	 * @return Number of samples
+	 */
+	public int getLength() {
+		return myLength;
+	}
+
+	/**
+	 * @param index Index of a sample
+	 * @return Time of the sample
+	 */
+	public float getTime(int index) {
+		checkIndex(index);
+		return myBuffer.getTime(index);
+	}
+
+	/**
+	 * @param index Index of a sample
+	 * @param dimension Dimension of the value
+	 * @return Value of the sample in the given dimension
+	 */
+	public float getValue(int index, int dimension) {
+		checkIndex(index);
+		return myBuffer.getValue(index, dimension);
+	}
+
+	/**
+	 * @param dimension Dimension of the values
+	 * @return Values of all samples in the given dimension
+	 */
+	public float[] getColumn(int dimension) {
+		return myBuffer.getColumn(dimension, 0, myLength);
+	}
+
+	/**
+	 * @see ca.nengo.util.TimeSeries#getTimes()
+	 */
+	public float[] getTimes() {
+		if (myTimes == null) {
+			myTimes = myBuffer.getTimes(0, myLength);
+		}
+		return myTimes;
+	}
+
+	/**
+	 * @see ca.nengo.util.TimeSeries#getValues()
+	 */
+	public float[][] getValues() {
+		if (myValues == null) {
+			myValues = myBuffer.getRows(0, myLength);
+		}
+		return myValues;
+	}
+
+	/**
+	 * @see ca.nengo.util.TimeSeries#getDimension()
+	 */
+	public int getDimension() {
+		return myUnits.length;
+	}
+
+	/**
+	 * @see ca.nengo.util.TimeSeries#getUnits()
+	 */
+	public Units[] getUnits() {
+		return myUnits;
+	}
+
+	/**
+	 * @see ca.nengo.util.TimeSeries#getLabels()
+	 */
+	public String[] getLabels() {
+		return myLabels;
+	}
+
+	private void checkIndex(int index) {
+		if (index < 0 || index >= myLength) {
+			throw new IndexOutOfBoundsException("Index " + index + " is outside of 0 to " + (myLength - 1));
+		}
+	}
+
+	//a copy that doesn't refer to the buffer
+	private TimeSeriesImpl toTimeSeriesImpl() {
+		TimeSeriesImpl result = new TimeSeriesImpl(getTimes().clone(), getValues().clone(), myUnits.clone(), myLabels.clone());
+		result.setName(myName);
+		return result;
+	}
+
+	private Object writeReplace() throws ObjectStreamException {
+		return toTimeSeriesImpl();
+	}
+
+	/**
+	 * @see ca.nengo.util.TimeSeries#clone()
+	 */
+	@Override
+	public TimeSeries clone() throws CloneNotSupportedException {
+		return toTimeSeriesImpl();
+	}
+
+}
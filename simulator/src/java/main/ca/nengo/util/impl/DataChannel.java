@@ -0,0 +1,313 @@
+/*
+The contents of this file are subject to the Mozilla Public License Version 1.1
+(the "License"); you may not use this file except in compliance with the License.
+You may obtain a copy of the License at http://www.mozilla.org/MPL/
+
+Software distributed under the License is distributed on an "AS IS" basis, WITHOUT
+WARRANTY OF ANY KIND, either express or implied. See the License for the specific
+language governing rights and limitations under the License.
+
+The Original Code is "DataChannel.java". Description:
+"A bounded, lock-free history of vector values for interactive viewers"
+
+The Initial Developer of the Original Code is Bryan Tripp & Centre for Theoretical Neuroscience, University of Waterloo. Copyright (C) 2006-2008. All Rights Reserved.
+
+Alternatively, the contents of this file may be used under the terms of the GNU
+Public License license (the GPL License), in which case the provisions of GPL
+License are applicable  instead of those above. If you wish to allow use of your
+version of this file only under the terms of the GPL License and not to allow
+others to use your version of this file under the MPL, indicate your decision
+by deleting the provisions above and replace  them with the notice and other
+provisions required by the GPL License.  If you do not delete the provisions above,
+a recipient may use your version of this file under either the MPL or the GPL License.
+*/
+
+package ca.nengo.util.impl;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * <p>A bounded history of vector values, one per tick, that one thread writes (e.g. the simulation
+ * loop of an interactive viewer) and other threads read (e.g. components that paint the values).</p>
+ *
+ * <p>Values are kept in a ring buffer of the last getCapacity() ticks. Writing never blocks or
+ * allocates: the values are copied into the buffer and then published by a volatile write of the
+ * tick count. Readers take snapshots by copying from the buffer and then checking whether the
+ * writer overwrote any of the copied ticks in the meantime; such ticks (and ticks outside the
+ * history) are returned as null. For this check to be reliable, the buffer is an
+ * AtomicIntegerArray of float bits: the writer stores values with ordered writes, after the tick
+ * count that marks the old values as overwritten, and readers load them with volatile reads, which
+ * can't be reordered after the check.</p>
+ *
+ * <p>Readers can also ask for exponentially filtered values. Filtered values are computed from
+ * the history when they are first read, and are then updated incrementally, separately for each
+ * filter constant. Readers synchronize with each other for this, but not with the writer.</p>
+ */
+public class DataChannel {
+
+	private final int myDimension;
+	private volatile Ring myRing;
+	private final Map<Float, Filter> myFilters;
+
+	/**
+	 * @param dimension Number of values written at each tick
+	 * @param capacity Number of ticks kept in the history
+	 * @param start Number of the first tick that will be written
+	 */
+	public DataChannel(int dimension, int capacity, long start) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("Capacity must be at least 1");
+		}
+		myDimension = dimension;
+		myRing = new Ring(dimension, capacity, start);
+		myFilters = new HashMap<Float, Filter>();
+	}
+
+	/**
+	 * @return Number of values written at each tick
+	 */
+	public int getDimension() {
+		return myDimension;
+	}
+
+	/**
+	 * @return Number of ticks kept in the history
+	 */
+	public int getCapacity() {
+		return myRing.myCapacity;
+	}
+
+	/**
+	 * Changes the length of the history, keeping as many of the most recent ticks as fit. This
+	 * should be called by the writing thread (a value written at the same time may be lost).
+	 *
+	 * @param capacity Number of ticks kept in the history
+	 */
+	public void setCapacity(int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("Capacity must be at least 1");
+		}
+
+		Ring old = myRing;
+		long end = old.myEnd;
+		long start = Math.max(old.getOldest(end), end - capacity);
+		Ring ring = new Ring(myDimension, capacity, start);
+		for (long tick = start; tick < end; tick++) {
+			int from = old.getOffset(tick);
+			int to = ring.getOffset(tick);
+			for (int i = 0; i < myDimension; i++) {
+				ring.put(to + i, old.getValue(from + i));
+			}
+		}
+		ring.myEnd = end;
+		myRing = ring;
+	}
+
+	/**
+	 * @return Number of the first tick in the history
+	 */
+	public long getStart() {
+		Ring ring = myRing;
+		return ring.getOldest(ring.myEnd);
+	}
+
+	/**
+	 * @return Number of the tick after the last tick written
+	 */
+	public long getEnd() {
+		return myRing.myEnd;
+	}
+
+	/**
+	 * Clears the history.
+	 *
+	 * @param start Number of the next tick that will be written
+	 */
+	public void reset(long start) {
+		myRing = new Ring(myDimension, myRing.myCapacity, start);
+	}
+
+	/**
+	 * Adds values for the next tick. Only one thread should write.
+	 *
+	 * @param values Values at the next tick. Missing values are set to zero, and extra values are ignored.
+	 */
+	public void write(float[] values) {
+		Ring ring = myRing;
+		long end = ring.myEnd;
+		int offset = ring.getOffset(end);
+		int n = Math.min(values.length, myDimension);
+		for (int i = 0; i < n; i++) {
+			ring.put(offset + i, values[i]);
+		}
+		for (int i = n; i < myDimension; i++) {
+			ring.put(offset + i, 0);
+		}
+		ring.myEnd = end + 1;
+	}
+
+	/**
+	 * @return Values at the first tick in the history (null if there are none)
+	 */
+	public float[] getFirst() {
+		return get(getStart(), 1, 0)[0];
+	}
+
+	/**
+	 * @param start Number of the first tick to get
+	 * @param count Number of ticks to get
+	 * @param dtTau Step size divided by the time constant of an exponential filter to apply
+	 * 		(zero for no filter)
+	 * @return Values at each tick from start (null for ticks that aren't in the history)
+	 */
+	public float[][] get(long start, int count, float dtTau) {
+		float[][] result = new float[count][];
+		if (dtTau > 0) {
+			synchronized (myFilters) {
+				getFilter(dtTau).get(start, result);
+			}
+		} else {
+			myRing.get(start, result);
+		}
+		return result;
+	}
+
+	private Filter getFilter(float dtTau) {
+		Float key = Float.valueOf(dtTau);
+		Filter result = myFilters.get(key);
+		Ring ring = myRing;
+		if (result == null || result.myRing != ring) {
+			result = new Filter(ring, dtTau);
+			myFilters.put(key, result);
+		}
+		result.update();
+		return result;
+	}
+
+	//values of the last capacity ticks (with one extra slot, for the tick being written)
+	private static class Ring {
+
+		private final int myDimension;
+		private final int myCapacity;
+		private final long myStart;
+		private final AtomicIntegerArray myValues; //float bits
+		private volatile long myEnd;
+
+		public Ring(int dimension, int capacity, long start) {
+			myDimension = dimension;
+			myCapacity = capacity;
+			myStart = start;
+			myValues = new AtomicIntegerArray((capacity + 1) * dimension);
+			myEnd = start;
+		}
+
+		//ordered write, which can't be seen before the preceding write of myEnd
+		public void put(int index, float value) {
+			myValues.lazySet(index, Float.floatToRawIntBits(value));
+		}
+
+		//volatile read, which can't be reordered after a following read of myEnd
+		public float getValue(int index) {
+			return Float.intBitsToFloat(myValues.get(index));
+		}
+
+		public int getOffset(long tick) {
+			return (int) (tick % (myCapacity + 1)) * myDimension;
+		}
+
+		//oldest tick that is safe to read, given the last tick published
+		public long getOldest(long end) {
+			return Math.max(myStart, end - myCapacity);
+		}
+
+		public void get(long start, float[][] result) {
+			long end = myEnd;
+			long from = Math.max(start, getOldest(end));
+			long to = Math.min(start + result.length, end);
+			for (long tick = from; tick < to; tick++) {
+				float[] values = new float[myDimension];
+				int offset = getOffset(tick);
+				for (int i = 0; i < myDimension; i++) {
+					values[i] = getValue(offset + i);
+				}
+				result[(int) (tick - start)] = values;
+			}
+
+			//discard ticks that the writer may have overwritten while they were copied
+			long oldest = getOldest(myEnd);
+			for (long tick = from; tick < Math.min(oldest, to); tick++) {
+				result[(int) (tick - start)] = null;
+			}
+		}
+	}
+
+	//exponentially filtered values of a Ring, with the same capacity
+	private static class Filter {
+
+		private final Ring myRing;
+		private final float myDtTau;
+		private final float myDecay;
+		private final float[] myValues;
+		private long myStart; //first filtered tick
+		private long myEnd; //tick after the last filtered tick
+
+		public Filter(Ring ring, float dtTau) {
+			myRing = ring;
+			myDtTau = dtTau;
+			myDecay = (float) Math.exp(-dtTau);
+			myValues = new float[ring.myValues.length()];
+			myStart = ring.myStart;
+			myEnd = ring.myStart;
+		}
+
+		//filters ticks that have been written since the last update
+		public void update() {
+			int dim = myRing.myDimension;
+			long end = myRing.myEnd;
+			long oldest = myRing.getOldest(end);
+			long firstRead = myEnd; //oldest tick read from the ring
+			if (myEnd == myStart || myEnd < oldest) { //nothing filtered yet, or the writer got too far ahead
+				if (oldest == end) {
+					return;
+				}
+				int offset = myRing.getOffset(oldest);
+				for (int i = 0; i < dim; i++) {
+					myValues[offset + i] = myRing.getValue(offset + i) * myDtTau;
+				}
+				myStart = oldest;
+				myEnd = oldest + 1;
+				firstRead = oldest;
+			}
+
+			for (long tick = myEnd; tick < end; tick++) {
+				int previous = myRing.getOffset(tick - 1);
+				int offset = myRing.getOffset(tick);
+				for (int i = 0; i < dim; i++) {
+					myValues[offset + i] = myValues[previous + i] * myDecay + myRing.getValue(offset + i) * (1 - myDecay);
+				}
+			}
+			myEnd = end;
+
+			if (myRing.getOldest(myRing.myEnd) > firstRead) {
+				//values were overwritten while they were being filtered, so start again next time
+				myStart = myEnd;
+			} else {
+				myStart = Math.max(myStart, myEnd - myRing.myCapacity);
+			}
+		}
+
+		public void get(long start, float[][] result) {
+			int dim = myRing.myDimension;
+			long from = Math.max(start, Math.max(myStart, myRing.getOldest(myRing.myEnd)));
+			long to = Math.min(start + result.length, myEnd);
+			for (long tick = from; tick < to; tick++) {
+				float[] values = new float[dim];
+				System.arraycopy(myValues, myRing.getOffset(tick), values, 0, dim);
+				result[(int) (tick - start)] = values;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,338 @@
+package ca.nengo.util.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import ca.nengo.model.Network;
+import ca.nengo.model.Node;
+import ca.nengo.model.Origin;
+import ca.nengo.model.Projection;
+import ca.nengo.model.SimulationException;
+import ca.nengo.model.Termination;
+import ca.nengo.model.impl.NetworkImpl;
+import ca.nengo.util.ThreadTask;
+
+/**
+ * <p>A NodeThreadPool that schedules each step according to the dependencies between
+ * projections and nodes, rather than in three separate phases.</p>
+ *
+ * <p>A projection reads the output of its origin's node from the previous step, and writes
+ * the input of its termination's node for this step. So a node can run as soon as every
+ * projection into it (which provides its input) and every projection out of it (which must
+ * read its previous output before it is overwritten) has been transferred, regardless of
+ * whether other projections and nodes are finished. Threads take projections first, and then
+ * take nodes, most expensive first, as they become ready. Tasks are taken once all nodes have
+ * run. The threads are synchronized with the coordinating thread only once per step.</p>
+ *
+ * <p>Results are the same as with the phased schedule. Nodes that can't be matched with a
+ * projection's origin or termination (e.g. nodes that are not part of the network) are
+ * conservatively assumed to depend on it. This pool does not use the GPU.</p>
+ */
+public class DataflowThreadPool extends NodeThreadPool {
+
+	private int myNumWorkers;
+	private Worker[] myWorkers;
+
+	private int[][] myProjectionDependents; //indices of nodes that have to wait for each projection
+	private int[] myNodeDependencies; //number of projections each node has to wait for
+	private int[] myInitiallyReady; //nodes that don't have to wait for any projection, most expensive first
+
+	private final AtomicInteger myNextProjection = new AtomicInteger();
+	private final AtomicInteger myNextReadySlot = new AtomicInteger();
+	private final AtomicInteger myNextReadyClaim = new AtomicInteger();
+	private final AtomicInteger myNumNodesRemaining = new AtomicInteger();
+	private final AtomicInteger myNextTask = new AtomicInteger();
+	private AtomicIntegerArray myRemainingDependencies;
+	private AtomicIntegerArray myReadyNodes; //nodes in the order in which they became ready (-1 if not yet filled)
+
+	private volatile Throwable myError;
+
+	/**
+	 * @param network Network to run
+	 * @param threadTasks Tasks to run after the nodes in each step, in addition to those of the network
+	 */
+	public DataflowThreadPool(Network network, List<ThreadTask> threadTasks) {
+		initialize(network, threadTasks);
+	}
+
+	/**
+	 * Collects nodes, projections and tasks, builds the dependencies between projections and
+	 * nodes, and starts the threads.
+	 *
+	 * @see ca.nengo.util.impl.NodeThreadPool#initialize(ca.nengo.model.Network, java.util.List)
+	 */
+	protected void initialize(Network network, List<ThreadTask> threadTasks) {
+		Node[] nodes = network.getNodes();
+		List<Node> nodeList = collectNodes(nodes, true);
+		List<Projection> projList = collectProjections(nodes, network.getProjections());
+		List<ThreadTask> taskList = collectTasks(nodes);
+		taskList.addAll(threadTasks);
+
+		// most expensive nodes first, so that they are started as early as possible
+		myNodes = nodeList.toArray(new Node[0]);
+		final float[] costs = new float[myNodes.length];
+		for (int i = 0; i < costs.length; i++) {
+			costs[i] = estimateCost(myNodes[i]);
+		}
+		Integer[] order = new Integer[myNodes.length];
+		for (int i = 0; i < order.length; i++) {
+			order[i] = Integer.valueOf(i);
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				return Float.compare(costs[b.intValue()], costs[a.intValue()]);
+			}
+		});
+		Node[] sorted = new Node[myNodes.length];
+		for (int i = 0; i < order.length; i++) {
+			sorted[i] = myNodes[order[i].intValue()];
+		}
+		myNodes = sorted;
+
+		myProjections = projList.toArray(new Projection[0]);
+		myTasks = taskList.toArray(new ThreadTask[0]);
+		findDependencies();
+
+		myRemainingDependencies = new AtomicIntegerArray(myNodes.length);
+		myReadyNodes = new AtomicIntegerArray(myNodes.length);
+
+		runFinished = false;
+		myError = null;
+		myNumWorkers = Math.max(1, myNumJavaThreads);
+		myNumThreads = myNumWorkers;
+		myBarrier = myUseSpinBarrier ? new SpinPhaseBarrier(myNumWorkers) : new MonitorPhaseBarrier(myNumWorkers);
+
+		myWorkers = new Worker[myNumWorkers];
+		for (int i = 0; i < myNumWorkers; i++) {
+			myWorkers[i] = new Worker(i);
+			myWorkers[i].setName("DataflowThread" + i);
+			myWorkers[i].setPriority(Thread.MAX_PRIORITY);
+			myWorkers[i].setDaemon(true);
+			myWorkers[i].start();
+		}
+	}
+
+	//finds the nodes that have to wait for each projection
+	private void findDependencies() {
+		Map<Node, Integer> indices = new IdentityHashMap<Node, Integer>();
+		for (int i = 0; i < myNodes.length; i++) {
+			indices.put(myNodes[i], Integer.valueOf(i));
+		}
+
+		myProjectionDependents = new int[myProjections.length][];
+		myNodeDependencies = new int[myNodes.length];
+		for (int i = 0; i < myProjections.length; i++) {
+			List<Integer> dependents = new ArrayList<Integer>();
+			Origin origin = myProjections[i].getOrigin();
+			if (origin instanceof NetworkImpl.OriginWrapper) {
+				origin = ((NetworkImpl.OriginWrapper) origin).getBaseOrigin();
+			}
+			Termination termination = myProjections[i].getTermination();
+			if (termination instanceof NetworkImpl.TerminationWrapper) {
+				termination = ((NetworkImpl.TerminationWrapper) termination).getBaseTermination();
+			}
+			addDependents(origin.getNode(), indices, dependents);
+			addDependents(termination.getNode(), indices, dependents);
+
+			myProjectionDependents[i] = new int[dependents.size()];
+			for (int j = 0; j < dependents.size(); j++) {
+				myProjectionDependents[i][j] = dependents.get(j).intValue();
+				myNodeDependencies[myProjectionDependents[i][j]]++;
+			}
+		}
+
+		int numReady = 0;
+		for (int i = 0; i < myNodes.length; i++) {
+			if (myNodeDependencies[i] == 0) {
+				numReady++;
+			}
+		}
+		myInitiallyReady = new int[numReady];
+		numReady = 0;
+		for (int i = 0; i < myNodes.length; i++) {
+			if (myNodeDependencies[i] == 0) {
+				myInitiallyReady[numReady++] = i;
+			}
+		}
+	}
+
+	//adds indices of the pool's nodes that correspond to the given node (without duplicates)
+	private void addDependents(Node node, Map<Node, Integer> indices, List<Integer> dependents) {
+		if (node != null && indices.containsKey(node)) {
+			addDependent(indices.get(node), dependents);
+			return;
+		}
+
+		List<Node> parts = (node instanceof Network) ? collectNodes(new Node[]{node}, true) : null;
+		if (parts != null && parts.size() > 0 && indices.keySet().containsAll(parts)) {
+			for (int i = 0; i < parts.size(); i++) {
+				addDependent(indices.get(parts.get(i)), dependents);
+			}
+		} else {
+			for (int i = 0; i < myNodes.length; i++) {
+				addDependent(Integer.valueOf(i), dependents);
+			}
+		}
+	}
+
+	private static void addDependent(Integer index, List<Integer> dependents) {
+		if (!dependents.contains(index)) {
+			dependents.add(index);
+		}
+	}
+
+	/**
+	 * @param projection Index of a projection in the pool
+	 * @return Indices of nodes in the pool that can't run until the projection has been transferred
+	 */
+	public int[] getDependents(int projection) {
+		return myProjectionDependents[projection].clone();
+	}
+
+	/**
+	 * @return Nodes run by this pool, in the order in which the indices of getDependents(...) refer to them
+	 */
+	public Node[] getNodes() {
+		return myNodes.clone();
+	}
+
+	/**
+	 * Runs projections, nodes and tasks for one step, in order of their dependencies.
+	 *
+	 * @see ca.nengo.util.impl.NodeThreadPool#step(float, float)
+	 */
+	public void step(float startTime, float endTime) throws SimulationException {
+		myStartTime = startTime;
+		myEndTime = endTime;
+
+		for (int i = 0; i < myNodes.length; i++) {
+			myRemainingDependencies.set(i, myNodeDependencies[i]);
+			myReadyNodes.set(i, -1);
+		}
+		for (int i = 0; i < myInitiallyReady.length; i++) {
+			myReadyNodes.set(i, myInitiallyReady[i]);
+		}
+		myNextReadySlot.set(myInitiallyReady.length);
+		myNextReadyClaim.set(0);
+		myNextProjection.set(0);
+		myNumNodesRemaining.set(myNodes.length);
+		myNextTask.set(0);
+
+		try {
+			if (runFinished) {
+				throw new InterruptedException();
+			}
+
+			int oldPriority = Thread.currentThread().getPriority();
+			Thread.currentThread().setPriority(Thread.MAX_PRIORITY);
+			myBarrier.runPhase();
+			Thread.currentThread().setPriority(oldPriority);
+		} catch (InterruptedException e) {
+			throw new SimulationException(e);
+		}
+
+		if (myError != null) {
+			Throwable error = myError;
+			kill();
+			throw (error instanceof SimulationException) ? (SimulationException) error : new SimulationException(error);
+		}
+	}
+
+	//runs this thread's share of a step
+	private void runStep() throws SimulationException {
+		float startTime = myStartTime;
+		float endTime = myEndTime;
+
+		int projection;
+		while ((projection = myNextProjection.getAndIncrement()) < myProjections.length) {
+			if (myError != null) {
+				return;
+			}
+			myProjections[projection].getTermination().setValues(myProjections[projection].getOrigin().getValues());
+
+			int[] dependents = myProjectionDependents[projection];
+			for (int i = 0; i < dependents.length; i++) {
+				if (myRemainingDependencies.decrementAndGet(dependents[i]) == 0) {
+					myReadyNodes.set(myNextReadySlot.getAndIncrement(), dependents[i]);
+				}
+			}
+		}
+
+		int slot;
+		while ((slot = myNextReadyClaim.getAndIncrement()) < myNodes.length) {
+			int node;
+			while ((node = myReadyNodes.get(slot)) < 0) { //the remaining projections are being transferred
+				if (myError != null) {
+					return;
+				}
+				Thread.yield();
+			}
+
+			myNodes[node].run(startTime, endTime);
+			myNumNodesRemaining.decrementAndGet();
+		}
+
+		while (myNumNodesRemaining.get() > 0) {
+			if (myError != null) {
+				return;
+			}
+			Thread.yield();
+		}
+
+		int task;
+		while ((task = myNextTask.getAndIncrement()) < myTasks.length) {
+			if (myError != null) {
+				return;
+			}
+			myTasks[task].run(startTime, endTime);
+		}
+	}
+
+	/**
+	 * @see ca.nengo.util.impl.NodeThreadPool#kill()
+	 */
+	public synchronized void kill() {
+		if (runFinished) {
+			return;
+		}
+
+		runFinished = true;
+		myBarrier.release();
+		for (int i = 0; i < myWorkers.length; i++) {
+			myWorkers[i].interrupt();
+		}
+	}
+
+	private class Worker extends Thread {
+
+		private final int myIndex;
+
+		public Worker(int index) {
+			myIndex = index;
+		}
+
+		public void run() {
+			try {
+				myBarrier.workerWait(myIndex);
+				while (!runFinished) {
+					try {
+						runStep();
+					} catch (Throwable e) {
+						if (myError == null) {
+							myError = e;
+						}
+					}
+					myBarrier.workerFinished(myIndex);
+				}
+			} catch (InterruptedException e) {
+			}
+		}
+	}
+
+}
@@ -21,7 +21,7 @@ public class GPUThread extends NodeThread {
 		// create NEFGPUInterface from nodes and projections.
 		// have to have some way to communicate which nodes and projections it decides are going to run on the GPU
 		// so that the rest of the threads can run the remaining nodes and projections
-		myNEFGPUInterface = new NEFGPUInterface();
+		myNEFGPUInterface = NEFGPUInterface.create();
 	}
 	
 	protected void runNodes(float startTime, float endTime) throws SimulationException{
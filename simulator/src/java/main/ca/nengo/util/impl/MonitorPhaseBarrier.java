@@ -0,0 +1,97 @@
+package ca.nengo.util.impl;
+
+/**
+ * A PhaseBarrier in which all threads wait and notify on a single monitor. Waiting threads
+ * don't use any CPU, but each phase costs a full round of wait/notifyAll handshakes.
+ */
+public class MonitorPhaseBarrier implements PhaseBarrier {
+
+	private final Object myLock;
+	private final int myNumWorkers;
+
+	private int myNumWorkersComplete;
+	private int myNumWorkersWaiting;
+	private boolean myWorkersRunning;
+	private boolean myReleased;
+
+	/**
+	 * @param numWorkers Number of worker threads
+	 */
+	public MonitorPhaseBarrier(int numWorkers) {
+		myLock = new Object();
+		myNumWorkers = numWorkers;
+	}
+
+	/**
+	 * @see ca.nengo.util.impl.PhaseBarrier#runPhase()
+	 */
+	public void runPhase() throws InterruptedException {
+		synchronized(myLock){
+			if(myReleased)
+				throw new InterruptedException();
+
+			myNumWorkersComplete = 0;
+			myWorkersRunning = true;
+			myLock.notifyAll();  //release all the workers from the workerWait() loop
+
+			//we don't want the coordinator to continue (and start another phase) until all the workers are waiting
+			while(myWorkersRunning || myNumWorkersWaiting < myNumWorkers) {
+				if(myReleased)
+					throw new InterruptedException();
+				myLock.wait();
+			}
+		}
+	}
+
+	/**
+	 * @see ca.nengo.util.impl.PhaseBarrier#workerWait(int)
+	 */
+	public void workerWait(int worker) throws InterruptedException {
+		synchronized(myLock){
+			myNumWorkersWaiting++;
+			if(myNumWorkersWaiting == myNumWorkers)
+				myLock.notifyAll(); //all the workers are done the phase and in a waiting state, so free the coordinator
+
+			while(!myWorkersRunning) {
+				if(myReleased)
+					throw new InterruptedException();
+				myLock.wait();
+			}
+		}
+	}
+
+	/**
+	 * @see ca.nengo.util.impl.PhaseBarrier#workerFinished(int)
+	 */
+	public void workerFinished(int worker) throws InterruptedException {
+		synchronized(myLock){
+			myNumWorkersComplete++;
+
+			if(myNumWorkersComplete == myNumWorkers){
+				myWorkersRunning = false;
+				myNumWorkersWaiting = 0;
+				myLock.notifyAll(); //this is to move the workers into the workerWait loop
+			}
+			else{
+				while(myWorkersRunning) { //workers wait here when they are finished, but others are still running
+					if(myReleased)
+						throw new InterruptedException();
+					myLock.wait();
+				}
+			}
+
+			workerWait(worker); //workers wait here when they're all finished (i.e. wait here between phases)
+		}
+	}
+
+	/**
+	 * @see ca.nengo.util.impl.PhaseBarrier#release()
+	 */
+	public void release() {
+		synchronized(myLock){
+			myReleased = true;
+			myLock.notifyAll();
+		}
+	}
+
+}
@@ -0,0 +1,562 @@
+package ca.nengo.util.impl;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ca.nengo.model.Node;
+import ca.nengo.model.Origin;
+import ca.nengo.model.Termination;
+import ca.nengo.model.impl.NetworkImpl;
+import ca.nengo.model.nef.impl.DecodedOrigin;
+import ca.nengo.model.nef.impl.DecodedTermination;
+import ca.nengo.model.nef.impl.NEFEnsembleImpl;
+import ca.nengo.model.neuron.impl.LIFSpikeGenerator;
+import ca.nengo.model.neuron.impl.SpikingNeuron;
+
+/**
+ * <p>Runs the ensembles that NEFGPUInterface would send to the GPU on the CPU instead, using
+ * the same packed data. Each step has three stages, each spread across a pool of threads:
+ * filtering of decoded input (per ensemble), encoding and LIF neuron update (per block of
+ * neurons), and decoding (per ensemble). Projections between batched ensembles are passed
+ * on within the batch, as on the GPU.</p>
+ *
+ * <p>As on the GPU, each decoded termination is treated as a first-order low-pass filter
+ * with its time constant, and neuron-level state inside the ensembles is not updated.
+ * Ensembles are only batched if they consist of LIF SpikingNeurons without noise and have
+ * only non-modulatory DecodedTerminations (see canRun(...)); the rest run as usual.</p>
+ */
+public class NEFCPUInterface extends NEFGPUInterface {
+
+	/**
+	 * Number of neurons encoded and updated together as one unit of work.
+	 */
+	public static final int BLOCK_SIZE = 128;
+
+	private static final float Vth = 1;
+
+	private static int myNumThreads = Runtime.getRuntime().availableProcessors();
+
+	//network arrays (or single ensembles)
+	private int[][] mySourceArray; //[array][termination] -> array whose output feeds the termination, or -1
+	private int[][] mySourceOrigin; //[array][termination] -> origin of that array
+	private float[][][] myInputs; //[array][termination] -> input for the current step
+	private float[][][] myOutputs; //[array][origin] -> concatenated output of member ensembles
+
+	//ensembles
+	private int[] myArray; //array that contains each ensemble
+	private int[] myDimension;
+	private int[] myNumNeurons;
+	private int[][] myInputIndex; //[ensemble][termination] -> termination of the array that provides input, or -1
+	private int[][] myInputDimension;
+	private float[][][] myTransforms; //[ensemble][termination] -> row-major transform
+	private float[][] myTau;
+	private float[][][] myFiltered; //[ensemble][termination] -> filtered, transformed input
+	private float[][] myX; //represented value
+	private float[][] myEncoders; //row-major, scaled by radii
+	private float[][] myBias;
+	private float[][] myScale;
+	private float[] myTauRC;
+	private float[] myTauRef;
+	private boolean[] mySpiking;
+	private float[][] myVoltage;
+	private float[][] myTimeSinceLastSpike;
+	private float[][] myActivities;
+	private int[][] myOutputIndex; //[ensemble][array origin] -> origin of the ensemble
+	private int[][] myOutputOffset; //[ensemble][array origin] -> offset of the ensemble's output in the array's
+	private float[][][] myDecoders; //[ensemble][origin] -> row-major decoders
+	private int[][] myOutputDimension;
+	private float myMaxTimeStep;
+
+	//blocks of neurons
+	private int[] myBlockEnsemble;
+	private int[] myBlockStart;
+	private int[] myBlockEnd;
+
+	private float myStepStart;
+	private float myStepEnd;
+	private int myStage;
+	private final AtomicInteger myNextItem = new AtomicInteger();
+	private Worker[] myWorkers;
+	private PhaseBarrier myBarrier;
+	private volatile RuntimeException myError;
+
+	/**
+	 * @return Number of threads that run the batched ensembles
+	 */
+	public static int getNumThreads() {
+		return myNumThreads;
+	}
+
+	/**
+	 * @param numThreads Number of threads that run the batched ensembles in runs started from
+	 * 		now on (1 to run them in the calling thread)
+	 */
+	public static void setNumThreads(int numThreads) {
+		myNumThreads = Math.max(1, numThreads);
+	}
+
+	/**
+	 * @see ca.nengo.util.impl.NEFGPUInterface#canRun(ca.nengo.model.Node)
+	 */
+	protected boolean canRun(Node node) {
+		if (!super.canRun(node)) {
+			return false;
+		}
+
+		if (node instanceof NEFEnsembleImpl) {
+			return canRunEnsemble((NEFEnsembleImpl) node);
+		}
+
+		//members of a network array must all be batched, and must have the array's terminations and origins
+		Node[] members = ((NetworkImpl) node).getNodes();
+		Termination[] terminations = node.getTerminations();
+		Origin[] origins = node.getOrigins();
+		for (int i = 0; i < members.length; i++) {
+			if (!(members[i] instanceof NEFEnsembleImpl) || !canRunEnsemble((NEFEnsembleImpl) members[i])) {
+				return false;
+			}
+			NEFEnsembleImpl member = (NEFEnsembleImpl) members[i];
+			for (int j = 0; j < terminations.length; j++) {
+				if (indexOf(member.getTerminations(), terminations[j].getName()) < 0) {
+					return false;
+				}
+			}
+			for (int j = 0; j < origins.length; j++) {
+				if (indexOf(member.getDecodedOrigins(), origins[j].getName()) < 0) {
+					return false;
+				}
+			}
+		}
+		return members.length > 0;
+	}
+
+	private static boolean canRunEnsemble(NEFEnsembleImpl ensemble) {
+		Node[] nodes = ensemble.getNodes();
+		if (nodes.length == 0) {
+			return false;
+		}
+		for (int i = 0; i < nodes.length; i++) {
+			if (!(nodes[i] instanceof SpikingNeuron)
+					|| ((SpikingNeuron) nodes[i]).getNoise() != null
+					|| ((SpikingNeuron) nodes[i]).getGenerator().getClass() != LIFSpikeGenerator.class) {
+				return false;
+			}
+		}
+
+		Termination[] terminations = ensemble.getTerminations();
+		for (int i = 0; i < terminations.length; i++) {
+			if (!(terminations[i] instanceof DecodedTermination) || terminations[i].getModulatory()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int indexOf(Object[] namedObjects, String name) {
+		for (int i = 0; i < namedObjects.length; i++) {
+			String n = (namedObjects[i] instanceof Termination)
+				? ((Termination) namedObjects[i]).getName() : ((Origin) namedObjects[i]).getName();
+			if (n.equals(name)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @see ca.nengo.util.impl.NEFGPUInterface#getRequireAllOutputsOnCPU()
+	 */
+	protected boolean getRequireAllOutputsOnCPU() {
+		return true;
+	}
+
+	/**
+	 * Unpacks the data into flat arrays per ensemble and starts the threads.
+	 *
+	 * @see ca.nengo.util.impl.NEFGPUInterface#setupRun(float[][][][], int[][], float[][], float[][][], float[][][][], float[][], int[][], int[][], int[][], int[], int[], int[][], float, int[], int)
+	 */
+	protected void setupRun(float[][][][] terminationTransforms,
+			int[][] isDecodedTermination, float[][] terminationTau,
+			float[][][] encoders, float[][][][] decoders, float[][] neuronData,
+			int[][] projections, int[][] networkArrayData, int[][] ensembleData,
+			int[] isSpikingEnsemble, int[] collectSpikes, int[][] outputRequiredOnCPU, float maxTimeStep,
+			int[] deviceForNetworkArrays, int numDevicesRequested) {
+
+		int numArrays = myGPUNetworkArrays.length;
+		int numEnsembles = myGPUEnsembles.length;
+		myMaxTimeStep = maxTimeStep;
+
+		mySourceArray = new int[numArrays][];
+		mySourceOrigin = new int[numArrays][];
+		myInputs = new float[numArrays][][];
+		myOutputs = new float[numArrays][][];
+		for (int i = 0; i < numArrays; i++) {
+			int numTerminations = myGPUNetworkArrays[i].getTerminations().length;
+			mySourceArray[i] = new int[numTerminations];
+			mySourceOrigin[i] = new int[numTerminations];
+			Arrays.fill(mySourceArray[i], -1);
+			myInputs[i] = new float[numTerminations][];
+			myOutputs[i] = new float[getArrayOrigins(i).length][];
+		}
+		for (int i = 0; i < projections.length; i++) {
+			mySourceArray[projections[i][2]][projections[i][3]] = projections[i][0];
+			mySourceOrigin[projections[i][2]][projections[i][3]] = projections[i][1];
+		}
+
+		myArray = new int[numEnsembles];
+		myDimension = new int[numEnsembles];
+		myNumNeurons = new int[numEnsembles];
+		myInputIndex = new int[numEnsembles][];
+		myInputDimension = new int[numEnsembles][];
+		myTransforms = new float[numEnsembles][][];
+		myTau = new float[numEnsembles][];
+		myFiltered = new float[numEnsembles][][];
+		myX = new float[numEnsembles][];
+		myEncoders = new float[numEnsembles][];
+		myBias = new float[numEnsembles][];
+		myScale = new float[numEnsembles][];
+		myTauRC = new float[numEnsembles];
+		myTauRef = new float[numEnsembles];
+		mySpiking = new boolean[numEnsembles];
+		myVoltage = new float[numEnsembles][];
+		myTimeSinceLastSpike = new float[numEnsembles][];
+		myActivities = new float[numEnsembles][];
+		myOutputIndex = new int[numEnsembles][];
+		myOutputOffset = new int[numEnsembles][];
+		myDecoders = new float[numEnsembles][][];
+		myOutputDimension = new int[numEnsembles][];
+
+		int numBlocks = 0;
+		for (int a = 0; a < numArrays; a++) {
+			Termination[] arrayTerminations = myGPUNetworkArrays[a].getTerminations();
+			Origin[] arrayOrigins = getArrayOrigins(a);
+			int[] offsets = new int[arrayOrigins.length];
+
+			for (int e = networkArrayData[a][0]; e < networkArrayData[a][1]; e++) {
+				NEFEnsembleImpl ensemble = myGPUEnsembles[e];
+				int dim = ensembleData[e][0];
+				int n = ensembleData[e][1];
+				myArray[e] = a;
+				myDimension[e] = dim;
+				myNumNeurons[e] = n;
+				numBlocks += (n + BLOCK_SIZE - 1) / BLOCK_SIZE;
+
+				Termination[] terminations = ensemble.getTerminations();
+				myInputIndex[e] = new int[terminations.length];
+				myInputDimension[e] = new int[terminations.length];
+				myTransforms[e] = new float[terminations.length][];
+				myTau[e] = terminationTau[e].clone();
+				myFiltered[e] = new float[terminations.length][dim];
+				for (int t = 0; t < terminations.length; t++) {
+					myInputIndex[e][t] = indexOf(arrayTerminations, terminations[t].getName());
+					myInputDimension[e][t] = terminations[t].getDimensions();
+					myTransforms[e][t] = flatten(terminationTransforms[e][t]);
+				}
+
+				myX[e] = new float[dim];
+				myEncoders[e] = flatten(encoders[e]);
+				myBias[e] = new float[n];
+				myScale[e] = new float[n];
+				System.arraycopy(neuronData[e], 5, myBias[e], 0, n);
+				System.arraycopy(neuronData[e], 5 + n, myScale[e], 0, n);
+				myTauRC[e] = neuronData[e][1];
+				myTauRef[e] = neuronData[e][2];
+				mySpiking[e] = isSpikingEnsemble[e] != 0;
+				myVoltage[e] = new float[n];
+				myTimeSinceLastSpike[e] = new float[n];
+				myActivities[e] = new float[n];
+
+				DecodedOrigin[] origins = ensemble.getDecodedOrigins();
+				myDecoders[e] = new float[origins.length][];
+				myOutputDimension[e] = new int[origins.length];
+				for (int o = 0; o < origins.length; o++) {
+					myDecoders[e][o] = flatten(decoders[e][o]);
+					myOutputDimension[e][o] = origins[o].getDimensions();
+				}
+
+				myOutputIndex[e] = new int[arrayOrigins.length];
+				myOutputOffset[e] = new int[arrayOrigins.length];
+				for (int j = 0; j < arrayOrigins.length; j++) {
+					int o = indexOf(origins, arrayOrigins[j].getName());
+					myOutputIndex[e][j] = o;
+					myOutputOffset[e][j] = offsets[j];
+					offsets[j] += myOutputDimension[e][o];
+				}
+			}
+
+			for (int j = 0; j < arrayOrigins.length; j++) {
+				myOutputs[a][j] = new float[offsets[j]];
+			}
+		}
+
+		myBlockEnsemble = new int[numBlocks];
+		myBlockStart = new int[numBlocks];
+		myBlockEnd = new int[numBlocks];
+		int block = 0;
+		for (int e = 0; e < numEnsembles; e++) {
+			for (int start = 0; start < myNumNeurons[e]; start += BLOCK_SIZE) {
+				myBlockEnsemble[block] = e;
+				myBlockStart[block] = start;
+				myBlockEnd[block] = Math.min(start + BLOCK_SIZE, myNumNeurons[e]);
+				block++;
+			}
+		}
+
+		if (myNumThreads > 1) {
+			myBarrier = NodeThreadPool.getUseSpinBarrier()
+				? new SpinPhaseBarrier(myNumThreads) : new MonitorPhaseBarrier(myNumThreads);
+			myWorkers = new Worker[myNumThreads];
+			for (int i = 0; i < myNumThreads; i++) {
+				myWorkers[i] = new Worker(i);
+				myWorkers[i].setName("CPUBackendThread" + i);
+				myWorkers[i].setDaemon(true);
+				myWorkers[i].start();
+			}
+		}
+	}
+
+	//the origins of a network array (or the decoded origins of an ensemble), as indexed in the packed data
+	private Origin[] getArrayOrigins(int array) {
+		Node node = myGPUNetworkArrays[array];
+		return (node instanceof NEFEnsembleImpl) ? ((NEFEnsembleImpl) node).getDecodedOrigins() : node.getOrigins();
+	}
+
+	private static float[] flatten(float[][] matrix) {
+		int columns = matrix.length > 0 ? matrix[0].length : 0;
+		float[] result = new float[matrix.length * columns];
+		for (int i = 0; i < matrix.length; i++) {
+			System.arraycopy(matrix[i], 0, result, i * columns, columns);
+		}
+		return result;
+	}
+
+	/**
+	 * @see ca.nengo.util.impl.NEFGPUInterface#runStep(float[][][], float[][][], float[][], float, float)
+	 */
+	protected void runStep(float[][][] representedInput, float[][][] representedOutput, float[][] spikes,
+			float startTime, float endTime) {
+
+		// input from outside the batch, or from the previous output of batched origins
+		for (int a = 0; a < myInputs.length; a++) {
+			for (int j = 0; j < myInputs[a].length; j++) {
+				myInputs[a][j] = (mySourceArray[a][j] < 0)
+					? representedInput[a][j] : myOutputs[mySourceArray[a][j]][mySourceOrigin[a][j]];
+			}
+		}
+
+		myStepStart = startTime;
+		myStepEnd = endTime;
+		runStage(0, myGPUEnsembles.length);
+		runStage(1, myBlockEnsemble.length);
+		runStage(2, myGPUEnsembles.length);
+
+		for (int a = 0; a < myOutputs.length; a++) {
+			for (int j = 0; j < myOutputs[a].length; j++) {
+				if (representedOutput[a][j] != null) {
+					System.arraycopy(myOutputs[a][j], 0, representedOutput[a][j], 0, myOutputs[a][j].length);
+				}
+			}
+		}
+		for (int e = 0; e < spikes.length; e++) {
+			if (spikes[e] != null) {
+				System.arraycopy(myActivities[e], 0, spikes[e], 0, myActivities[e].length);
+			}
+		}
+	}
+
+	//runs all items of a stage, in this thread or spread across the workers
+	private void runStage(int stage, int numItems) {
+		myStage = stage;
+		myNextItem.set(0);
+		if (myWorkers == null) {
+			for (int i = 0; i < numItems; i++) {
+				runItem(stage, i);
+			}
+		} else {
+			try {
+				myBarrier.runPhase();
+			} catch (InterruptedException e) {
+				throw new RuntimeException("Batched ensembles were stopped", e);
+			}
+			if (myError != null) {
+				throw myError;
+			}
+		}
+	}
+
+	//runs items of the current stage until there are none left
+	private void runItems() {
+		int stage = myStage;
+		int numItems = (stage == 1) ? myBlockEnsemble.length : myGPUEnsembles.length;
+		int item;
+		try {
+			while ((item = myNextItem.getAndIncrement()) < numItems) {
+				runItem(stage, item);
+			}
+		} catch (RuntimeException e) {
+			myError = e;
+		}
+	}
+
+	private void runItem(int stage, int item) {
+		if (stage == 0) {
+			filterInput(item);
+		} else if (stage == 1) {
+			runNeurons(myBlockEnsemble[item], myBlockStart[item], myBlockEnd[item]);
+		} else {
+			decode(item);
+		}
+	}
+
+	//sums the filtered, transformed input of each termination of an ensemble
+	private void filterInput(int e) {
+		float dt = myStepEnd - myStepStart;
+		float[] x = myX[e];
+		int dim = x.length;
+		Arrays.fill(x, 0);
+
+		for (int t = 0; t < myTransforms[e].length; t++) {
+			float[] filtered = myFiltered[e][t];
+			int in = myInputIndex[e][t];
+			float[] u = (in < 0) ? null : myInputs[myArray[e]][in];
+
+			float tau = myTau[e][t];
+			float decay = (tau > 0) ? (float) Math.exp(-dt / tau) : 0;
+			float[] transform = myTransforms[e][t];
+			int columns = myInputDimension[e][t];
+			for (int i = 0; i < dim; i++) {
+				float v = 0;
+				if (u != null) {
+					int offset = i * columns;
+					for (int k = 0; k < columns; k++) {
+						v += transform[offset + k] * u[k];
+					}
+				}
+				filtered[i] = decay * filtered[i] + (1 - decay) * v;
+				x[i] += filtered[i];
+			}
+		}
+	}
+
+	//encodes the represented value and runs a block of an ensemble's neurons
+	private void runNeurons(int e, int start, int end) {
+		float len = myStepEnd - myStepStart;
+		float[] x = myX[e];
+		int dim = x.length;
+		float[] encoders = myEncoders[e];
+		float[] bias = myBias[e];
+		float[] scale = myScale[e];
+		float[] activities = myActivities[e];
+		float tauRC = myTauRC[e];
+		float tauRef = myTauRef[e];
+
+		if (!mySpiking[e]) {
+			for (int n = start; n < end; n++) {
+				float radial = 0;
+				for (int k = 0, offset = n * dim; k < dim; k++) {
+					radial += encoders[offset + k] * x[k];
+				}
+				float current = bias[n] + scale[n] * radial;
+				activities[n] = current > 1 ? 1f / ( tauRef - tauRC * ((float) Math.log(1 - 1/current)) ) : 0;
+			}
+			return;
+		}
+
+		int steps = (int) Math.ceil(len / myMaxTimeStep);
+		float dt = len / steps;
+		float inverseTauRC = 1 / tauRC;
+		float spikeActivity = 1 / len;
+		float[] voltage = myVoltage[e];
+		float[] timeSinceLastSpike = myTimeSinceLastSpike[e];
+		for (int n = start; n < end; n++) {
+			float radial = 0;
+			for (int k = 0, offset = n * dim; k < dim; k++) {
+				radial += encoders[offset + k] * x[k];
+			}
+			float I = bias[n] + scale[n] * radial;
+			float V = voltage[n];
+			float tss = timeSinceLastSpike[n];
+			boolean spiking = false;
+
+			for (int j = 0; j < steps; j++) {
+				float dV = inverseTauRC * (I - V);
+				tss = tss + dt;
+				if (tss < tauRef) {
+					dV = 0;
+				} else if (tss < tauRef+dt) {
+					dV *= (tss-tauRef)/dt;
+				}
+				float previousV = V;
+				V = Math.max(0, V + dt*dV);
+
+				if (V >= Vth) {
+					float dSpike = (Vth-previousV)*dt/(V-previousV);
+					tss = dt-dSpike;
+					V = 0;
+					spiking = true;
+				}
+			}
+
+			voltage[n] = V;
+			timeSinceLastSpike[n] = tss;
+			activities[n] = spiking ? spikeActivity : 0f;
+		}
+	}
+
+	//decodes an ensemble's activities into its part of each array origin
+	private void decode(int e) {
+		float[] activities = myActivities[e];
+		int n = activities.length;
+		float[][] arrayOutputs = myOutputs[myArray[e]];
+
+		for (int j = 0; j < arrayOutputs.length; j++) {
+			int o = myOutputIndex[e][j];
+			int dim = myOutputDimension[e][o];
+			int offset = myOutputOffset[e][j];
+			float[] decoders = myDecoders[e][o];
+			float[] output = arrayOutputs[j];
+
+			for (int d = 0; d < dim; d++) {
+				output[offset + d] = 0;
+			}
+			for (int i = 0; i < n; i++) {
+				float a = activities[i];
+				if (a != 0) { //most neurons don't spike in a given step
+					for (int d = 0, row = i * dim; d < dim; d++) {
+						output[offset + d] += decoders[row + d] * a;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * @see ca.nengo.util.impl.NEFGPUInterface#killRun()
+	 */
+	protected void killRun() {
+		if (myBarrier != null) {
+			myBarrier.release();
+		}
+	}
+
+	private class Worker extends Thread {
+
+		private final int myIndex;
+
+		public Worker(int index) {
+			myIndex = index;
+		}
+
+		public void run() {
+			try {
+				myBarrier.workerWait(myIndex);
+				while (true) {
+					runItems();
+					myBarrier.workerFinished(myIndex);
+				}
+			} catch (InterruptedException e) {
+			}
+		}
+	}
+
+}
@@ -5,6 +5,7 @@ import java.util.Arrays;
 import java.util.List;
 
 import ca.nengo.math.impl.MultiLevelKLNetworkPartitioner;
+import ca.nengo.model.InstantaneousOutput;
 import ca.nengo.model.Node;
 import ca.nengo.model.Origin;
 import ca.nengo.model.PlasticNodeTermination;
@@ -38,6 +39,7 @@ public class NEFGPUInterface {
 	private static int myNumDevices = 0;
 	private static int myNumAvailableDevices = 0;
 	private static String myErrorMessage;
+	private static boolean myUseJavaBackend = false;
 	
 	private static boolean showTiming = false;
 	private boolean myShowTiming;
@@ -122,9 +124,34 @@ public class NEFGPUInterface {
 		return myNumDevices;
 	}
 	
-	// get whether or not to use the GPU. set whether or not to use the GPU by using setRequestedNumDevices
+	// get whether or not to use the GPU (or the pure-Java backend, if no GPU is requested). set whether or not
+	// to use the GPU by using setRequestedNumDevices
 	public static boolean getUseGPU(){
-		return myNumDevices > 0;
+		return myNumDevices > 0 || myUseJavaBackend;
+	}
+	
+	/**
+	 * @param use True if GPU-capable ensembles should be run with the same batched data layout
+	 * 		on the CPU, by an NEFCPUInterface, when no GPU devices are requested
+	 */
+	public static void setUseJavaBackend(boolean use){
+		myUseJavaBackend = use;
+	}
+	
+	public static boolean getUseJavaBackend(){
+		return myUseJavaBackend;
+	}
+	
+	/**
+	 * @return An NEFGPUInterface if GPU devices are requested, otherwise an NEFCPUInterface
+	 * 		if the pure-Java backend is selected (see setUseJavaBackend(...))
+	 */
+	public static NEFGPUInterface create(){
+		if(myNumDevices == 0 && myUseJavaBackend){
+			return new NEFCPUInterface();
+		}else{
+			return new NEFGPUInterface();
+		}
 	}
 	
 	public static void showGPUTiming(){
@@ -155,7 +182,7 @@ public class NEFGPUInterface {
 	public void initialize(){
 		int[] nodeAssignments = findOptimalNodeAssignments(myGPUNetworkArrays, myGPUProjections, myNumDevices);
 
-		boolean requireAllOutputsOnCPU = myRequireAllOutputsOnCPU;
+		boolean requireAllOutputsOnCPU = myRequireAllOutputsOnCPU || getRequireAllOutputsOnCPU();
 		
 		myShowTiming = showTiming;
 		if(myShowTiming){
@@ -445,7 +472,7 @@ public class NEFGPUInterface {
 			ensembleDataArray[i] = ensembleData.getAsArray();
 		}
 		
-		nativeSetupRun(terminationTransforms, isDecodedTermination,
+		setupRun(terminationTransforms, isDecodedTermination,
 				terminationTau, encoders, decoders, neuronData,
 				adjustedProjections, networkArrayDataArray, ensembleDataArray,
 				isSpikingEnsemble, collectSpikes, outputRequiredOnCPU, maxTimeStep, nodeAssignments, myNumDevices);
@@ -519,7 +546,8 @@ public class NEFGPUInterface {
 					for (j = 0; j < count; j++) {
 						// we only get input for non-GPU terminations
 						if (!inputOnGPU[i][j]) {
-							inputRow = ((RealOutput) terminations[j].getInput()).getValues();
+							InstantaneousOutput input = terminations[j].getInput();
+							inputRow = (input == null) ? null : ((RealOutput) input).getValues();
 								
 							representedInputValues[i][j] = inputRow;
 						}
@@ -527,7 +555,7 @@ public class NEFGPUInterface {
 				}
 				
 	
-				nativeStep(representedInputValues, representedOutputValues, spikeOutput, startTime, endTime);
+				runStep(representedInputValues, representedOutputValues, spikeOutput, startTime, endTime);
 	
 				
 				// Put data computed by GPU in the origins
@@ -580,9 +608,63 @@ public class NEFGPUInterface {
 		if (myGPUEnsembles.length == 0)
 			return;
 		
+		killRun();
+	}
+
+	/**
+	 * Passes the packed ensemble data to the devices that will run them. Arguments are those
+	 * of nativeSetupRun. By default calls nativeSetupRun; subclasses can run the packed data elsewhere.
+	 */
+	protected void setupRun(float[][][][] terminationTransforms,
+			int[][] isDecodedTermination, float[][] terminationTau,
+			float[][][] encoders, float[][][][] decoders, float[][] neuronData,
+			int[][] projections, int[][] networkArrayData, int[][] ensembleData, 
+			int[] isSpikingEnsemble, int[] collectSpikes, int[][] outputRequiredOnCPU, float maxTimeStep, 
+			int[] deviceForNetworkArrays, int numDevicesRequested){
+		nativeSetupRun(terminationTransforms, isDecodedTermination, terminationTau, encoders, decoders,
+				neuronData, projections, networkArrayData, ensembleData, isSpikingEnsemble, collectSpikes,
+				outputRequiredOnCPU, maxTimeStep, deviceForNetworkArrays, numDevicesRequested);
+	}
+
+	/**
+	 * Runs the packed ensembles for one step. Arguments are those of nativeStep. By default calls nativeStep.
+	 */
+	protected void runStep(float[][][] representedInput, float[][][] representedOutput, float[][] spikes,
+			float startTime, float endTime){
+		nativeStep(representedInput, representedOutput, spikes, startTime, endTime);
+	}
+
+	/**
+	 * Frees whatever was set up in setupRun(...). By default calls nativeKill.
+	 */
+	protected void killRun(){
 		nativeKill();
 	}
 
+	/**
+	 * @return True if the outputs of all origins are to be passed back to the CPU every step,
+	 * 		regardless of requireAllOutputsOnCPU(...). False by default.
+	 */
+	protected boolean getRequireAllOutputsOnCPU(){
+		return false;
+	}
+
+	/**
+	 * @param node A node in the network
+	 * @return True if the node can be run by this interface (by default, NEFEnsembleImpls and
+	 * 		NetworkArrayImpls that are set to use the GPU)
+	 */
+	protected boolean canRun(Node node){
+		boolean NEFEnsembleUseGPU = 
+			node instanceof NEFEnsembleImpl && ((NEFEnsembleImpl) node).getUseGPU();
+		
+		boolean NetworkArrayUseGPU = 
+			node instanceof NetworkArrayImpl &&
+			((NetworkImpl) node).getUseGPU();
+		
+		return NEFEnsembleUseGPU || NetworkArrayUseGPU;
+	}
+
 	/**
 	 * Used when there are multiple GPU's running a simulation. Finds a distribution of nodes to GPU's that minimizes 
 	 * communication between GPU's while also ensuring the number of neurons running on each GPU is relatively balanced.
@@ -622,14 +704,8 @@ public class NEFGPUInterface {
 		
 		for(int i = 0; i < nodes.length; i++){
 			Node workingNode = nodes[i];
-			boolean NEFEnsembleUseGPU = 
-				workingNode instanceof NEFEnsembleImpl && ((NEFEnsembleImpl) workingNode).getUseGPU();
-			
-			boolean NetworkArrayUseGPU = 
-				workingNode instanceof NetworkArrayImpl &&
-				((NetworkImpl) workingNode).getUseGPU();
 		
-			if(NEFEnsembleUseGPU || NetworkArrayUseGPU){
+			if(canRun(workingNode)){
 				gpuNodeList.add(workingNode);
 			}
 			else{
@@ -16,6 +16,7 @@ import ca.nengo.util.ThreadTask;
 public class NodeThread extends Thread {
 
 	private NodeThreadPool myNodeThreadPool;
+	private int myIndex;
 
 	private Node[] myNodes;
 	private int myStartIndexInNodes;
@@ -29,6 +30,9 @@ public class NodeThread extends Thread {
 	private int myStartIndexInTasks;
 	private int myEndIndexInTasks;
 
+	private long[] myNodeRunTimes;
+	private long[] myTaskRunTimes;
+
 	private boolean myCollectTimings;
 
 	private double myAverageTimeOnProjectionsPerStep;
@@ -66,16 +70,69 @@ public class NodeThread extends Thread {
 	
 	
 
+	/**
+	 * @param index Index of this thread in its NodeThreadPool
+	 */
+	public void setIndex(int index) {
+		myIndex = index;
+	}
+
+	/**
+	 * @return Index of this thread in its NodeThreadPool
+	 */
+	public int getIndex() {
+		return myIndex;
+	}
+
+	/**
+	 * Changes the nodes run by this thread. Should only be called between steps.
+	 *
+	 * @param nodes Array of nodes shared by the threads in the pool
+	 * @param startIndex Index of the first node to be run by this thread
+	 * @param endIndex Index after the last node to be run by this thread
+	 */
+	public void setNodes(Node[] nodes, int startIndex, int endIndex) {
+		myNodes = nodes;
+		myStartIndexInNodes = startIndex;
+		myEndIndexInNodes = endIndex;
+	}
+
+	/**
+	 * Changes the tasks run by this thread. Should only be called between steps.
+	 *
+	 * @param tasks Array of tasks shared by the threads in the pool
+	 * @param startIndex Index of the first task to be run by this thread
+	 * @param endIndex Index after the last task to be run by this thread
+	 */
+	public void setTasks(ThreadTask[] tasks, int startIndex, int endIndex) {
+		myTasks = tasks;
+		myStartIndexInTasks = startIndex;
+		myEndIndexInTasks = endIndex;
+	}
+
+	/**
+	 * Sets arrays in which this thread accumulates the time (in ns) spent running each of its nodes
+	 * and tasks. The arrays are indexed like the arrays of nodes and tasks. Should only be called
+	 * between steps.
+	 *
+	 * @param nodeRunTimes Run time of each node, or null to stop measuring node run times
+	 * @param taskRunTimes Run time of each task, or null to stop measuring task run times
+	 */
+	public void setRunTimes(long[] nodeRunTimes, long[] taskRunTimes) {
+		myNodeRunTimes = nodeRunTimes;
+		myTaskRunTimes = taskRunTimes;
+	}
+
 	public void waitForPool() {
 		try {
-			myNodeThreadPool.threadWait();
+			myNodeThreadPool.threadWait(myIndex);
 		} catch (Exception e) {
 		}
 	}
 
 	public void finished() {
 		try {
-			myNodeThreadPool.threadFinished();
+			myNodeThreadPool.threadFinished(myIndex);
 		} catch (Exception e) {
 		}
 	}
@@ -94,17 +151,31 @@ public class NodeThread extends Thread {
 	protected void runNodes(float startTime, float endTime) throws SimulationException{
 		
 		
+		long[] runTimes = myNodeRunTimes;
 		for (int i = myStartIndexInNodes; i < myEndIndexInNodes; i++) {
 			
-			myNodes[i].run(startTime, endTime);
+			if (runTimes == null) {
+				myNodes[i].run(startTime, endTime);
+			} else {
+				long start = System.nanoTime();
+				myNodes[i].run(startTime, endTime);
+				runTimes[i] += System.nanoTime() - start;
+			}
 		}
 		
 	}
 	
 	protected void runTasks(float startTime, float endTime) throws SimulationException {
 		
+		long[] runTimes = myTaskRunTimes;
 		for (int i = myStartIndexInTasks; i < myEndIndexInTasks; i++) {
-            myTasks[i].run(startTime, endTime);
+			if (runTimes == null) {
+				myTasks[i].run(startTime, endTime);
+			} else {
+				long start = System.nanoTime();
+				myTasks[i].run(startTime, endTime);
+				runTimes[i] += System.nanoTime() - start;
+			}
         }
 	}
 	
@@ -3,15 +3,19 @@ package ca.nengo.util.impl;
 //import ca.nengo.model.InstantaneousOutput;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.LinkedList;
 import java.util.List;
 
+import ca.nengo.model.Ensemble;
 import ca.nengo.model.Network;
 import ca.nengo.model.Node;
 import ca.nengo.model.Projection;
 import ca.nengo.model.SimulationException;
+import ca.nengo.model.SimulationMode;
 import ca.nengo.model.impl.NetworkArrayImpl;
+import ca.nengo.model.nef.NEFEnsemble;
 import ca.nengo.util.TaskSpawner;
 import ca.nengo.util.ThreadTask;
 
@@ -31,21 +35,25 @@ public class NodeThreadPool {
 	protected static int myNumJavaThreads = defaultNumJavaThreads;
 	protected int myNumThreads;
 	protected NodeThread[] myThreads;
-	protected Object myLock;
+	protected PhaseBarrier myBarrier;
 
 	protected Node[] myNodes;
 	protected Projection[] myProjections;
     protected ThreadTask[] myTasks;
 
-	protected volatile int numThreadsComplete;
-	protected volatile int numThreadsWaiting;
-
-	protected volatile boolean threadsRunning;
 	protected volatile boolean runFinished;
 	protected float myStartTime;
 	protected float myEndTime;
 	
 	protected static boolean myCollectTimings;
+	protected static boolean myUseSpinBarrier = true;
+	protected static boolean myUseDataflowScheduling = false;
+	protected static int myRebalanceSteps = 20;
+
+	protected int myNumPoolJavaThreads;
+	protected int myStepCount;
+	protected long[] myNodeRunTimes;
+	protected long[] myTaskRunTimes;
 	protected long myRunStartTime;
 	protected double myAverageTimePerStep;
 	protected int myNumSteps;
@@ -80,6 +88,73 @@ public class NodeThreadPool {
 		myCollectTimings = collectTimings;
 	}
 	
+	/**
+	 * @return True if threads are synchronized between phases with a SpinPhaseBarrier,
+	 * 		false if they use a MonitorPhaseBarrier
+	 */
+	public static boolean getUseSpinBarrier() {
+		return myUseSpinBarrier;
+	}
+
+	/**
+	 * @param useSpinBarrier True if threads in pools created from now on should be synchronized
+	 * 		between phases with a SpinPhaseBarrier (low latency), false if they should use a
+	 * 		MonitorPhaseBarrier (no spinning)
+	 */
+	public static void setUseSpinBarrier(boolean useSpinBarrier) {
+		myUseSpinBarrier = useSpinBarrier;
+	}
+
+	/**
+	 * @return True if simulators run networks in a DataflowThreadPool, which starts each node as
+	 * 		soon as the projections it depends on have been transferred, rather than in phases
+	 */
+	public static boolean getUseDataflowScheduling() {
+		return myUseDataflowScheduling;
+	}
+
+	/**
+	 * @param useDataflow True if simulators should run networks in a DataflowThreadPool, which
+	 * 		starts each node as soon as the projections it depends on have been transferred, false
+	 * 		if they should run projections, nodes and tasks in separate phases (the GPU is only
+	 * 		used with phases)
+	 */
+	public static void setUseDataflowScheduling(boolean useDataflow) {
+		myUseDataflowScheduling = useDataflow;
+	}
+
+	/**
+	 * Creates the kind of pool selected with setUseDataflowScheduling(...).
+	 *
+	 * @param network Network to run
+	 * @param threadTasks Tasks to run after the nodes in each step, in addition to those of the network
+	 * @return A new pool, with its threads started
+	 */
+	public static NodeThreadPool create(Network network, List<ThreadTask> threadTasks) {
+		if (myUseDataflowScheduling && !NEFGPUInterface.getUseGPU()) {
+			return new DataflowThreadPool(network, threadTasks);
+		} else {
+			return new NodeThreadPool(network, threadTasks);
+		}
+	}
+
+	/**
+	 * @return Number of steps over which the run times of nodes and tasks are measured before
+	 * 		they are redistributed among threads (0 means work is only distributed by estimated cost)
+	 */
+	public static int getRebalanceSteps() {
+		return myRebalanceSteps;
+	}
+
+	/**
+	 * @param steps Number of steps over which the run times of nodes and tasks are measured
+	 * 		before they are redistributed among threads (0 means work is only distributed by
+	 * 		estimated cost)
+	 */
+	public static void setRebalanceSteps(int steps) {
+		myRebalanceSteps = steps;
+	}
+
 	public float getStartTime(){
 		return myStartTime;
 	}
@@ -106,8 +181,8 @@ public class NodeThreadPool {
 	 * and calls the initialization function of the gpu thread's NEFGPUInterface. Starts the GPU thread.
 	 * 
 	 * 2. Creates the appropriate number of java threads and assigns to each a fair number of
-	 * projections, nodes and tasks from those that remain after the GPU data has been dealt with.
-	 * Starts the Java threads.
+	 * projections, and a fair share (by estimated cost) of nodes and tasks from those that remain
+	 * after the GPU data has been dealt with. Starts the Java threads.
 	 * 
 	 * 3. Initializes synchronization primitives and variables for collecting timing data if applicable.
 	 * 
@@ -115,8 +190,6 @@ public class NodeThreadPool {
 	 */
 	protected void initialize(Network network, List<ThreadTask> threadTasks){
 		
-		myLock = new Object();
-		
 		Node[] nodes = network.getNodes();
 		Projection[] projections = network.getProjections();
 		
@@ -129,10 +202,7 @@ public class NodeThreadPool {
 		myProjections = projList.toArray(new Projection[0]);
 		myTasks = taskList.toArray(new ThreadTask[0]);
 		
-		threadsRunning = false;
 		runFinished = false;
-		numThreadsWaiting = 0;
-		numThreadsComplete = 0;
 		
 		boolean useGPU = NEFGPUInterface.getUseGPU();
 		
@@ -144,6 +214,7 @@ public class NodeThreadPool {
 		
 		
 		myThreads = new NodeThread[myNumThreads];
+		myBarrier = myUseSpinBarrier ? new SpinPhaseBarrier(myNumThreads) : new MonitorPhaseBarrier(myNumThreads);
 		
 		if(useGPU){ 
 			GPUThread gpuThread = new GPUThread(this);
@@ -159,6 +230,7 @@ public class NodeThreadPool {
 			
 			gpuThread.setCollectTimings(myCollectTimings);
 			gpuThread.setName("GPUThread0");
+			gpuThread.setIndex(myNumJavaThreads);
 			
 			myThreads[myNumJavaThreads] = gpuThread;
 			
@@ -170,42 +242,41 @@ public class NodeThreadPool {
 		// "run" method of nodes which are members of classes which derive from the NetworkImpl class since 
 		// NetworkImpls create their own LocalSimulators when run.
 		myNodes = collectNodes(myNodes, true).toArray(new Node[0]);
+		myNumPoolJavaThreads = myNumJavaThreads;
+
+		// Nodes and tasks are distributed by estimated cost (reordering them so that each thread's share is contiguous)
+		float[] nodeCosts = new float[myNodes.length];
+		for (int i = 0; i < nodeCosts.length; i++) {
+			nodeCosts[i] = estimateCost(myNodes[i]);
+		}
+		int[] nodeBounds = balance(myNodes, nodeCosts, Math.max(1, myNumJavaThreads));
+
+		float[] taskCosts = new float[myTasks.length];
+		Arrays.fill(taskCosts, 1);
+		int[] taskBounds = balance(myTasks, taskCosts, Math.max(1, myNumJavaThreads));
 
-		int nodesPerJavaThread = (int) Math.ceil((float) myNodes.length / (float) myNumJavaThreads);
 		int projectionsPerJavaThread = (int) Math.ceil((float) myProjections.length / (float) myNumJavaThreads);
-        int tasksPerJavaThread = (int) Math.ceil((float) myTasks.length / (float) myNumJavaThreads);
 
-		int nodeOffset = 0, projectionOffset = 0, taskOffset = 0;
-		int nodeStartIndex, nodeEndIndex, projectionStartIndex, projectionEndIndex, taskStartIndex, taskEndIndex;
+		int projectionOffset = 0;
+		int projectionStartIndex, projectionEndIndex;
 
 		
-		// Evenly distribute projections, nodes and tasks to the java threads.
+		// Evenly distribute projections to the java threads.
 		for(int i = 0; i < myNumJavaThreads; i++){
 
-			nodeStartIndex = nodeOffset;
-			nodeEndIndex = myNodes.length - nodeOffset >= nodesPerJavaThread ?
-					nodeOffset + nodesPerJavaThread : myNodes.length;
-
-			nodeOffset += nodesPerJavaThread;
-
 			projectionStartIndex = projectionOffset;
 			projectionEndIndex = myProjections.length - projectionOffset >= projectionsPerJavaThread ?
 					projectionOffset + projectionsPerJavaThread : myProjections.length;
 
 			projectionOffset += projectionsPerJavaThread;
 
-			taskStartIndex = taskOffset;
-			taskEndIndex = myTasks.length - taskOffset >= tasksPerJavaThread ?
-					taskOffset + tasksPerJavaThread : myTasks.length;
-
-			taskOffset += tasksPerJavaThread;
-
-			myThreads[i] = new NodeThread(this, myNodes, nodeStartIndex,
-					nodeEndIndex, myProjections, projectionStartIndex,
-					projectionEndIndex, myTasks, taskStartIndex, taskEndIndex);
+			myThreads[i] = new NodeThread(this, myNodes, nodeBounds[i],
+					nodeBounds[i+1], myProjections, projectionStartIndex,
+					projectionEndIndex, myTasks, taskBounds[i], taskBounds[i+1]);
 			
 			myThreads[i].setCollectTimings(myCollectTimings);
 			myThreads[i].setName("JavaThread" + i);
+			myThreads[i].setIndex(i);
 
 			myThreads[i].setPriority(Thread.MAX_PRIORITY);
 			myThreads[i].start();
@@ -214,19 +285,138 @@ public class NodeThreadPool {
 		myRunStartTime = myCollectTimings ? new Date().getTime() : 0;
 		myAverageTimePerStep = 0;
 		myNumSteps = 0;
+		myStepCount = 0;
+	}
+
+	/**
+	 * @param node A node to be run by a thread in the pool
+	 * @return Rough estimate of the relative cost of running the node (the number of neurons
+	 * 		times the number of dimensions for NEFEnsembles, the number of nodes for other Ensembles,
+	 * 		and 1 for other nodes)
+	 */
+	public static float estimateCost(Node node) {
+		float cost = 1;
+		if (node instanceof NEFEnsemble) {
+			NEFEnsemble ensemble = (NEFEnsemble) node;
+			cost = SimulationMode.DIRECT.equals(ensemble.getMode())
+				? ensemble.getDimension()
+				: ensemble.getNodes().length * (1 + ensemble.getDimension());
+		} else if (node instanceof Ensemble) {
+			cost = ((Ensemble) node).getNodes().length;
+		}
+		return Math.max(1, cost);
+	}
+
+	/**
+	 * Reorders items so that each thread can be given a contiguous block of them with roughly
+	 * the same total cost. Items are assigned greedily, most expensive first, to the thread with
+	 * the lowest total so far (or the fewest items, if totals are equal). Within each block the items keep their original order.
+	 *
+	 * @param items Items to distribute (reordered in place)
+	 * @param costs Cost of each item
+	 * @param numThreads Number of threads
+	 * @return Bounds of the blocks: thread i gets items from bounds[i] (inclusive) to bounds[i+1] (exclusive)
+	 */
+	public static <T> int[] balance(T[] items, final float[] costs, int numThreads) {
+		Integer[] order = new Integer[items.length];
+		for (int i = 0; i < order.length; i++) {
+			order[i] = Integer.valueOf(i);
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				return Float.compare(costs[b.intValue()], costs[a.intValue()]);
+			}
+		});
+
+		float[] loads = new float[numThreads];
+		int[] thread = new int[items.length];
+		int[] bounds = new int[numThreads + 1];
+		for (int i = 0; i < order.length; i++) {
+			int lightest = 0;
+			for (int j = 1; j < numThreads; j++) {
+				if (loads[j] < loads[lightest]
+						|| (loads[j] == loads[lightest] && bounds[j+1] < bounds[lightest+1])) {
+					lightest = j;
+				}
+			}
+			thread[order[i].intValue()] = lightest;
+			loads[lightest] += costs[order[i].intValue()];
+			bounds[lightest + 1]++;
+		}
+
+		for (int i = 0; i < numThreads; i++) {
+			bounds[i+1] += bounds[i];
+		}
+
+		T[] original = items.clone();
+		int[] next = bounds.clone();
+		for (int i = 0; i < original.length; i++) {
+			items[next[thread[i]]++] = original[i];
+		}
+
+		return bounds;
+	}
+
+	/**
+	 * Starts measuring the time spent running each node and task.
+	 */
+	private void startMeasuringRunTimes() {
+		myNodeRunTimes = new long[myNodes.length];
+		myTaskRunTimes = new long[myTasks.length];
+		for (int i = 0; i < myNumPoolJavaThreads; i++) {
+			myThreads[i].setRunTimes(myNodeRunTimes, myTaskRunTimes);
+		}
+	}
+
+	/**
+	 * Redistributes nodes and tasks among the java threads according to their measured run times,
+	 * and stops measuring. Must only be called between steps.
+	 */
+	private void rebalance() {
+		float[] nodeCosts = new float[myNodes.length];
+		for (int i = 0; i < nodeCosts.length; i++) {
+			nodeCosts[i] = myNodeRunTimes[i];
+		}
+		int[] nodeBounds = balance(myNodes, nodeCosts, myNumPoolJavaThreads);
+
+		float[] taskCosts = new float[myTasks.length];
+		for (int i = 0; i < taskCosts.length; i++) {
+			taskCosts[i] = myTaskRunTimes[i];
+		}
+		int[] taskBounds = balance(myTasks, taskCosts, myNumPoolJavaThreads);
+
+		for (int i = 0; i < myNumPoolJavaThreads; i++) {
+			myThreads[i].setRunTimes(null, null);
+			myThreads[i].setNodes(myNodes, nodeBounds[i], nodeBounds[i+1]);
+			myThreads[i].setTasks(myTasks, taskBounds[i], taskBounds[i+1]);
+		}
+
+		myNodeRunTimes = null;
+		myTaskRunTimes = null;
 	}
 
 	/**
 	 * Tell the threads in the current thread pool to take a step. The step consists of three
 	 * phases: projections, nodes, tasks. All threads must complete a stage before any thread begins
 	 * the next stage, so, for example, all threads must finish processing all of their projections 
-	 * before any thread starts processing its nodes.
+	 * before any thread starts processing its nodes. After a few warm-up steps, nodes and tasks are
+	 * redistributed among threads according to their measured run times (see setRebalanceSteps(...)).
 	 * 
 	 * @author Eric Crawford
 	 */
 	public void step(float startTime, float endTime) throws SimulationException {
 		myStartTime = startTime;
 		myEndTime = endTime;
+
+		// the first step is skipped when measuring run times, as it may include one-time setup
+		if (myRebalanceSteps > 0) {
+			if (myStepCount == 1) {
+				startMeasuringRunTimes();
+			} else if (myStepCount == 1 + myRebalanceSteps) {
+				rebalance();
+			}
+		}
+		myStepCount++;
 		
 		
 		long stepInterval = myCollectTimings ? new Date().getTime() : 0;
@@ -260,65 +450,37 @@ public class NodeThreadPool {
 	}
 
 	/**
-	 * Tells the threads to run for one phase (projections, nodes or tasks). 
-	 * The threads should be waiting on myLock at the time this is called.
+	 * Tells the threads to run for one phase (projections, nodes or tasks), and waits
+	 * for them to finish it.
 	 * 
 	 * @author Eric Crawford
 	 */
 	private void startThreads() throws InterruptedException {
-		synchronized(myLock){
-			if(runFinished)
-				throw new InterruptedException();
-			
-			numThreadsComplete = 0;
-			threadsRunning = true;
-			myLock.notifyAll();  //release all the threads from the threadWait() loop
-			
-			while(threadsRunning || numThreadsWaiting < myThreads.length) 
-				myLock.wait();  //we don't want the stepthread to be able to continue (and start threads) until all the threads are waiting to be started
-		}
+		if(runFinished)
+			throw new InterruptedException();
+
+		myBarrier.runPhase();
 	}
 
 	/**
-	 * Called by the threads in this node pool. Called once they finish a phase (projections, nodes or tasks).
-	 * Forces them to wait on myLock.
+	 * Called by each thread in this pool before its first phase. Waits for the first phase to start.
 	 * 
+	 * @param thread Index of the calling thread in the pool
 	 * @author Eric Crawford
 	 */
-	public void threadWait() throws InterruptedException{
-		synchronized(myLock){
-			numThreadsWaiting++;
-			if(numThreadsWaiting == myThreads.length)
-				myLock.notifyAll(); //all the threads are done the step and in a waiting state, so free the stepthread
-			
-			while(!threadsRunning) {
-                myLock.wait();
-            }
-		}
+	public void threadWait(int thread) throws InterruptedException{
+		myBarrier.workerWait(thread);
 	}
 
 	/**
-	 * Called by the threads in this pool to signal that they are done a phase. 
+	 * Called by the threads in this pool to signal that they are done a phase. Waits for the
+	 * next phase to start.
 	 * 
+	 * @param thread Index of the calling thread in the pool
 	 * @author Eric Crawford
 	 */
-	public void threadFinished() throws InterruptedException{
-		
-		synchronized(myLock){
-			numThreadsComplete++;
-
-			if(numThreadsComplete == myThreads.length){
-				threadsRunning = false;
-				numThreadsWaiting=0;
-				myLock.notifyAll(); //this is to move the threads into the threadwait loop
-			}
-			else{
-				while(threadsRunning) //threads wait here when they are finished, but others are still running (i.e. wait here until end of one step)
-					myLock.wait();
-			}
-	
-			threadWait(); //threads wait here when they're all finished (i.e. wait here between steps)
-		}
+	public void threadFinished(int thread) throws InterruptedException{
+		myBarrier.workerFinished(thread);
 	}
 
 	/**
@@ -327,31 +489,28 @@ public class NodeThreadPool {
 	 * 
 	 * @author Eric Crawford
 	 */
-	public void kill(){
-		synchronized(myLock)
-		{
-			runFinished = true;
+	public synchronized void kill(){
+		if(runFinished)
+			return;
 
-			for(int i = 0; i < myThreads.length; i++){
-				myThreads[i].interrupt();
-			}
-			
-			if(myCollectTimings){
-				StringBuffer timingOutput = new StringBuffer();
-				timingOutput.append("Timings for NodeThreadPool:\n");
-				
-				long approxRunTime = new Date().getTime() - myRunStartTime;
-				timingOutput.append("Approximate total run time: " + approxRunTime + " ms\n");
-				
-				timingOutput.append("Average time per step: " + myAverageTimePerStep + " ms\n");
-				
-				System.out.print(timingOutput.toString());
-			}
+		runFinished = true;
+		myBarrier.release();
 
-			myLock.notifyAll();
+		for(int i = 0; i < myThreads.length; i++){
+			myThreads[i].interrupt();
 		}
 		
-		
+		if(myCollectTimings){
+			StringBuffer timingOutput = new StringBuffer();
+			timingOutput.append("Timings for NodeThreadPool:\n");
+			
+			long approxRunTime = new Date().getTime() - myRunStartTime;
+			timingOutput.append("Approximate total run time: " + approxRunTime + " ms\n");
+			
+			timingOutput.append("Average time per step: " + myAverageTimePerStep + " ms\n");
+			
+			System.out.print(timingOutput.toString());
+		}
 	}
 	
     /**
@@ -0,0 +1,40 @@
+package ca.nengo.util.impl;
+
+/**
+ * Synchronizes a coordinating thread with a fixed set of worker threads that run in
+ * phases. The coordinator starts each phase with runPhase(), which returns once every
+ * worker has finished the phase. Workers are identified by an index from 0 to
+ * (number of workers - 1).
+ */
+public interface PhaseBarrier {
+
+	/**
+	 * Called by the coordinating thread to start a phase. Returns when all workers have
+	 * called workerFinished(...) for the phase.
+	 *
+	 * @throws InterruptedException If the barrier has been released
+	 */
+	public void runPhase() throws InterruptedException;
+
+	/**
+	 * Called once by each worker before its first phase. Blocks until the first phase starts.
+	 *
+	 * @param worker Index of the calling worker
+	 * @throws InterruptedException If the barrier is released while waiting
+	 */
+	public void workerWait(int worker) throws InterruptedException;
+
+	/**
+	 * Called by a worker when it has finished a phase. Blocks until the next phase starts.
+	 *
+	 * @param worker Index of the calling worker
+	 * @throws InterruptedException If the barrier is released while waiting
+	 */
+	public void workerFinished(int worker) throws InterruptedException;
+
+	/**
+	 * Permanently releases all threads waiting on the barrier.
+	 */
+	public void release();
+
+}
@@ -24,10 +24,8 @@ a recipient may use your version of this file under either the MPL or the GPL Li
 
 package ca.nengo.util.impl;
 
-import java.util.ArrayList;
-import java.util.List;
-
 import ca.nengo.model.Node;
+import ca.nengo.model.OnDemandProbeable;
 import ca.nengo.model.Probeable;
 import ca.nengo.model.SimulationException;
 import ca.nengo.model.Units;
@@ -37,21 +35,63 @@ import ca.nengo.util.TimeSeries;
 /**
  * <p>Collects information from <code>Probeable</code> objects.</p> 
  * 
+ * <p>Recorded samples are stored in a ColumnBuffer, so recording doesn't allocate an object per 
+ * sample, and getData() returns a ColumnTimeSeries view of the samples recorded so far rather 
+ * than a copy.</p>
+ * 
+ * <p>Samples can also be reduced as they are collected, so that only the reduced data are stored: 
+ * they can be passed through a first-order low-pass (e.g. synaptic) filter (see setFilter(...)), 
+ * and the samples in each sampling period can be replaced by their mean, or by their mean, 
+ * minimum and maximum (see setReduction(...) and setSamplingRate(...)).</p>
+ * 
  * @author Bryan Tripp
  */
 public class ProbeImpl implements Probe, java.io.Serializable {
 	private static final long serialVersionUID = 1L;
 	
+	/**
+	 * Ways of reducing the samples in each sampling period to the values that are stored.
+	 */
+	public static enum Reduction {
+		/**
+		 * Stores the samples collected at the sampling rate and drops the rest (the default)
+		 */
+		SAMPLE,
+		
+		/**
+		 * Stores the mean of the samples since the last stored value
+		 */
+		MEAN,
+		
+		/**
+		 * Stores the mean, minimum and maximum of the samples since the last stored value 
+		 * (see getMinimum() and getMaximum())
+		 */
+		ENVELOPE
+	}
+	
 	private Probeable myTarget;
 	private String myStateName;
 	private boolean myRecord;
-	private float[] myTimes;
-	private List<float[]> myValues;
+	private ColumnBuffer myBuffer; //stored samples (null until the first sample); only the latest ones if not recording
+	private ColumnBuffer myMinBuffer; //minimum in each sampling period, for ENVELOPE reduction
+	private ColumnBuffer myMaxBuffer;
+	private float myFilterTau = 0;
+	private Reduction myReduction = Reduction.SAMPLE;
 	private Units[] myUnits;
 	private float mySamplingPeriod = -1;
 	private float myLastSampleTime = -100000;
 	private String myEnsembleName = null;
 	private ProbeTask myProbeTask;
+	
+	private float[] myFilterState; //null until the first sample
+	private float myFilterTime;
+	private float myFilterStep;
+	private float myFilterDecay;
+	private float[] myBinSum; //sum, minimum and maximum of samples in the current sampling period 
+	private float[] myBinMin;
+	private float[] myBinMax;
+	private int myBinCount;
 
 	/**
 	 * @see ca.nengo.util.Probe#connect(java.lang.String, ca.nengo.model.Probeable, java.lang.String, boolean)
@@ -66,6 +106,10 @@ public class ProbeImpl implements Probe, java.io.Serializable {
 		//if the state is bad, we want to throw an exception now
 		myTarget.getHistory(myStateName);  
 
+		if (myTarget instanceof OnDemandProbeable) {
+			((OnDemandProbeable) myTarget).enableHistory(myStateName);
+		}
+
 		reset();
 		
 		myProbeTask = new ProbeTask(target, this);
@@ -83,25 +127,34 @@ public class ProbeImpl implements Probe, java.io.Serializable {
 	 */
 	public void reset() {
 		myUnits = null; //will be reset on first doCollect()
-		myTimes = new float[1000];
-		myValues = new ArrayList<float[]>(1000);
+		myBuffer = null; //a new buffer, because views of the old one may still be in use
+		myMinBuffer = null;
+		myMaxBuffer = null;
+		myFilterState = null;
+		myFilterStep = Float.NaN; //so that the decay is recomputed
+		myBinCount = 0;
+		myLastSampleTime = -100000;
 	}
 	
 	/**
 	 * @see ca.nengo.util.Probe#collect(float)
 	 */
 	public void collect(float time) {
+		boolean store = true;
 		if (mySamplingPeriod > 0) { 
-			if (time >= myLastSampleTime + mySamplingPeriod) {
-				doCollect();
+			store = (time >= myLastSampleTime + mySamplingPeriod);
+			if (store) {
 				myLastSampleTime = time;
 			}
-		} else {
-			doCollect();
+		}
+		
+		//samples that aren't stored still go through the filter and into the mean
+		if (store || myFilterTau > 0 || myReduction != Reduction.SAMPLE) {
+			doCollect(store);
 		}
 	}
 	
-	private void doCollect() {
+	private void doCollect(boolean store) {
 		if (myTarget == null) {
 			throw new IllegalStateException("This Recorder has not been connected to a Probeable");
 		}
@@ -118,18 +171,33 @@ public class ProbeImpl implements Probe, java.io.Serializable {
 		float[][] values = stepData.getValues();
 		int len = times.length;		
 		
-		if (myRecord) {
-			if (myValues.size() + len >= myTimes.length) {
-				grow();
-			}		
-			System.arraycopy(times, 0, myTimes, myValues.size(), len); //don't move this to after the values update			
-		} else {
-			myTimes = times;
-			myValues = new ArrayList<float[]>(10);
+		if (store && !myRecord) {
+			myBuffer = null;
+			myMinBuffer = null;
+			myMaxBuffer = null;
 		}
 		
 		for (int i = 0; i < len; i++) {
-			myValues.add(values[i]);
+			float[] value = (myFilterTau > 0) ? filter(times[i], values[i]) : values[i];
+			if (myReduction == Reduction.SAMPLE) {
+				if (store) {
+					myBuffer = add(myBuffer, times[i], value, len);
+				}
+			} else {
+				accumulate(value);
+			}
+		}
+		
+		if (store && myBinCount > 0) {
+			for (int j = 0; j < myBinSum.length; j++) {
+				myBinSum[j] /= myBinCount;
+			}
+			myBuffer = add(myBuffer, times[len-1], myBinSum, 1);
+			if (myReduction == Reduction.ENVELOPE) {
+				myMinBuffer = add(myMinBuffer, times[len-1], myBinMin, 1);
+				myMaxBuffer = add(myMaxBuffer, times[len-1], myBinMax, 1);
+			}
+			myBinCount = 0;
 		}
 		
 		if (myUnits == null) {
@@ -137,25 +205,131 @@ public class ProbeImpl implements Probe, java.io.Serializable {
 		}
 	}
 	
-	private void grow() {
-		float[] newTimes = new float[myTimes.length + 1000];
-		System.arraycopy(myTimes, 0, newTimes, 0, myTimes.length);
-		myTimes = newTimes;
+	//adds a sample to the given buffer, or to a new buffer if it is null 
+	private ColumnBuffer add(ColumnBuffer buffer, float time, float[] value, int expectedSize) {
+		if (buffer == null) {
+			buffer = myRecord ? new ColumnBuffer(value.length) : new ColumnBuffer(value.length, Math.max(1, expectedSize));
+		}
+		buffer.add(time, value);
+		return buffer;
+	}
+	
+	//first-order low-pass filter, exact for input that is constant between samples; starts from zero at the first sample
+	private float[] filter(float time, float[] value) {
+		if (myFilterState == null || myFilterState.length != value.length) {
+			myFilterState = new float[value.length];
+			myFilterTime = time;
+			return myFilterState;
+		}
+		
+		float dt = time - myFilterTime;
+		if (dt != myFilterStep) {
+			myFilterStep = dt;
+			myFilterDecay = (float) Math.exp(-dt / myFilterTau);
+		}
+		for (int j = 0; j < value.length; j++) {
+			myFilterState[j] = myFilterDecay * myFilterState[j] + (1 - myFilterDecay) * value[j];
+		}
+		myFilterTime = time;
+		return myFilterState;
+	}
+	
+	private void accumulate(float[] value) {
+		if (myBinSum == null || myBinSum.length != value.length) {
+			myBinSum = new float[value.length];
+			myBinMin = new float[value.length];
+			myBinMax = new float[value.length];
+			myBinCount = 0;
+		}
+		
+		if (myBinCount == 0) {
+			System.arraycopy(value, 0, myBinSum, 0, value.length);
+			System.arraycopy(value, 0, myBinMin, 0, value.length);
+			System.arraycopy(value, 0, myBinMax, 0, value.length);
+		} else {
+			for (int j = 0; j < value.length; j++) {
+				myBinSum[j] += value[j];
+				myBinMin[j] = Math.min(myBinMin[j], value[j]);
+				myBinMax[j] = Math.max(myBinMax[j], value[j]);
+			}
+		}
+		myBinCount++;
 	}
 	
 	/**
 	 * @see ca.nengo.util.Probe#getData()
 	 */
 	public TimeSeries getData() {
-		float[] times = new float[myValues.size()];
-		System.arraycopy(myTimes, 0, times, 0, myValues.size());
+		return getSeries(myBuffer, "");
+	}
+	
+	/**
+	 * @return Minimum of the samples in each sampling period, if the reduction is ENVELOPE 
+	 * 		(otherwise null)
+	 */
+	public TimeSeries getMinimum() {
+		return (myReduction == Reduction.ENVELOPE) ? getSeries(myMinBuffer, ":min") : null;
+	}
+	
+	/**
+	 * @return Maximum of the samples in each sampling period, if the reduction is ENVELOPE 
+	 * 		(otherwise null)
+	 */
+	public TimeSeries getMaximum() {
+		return (myReduction == Reduction.ENVELOPE) ? getSeries(myMaxBuffer, ":max") : null;
+	}
+	
+	private TimeSeries getSeries(ColumnBuffer buffer, String suffix) {
+		Units[] units = (myUnits == null) ? new Units[]{Units.UNK} : myUnits;
+		String name = ((myTarget instanceof Node) ? ((Node) myTarget).getName()+":" : "") + myStateName + suffix;
+		
+		if (buffer != null && myRecord) {
+			ColumnTimeSeries result = new ColumnTimeSeries(buffer, buffer.getSize(), units);
+			result.setName(name);
+			return result;
+		}
 		
-		float[][] values = myValues.toArray(new float[0][]);
+		int size = (buffer == null) ? 0 : buffer.getSize();
+		float[] times = (buffer == null) ? new float[0] : buffer.getTimes(0, size);
+		float[][] values = (buffer == null) ? new float[0][] : buffer.getRows(0, size);
 		
-		TimeSeriesImpl result = new TimeSeriesImpl(times, values, (myUnits == null) ? new Units[]{Units.UNK} : myUnits);
-		result.setName(((myTarget instanceof Node) ? ((Node) myTarget).getName()+":" : "") + myStateName);
+		TimeSeriesImpl result = new TimeSeriesImpl(times, values, units);
+		result.setName(name);
 		return result;
 	}
+	
+	/**
+	 * @param tau Time constant of a first-order low-pass filter that is applied to samples before 
+	 * 		they are reduced and stored (zero for no filter)
+	 */
+	public void setFilter(float tau) {
+		myFilterTau = tau;
+		myFilterState = null;
+		myFilterStep = Float.NaN;
+	}
+	
+	/**
+	 * @return Time constant of the filter that is applied to samples (zero if there is no filter)
+	 */
+	public float getFilter() {
+		return myFilterTau;
+	}
+	
+	/**
+	 * @param reduction How the samples in each sampling period are reduced to the values that are 
+	 * 		stored (see setSamplingRate(...))
+	 */
+	public void setReduction(Reduction reduction) {
+		myReduction = reduction;
+		myBinCount = 0;
+	}
+	
+	/**
+	 * @return How the samples in each sampling period are reduced to the values that are stored
+	 */
+	public Reduction getReduction() {
+		return myReduction;
+	}
 
 	/**
 	 * @see ca.nengo.util.Probe#setSamplingRate(float)
@@ -27,11 +27,18 @@ a recipient may use your version of this file under either the MPL or the GPL Li
  */
 package ca.nengo.util.impl;
 
-import ca.nengo.util.MU;
 import ca.nengo.util.SpikePattern;
 
 /**
- * Default implementation of SpikePattern. 
+ * <p>Default implementation of SpikePattern.</p>
+ * 
+ * <p>Spikes are stored in the order in which they are added, as a single stream of variable-length 
+ * integers: for each spike, the difference between its neuron index and that of the previous spike, 
+ * and, if its time differs from the time of the previous spike, the difference between the bits 
+ * of the two float times. Spikes from one time step have the same time and usually come in order 
+ * of neuron index, so most spikes take one or two bytes, and nothing is stored for neurons that 
+ * don't spike. Times are stored exactly. The spike times of each neuron are found from the stream 
+ * when they are first asked for after spikes have been added.</p>
  * 
  * @author Bryan Tripp
  */
@@ -39,19 +46,22 @@ public class SpikePatternImpl implements SpikePattern {
 
 	private static final long serialVersionUID = 1L;
 	
-	int[] myIndices;
-	float[][] mySpikeTimes;
+	private int myNumNeurons;
+	private byte[] myEvents;
+	private int myLength; //number of bytes of myEvents in use
+	private int myNumSpikes;
+	private int myLastNeuron;
+	private int myLastTimeBits;
+	
+	private transient int[] myOffsets; //start of each neuron's times in myTimes (null if out of date)
+	private transient float[] myTimes; //spike times ordered by neuron
 	
 	/**
 	 * @param neurons Number of neurons in the Ensemble that this SpikePattern belongs to
 	 */
 	public SpikePatternImpl(int neurons) {
-		myIndices = new int[neurons];
-		
-		mySpikeTimes = new float[neurons][];		
-		for (int i = 0; i < neurons; i++) {
-			mySpikeTimes[i] = new float[100];
-		}
+		myNumNeurons = neurons;
+		myEvents = new byte[64];
 	}
 	
 	/**
@@ -59,44 +69,126 @@ public class SpikePatternImpl implements SpikePattern {
 	 * @param time Spike time
 	 */
 	public void addSpike(int neuron, float time) {
-		if (myIndices[neuron] == mySpikeTimes[neuron].length) {
-			mySpikeTimes[neuron] = expand(mySpikeTimes[neuron]);
+		if (neuron < 0 || neuron >= myNumNeurons) {
+			throw new ArrayIndexOutOfBoundsException("Neuron " + neuron + " is outside of 0 to " + (myNumNeurons - 1));
 		}
 		
-		mySpikeTimes[neuron][myIndices[neuron]++] = time;
+		int bits = Float.floatToIntBits(time);
+		boolean newTime = (myNumSpikes == 0 || bits != myLastTimeBits);
+		putVarLong((zigzag((long) neuron - myLastNeuron) << 1) | (newTime ? 1 : 0));
+		if (newTime) {
+			putVarLong(zigzag((long) bits - myLastTimeBits));
+		}
+		
+		myLastNeuron = neuron;
+		myLastTimeBits = bits;
+		myNumSpikes++;
+		myOffsets = null;
+		myTimes = null;
+	}
+	
+	/**
+	 * @return Total number of spikes of all neurons
+	 */
+	public int getNumSpikes() {
+		return myNumSpikes;
 	}
 
 	/**
 	 * @see ca.nengo.util.SpikePattern#getNumNeurons()
 	 */
 	public int getNumNeurons() {
-		return myIndices.length;
+		return myNumNeurons;
 	}
 
 	/**
 	 * @see ca.nengo.util.SpikePattern#getSpikeTimes(int)
 	 */
 	public float[] getSpikeTimes(int neuron) {
-		return contract(mySpikeTimes[neuron], myIndices[neuron]);
+		if (myOffsets == null) {
+			index();
+		}
+		
+		float[] result = new float[myOffsets[neuron+1] - myOffsets[neuron]];
+		System.arraycopy(myTimes, myOffsets[neuron], result, 0, result.length);
+		return result;
 	}
 	
-	private static float[] expand(float[] list) {
-		float[] result = new float[Math.round((float) list.length * 1.5f)]; //grow by 50%
-		System.arraycopy(list, 0, result, 0, list.length);
-		return result;
+	//decodes the spikes and sorts them by neuron (keeping the order of each neuron's spikes)
+	private void index() {
+		int[] neurons = new int[myNumSpikes];
+		float[] times = new float[myNumSpikes];
+		int[] offsets = new int[myNumNeurons + 1];
+		
+		int position = 0;
+		int neuron = 0;
+		int bits = 0;
+		for (int i = 0; i < myNumSpikes; i++) {
+			long value = 0;
+			int shift = 0;
+			byte b;
+			do {
+				b = myEvents[position++];
+				value |= (long) (b & 0x7F) << shift;
+				shift += 7;
+			} while (b < 0);
+			
+			neuron += (int) unzigzag(value >>> 1);
+			if ((value & 1) != 0) {
+				long delta = 0;
+				shift = 0;
+				do {
+					b = myEvents[position++];
+					delta |= (long) (b & 0x7F) << shift;
+					shift += 7;
+				} while (b < 0);
+				bits += (int) unzigzag(delta);
+			}
+			
+			neurons[i] = neuron;
+			times[i] = Float.intBitsToFloat(bits);
+			offsets[neuron+1]++;
+		}
+		
+		for (int i = 0; i < myNumNeurons; i++) {
+			offsets[i+1] += offsets[i];
+		}
+		int[] next = offsets.clone();
+		float[] sorted = new float[myNumSpikes];
+		for (int i = 0; i < myNumSpikes; i++) {
+			sorted[next[neurons[i]]++] = times[i];
+		}
+		
+		myTimes = sorted;
+		myOffsets = offsets;
 	}
 	
-	private static float[] contract(float[] list, int index) {
-		float[] result = new float[index];
-		System.arraycopy(list, 0, result, 0, index);
-		return result;
+	private void putVarLong(long value) {
+		if (myLength + 10 > myEvents.length) {
+			byte[] events = new byte[Math.max(myLength + 10, Math.round((float) myEvents.length * 1.5f))]; //grow by 50%
+			System.arraycopy(myEvents, 0, events, 0, myLength);
+			myEvents = events;
+		}
+		
+		while ((value & ~0x7FL) != 0) {
+			myEvents[myLength++] = (byte) ((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		myEvents[myLength++] = (byte) value;
+	}
+	
+	private static long zigzag(long value) {
+		return (value << 1) ^ (value >> 63);
+	}
+	
+	private static long unzigzag(long value) {
+		return (value >>> 1) ^ -(value & 1);
 	}
 
 	@Override
 	public SpikePattern clone() throws CloneNotSupportedException {
 		SpikePatternImpl result = (SpikePatternImpl) super.clone();
-		result.myIndices = myIndices.clone();
-		result.mySpikeTimes = MU.clone(mySpikeTimes);
+		result.myEvents = myEvents.clone();
 		return result;
 	}
 
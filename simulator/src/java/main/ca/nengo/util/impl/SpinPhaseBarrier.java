@@ -0,0 +1,154 @@
+package ca.nengo.util.impl;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * <p>A PhaseBarrier with low latency between phases, for simulations in which each phase
+ * involves little work.</p>
+ *
+ * <p>The start of each phase is signalled by reversing a shared sense flag, which waiting
+ * workers compare with their own local sense. The end of a phase is counted with an atomic
+ * counter. Waiting threads spin for a short while, in case the next phase starts soon, and
+ * then park until they are unparked by the thread that ends their wait. No monitor is held
+ * by any thread.</p>
+ */
+public class SpinPhaseBarrier implements PhaseBarrier {
+
+	/**
+	 * Default number of times a waiting thread checks for the end of its wait before parking,
+	 * if there are enough processors for all threads to spin at once.
+	 */
+	public static final int DEFAULT_SPINS = 20000;
+
+	private final int myNumWorkers;
+	private final int mySpins;
+	private final AtomicInteger myNumWorkersRunning;
+	private final AtomicIntegerArray myParked;
+	private final Thread[] myWorkers;
+	private final boolean[] myLocalSense;
+
+	private volatile boolean mySense;
+	private volatile boolean myReleased;
+	private volatile boolean myCoordinatorParked;
+	private volatile Thread myCoordinator;
+
+	/**
+	 * Spins DEFAULT_SPINS times before parking, unless there are fewer processors than threads
+	 * (workers plus coordinator), in which case spinning would only delay the other threads
+	 * and waiting threads park immediately.
+	 *
+	 * @param numWorkers Number of worker threads
+	 */
+	public SpinPhaseBarrier(int numWorkers) {
+		this(numWorkers, Runtime.getRuntime().availableProcessors() > numWorkers ? DEFAULT_SPINS : 0);
+	}
+
+	/**
+	 * @param numWorkers Number of worker threads
+	 * @param spins Number of times a waiting thread checks for the end of its wait before parking
+	 */
+	public SpinPhaseBarrier(int numWorkers, int spins) {
+		myNumWorkers = numWorkers;
+		mySpins = spins;
+		myNumWorkersRunning = new AtomicInteger(0);
+		myParked = new AtomicIntegerArray(numWorkers);
+		myWorkers = new Thread[numWorkers];
+		myLocalSense = new boolean[numWorkers];
+		mySense = false;
+	}
+
+	/**
+	 * @see ca.nengo.util.impl.PhaseBarrier#runPhase()
+	 */
+	public void runPhase() throws InterruptedException {
+		if (myReleased) {
+			throw new InterruptedException();
+		}
+
+		myCoordinator = Thread.currentThread();
+		myNumWorkersRunning.set(myNumWorkers);
+		mySense = !mySense; //starts the phase (and publishes anything written before it)
+
+		for (int i = 0; i < myNumWorkers; i++) {
+			if (myParked.get(i) != 0) {
+				LockSupport.unpark(myWorkers[i]);
+			}
+		}
+
+		int spins = 0;
+		while (myNumWorkersRunning.get() > 0) {
+			if (myReleased) {
+				throw new InterruptedException();
+			}
+
+			if (spins < mySpins) {
+				spins++;
+			} else {
+				myCoordinatorParked = true;
+				if (myNumWorkersRunning.get() > 0) {
+					LockSupport.park(this);
+				}
+				myCoordinatorParked = false;
+			}
+		}
+	}
+
+	/**
+	 * @see ca.nengo.util.impl.PhaseBarrier#workerWait(int)
+	 */
+	public void workerWait(int worker) throws InterruptedException {
+		myWorkers[worker] = Thread.currentThread();
+		awaitSense(worker);
+	}
+
+	/**
+	 * @see ca.nengo.util.impl.PhaseBarrier#workerFinished(int)
+	 */
+	public void workerFinished(int worker) throws InterruptedException {
+		if (myNumWorkersRunning.decrementAndGet() == 0 && myCoordinatorParked) {
+			LockSupport.unpark(myCoordinator);
+		}
+		awaitSense(worker);
+	}
+
+	//waits for the shared sense to differ from the local sense of the given worker (i.e. for the next phase)
+	private void awaitSense(int worker) throws InterruptedException {
+		boolean next = !myLocalSense[worker];
+		int spins = 0;
+		while (mySense != next) {
+			if (myReleased || Thread.interrupted()) {
+				throw new InterruptedException();
+			}
+
+			if (spins < mySpins) {
+				spins++;
+			} else {
+				myParked.set(worker, 1);
+				if (mySense != next && !myReleased) {
+					LockSupport.park(this);
+				}
+				myParked.set(worker, 0);
+			}
+		}
+		myLocalSense[worker] = next;
+	}
+
+	/**
+	 * @see ca.nengo.util.impl.PhaseBarrier#release()
+	 */
+	public void release() {
+		myReleased = true;
+		for (int i = 0; i < myNumWorkers; i++) {
+			if (myParked.get(i) != 0) {
+				LockSupport.unpark(myWorkers[i]);
+			}
+		}
+		Thread coordinator = myCoordinator;
+		if (coordinator != null) {
+			LockSupport.unpark(coordinator);
+		}
+	}
+
+}
@@ -0,0 +1,133 @@
+package ca.nengo.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import junit.framework.TestCase;
+
+import ca.nengo.math.Function;
+import ca.nengo.math.impl.PostfixFunction;
+import ca.nengo.model.nef.NEFEnsemble;
+import ca.nengo.model.nef.NEFEnsembleFactory;
+import ca.nengo.model.nef.impl.DecodedOrigin;
+import ca.nengo.model.nef.impl.NEFEnsembleFactoryImpl;
+import ca.nengo.model.nef.impl.NEFEnsembleImpl;
+import ca.nengo.model.neuron.Neuron;
+import ca.nengo.model.neuron.impl.SpikingNeuron;
+import ca.nengo.util.MU;
+
+/**
+ * Unit tests for NEFEnsembleFile.
+ */
+public class NEFEnsembleFileTest extends TestCase {
+
+	private File myFile;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		myFile = File.createTempFile("ensemble", ".nef");
+	}
+
+	protected void tearDown() throws Exception {
+		myFile.delete();
+		super.tearDown();
+	}
+
+	public void testReadWrite() throws Exception {
+		NEFEnsembleFactory ef = new NEFEnsembleFactoryImpl();
+		NEFEnsembleImpl ensemble = (NEFEnsembleImpl) ef.make("test", 50, new float[]{1f, 2f});
+		ensemble.addDecodedOrigin("product", new Function[]{new PostfixFunction("x0*x1", 2)}, Neuron.AXON);
+		assertTrue(NEFEnsembleFile.canWrite(ensemble));
+
+		NEFEnsembleFile.write(ensemble, myFile);
+		assertTrue(NEFEnsembleFile.isEnsembleFile(myFile));
+		NEFEnsembleImpl copy = (NEFEnsembleImpl) NEFEnsembleFile.read(myFile);
+
+		assertEquals("test", copy.getName());
+		assertEquals(50, copy.getNodes().length);
+		assertEquals(ensemble.getNodes()[7].getName(), copy.getNodes()[7].getName());
+		assertEquals(((SpikingNeuron) ensemble.getNodes()[7]).getBias(), ((SpikingNeuron) copy.getNodes()[7]).getBias(), 0f);
+		assertEquals(((SpikingNeuron) ensemble.getNodes()[7]).getScale(), ((SpikingNeuron) copy.getNodes()[7]).getScale(), 0f);
+		assertEquals(ensemble.getNodes()[7].getClass(), copy.getNodes()[7].getClass());
+		assertEquals(MU.sum(ensemble.getRadii()), MU.sum(copy.getRadii()), 0f);
+		assertEquals(0f, maxDifference(ensemble.getEncoders(), copy.getEncoders()));
+		assertEquals(0f, maxDifference(ensemble.getEvalPoints(), copy.getEvalPoints()));
+
+		for (String name : new String[]{NEFEnsemble.X, "product"}) {
+			DecodedOrigin origin = (DecodedOrigin) ensemble.getOrigin(name);
+			DecodedOrigin copyOrigin = (DecodedOrigin) copy.getOrigin(name);
+			assertEquals(0f, maxDifference(origin.getDecoders(), copyOrigin.getDecoders()));
+			assertEquals(origin.getFunctions().length, copyOrigin.getFunctions().length);
+			assertEquals(origin.getNodeOrigin(), copyOrigin.getNodeOrigin());
+		}
+
+		//new origins can still be added to the copy
+		copy.addDecodedOrigin("square", new Function[]{new PostfixFunction("x0*x0", 2)}, Neuron.AXON);
+		assertEquals(1, copy.getOrigin("square").getDimensions());
+	}
+
+	/**
+	 * Checks a file that is larger than the read buffer, with evaluation points that can't be
+	 * found exactly from the scaled points and radii.
+	 */
+	public void testEvalPoints() throws Exception {
+		NEFEnsembleFactory ef = new NEFEnsembleFactoryImpl();
+		NEFEnsembleImpl ensemble = (NEFEnsembleImpl) ef.make("test", 100, new float[]{.3f, .7f, 1.1f, 3f});
+		NEFEnsembleFile.write(ensemble, myFile);
+		assertTrue(myFile.length() > 1 << 16);
+
+		NEFEnsembleImpl copy = (NEFEnsembleImpl) NEFEnsembleFile.read(myFile);
+		assertEquals(0f, maxDifference(ensemble.getEvalPoints(), copy.getEvalPoints()));
+		assertEquals(0f, maxDifference(ensemble.getUnscaledEvalPoints(), copy.getUnscaledEvalPoints()));
+		assertEquals(0f, maxDifference(((DecodedOrigin) ensemble.getOrigin(NEFEnsemble.X)).getDecoders(),
+				((DecodedOrigin) copy.getOrigin(NEFEnsemble.X)).getDecoders()));
+
+		//a truncated file can't be read
+		RandomAccessFile file = new RandomAccessFile(myFile, "rw");
+		file.setLength(file.length() / 2);
+		file.close();
+		try {
+			NEFEnsembleFile.read(myFile);
+			fail("Expected IOException");
+		} catch (IOException e) {
+		}
+	}
+
+	public void testCanWrite() throws Exception {
+		NEFEnsembleFactory ef = new NEFEnsembleFactoryImpl();
+		NEFEnsemble ensemble = ef.make("test", 10, 1);
+		assertTrue(NEFEnsembleFile.canWrite(ensemble));
+		assertFalse(NEFEnsembleFile.canWrite(null));
+
+		ensemble.addDecodedTermination("input", MU.I(1), .005f, false);
+		assertFalse(NEFEnsembleFile.canWrite(ensemble));
+	}
+
+	public void testFileManager() throws Exception {
+		NEFEnsembleFactory ef = new NEFEnsembleFactoryImpl();
+		NEFEnsemble ensemble = ef.make("test", 10, 1);
+		FileManager fm = new FileManager();
+
+		//serialized files are still loaded
+		fm.save(ensemble, myFile);
+		assertFalse(NEFEnsembleFile.isEnsembleFile(myFile));
+		assertEquals(10, ((NEFEnsemble) fm.load(myFile)).getNodes().length);
+
+		NEFEnsembleFile.write(ensemble, myFile);
+		assertEquals(10, ((NEFEnsemble) fm.load(myFile)).getNodes().length);
+	}
+
+	private static float maxDifference(float[][] a, float[][] b) {
+		assertEquals(a.length, b.length);
+		float result = 0;
+		for (int i = 0; i < a.length; i++) {
+			assertEquals(a[i].length, b[i].length);
+			for (int j = 0; j < a[i].length; j++) {
+				result = Math.max(result, Math.abs(a[i][j] - b[i][j]));
+			}
+		}
+		return result;
+	}
+
+}
@@ -0,0 +1,148 @@
+package ca.nengo.math.impl;
+
+import Jama.Matrix;
+import junit.framework.TestCase;
+import ca.nengo.TestUtil;
+import ca.nengo.math.Function;
+import ca.nengo.math.LinearApproximator;
+
+/**
+ * Unit tests for ConjugateGradientApproximator.
+ */
+public class ConjugateGradientApproximatorTest extends TestCase {
+
+	/**
+	 * Compares coefficients with a direct solution of (GAMMA + s^2 I) PHI = UPSILON.
+	 */
+	public void testFindCoefficients() {
+		float noise = .1f;
+		float[][] evalPoints = makeEvalPoints(200);
+		float[][] values = makeValues(evalPoints, 50);
+		Function target = new PostfixFunction("x0^2", 1);
+
+		ConjugateGradientApproximator approximator = new ConjugateGradientApproximator(evalPoints, values,
+				new ConstantFunction(1, 1), noise, 1e-8f, -1, true);
+		float[] coefficients = approximator.findCoefficients(target);
+		assertTrue(approximator.getIterations() > 0);
+		assertTrue(approximator.getIterations() <= values.length);
+
+		float maxValue = 0;
+		for (int i = 0; i < values.length; i++) {
+			for (int k = 0; k < evalPoints.length; k++) {
+				maxValue = Math.max(maxValue, values[i][k]);
+			}
+		}
+		float sd = noise * maxValue;
+
+		double[][] gamma = GramMatrix.find(values, makeOnes(evalPoints.length));
+		double[][] upsilon = new double[values.length][1];
+		for (int i = 0; i < values.length; i++) {
+			gamma[i][i] += sd * sd;
+			for (int k = 0; k < evalPoints.length; k++) {
+				upsilon[i][0] += values[i][k] * target.map(evalPoints[k]) / evalPoints.length;
+			}
+		}
+		Matrix expected = new Matrix(gamma).solve(new Matrix(upsilon));
+		for (int i = 0; i < values.length; i++) {
+			TestUtil.assertClose((float) expected.get(i, 0), coefficients[i], 1e-4f);
+		}
+	}
+
+	public void testFindCoefficientsBatch() {
+		float[][] evalPoints = makeEvalPoints(200);
+		float[][] values = makeValues(evalPoints, 50);
+		Function[] targets = new Function[]{new PostfixFunction("x0", 1), new PostfixFunction("x0^2", 1),
+				new ConstantFunction(1, 0)};
+
+		LinearApproximator approximator = new ConjugateGradientApproximator.Factory(.1f).getApproximator(evalPoints, values);
+		float[][] batch = approximator.findCoefficients(targets);
+		assertEquals(targets.length, batch.length);
+		for (int t = 0; t < targets.length; t++) {
+			float[] single = approximator.findCoefficients(targets[t]);
+			for (int i = 0; i < values.length; i++) {
+				assertEquals(single[i], batch[t][i], 0f);
+			}
+		}
+		for (int i = 0; i < values.length; i++) {
+			assertEquals(0f, batch[2][i], 0f);
+		}
+	}
+
+	public void testTolerance() {
+		float[][] evalPoints = makeEvalPoints(200);
+		float[][] values = makeValues(evalPoints, 100);
+		Function target = new PostfixFunction("x0", 1);
+
+		ConjugateGradientApproximator approximator = new ConjugateGradientApproximator(evalPoints, values,
+				new ConstantFunction(1, 1), .01f, 1e-2f, -1, true);
+		approximator.findCoefficients(target);
+		int looseIterations = approximator.getIterations();
+		approximator.setTolerance(1e-6f);
+		float[] coefficients = approximator.findCoefficients(target);
+		assertTrue(approximator.getIterations() > looseIterations);
+
+		float error = 0;
+		for (int k = 0; k < evalPoints.length; k++) {
+			float estimate = 0;
+			for (int i = 0; i < values.length; i++) {
+				estimate += coefficients[i] * values[i][k];
+			}
+			error += (estimate - evalPoints[k][0]) * (estimate - evalPoints[k][0]) / evalPoints.length;
+		}
+		assertTrue(Math.sqrt(error) < .01);
+	}
+
+	/**
+	 * Checks that results don't depend on the number of threads.
+	 */
+	public void testThreads() {
+		int oldThreads = ConjugateGradientApproximator.getNumThreads();
+		try {
+			float[][] evalPoints = makeEvalPoints(1000);
+			float[][] values = makeValues(evalPoints, 300);
+			Function target = new PostfixFunction("sin(3*x0)", 1);
+			LinearApproximator approximator = new ConjugateGradientApproximator.Factory(.1f).getApproximator(evalPoints, values);
+
+			ConjugateGradientApproximator.setNumThreads(1);
+			float[] single = approximator.findCoefficients(target);
+			ConjugateGradientApproximator.setNumThreads(4);
+			float[] multiple = approximator.findCoefficients(target);
+			for (int i = 0; i < values.length; i++) {
+				assertEquals(single[i], multiple[i], 0f);
+			}
+		} finally {
+			ConjugateGradientApproximator.setNumThreads(oldThreads);
+		}
+	}
+
+	private static float[][] makeEvalPoints(int n) {
+		float[][] result = new float[n][];
+		for (int k = 0; k < n; k++) {
+			result[k] = new float[]{-1f + 2f * k / (n - 1)};
+		}
+		return result;
+	}
+
+	//rectified linear tuning curves with a spread of thresholds and both directions
+	private static float[][] makeValues(float[][] evalPoints, int n) {
+		float[][] result = new float[n][evalPoints.length];
+		for (int i = 0; i < n; i++) {
+			float encoder = (i % 2 == 0) ? 1 : -1;
+			float threshold = -.9f + 1.8f * i / (n - 1);
+			float gain = 50f + 100f * ((i * 37) % n) / n;
+			for (int k = 0; k < evalPoints.length; k++) {
+				result[i][k] = Math.max(0, gain * (encoder * evalPoints[k][0] - threshold));
+			}
+		}
+		return result;
+	}
+
+	private static float[] makeOnes(int n) {
+		float[] result = new float[n];
+		for (int k = 0; k < n; k++) {
+			result[k] = 1;
+		}
+		return result;
+	}
+
+}
@@ -0,0 +1,104 @@
+package ca.nengo.math.impl;
+
+import java.io.File;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import ca.nengo.math.Function;
+import ca.nengo.math.LinearApproximator;
+
+/**
+ * Unit tests for DecoderCache.
+ */
+public class DecoderCacheTest extends TestCase {
+
+	private File myDirectory;
+	private File myOldDirectory;
+
+	protected void setUp() throws Exception {
+		myOldDirectory = DecoderCache.getDirectory();
+		myDirectory = File.createTempFile("decoders", "");
+		myDirectory.delete();
+		DecoderCache.setDirectory(myDirectory);
+	}
+
+	protected void tearDown() throws Exception {
+		DecoderCache.clear();
+		myDirectory.delete();
+		DecoderCache.setDirectory(myOldDirectory);
+	}
+
+	public void testKey() {
+		String a = new DecoderCache.Key("test").add(new float[][]{{1, 2}, {3}}).add(1f).toString();
+		String b = new DecoderCache.Key("test").add(new float[][]{{1, 2}, {3}}).add(1f).toString();
+		String c = new DecoderCache.Key("test").add(new float[][]{{1}, {2, 3}}).add(1f).toString();
+		assertEquals(a, b);
+		assertFalse(a.equals(c));
+		assertEquals(40, a.length());
+	}
+
+	/**
+	 * Checks that a second approximator with the same inputs reuses the noisy solution of the first
+	 * (without the cache, different noise would give different coefficients).
+	 */
+	public void testReuse() {
+		float[][] evalPoints = makeEvalPoints();
+		float[][] values = makeValues(evalPoints, 1);
+		Function target = new IdentityFunction(1, 0);
+
+		LinearApproximator first = new WeightedCostApproximator(evalPoints, values, new ConstantFunction(1, 1), .1f, -1, true);
+		float[] expected = first.findCoefficients(target);
+		assertEquals(2, myDirectory.list().length);
+
+		LinearApproximator second = new WeightedCostApproximator(evalPoints, values, new ConstantFunction(1, 1), .1f, -1, true);
+		assertEquals(2, myDirectory.list().length);
+		float[] coefficients = second.findCoefficients(target);
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals(expected[i], coefficients[i], 0f);
+		}
+
+		//a new target is solved with the cached GAMMA inverse
+		float[] squared = first.findCoefficients(new PostfixFunction("x0*x0", 1));
+		coefficients = second.findCoefficients(new PostfixFunction("x0*x0", 1));
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals(squared[i], coefficients[i], 1e-5f * Math.abs(squared[i]));
+		}
+
+		//different inputs get a new solution
+		new WeightedCostApproximator(evalPoints, makeValues(evalPoints, 2), new ConstantFunction(1, 1), .1f, -1, true);
+		assertEquals(4, myDirectory.list().length);
+	}
+
+	public void testDisabled() {
+		DecoderCache.setDirectory(null);
+		float[][] evalPoints = makeEvalPoints();
+		LinearApproximator approximator = new WeightedCostApproximator(evalPoints, makeValues(evalPoints, 1),
+				new ConstantFunction(1, 1), .1f, -1, true);
+		approximator.findCoefficients(new IdentityFunction(1, 0));
+		assertEquals(0, myDirectory.list().length);
+		DecoderCache.setDirectory(myDirectory);
+	}
+
+	private static float[][] makeEvalPoints() {
+		float[][] result = new float[200][];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = new float[]{-1 + 2 * (float) i / (float) result.length};
+		}
+		return result;
+	}
+
+	//rectified linear tuning curves
+	private static float[][] makeValues(float[][] evalPoints, long seed) {
+		Random random = new Random(seed);
+		float[][] result = new float[30][evalPoints.length];
+		for (int i = 0; i < result.length; i++) {
+			float gain = (random.nextBoolean() ? 1 : -1) * (1 + random.nextFloat());
+			float bias = random.nextFloat() * 2 - 1;
+			for (int j = 0; j < evalPoints.length; j++) {
+				result[i][j] = Math.max(0, gain * evalPoints[j][0] + bias);
+			}
+		}
+		return result;
+	}
+
+}
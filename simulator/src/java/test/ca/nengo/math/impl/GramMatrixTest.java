@@ -0,0 +1,136 @@
+package ca.nengo.math.impl;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for GramMatrix.
+ */
+public class GramMatrixTest extends TestCase {
+
+	/**
+	 * Compares with a straightforward triple loop, for a matrix that spans several tiles and
+	 * point chunks.
+	 */
+	public void testFind() {
+		int oldThreads = GramMatrix.getNumThreads();
+		try {
+			Random random = new Random(1);
+			float[][] values = new float[150][1100];
+			float[] weights = new float[1100];
+			for (int k = 0; k < weights.length; k++) {
+				weights[k] = random.nextFloat();
+				for (int i = 0; i < values.length; i++) {
+					values[i][k] = (float) random.nextGaussian();
+				}
+			}
+
+			double[][] expected = new double[values.length][values.length];
+			for (int i = 0; i < values.length; i++) {
+				for (int j = 0; j < values.length; j++) {
+					for (int k = 0; k < weights.length; k++) {
+						expected[i][j] += values[i][k] * values[j][k] * weights[k];
+					}
+					expected[i][j] = expected[i][j] / weights.length;
+				}
+			}
+
+			for (int threads = 1; threads <= 3; threads++) {
+				GramMatrix.setNumThreads(threads);
+				double[][] result = GramMatrix.find(values, weights);
+				for (int i = 0; i < values.length; i++) {
+					for (int j = 0; j < values.length; j++) {
+						assertEquals(expected[i][j], result[i][j], 0d);
+					}
+				}
+			}
+		} finally {
+			GramMatrix.setNumThreads(oldThreads);
+		}
+	}
+
+	/**
+	 * Checks that accumulating chunks of evaluation points gives the same result as all points at once.
+	 */
+	public void testAccumulate() {
+		Random random = new Random(2);
+		float[][] values = new float[70][900];
+		float[] weights = new float[900];
+		for (int k = 0; k < weights.length; k++) {
+			weights[k] = random.nextFloat();
+			for (int i = 0; i < values.length; i++) {
+				values[i][k] = (float) random.nextGaussian();
+			}
+		}
+		double[][] expected = GramMatrix.find(values, weights);
+
+		double[][] sums = new double[values.length][values.length];
+		int chunk = 300;
+		for (int start = 0; start < weights.length; start += chunk) {
+			float[][] chunkValues = new float[values.length][chunk];
+			float[] chunkWeights = new float[chunk];
+			System.arraycopy(weights, start, chunkWeights, 0, chunk);
+			for (int i = 0; i < values.length; i++) {
+				System.arraycopy(values[i], start, chunkValues[i], 0, chunk);
+			}
+			GramMatrix.accumulate(chunkValues, chunkWeights, sums);
+		}
+		GramMatrix.finish(sums, weights.length);
+
+		for (int i = 0; i < values.length; i++) {
+			for (int j = 0; j < values.length; j++) {
+				assertEquals(expected[i][j], sums[i][j], 0d);
+			}
+		}
+	}
+
+	/**
+	 * Checks that an Accumulator, which reuses its threads for each chunk, gives the same result as
+	 * all points at once.
+	 */
+	public void testAccumulator() {
+		int oldThreads = GramMatrix.getNumThreads();
+		try {
+			Random random = new Random(3);
+			float[][] values = new float[150][900];
+			float[] weights = new float[900];
+			for (int k = 0; k < weights.length; k++) {
+				weights[k] = random.nextFloat();
+				for (int i = 0; i < values.length; i++) {
+					values[i][k] = (float) random.nextGaussian();
+				}
+			}
+			GramMatrix.setNumThreads(1);
+			double[][] expected = GramMatrix.find(values, weights);
+
+			GramMatrix.setNumThreads(4);
+			GramMatrix.Accumulator accumulator = new GramMatrix.Accumulator(values.length);
+			double[][] result;
+			try {
+				int chunk = 300;
+				for (int start = 0; start < weights.length; start += chunk) {
+					float[][] chunkValues = new float[values.length][chunk];
+					float[] chunkWeights = new float[chunk];
+					System.arraycopy(weights, start, chunkWeights, 0, chunk);
+					for (int i = 0; i < values.length; i++) {
+						System.arraycopy(values[i], start, chunkValues[i], 0, chunk);
+					}
+					accumulator.add(chunkValues, chunkWeights);
+				}
+				result = accumulator.finish();
+			} finally {
+				accumulator.stop();
+			}
+
+			for (int i = 0; i < values.length; i++) {
+				for (int j = 0; j < values.length; j++) {
+					assertEquals(expected[i][j], result[i][j], 0d);
+				}
+			}
+		} finally {
+			GramMatrix.setNumThreads(oldThreads);
+		}
+	}
+
+}
@@ -0,0 +1,135 @@
+package ca.nengo.math.impl;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+import Jama.Matrix;
+import Jama.SingularValueDecomposition;
+
+/**
+ * Unit tests for SymmetricEigenDecomposition.
+ */
+public class SymmetricEigenDecompositionTest extends TestCase {
+
+	/**
+	 * Checks that eigenvectors are orthonormal, reconstruct the matrix, and come with eigenvalues in
+	 * decreasing order of magnitude.
+	 */
+	public void testDecomposition() {
+		int oldThreads = SymmetricEigenDecomposition.getNumThreads();
+		try {
+			double[][] matrix = makeMatrix(150, 100);
+			for (int threads = 1; threads <= 3; threads++) {
+				SymmetricEigenDecomposition.setNumThreads(threads);
+				SymmetricEigenDecomposition eig = new SymmetricEigenDecomposition(matrix);
+				double[] values = eig.getEigenvalues();
+				Matrix V = new Matrix(eig.getEigenvectors());
+
+				for (int i = 1; i < values.length; i++) {
+					assertTrue(Math.abs(values[i-1]) >= Math.abs(values[i]));
+				}
+				assertEquals(0, V.transpose().times(V).minus(Matrix.identity(150, 150)).normInf(), 1e-10);
+
+				Matrix reconstructed = V.times(diagonal(values)).times(V.transpose());
+				assertEquals(0, reconstructed.minus(new Matrix(matrix)).normInf(), 1e-8);
+			}
+		} finally {
+			SymmetricEigenDecomposition.setNumThreads(oldThreads);
+		}
+	}
+
+	/**
+	 * Compares the pseudoinverse of a rank-deficient matrix with that found by SVD.
+	 */
+	public void testPseudoInverse() {
+		int oldThreads = SymmetricEigenDecomposition.getNumThreads();
+		try {
+			double[][] matrix = makeMatrix(120, 80);
+			SingularValueDecomposition svd = new Matrix(matrix).svd();
+			Matrix sInv = svd.getS().copy();
+			for (int i = 0; i < 120; i++) {
+				sInv.set(i, i, i < 80 ? 1d / sInv.get(i, i) : 0d);
+			}
+			Matrix expected = svd.getV().times(sInv).times(svd.getU().transpose());
+
+			for (int threads = 1; threads <= 3; threads++) {
+				SymmetricEigenDecomposition.setNumThreads(threads);
+				double[][] result = new SymmetricEigenDecomposition(matrix).pseudoInverse(80);
+				assertEquals(0, new Matrix(result).minus(expected).normInf() / expected.normInf(), 1e-8);
+				for (int i = 0; i < result.length; i++) {
+					for (int j = 0; j < i; j++) {
+						assertEquals(result[i][j], result[j][i], 0d);
+					}
+				}
+			}
+		} finally {
+			SymmetricEigenDecomposition.setNumThreads(oldThreads);
+		}
+	}
+
+	/**
+	 * Checks that results are the same to the last bit regardless of the number of threads.
+	 */
+	public void testReproducible() {
+		int oldThreads = SymmetricEigenDecomposition.getNumThreads();
+		try {
+			double[][] matrix = makeMatrix(200, 150);
+			SymmetricEigenDecomposition.setNumThreads(1);
+			double[][] expected = new SymmetricEigenDecomposition(matrix).pseudoInverse(150);
+			for (int threads = 2; threads <= 4; threads++) {
+				SymmetricEigenDecomposition.setNumThreads(threads);
+				double[][] result = new SymmetricEigenDecomposition(matrix).pseudoInverse(150);
+				for (int i = 0; i < result.length; i++) {
+					for (int j = 0; j < result.length; j++) {
+						assertEquals(expected[i][j], result[i][j], 0d);
+					}
+				}
+			}
+		} finally {
+			SymmetricEigenDecomposition.setNumThreads(oldThreads);
+		}
+	}
+
+	public void testSmallMatrix() {
+		SymmetricEigenDecomposition eig = new SymmetricEigenDecomposition(new double[][]{{2, 1}, {1, 2}});
+		double[] values = eig.getEigenvalues();
+		assertEquals(3, values[0], 1e-12);
+		assertEquals(1, values[1], 1e-12);
+
+		double[][] inverse = eig.pseudoInverse(2);
+		assertEquals(2d/3d, inverse[0][0], 1e-12);
+		assertEquals(-1d/3d, inverse[0][1], 1e-12);
+	}
+
+	//a symmetric positive semidefinite matrix of the given rank, like a GAMMA matrix
+	private static double[][] makeMatrix(int size, int rank) {
+		Random random = new Random(1);
+		double[][] factor = new double[size][rank];
+		for (int i = 0; i < size; i++) {
+			for (int k = 0; k < rank; k++) {
+				factor[i][k] = random.nextGaussian();
+			}
+		}
+		double[][] result = new double[size][size];
+		for (int i = 0; i < size; i++) {
+			for (int j = 0; j <= i; j++) {
+				double sum = 0;
+				for (int k = 0; k < rank; k++) {
+					sum += factor[i][k] * factor[j][k];
+				}
+				result[i][j] = sum;
+				result[j][i] = sum;
+			}
+		}
+		return result;
+	}
+
+	private static Matrix diagonal(double[] values) {
+		Matrix result = new Matrix(values.length, values.length);
+		for (int i = 0; i < values.length; i++) {
+			result.set(i, i, values[i]);
+		}
+		return result;
+	}
+
+}
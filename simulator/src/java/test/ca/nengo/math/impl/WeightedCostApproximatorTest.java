@@ -105,6 +105,148 @@ public class WeightedCostApproximatorTest extends TestCase {
 		
 	}
 	
+	/*
+	 * Test method for 'ca.nengo.math.impl.WeightedCostApproximator.findCoefficients(Function[])'
+	 */
+	public void testFindCoefficientsBatch() {
+		float[][] evalPoints = new float[100][];
+		for (int i = 0; i < evalPoints.length; i++) {
+			evalPoints[i] = new float[]{(float) i / (float) evalPoints.length};
+		}
+		float[][] values = new float[10][evalPoints.length];
+		for (int i = 0; i < values.length; i++) {
+			Function component = new FourierFunction(new float[]{i + 1}, new float[]{1}, new float[]{i});
+			for (int j = 0; j < evalPoints.length; j++) {
+				values[i][j] = component.map(evalPoints[j]);
+			}
+		}
+
+		LinearApproximator approximator = new WeightedCostApproximator.Factory(0.1f, true).getApproximator(evalPoints, values);
+		Function[] targets = new Function[]{new IdentityFunction(1, 0), new ConstantFunction(1, 1f),
+				new FourierFunction(new float[]{2}, new float[]{.5f}, new float[]{0})};
+		float[][] coefficients = approximator.findCoefficients(targets);
+		assertEquals(targets.length, coefficients.length);
+		for (int t = 0; t < targets.length; t++) {
+			float[] expected = approximator.findCoefficients(targets[t]);
+			assertEquals(values.length, coefficients[t].length);
+			for (int i = 0; i < values.length; i++) {
+				assertEquals(expected[i], coefficients[t][i], 0f);
+			}
+		}
+	}
+
+	/*
+	 * Test methods for 'ca.nengo.math.impl.WeightedCostApproximator.removeComponents(...)', addComponents(...)
+	 * and replaceComponents(...), which should give the same coefficients as a new approximator (without noise)
+	 */
+	public void testUpdateComponents() {
+		float[][] evalPoints = new float[200][];
+		for (int i = 0; i < evalPoints.length; i++) {
+			evalPoints[i] = new float[]{(float) i / (float) evalPoints.length};
+		}
+		float[][] values = new float[14][evalPoints.length];
+		for (int i = 0; i < values.length; i++) {
+			float center = (float) ((i * 5) % values.length) / (float) values.length;
+			for (int j = 0; j < evalPoints.length; j++) {
+				float x = evalPoints[j][0] - center;
+				values[i][j] = (float) Math.exp(-x * x / .01f);
+			}
+		}
+		float[][] first = new float[][]{values[0], values[1], values[2], values[3], values[4], values[5], values[6], values[7]};
+		Function target = new FourierFunction(new float[]{1, 3}, new float[]{.5f, .2f}, new float[]{0, 1});
+
+		WeightedCostApproximator approximator = new WeightedCostApproximator(evalPoints, first, new ConstantFunction(1, 1f), 0f, -1, true);
+		approximator.removeComponents(new int[]{2, 5});
+		float[][] expected = new float[][]{values[0], values[1], values[3], values[4], values[6], values[7]};
+		assertCoefficients(expected, evalPoints, approximator, target);
+
+		approximator.addComponents(new float[][]{values[8], values[9], values[10]});
+		expected = new float[][]{values[0], values[1], values[3], values[4], values[6], values[7], values[8], values[9], values[10]};
+		assertCoefficients(expected, evalPoints, approximator, target);
+
+		approximator.replaceComponents(new int[]{1, 6}, new float[][]{values[11], values[12]});
+		expected = new float[][]{values[0], values[11], values[3], values[4], values[6], values[7], values[12], values[9], values[10]};
+		assertCoefficients(expected, evalPoints, approximator, target);
+	}
+
+	/*
+	 * Test method for 'ca.nengo.math.impl.WeightedCostApproximator(float[][], ValueSource, ...)', which should
+	 * give the same coefficients as stored values (without noise), with values found in several chunks
+	 */
+	public void testStreaming() {
+		int oldChunkValues = WeightedCostApproximator.getChunkValues();
+		try {
+			float[][] evalPoints = new float[200][];
+			for (int i = 0; i < evalPoints.length; i++) {
+				evalPoints[i] = new float[]{(float) i / (float) evalPoints.length};
+			}
+			final float[] centers = new float[12];
+			for (int i = 0; i < centers.length; i++) {
+				centers[i] = (float) i / (float) centers.length;
+			}
+			final int[] numCalls = new int[1];
+			WeightedCostApproximator.ValueSource source = new WeightedCostApproximator.ValueSource() {
+				private static final long serialVersionUID = 1L;
+				public int getNumComponents() {
+					return centers.length;
+				}
+				public float[][] getValues(float[][] points) {
+					numCalls[0]++;
+					float[][] result = new float[centers.length][points.length];
+					for (int i = 0; i < centers.length; i++) {
+						for (int j = 0; j < points.length; j++) {
+							float x = points[j][0] - centers[i];
+							result[i][j] = (float) Math.exp(-x * x / .01f);
+						}
+					}
+					return result;
+				}
+			};
+			Function target = new FourierFunction(new float[]{1, 3}, new float[]{.5f, .2f}, new float[]{0, 1});
+
+			WeightedCostApproximator.setChunkValues(centers.length * 50);
+			WeightedCostApproximator streaming = new WeightedCostApproximator(evalPoints, source, new ConstantFunction(1, 1f), 0f, -1, true);
+			assertTrue(streaming.isStreaming());
+			assertEquals(8, numCalls[0]); //4 chunks to find the largest value, and 4 to find GAMMA
+			float[] coefficients = streaming.findCoefficients(target);
+			assertEquals(12, numCalls[0]);
+
+			float[][] values = source.getValues(evalPoints);
+			LinearApproximator stored = new WeightedCostApproximator(evalPoints, values, new ConstantFunction(1, 1f), 0f, -1, true);
+			float[] expected = stored.findCoefficients(target);
+			assertEquals(expected.length, coefficients.length);
+			for (int i = 0; i < expected.length; i++) {
+				assertEquals(expected[i], coefficients[i], 0f);
+			}
+
+			//noise is the same each time values are found
+			streaming = new WeightedCostApproximator(evalPoints, source, new ConstantFunction(1, 1f), .1f, -1, true);
+			coefficients = streaming.findCoefficients(target);
+			float[] again = streaming.findCoefficients(target);
+			for (int i = 0; i < coefficients.length; i++) {
+				assertEquals(coefficients[i], again[i], 0f);
+			}
+
+			try {
+				streaming.removeComponents(new int[]{0});
+				fail("Should have thrown exception");
+			} catch (IllegalStateException e) {} //exception is expected
+		} finally {
+			WeightedCostApproximator.setChunkValues(oldChunkValues);
+		}
+	}
+
+	private static void assertCoefficients(float[][] values, float[][] evalPoints, LinearApproximator approximator, Function target) {
+		LinearApproximator direct = new WeightedCostApproximator(evalPoints, values, new ConstantFunction(1, 1f), 0f, -1, true);
+		float[] expected = direct.findCoefficients(target);
+		float[] coefficients = approximator.findCoefficients(target);
+		assertEquals(values.length, approximator.getValues().length);
+		assertEquals(expected.length, coefficients.length);
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals(expected[i], coefficients[i], 1e-3f);
+		}
+	}
+
 	public static void main(String[] args)
 	{
 		WeightedCostApproximatorTest t = new WeightedCostApproximatorTest();
@@ -94,6 +94,12 @@ public class LinearExponentialTerminationTest extends TestCase {
 
         let.reset(false);
 
+        let.setValues(new SparseSpikeOutputImpl(new int[]{1, 2}, 3, Units.SPIKES, 0));
+        current = let.updateCurrent(true, 0, 0);
+        assertClose(5f, current, .01f);
+
+        let.reset(false);
+
         let.setValues(new RealOutputImpl(new float[]{1f, .1f, .01f}, Units.SPIKES_PER_S, 0));
         current = let.updateCurrent(false, 1, 0);
         assertClose(1.23f, current, .001f);
@@ -0,0 +1,40 @@
+package ca.nengo.model.impl;
+
+import junit.framework.TestCase;
+
+import ca.nengo.model.Units;
+
+/**
+ * Unit tests for SparseSpikeOutputImpl.
+ */
+public class SparseSpikeOutputImplTest extends TestCase {
+
+	public void testGetValues() {
+		SparseSpikeOutputImpl output = new SparseSpikeOutputImpl(new int[]{0, 3}, 5, Units.SPIKES, .1f);
+		assertEquals(5, output.getDimension());
+		assertEquals(.1f, output.getTime(), 0f);
+
+		boolean[] values = output.getValues();
+		assertEquals(5, values.length);
+		assertTrue(values[0]);
+		assertFalse(values[1]);
+		assertFalse(values[2]);
+		assertTrue(values[3]);
+		assertFalse(values[4]);
+	}
+
+	public void testFromSpikes() throws CloneNotSupportedException {
+		boolean[] spikes = new boolean[]{false, true, false, true, true};
+		SparseSpikeOutputImpl output = SparseSpikeOutputImpl.fromSpikes(spikes, Units.SPIKES, 0);
+		int[] indices = output.getSpikeIndices();
+		assertEquals(3, indices.length);
+		assertEquals(1, indices[0]);
+		assertEquals(3, indices[1]);
+		assertEquals(4, indices[2]);
+
+		SparseSpikeOutputImpl clone = (SparseSpikeOutputImpl) output.clone();
+		assertEquals(3, clone.getSpikeIndices().length);
+		assertTrue(clone.getValues()[4]);
+	}
+
+}
@@ -3,7 +3,11 @@
  */
 package ca.nengo.model.nef.impl;
 
+import ca.nengo.model.Node;
+import ca.nengo.model.RealOutput;
+import ca.nengo.model.SimulationMode;
 import ca.nengo.model.nef.NEFEnsemble;
+import ca.nengo.model.neuron.Neuron;
 import ca.nengo.model.nef.impl.DecodedOrigin;
 import ca.nengo.model.nef.impl.NEFEnsembleFactoryImpl;
 //import ca.nengo.plot.Plotter;
@@ -44,6 +48,38 @@ public class DecodedOriginTest extends TestCase {
 	public void testGetError() {
 		System.out.println(MU.toString(new float[][]{myOrigin.getError()}, 10));
 	}
+
+	/**
+	 * Checks that output is decoded correctly from node outputs, and that the previous
+	 * step's output is left intact when output buffers are reused.
+	 */
+	public void testRun() throws Exception {
+		NEFEnsemble ensemble = (NEFEnsemble) myOrigin.getNode();
+		ensemble.setMode(SimulationMode.RATE);
+		Node[] nodes = ensemble.getNodes();
+		float[][] decoders = myOrigin.getDecoders();
+
+		RealOutput previous = null;
+		float[] previousValues = null;
+		for (int step = 0; step < 5; step++) {
+			ensemble.run(step * .001f, (step+1) * .001f);
+			RealOutput output = (RealOutput) myOrigin.getValues();
+
+			float expected = 0;
+			for (int i = 0; i < nodes.length; i++) {
+				float rate = ((RealOutput) nodes[i].getOrigin(Neuron.AXON).getValues()).getValues()[0];
+				expected += rate * decoders[i][0];
+			}
+			assertEquals(expected, output.getValues()[0], 1e-4f);
+			assertEquals((step+1) * .001f, output.getTime(), 1e-6f);
+
+			if (previous != null) {
+				assertEquals(previousValues[0], previous.getValues()[0], 0f);
+			}
+			previous = output;
+			previousValues = output.getValues().clone();
+		}
+	}
 	
 //	public static void main(String[] args) {
 //		DecodedOriginTest test = new DecodedOriginTest("");
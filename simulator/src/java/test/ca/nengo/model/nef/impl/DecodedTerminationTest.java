@@ -0,0 +1,94 @@
+package ca.nengo.model.nef.impl;
+
+import junit.framework.TestCase;
+
+import ca.nengo.dynamics.LinearSystem;
+import ca.nengo.dynamics.impl.EulerIntegrator;
+import ca.nengo.dynamics.impl.LTISystem;
+import ca.nengo.dynamics.impl.SimpleLTISystem;
+import ca.nengo.model.SimulationException;
+import ca.nengo.model.StructuralException;
+import ca.nengo.model.Units;
+import ca.nengo.model.impl.RealOutputImpl;
+
+/**
+ * Unit tests for DecodedTermination.
+ */
+public class DecodedTerminationTest extends TestCase {
+
+	/**
+	 * Checks the closed-form update of first-order (exponential PSC) dynamics against the
+	 * analytical step response.
+	 */
+	public void testFirstOrderStepResponse() throws StructuralException, SimulationException {
+		float tau = .01f;
+		float dt = .001f;
+		DecodedTermination t = makeTermination(tau);
+		t.setValues(new RealOutputImpl(new float[]{1f, -1f}, Units.UNK, 0));
+
+		for (int i = 0; i < 50; i++) {
+			t.run(i * dt, (i+1) * dt);
+			float expected = 1 - (float) Math.exp(-(i+1) * dt / tau);
+			assertEquals(2 * expected, t.getOutput()[0], 1e-5f);
+			assertEquals(-expected, t.getOutput()[1], 1e-5f);
+		}
+
+		t.reset(false);
+		t.setValues(new RealOutputImpl(new float[]{1f, -1f}, Units.UNK, 0));
+		t.run(0, dt);
+		assertEquals(2 * (1 - (float) Math.exp(-dt / tau)), t.getOutput()[0], 1e-5f);
+	}
+
+	/**
+	 * Checks that a clone has its own dynamic state.
+	 */
+	public void testCloneState() throws StructuralException, SimulationException, CloneNotSupportedException {
+		DecodedTermination t = makeTermination(.01f);
+		t.setValues(new RealOutputImpl(new float[]{1f, 1f}, Units.UNK, 0));
+		t.run(0, .001f);
+
+		DecodedTermination clone = t.clone();
+		float before = t.getOutput()[0];
+		clone.run(.001f, .002f);
+		clone.run(.002f, .003f);
+		t.run(.001f, .002f);
+		assertTrue(t.getOutput()[0] > before);
+		assertTrue(clone.getOutput()[0] > t.getOutput()[0]);
+	}
+
+	/**
+	 * Checks that dynamics with more than one state variable still run through the integrator.
+	 */
+	public void testSecondOrder() throws StructuralException, SimulationException {
+		float tau = .01f;
+		LinearSystem dynamics = new LTISystem(
+				new float[][]{new float[]{-1f/tau, 0f}, new float[]{1f/tau, -1f/tau}},
+				new float[][]{new float[]{1f/tau}, new float[]{0f}},
+				new float[][]{new float[]{0f, 1f}},
+				new float[][]{new float[]{0f}},
+				new float[2], new Units[]{Units.UNK});
+		DecodedTermination t = new DecodedTermination(null, "test", new float[][]{new float[]{1f}},
+				dynamics, new EulerIntegrator(tau / 10f));
+		t.setValues(new RealOutputImpl(new float[]{1f}, Units.UNK, 0));
+
+		float previous = 0;
+		for (int i = 0; i < 100; i++) {
+			t.run(i * .001f, (i+1) * .001f);
+			assertTrue(t.getOutput()[0] >= previous);
+			previous = t.getOutput()[0];
+		}
+		assertEquals(1f, previous, .05f);
+	}
+
+	private static DecodedTermination makeTermination(float tau) throws StructuralException {
+		LinearSystem dynamics = new SimpleLTISystem(
+				new float[]{-1f/tau},
+				new float[][]{new float[]{1f}},
+				new float[][]{new float[]{1f/tau}},
+				new float[]{0f},
+				new Units[]{Units.UNK});
+		float[][] transform = new float[][]{new float[]{2f, 0f}, new float[]{0f, 1f}};
+		return new DecodedTermination(null, "test", transform, dynamics, new EulerIntegrator(tau / 10f));
+	}
+
+}
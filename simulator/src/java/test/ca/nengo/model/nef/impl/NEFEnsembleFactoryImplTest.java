@@ -0,0 +1,145 @@
+package ca.nengo.model.nef.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+import ca.nengo.math.LinearApproximator;
+import ca.nengo.math.PDFTools;
+import ca.nengo.math.impl.GramMatrix;
+import ca.nengo.math.impl.SymmetricEigenDecomposition;
+import ca.nengo.math.impl.WeightedCostApproximator;
+import ca.nengo.math.impl.WeightedCostApproximator.ValueSource;
+import ca.nengo.model.StructuralException;
+import ca.nengo.model.nef.NEFEnsemble;
+import ca.nengo.util.Environment;
+
+/**
+ * Unit tests for NEFEnsembleFactoryImpl.
+ */
+public class NEFEnsembleFactoryImplTest extends TestCase {
+
+	/**
+	 * Checks that ensembles made together are the same regardless of the number of threads.
+	 */
+	public void testMakeSeveral() throws StructuralException {
+		int oldThreads = NEFEnsembleFactoryImpl.getNumThreads();
+		try {
+			String[] names = new String[]{"a", "b", "c", "d", "e"};
+			NEFEnsembleFactoryImpl ef = new NEFEnsembleFactoryImpl();
+
+			NEFEnsembleFactoryImpl.setNumThreads(1);
+			PDFTools.setSeed(1);
+			NEFEnsemble[] serial = ef.make(names, 50, 2);
+
+			NEFEnsembleFactoryImpl.setNumThreads(3);
+			PDFTools.setSeed(1);
+			NEFEnsemble[] parallel = ef.make(names, 50, 2);
+
+			assertEquals(names.length, parallel.length);
+			for (int i = 0; i < names.length; i++) {
+				assertEquals(names[i], parallel[i].getName());
+				assertEquals(50, parallel[i].getNodes().length);
+				assertTrue(parallel[i].getEnsembleFactory() == ef);
+				assertEquals(serial[i].getEncoders(), parallel[i].getEncoders());
+				assertEquals(((DecodedOrigin) serial[i].getOrigin(NEFEnsemble.X)).getDecoders(),
+						((DecodedOrigin) parallel[i].getOrigin(NEFEnsemble.X)).getDecoders());
+			}
+
+			//different ensembles get different random parameters
+			assertTrue(serial[0].getEncoders()[0][0] != serial[1].getEncoders()[0][0]);
+		} finally {
+			NEFEnsembleFactoryImpl.setNumThreads(oldThreads);
+		}
+	}
+
+	/**
+	 * Checks that decoders of ensembles large enough for their decompositions to be split between
+	 * threads are the same to the last bit at 1 and 4 threads.
+	 */
+	public void testMakeSeveralReproducible() throws StructuralException {
+		int oldThreads = NEFEnsembleFactoryImpl.getNumThreads();
+		int oldEigenThreads = SymmetricEigenDecomposition.getNumThreads();
+		int oldGramThreads = GramMatrix.getNumThreads();
+		try {
+			String[] names = new String[]{"a", "b"};
+			NEFEnsembleFactoryImpl ef = new NEFEnsembleFactoryImpl();
+
+			NEFEnsembleFactoryImpl.setNumThreads(1);
+			SymmetricEigenDecomposition.setNumThreads(1);
+			GramMatrix.setNumThreads(1);
+			PDFTools.setSeed(2);
+			NEFEnsemble[] serial = ef.make(names, 200, 1);
+
+			//two builders, each with 4 threads for its own steps
+			NEFEnsembleFactoryImpl.setNumThreads(8);
+			SymmetricEigenDecomposition.setNumThreads(4);
+			GramMatrix.setNumThreads(4);
+			PDFTools.setSeed(2);
+			NEFEnsemble[] parallel = ef.make(names, 200, 1);
+
+			for (int i = 0; i < names.length; i++) {
+				assertEquals(((DecodedOrigin) serial[i].getOrigin(NEFEnsemble.X)).getDecoders(),
+						((DecodedOrigin) parallel[i].getOrigin(NEFEnsemble.X)).getDecoders());
+			}
+		} finally {
+			NEFEnsembleFactoryImpl.setNumThreads(oldThreads);
+			SymmetricEigenDecomposition.setNumThreads(oldEigenThreads);
+			GramMatrix.setNumThreads(oldGramThreads);
+		}
+	}
+
+	/**
+	 * Checks that the ensembles' own parallel steps share the builder threads' budget.
+	 */
+	public void testMakeSeveralThreadLimit() throws StructuralException {
+		int oldThreads = NEFEnsembleFactoryImpl.getNumThreads();
+		try {
+			final List<Integer> limits = Collections.synchronizedList(new ArrayList<Integer>());
+			NEFEnsembleFactoryImpl ef = new NEFEnsembleFactoryImpl();
+			ef.setApproximatorFactory(new WeightedCostApproximator.Factory(0.1f) {
+				private static final long serialVersionUID = 1L;
+				public LinearApproximator getApproximator(float[][] evalPoints, float[][] values) {
+					limits.add(Integer.valueOf(Environment.getThreadLimit()));
+					return super.getApproximator(evalPoints, values);
+				}
+				public LinearApproximator getApproximator(float[][] evalPoints, ValueSource source) {
+					limits.add(Integer.valueOf(Environment.getThreadLimit()));
+					return super.getApproximator(evalPoints, source);
+				}
+			});
+
+			NEFEnsembleFactoryImpl.setNumThreads(4);
+			ef.make(new String[]{"a", "b"}, 20, 1);
+			assertFalse(limits.isEmpty());
+			for (Integer limit : limits) {
+				assertEquals(2, limit.intValue());
+			}
+
+			limits.clear();
+			NEFEnsembleFactoryImpl.setNumThreads(2);
+			ef.make(new String[]{"a", "b", "c"}, 20, 1);
+			assertFalse(limits.isEmpty());
+			for (Integer limit : limits) {
+				assertEquals(1, limit.intValue());
+			}
+
+			//the caller's own limit is restored
+			assertEquals(0, Environment.getThreadLimit());
+		} finally {
+			NEFEnsembleFactoryImpl.setNumThreads(oldThreads);
+		}
+	}
+
+	private static void assertEquals(float[][] expected, float[][] actual) {
+		assertEquals(expected.length, actual.length);
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals(expected[i].length, actual[i].length);
+			for (int j = 0; j < expected[i].length; j++) {
+				assertEquals(expected[i][j], actual[i][j], 0f);
+			}
+		}
+	}
+
+}
@@ -4,22 +4,31 @@
 package ca.nengo.model.nef.impl;
 
 import ca.nengo.math.Function;
+import ca.nengo.math.LinearApproximator;
 import ca.nengo.math.impl.AbstractFunction;
+import ca.nengo.math.impl.IdentityFunction;
+import ca.nengo.math.impl.WeightedCostApproximator;
 //import ca.nengo.math.impl.ConstantFunction;
 import ca.nengo.model.Network;
 import ca.nengo.model.Node;
 import ca.nengo.model.Projection;
+import ca.nengo.model.RealOutput;
 import ca.nengo.model.SimulationException;
+import ca.nengo.model.SimulationMode;
 import ca.nengo.model.StructuralException;
+import ca.nengo.model.Termination;
 import ca.nengo.model.Units;
 import ca.nengo.model.impl.FunctionInput;
 import ca.nengo.model.impl.NetworkImpl;
+import ca.nengo.model.impl.RealOutputImpl;
 import ca.nengo.model.nef.NEFEnsemble;
 import ca.nengo.model.nef.NEFEnsembleFactory;
 import ca.nengo.model.nef.impl.BiasOrigin;
 //import ca.nengo.model.nef.impl.DecodedOrigin;
 //import ca.nengo.model.nef.impl.DecodedTermination;
 import ca.nengo.model.nef.impl.NEFEnsembleFactoryImpl;
+import ca.nengo.model.neuron.Neuron;
+import ca.nengo.model.neuron.impl.LIFSpikeGenerator;
 import ca.nengo.model.neuron.impl.SpikingNeuron;
 import ca.nengo.plot.Plotter;
 import ca.nengo.util.MU;
@@ -292,6 +301,80 @@ public class NEFEnsembleImplTest extends TestCase {
 			fail("Number of dead neurons outside expected range");
 
 	}
+	public void testKillNeuronsUpdateDecoders() throws StructuralException
+	{
+		NEFEnsembleFactoryImpl ef = new NEFEnsembleFactoryImpl();
+		NEFEnsembleImpl ensemble = (NEFEnsembleImpl)ef.make("test", 200, 1);
+		ensemble.killNeurons(.3f, true, true);
+
+		//decoders are re-optimized for the surviving neurons
+		assertTrue(countDeadNeurons(ensemble) > 0);
+		assertEquals(200, ((DecodedOrigin) ensemble.getOrigin(NEFEnsemble.X)).getDecoders().length);
+		assertTrue(getDecodingError(ensemble) < .02f);
+	}
+
+	public void testSetNodeCount() throws StructuralException
+	{
+		NEFEnsembleFactoryImpl ef = new NEFEnsembleFactoryImpl();
+		NEFEnsembleImpl ensemble = (NEFEnsembleImpl)ef.make("test", 200, 1);
+		Node first = ensemble.getNodes()[0];
+		float[] encoder = ensemble.getEncoders()[0];
+
+		ensemble.setNodeCount(220);
+		assertEquals(220, ensemble.getNodeCount());
+		assertEquals(220, ensemble.getEncoders().length);
+		assertEquals(220, ((DecodedOrigin) ensemble.getOrigin(NEFEnsemble.X)).getDecoders().length);
+		assertTrue(first == ensemble.getNodes()[0]);
+		assertEquals(encoder[0], ensemble.getEncoders()[0][0], 0f);
+		assertTrue(getDecodingError(ensemble) < .02f);
+
+		ensemble.setNodeCount(150);
+		assertEquals(150, ensemble.getNodeCount());
+		assertEquals(150, ((DecodedOrigin) ensemble.getOrigin(NEFEnsemble.X)).getDecoders().length);
+		assertTrue(getDecodingError(ensemble) < .02f);
+	}
+
+	public void testStreaming() throws StructuralException
+	{
+		NEFEnsembleFactoryImpl ef = new NEFEnsembleFactoryImpl();
+		WeightedCostApproximator.Factory factory = new WeightedCostApproximator.Factory(.1f, true);
+		factory.setStreaming(true);
+		ef.setApproximatorFactory(factory);
+		NEFEnsembleImpl ensemble = (NEFEnsembleImpl)ef.make("test", 200, 1);
+
+		//node outputs are found again as needed, rather than kept by the approximator
+		assertTrue(((WeightedCostApproximator) ensemble.getDecodingApproximator(Neuron.AXON)).isStreaming());
+		assertTrue(getDecodingError(ensemble) < .02f);
+
+		ensemble.setNodeCount(220);
+		assertEquals(220, ((DecodedOrigin) ensemble.getOrigin(NEFEnsemble.X)).getDecoders().length);
+		assertTrue(getDecodingError(ensemble) < .02f);
+
+		//killing neurons changes their outputs, so the approximator is made again when it's next needed
+		LinearApproximator old = ensemble.getDecodingApproximator(Neuron.AXON);
+		ensemble.killNeurons(.2f, true);
+		assertNull(ensemble.getDecodingApproximator(Neuron.AXON));
+		ensemble.addDecodedOrigin("copy", new Function[]{new IdentityFunction(1, 0)}, Neuron.AXON);
+		assertNotNull(ensemble.getDecodingApproximator(Neuron.AXON));
+		assertTrue(ensemble.getDecodingApproximator(Neuron.AXON) != old);
+	}
+
+	//RMS error of the X origin's decoders at the ensemble's evaluation points
+	private static float getDecodingError(NEFEnsembleImpl ensemble) throws StructuralException {
+		float[][] evalPoints = ensemble.getEvalPoints();
+		float[][] outputs = ensemble.getConstantOutputs(evalPoints, Neuron.AXON);
+		float[][] decoders = ((DecodedOrigin) ensemble.getOrigin(NEFEnsemble.X)).getDecoders();
+		float sum = 0;
+		for (int j = 0; j < evalPoints.length; j++) {
+			float estimate = 0;
+			for (int i = 0; i < decoders.length; i++) {
+				estimate += outputs[i][j] * decoders[i][0];
+			}
+			sum += (estimate - evalPoints[j][0]) * (estimate - evalPoints[j][0]);
+		}
+		return (float) Math.sqrt(sum / evalPoints.length);
+	}
+
 	private int countDeadNeurons(NEFEnsembleImpl pop)
 	{
 		Node[] neurons = pop.getNodes();
@@ -307,6 +390,66 @@ public class NEFEnsembleImplTest extends TestCase {
 		return numDead;
 	}
 	
+	public void testPopulation() throws StructuralException, SimulationException {
+		NEFEnsembleFactoryImpl ef = new NEFEnsembleFactoryImpl();
+		NEFEnsembleImpl ensemble = (NEFEnsembleImpl) ef.make("test", 100, 2);
+		Termination input = ensemble.addDecodedTermination("input", MU.I(2), .005f, false);
+
+		for (SimulationMode mode : new SimulationMode[]{SimulationMode.DEFAULT, SimulationMode.RATE}) {
+			ensemble.setMode(mode);
+
+			ensemble.setUsePopulation(false);
+			ensemble.reset(false);
+			float[][] expected = runWithInput(ensemble, input, 200);
+			float expectedVoltage = ((LIFSpikeGenerator) ((SpikingNeuron) ensemble.getNodes()[0]).getGenerator()).getVoltage();
+
+			ensemble.setUsePopulation(true);
+			ensemble.reset(false);
+			float[][] actual = runWithInput(ensemble, input, 200);
+			assertNotNull(ensemble.getPopulation(Neuron.AXON));
+			float actualVoltage = ((LIFSpikeGenerator) ((SpikingNeuron) ensemble.getNodes()[0]).getGenerator()).getVoltage();
+
+			for (int i = 0; i < expected.length; i++) {
+				for (int j = 0; j < expected[i].length; j++) {
+					assertEquals(expected[i][j], actual[i][j], 0f);
+				}
+			}
+			assertEquals(expectedVoltage, actualVoltage, 0f);
+		}
+	}
+
+	public void testEncode() throws StructuralException, SimulationException {
+		NEFEnsembleFactoryImpl ef = new NEFEnsembleFactoryImpl();
+		NEFEnsembleImpl ensemble = (NEFEnsembleImpl) ef.make("test", 50, new float[]{2, .5f});
+		DecodedTermination a = (DecodedTermination) ensemble.addDecodedTermination("a", MU.I(2), .005f, false);
+		DecodedTermination b = (DecodedTermination) ensemble.addDecodedTermination("b", MU.I(2), .005f, false);
+		a.setValues(new RealOutputImpl(new float[]{1, -.3f}, Units.UNK, 0));
+		b.setValues(new RealOutputImpl(new float[]{.5f, .2f}, Units.UNK, 0));
+		ensemble.setUsePopulation(true);
+		ensemble.run(0, .001f);
+
+		//the population input comes from the fused encoding, so compare it with the per-node version
+		float[] state = MU.sum(a.getOutput(), b.getOutput());
+		float[] input = ensemble.getPopulation(Neuron.AXON).getInput();
+		assertEquals(50, input.length);
+		for (int i = 0; i < input.length; i++) {
+			assertEquals(ensemble.getRadialInput(state, i), input[i], 1e-5f);
+		}
+	}
+
+	private static float[][] runWithInput(NEFEnsembleImpl ensemble, Termination input, int steps)
+			throws StructuralException, SimulationException {
+		float dt = .001f;
+		float[][] result = new float[steps][];
+		for (int i = 0; i < steps; i++) {
+			float time = i * dt;
+			input.setValues(new RealOutputImpl(new float[]{(float) Math.sin(10*time), (float) Math.cos(10*time)}, Units.UNK, time));
+			ensemble.run(time, time + dt);
+			result[i] = ((RealOutput) ensemble.getOrigin(NEFEnsemble.X).getValues()).getValues().clone();
+		}
+		return result;
+	}
+
 	public void testAddDecodedSignalOrigin() throws StructuralException
 	{
 		NEFEnsembleFactoryImpl ef = new NEFEnsembleFactoryImpl();
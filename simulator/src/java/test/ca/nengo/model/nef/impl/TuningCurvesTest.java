@@ -0,0 +1,69 @@
+package ca.nengo.model.nef.impl;
+
+import junit.framework.TestCase;
+import ca.nengo.model.Node;
+import ca.nengo.model.nef.NEFNode;
+import ca.nengo.model.neuron.Neuron;
+import ca.nengo.model.neuron.impl.ExpandableSpikingNeuron;
+import ca.nengo.model.neuron.impl.SpikingNeuron;
+
+/**
+ * Unit tests for TuningCurves.
+ */
+public class TuningCurvesTest extends TestCase {
+
+	/**
+	 * Compares with running each neuron in CONSTANT_RATE mode.
+	 */
+	public void testEvaluate() throws Exception {
+		int oldThreads = TuningCurves.getNumThreads();
+		try {
+			NEFEnsembleImpl ensemble = (NEFEnsembleImpl) new NEFEnsembleFactoryImpl().make("a", 100, new float[]{2, .5f});
+			float[][] evalPoints = ensemble.getEvalPoints();
+			Node[] nodes = ensemble.getNodes();
+			NEFNode[] neurons = new NEFNode[nodes.length];
+			for (int i = 0; i < nodes.length; i++) {
+				neurons[i] = (NEFNode) nodes[i];
+				assertTrue(TuningCurves.hasClosedForm(neurons[i], Neuron.AXON));
+			}
+
+			float[][] expected = new float[nodes.length][];
+			for (int i = 0; i < nodes.length; i++) {
+				expected[i] = ensemble.getConstantOutput(i, evalPoints, Neuron.AXON);
+			}
+
+			for (int threads = 1; threads <= 3; threads++) {
+				TuningCurves.setNumThreads(threads);
+				float[][] result = TuningCurves.evaluate(neurons, ensemble.getEncoders(), new float[]{.5f, 2}, evalPoints, Neuron.AXON);
+				for (int i = 0; i < nodes.length; i++) {
+					for (int j = 0; j < evalPoints.length; j++) {
+						assertEquals(expected[i][j], result[i][j], 0f);
+					}
+				}
+			}
+		} finally {
+			TuningCurves.setNumThreads(oldThreads);
+		}
+	}
+
+	/**
+	 * Checks that neurons without a closed form are left to the caller.
+	 */
+	public void testFallback() throws Exception {
+		NEFEnsembleImpl ensemble = (NEFEnsembleImpl) new NEFEnsembleFactoryImpl().make("a", 10, 1);
+		Node[] nodes = ensemble.getNodes();
+		NEFNode[] neurons = new NEFNode[nodes.length];
+		for (int i = 0; i < nodes.length; i++) {
+			neurons[i] = (NEFNode) nodes[i];
+		}
+		((ExpandableSpikingNeuron) neurons[3]).addTermination("input", new float[][]{{1}}, .005f, false);
+
+		float[][] result = TuningCurves.evaluate(neurons, ensemble.getEncoders(), null, ensemble.getEvalPoints(), Neuron.AXON);
+		assertNull(result[3]);
+		assertNotNull(result[2]);
+
+		result = TuningCurves.evaluate(neurons, ensemble.getEncoders(), null, ensemble.getEvalPoints(), SpikingNeuron.CURRENT);
+		assertNull(result[2]);
+	}
+
+}
@@ -33,6 +33,14 @@ public class LIFSpikeGeneratorTest extends TestCase {
 		assertEquals(0, history.getTimes().length);
 		assertEquals(0, history.getValues().length);
 		
+		//only the end of the step is available until history is requested
+		sg.run(new float[]{0f, .002f}, new float[]{1f, 1f});
+		history = sg.getHistory("V");
+		assertEquals(1, history.getTimes().length);
+		assertEquals(.002f, history.getTimes()[0], .00001f);
+		assertEquals(sg.getVoltage(), history.getValues()[0][0], .00001f);
+
+		sg.enableHistory("V");
 		sg.run(new float[]{0f, .002f}, new float[]{1f, 1f});
 		history = sg.getHistory("V");
 		assertEquals(4, history.getTimes().length);
@@ -40,6 +48,10 @@ public class LIFSpikeGeneratorTest extends TestCase {
 		assertTrue(history.getTimes()[1] > history.getTimes()[0]);
 		assertTrue(history.getValues()[1][0] > history.getValues()[0][0]);
 
+		sg.disableHistory("V");
+		sg.run(new float[]{0f, .002f}, new float[]{1f, 1f});
+		assertEquals(1, sg.getHistory("V").getTimes().length);
+
 		try {
 			sg.getHistory("X");
 			fail("Should have thrown exception");
@@ -52,6 +64,7 @@ public class LIFSpikeGeneratorTest extends TestCase {
 	public void testReset() throws SimulationException {
 		float initialVoltage = .2f;
 		LIFSpikeGenerator sg = new LIFSpikeGenerator(.0005f, .02f, .002f, initialVoltage);
+		sg.enableHistory("V");
 		sg.run(new float[]{0f, .005f}, new float[]{1f, 1f});
 		float[] voltage1 = ((TimeSeries1D) sg.getHistory("V")).getValues1D();
 
@@ -19,6 +19,8 @@ import ca.nengo.model.neuron.impl.LIFSpikeGenerator;
 import ca.nengo.model.neuron.impl.LinearSynapticIntegrator;
 import ca.nengo.model.neuron.impl.SpikeGeneratorOrigin;
 import ca.nengo.model.neuron.impl.SpikingNeuron;
+import ca.nengo.util.Probe;
+import ca.nengo.util.impl.ProbeImpl;
 import junit.framework.TestCase;
 
 /**
@@ -54,6 +56,17 @@ public class SpikingNeuronTest extends TestCase {
 		} catch (SimulationException e) {} //exception is expected
 	}	
 
+	public void testEnableHistory() throws SimulationException {
+		Probe probe = new ProbeImpl();
+		probe.connect(myNeuron, "V", true);
+		myNeuron.run(0, .005f);
+		assertEquals(5, myNeuron.getHistory("V").getTimes().length);
+
+		myNeuron.disableHistory("V");
+		myNeuron.run(.005f, .01f);
+		assertEquals(1, myNeuron.getHistory("V").getTimes().length);
+	}
+
 //	/*
 //	 * Test method for 'ca.bpt.cn.model.impl.SpikingNeuron.getIntegrator()'
 //	 */
@@ -0,0 +1,167 @@
+package ca.nengo.sim.impl;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import junit.framework.TestCase;
+
+import ca.nengo.io.ProbeFileReader;
+import ca.nengo.model.Network;
+import ca.nengo.model.Units;
+import ca.nengo.model.impl.NetworkImpl;
+import ca.nengo.model.nef.NEFEnsemble;
+import ca.nengo.model.nef.NEFEnsembleFactory;
+import ca.nengo.model.nef.impl.NEFEnsembleFactoryImpl;
+import ca.nengo.sim.SimulatorEvent;
+import ca.nengo.util.Probe;
+import ca.nengo.util.TimeSeries;
+
+/**
+ * Unit tests for ProbeFileWriter and ProbeFileReader.
+ */
+public class ProbeFileWriterTest extends TestCase {
+
+	private File myFile;
+	private Network myNetwork;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		myFile = File.createTempFile("probe", ".bin");
+
+		myNetwork = new NetworkImpl();
+		NEFEnsembleFactory factory = new NEFEnsembleFactoryImpl();
+		NEFEnsemble ensemble = factory.make("Ensemble", 50, 2);
+		myNetwork.addNode(ensemble);
+	}
+
+	protected void tearDown() throws Exception {
+		myFile.delete();
+		super.tearDown();
+	}
+
+	public void testRecordingProbe() throws Exception {
+		Probe probe = myNetwork.getSimulator().addProbe("Ensemble", "X", true);
+		myNetwork.getSimulator().addSimulatorListener(new ProbeFileWriter(myFile, probe));
+		myNetwork.getSimulator().run(0f, 1.5f, .001f);
+
+		TimeSeries expected = probe.getData();
+		ProbeFileReader reader = new ProbeFileReader(myFile);
+		assertEquals(1500, reader.getLength());
+		assertEquals(2, reader.getDimension());
+		assertEquals(expected.getName(), reader.getName());
+		assertEquals(expected.getUnits()[1], reader.getUnits()[1]);
+		assertEquals(expected, reader.getTimeSeries());
+
+		//a second run overwrites the file
+		myNetwork.getSimulator().run(0f, .2f, .001f);
+		reader = new ProbeFileReader(myFile);
+		assertEquals(200, reader.getLength());
+		assertEquals(probe.getData(), reader.getTimeSeries());
+	}
+
+	public void testNonRecordingProbe() throws Exception {
+		Probe probe = myNetwork.getSimulator().addProbe("Ensemble", "X", false);
+		probe.setSamplingRate(200);
+		myNetwork.getSimulator().addSimulatorListener(new ProbeFileWriter(myFile, probe));
+		myNetwork.getSimulator().run(0f, 1f, .001f);
+
+		//the file has all samples, although the probe only has the last one
+		ProbeFileReader reader = new ProbeFileReader(myFile);
+		assertEquals(1, probe.getData().getTimes().length);
+		assertEquals(200, reader.getLength(), 2);
+		float[] times = reader.getTimes();
+		for (int i = 1; i < times.length; i++) {
+			assertEquals(.005f, times[i] - times[i-1], .0015f);
+		}
+		assertEquals(probe.getData().getTimes()[0], times[times.length-1], 0f);
+		assertEquals(probe.getData().getValues()[0][1], reader.getColumn(1)[times.length-1], 0f);
+	}
+
+	public void testTruncated() throws Exception {
+		Probe probe = myNetwork.getSimulator().addProbe("Ensemble", "X", true);
+		myNetwork.getSimulator().addSimulatorListener(new ProbeFileWriter(myFile, probe));
+		myNetwork.getSimulator().run(0f, 1.5f, .001f);
+
+		RandomAccessFile raf = new RandomAccessFile(myFile, "rw");
+		raf.setLength(raf.length() - 10);
+		raf.close();
+
+		ProbeFileReader reader = new ProbeFileReader(myFile);
+		assertEquals(ProbeFileWriter.BLOCK_SIZE, reader.getLength());
+		assertEquals(Units.UNK, reader.getUnits()[0]);
+	}
+
+	public void testCorruptHeader() throws Exception {
+		//truncated in the name
+		DataOutputStream out = new DataOutputStream(new FileOutputStream(myFile));
+		out.writeInt(ProbeFileReader.MAGIC);
+		out.writeInt(ProbeFileReader.VERSION);
+		out.writeInt(100);
+		out.writeBytes("abc");
+		out.close();
+		try {
+			new ProbeFileReader(myFile);
+			fail("Expected IOException");
+		} catch (IOException e) {
+		}
+
+		//unknown units
+		out = new DataOutputStream(new FileOutputStream(myFile));
+		out.writeInt(ProbeFileReader.MAGIC);
+		out.writeInt(ProbeFileReader.VERSION);
+		out.writeInt(0);
+		out.writeInt(1);
+		out.writeInt(3);
+		out.writeBytes("xyz");
+		out.close();
+		try {
+			new ProbeFileReader(myFile);
+			fail("Expected IOException");
+		} catch (IOException e) {
+		}
+	}
+
+	/**
+	 * Checks that the background thread of a run that didn't finish is stopped when the next run starts.
+	 */
+	public void testUnfinishedRun() throws Exception {
+		Probe probe = myNetwork.getSimulator().addProbe("Ensemble", "X", true);
+		ProbeFileWriter writer = new ProbeFileWriter(myFile, probe);
+		int threads = countWriterThreads();
+
+		writer.processEvent(new SimulatorEvent(0, SimulatorEvent.Type.STARTED));
+		assertEquals(threads + 1, countWriterThreads());
+		writer.processEvent(new SimulatorEvent(0, SimulatorEvent.Type.STARTED));
+		assertEquals(threads + 1, countWriterThreads());
+
+		writer.close();
+		assertEquals(threads, countWriterThreads());
+		assertEquals(0, new ProbeFileReader(myFile).getLength());
+	}
+
+	private static int countWriterThreads() {
+		int result = 0;
+		for (Thread thread : Thread.getAllStackTraces().keySet()) {
+			if (thread.isAlive() && thread.getName().equals("ProbeFileWriter")) {
+				result++;
+			}
+		}
+		return result;
+	}
+
+	private static void assertEquals(TimeSeries expected, TimeSeries actual) {
+		float[] times = expected.getTimes();
+		float[][] values = expected.getValues();
+		assertEquals(times.length, actual.getTimes().length);
+		for (int i = 0; i < times.length; i++) {
+			assertEquals(times[i], actual.getTimes()[i], 0f);
+			for (int j = 0; j < values[i].length; j++) {
+				assertEquals(values[i][j], actual.getValues()[i][j], 0f);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,90 @@
+package ca.nengo.util.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import junit.framework.TestCase;
+
+import ca.nengo.model.Units;
+import ca.nengo.util.TimeSeries;
+
+/**
+ * Unit tests for ColumnBuffer and ColumnTimeSeries.
+ */
+public class ColumnBufferTest extends TestCase {
+
+	public void testAdd() {
+		ColumnBuffer buffer = fill(2, 3 * ColumnBuffer.CHUNK_SIZE + 5);
+		int size = buffer.getSize();
+		assertEquals(3 * ColumnBuffer.CHUNK_SIZE + 5, size);
+		assertEquals(2, buffer.getDimension());
+
+		for (int i = 0; i < size; i++) {
+			assertEquals(i * .001f, buffer.getTime(i), 0f);
+			assertEquals(i, buffer.getValue(i, 0), 0f);
+			assertEquals(-i, buffer.getValue(i, 1), 0f);
+		}
+
+		//ranges across chunk boundaries
+		int from = ColumnBuffer.CHUNK_SIZE - 3;
+		int to = 2 * ColumnBuffer.CHUNK_SIZE + 7;
+		float[] times = buffer.getTimes(from, to);
+		float[] column = buffer.getColumn(1, from, to);
+		float[][] rows = buffer.getRows(from, to);
+		assertEquals(to - from, times.length);
+		for (int i = from; i < to; i++) {
+			assertEquals(i * .001f, times[i - from], 0f);
+			assertEquals(-i, column[i - from], 0f);
+			assertEquals(i, rows[i - from][0], 0f);
+			assertEquals(-i, rows[i - from][1], 0f);
+		}
+
+		try {
+			buffer.getTime(size);
+			fail("Should have thrown exception");
+		} catch (IndexOutOfBoundsException e) {} //exception is expected
+
+		try {
+			buffer.add(0, new float[3]);
+			fail("Should have thrown exception");
+		} catch (IllegalArgumentException e) {} //exception is expected
+	}
+
+	public void testView() throws Exception {
+		ColumnBuffer buffer = fill(2, 10);
+		ColumnTimeSeries view = new ColumnTimeSeries(buffer, 10, new Units[]{Units.UNK, Units.AVU});
+		view.setName("view");
+		buffer.add(1, new float[2]);
+
+		assertEquals(10, view.getLength());
+		assertEquals(10, view.getTimes().length);
+		assertEquals(2, view.getDimension());
+		assertEquals(-9f, view.getValues()[9][1], 0f);
+		assertEquals(-9f, view.getColumn(1)[9], 0f);
+		assertEquals(-9f, view.getValue(9, 1), 0f);
+		assertEquals("2", view.getLabels()[1]);
+
+		//serialized as a copy
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream oos = new ObjectOutputStream(bytes);
+		oos.writeObject(view);
+		oos.close();
+		TimeSeries copy = (TimeSeries) new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+		assertTrue(copy instanceof TimeSeriesImpl);
+		assertEquals("view", copy.getName());
+		assertEquals(10, copy.getTimes().length);
+		assertEquals(-9f, copy.getValues()[9][1], 0f);
+		assertEquals(Units.AVU, copy.getUnits()[1]);
+	}
+
+	private static ColumnBuffer fill(int dimension, int size) {
+		ColumnBuffer result = new ColumnBuffer(dimension);
+		for (int i = 0; i < size; i++) {
+			result.add(i * .001f, new float[]{i, -i});
+		}
+		return result;
+	}
+
+}
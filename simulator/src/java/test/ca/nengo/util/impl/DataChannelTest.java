@@ -0,0 +1,103 @@
+package ca.nengo.util.impl;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for DataChannel.
+ */
+public class DataChannelTest extends TestCase {
+
+	public void testHistory() {
+		DataChannel channel = new DataChannel(2, 10, 5);
+		for (int i = 5; i < 30; i++) {
+			channel.write(new float[]{i, -i});
+		}
+		assertEquals(20, channel.getStart());
+		assertEquals(30, channel.getEnd());
+		assertEquals(20f, channel.getFirst()[0], 0f);
+
+		float[][] values = channel.get(18, 15, 0);
+		assertNull(values[0]);
+		assertNull(values[1]);
+		for (int i = 2; i < 12; i++) {
+			assertEquals(18f + i, values[i][0], 0f);
+			assertEquals(-18f - i, values[i][1], 0f);
+		}
+		assertNull(values[12]);
+
+		//missing values are zero, and extra values are ignored
+		channel.write(new float[]{1});
+		channel.write(new float[]{1, 2, 3});
+		assertEquals(0f, channel.get(30, 1, 0)[0][1], 0f);
+		assertEquals(2, channel.get(31, 1, 0)[0].length);
+
+		channel.setCapacity(3);
+		assertEquals(29, channel.getStart());
+		assertEquals(29f, channel.get(29, 1, 0)[0][0], 0f);
+		channel.setCapacity(20);
+		assertEquals(29, channel.getStart());
+
+		channel.reset(0);
+		assertEquals(0, channel.getEnd());
+		assertNull(channel.getFirst());
+	}
+
+	public void testFilter() {
+		float dtTau = .1f;
+		DataChannel channel = new DataChannel(1, 50, 0);
+
+		//filtered values are updated as more values are written, including after the history wraps
+		float expected = 0;
+		float decay = (float) Math.exp(-dtTau);
+		for (int i = 0; i < 200; i++) {
+			float value = (float) Math.sin(i / 10.0);
+			channel.write(new float[]{value});
+			expected = (i == 0) ? value * dtTau : expected * decay + value * (1 - decay);
+
+			if (i % 7 == 0) {
+				float[][] filtered = channel.get(i, 1, dtTau);
+				assertEquals(expected, filtered[0][0], .0001f);
+			}
+		}
+		assertEquals(expected, channel.get(199, 1, dtTau)[0][0], .0001f);
+		assertNull(channel.get(100, 1, dtTau)[0]);
+		assertNotNull(channel.get(150, 1, dtTau)[0]);
+	}
+
+	/**
+	 * Reads while another thread writes. Each tick's values all equal the tick number, so
+	 * torn or stale copies would show up.
+	 */
+	public void testConcurrentReads() throws InterruptedException {
+		final int dim = 100;
+		final int ticks = 200000;
+		final DataChannel channel = new DataChannel(dim, 20, 0);
+		Thread writer = new Thread() {
+			public void run() {
+				float[] values = new float[dim];
+				for (int i = 0; i < ticks; i++) {
+					java.util.Arrays.fill(values, i);
+					channel.write(values);
+				}
+			}
+		};
+		writer.start();
+
+		int checked = 0;
+		while (writer.isAlive() || checked == 0) {
+			long start = channel.getEnd() - 25;
+			float[][] values = channel.get(start, 25, 0);
+			for (int i = 0; i < values.length; i++) {
+				if (values[i] != null) {
+					for (int j = 0; j < dim; j++) {
+						assertEquals((float) (start + i), values[i][j], 0f);
+					}
+					checked++;
+				}
+			}
+		}
+		writer.join();
+		assertTrue(checked > 0);
+	}
+
+}
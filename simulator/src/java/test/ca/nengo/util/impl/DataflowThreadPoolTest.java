@@ -0,0 +1,113 @@
+package ca.nengo.util.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import ca.nengo.math.Function;
+import ca.nengo.math.impl.ConstantFunction;
+import ca.nengo.model.Network;
+import ca.nengo.model.Node;
+import ca.nengo.model.Projection;
+import ca.nengo.model.Units;
+import ca.nengo.model.impl.FunctionInput;
+import ca.nengo.model.impl.NetworkImpl;
+import ca.nengo.model.nef.NEFEnsemble;
+import ca.nengo.model.nef.NEFEnsembleFactory;
+import ca.nengo.model.nef.impl.NEFEnsembleFactoryImpl;
+import ca.nengo.util.MU;
+import ca.nengo.util.Probe;
+import ca.nengo.util.ThreadTask;
+
+/**
+ * Unit tests for DataflowThreadPool.
+ */
+public class DataflowThreadPoolTest extends TestCase {
+
+	public void testDependencies() throws Exception {
+		Network network = makeNetwork();
+		DataflowThreadPool pool = new DataflowThreadPool(network, new ArrayList<ThreadTask>());
+		try {
+			List<Node> nodes = Arrays.asList(pool.getNodes());
+			assertEquals(4, nodes.size());
+			assertEquals("a", nodes.get(0).getName()); //most expensive first
+
+			//the projection from a to b holds up a and b only
+			Projection[] projections = network.getProjections();
+			int ab = 0;
+			while (!projections[ab].getOrigin().getNode().getName().equals("a")) {
+				ab++;
+			}
+			int[] dependents = pool.getDependents(ab);
+			assertEquals(2, dependents.length);
+			assertTrue(contains(dependents, nodes.indexOf(network.getNode("a"))));
+			assertTrue(contains(dependents, nodes.indexOf(network.getNode("b"))));
+			assertFalse(contains(dependents, nodes.indexOf(network.getNode("c"))));
+		} finally {
+			pool.kill();
+		}
+	}
+
+	/**
+	 * Checks that a chain of ensembles gives the expected result when run with dataflow scheduling.
+	 */
+	public void testRun() throws Exception {
+		int oldThreads = NodeThreadPool.getNumJavaThreads();
+		boolean oldDataflow = NodeThreadPool.getUseDataflowScheduling();
+
+		try {
+			Network network = makeNetwork();
+			Probe probe = network.getSimulator().addProbe("c", NEFEnsemble.X, true);
+
+			NodeThreadPool.setNumJavaThreads(3);
+			NodeThreadPool.setUseDataflowScheduling(true);
+			network.run(0, .3f);
+
+			float[][] values = probe.getData().getValues();
+			assertEquals(300, values.length);
+			float mean = 0;
+			for (int i = 200; i < values.length; i++) {
+				mean += values[i][0] / 100f;
+			}
+			assertEquals(.5f, mean, .15f);
+		} finally {
+			NodeThreadPool.setNumJavaThreads(oldThreads);
+			NodeThreadPool.setUseDataflowScheduling(oldDataflow);
+		}
+	}
+
+	private static boolean contains(int[] values, int value) {
+		for (int i = 0; i < values.length; i++) {
+			if (values[i] == value) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	//input -> a -> b -> c
+	private static Network makeNetwork() throws Exception {
+		NEFEnsembleFactory ef = new NEFEnsembleFactoryImpl();
+		Network network = new NetworkImpl();
+		FunctionInput input = new FunctionInput("input", new Function[]{new ConstantFunction(1, .5f)}, Units.UNK);
+		network.addNode(input);
+
+		NEFEnsemble a = ef.make("a", 200, 1);
+		NEFEnsemble b = ef.make("b", 100, 1);
+		NEFEnsemble c = ef.make("c", 50, 1);
+		network.addNode(a);
+		network.addNode(b);
+		network.addNode(c);
+
+		a.addDecodedTermination("input", MU.I(1), .005f, false);
+		b.addDecodedTermination("input", MU.I(1), .005f, false);
+		c.addDecodedTermination("input", MU.I(1), .005f, false);
+		network.addProjection(input.getOrigin(FunctionInput.ORIGIN_NAME), a.getTermination("input"));
+		network.addProjection(a.getOrigin(NEFEnsemble.X), b.getTermination("input"));
+		network.addProjection(b.getOrigin(NEFEnsemble.X), c.getTermination("input"));
+		return network;
+	}
+
+}
@@ -0,0 +1,128 @@
+package ca.nengo.util.impl;
+
+import junit.framework.TestCase;
+
+import ca.nengo.math.Function;
+import ca.nengo.math.impl.ConstantFunction;
+import ca.nengo.model.Network;
+import ca.nengo.model.Node;
+import ca.nengo.model.Units;
+import ca.nengo.model.impl.FunctionInput;
+import ca.nengo.model.impl.NetworkArrayImpl;
+import ca.nengo.model.impl.NetworkImpl;
+import ca.nengo.model.nef.NEFEnsemble;
+import ca.nengo.model.nef.NEFEnsembleFactory;
+import ca.nengo.model.nef.impl.NEFEnsembleFactoryImpl;
+import ca.nengo.model.nef.impl.NEFEnsembleImpl;
+import ca.nengo.util.MU;
+import ca.nengo.util.Probe;
+
+/**
+ * Unit tests for NEFCPUInterface.
+ */
+public class NEFCPUInterfaceTest extends TestCase {
+
+	private int myOldJavaThreads;
+	private int myOldBackendThreads;
+	private boolean myOldUseJavaBackend;
+
+	protected void setUp() throws Exception {
+		myOldJavaThreads = NodeThreadPool.getNumJavaThreads();
+		myOldBackendThreads = NEFCPUInterface.getNumThreads();
+		myOldUseJavaBackend = NEFGPUInterface.getUseJavaBackend();
+	}
+
+	protected void tearDown() throws Exception {
+		NodeThreadPool.setNumJavaThreads(myOldJavaThreads);
+		NEFCPUInterface.setNumThreads(myOldBackendThreads);
+		NEFGPUInterface.setUseJavaBackend(myOldUseJavaBackend);
+	}
+
+	public void testCanRun() throws Exception {
+		NEFEnsembleFactory ef = new NEFEnsembleFactoryImpl();
+		NEFEnsemble ensemble = ef.make("a", 20, 1);
+		ensemble.addDecodedTermination("input", MU.I(1), .005f, false);
+		NEFEnsemble modulated = ef.make("b", 20, 1);
+		modulated.addDecodedTermination("input", MU.I(1), .005f, true);
+		FunctionInput input = new FunctionInput("input", new Function[]{new ConstantFunction(1, 0)}, Units.UNK);
+
+		NEFCPUInterface cpu = new NEFCPUInterface();
+		Node[] rest = cpu.takeGPUNodes(new Node[]{ensemble, modulated, input});
+		assertEquals(2, rest.length);
+		assertTrue(rest[0] == modulated);
+		assertTrue(rest[1] == input);
+	}
+
+	/**
+	 * Runs a chain of batched ensembles, with one projection inside the batch and a probe on the last ensemble.
+	 */
+	public void testRun() throws Exception {
+		NEFEnsembleFactory ef = new NEFEnsembleFactoryImpl();
+		Network network = new NetworkImpl();
+		FunctionInput input = new FunctionInput("input", new Function[]{new ConstantFunction(1, .5f)}, Units.UNK);
+		network.addNode(input);
+
+		NEFEnsemble a = ef.make("a", 200, 1);
+		NEFEnsemble b = ef.make("b", 200, 1);
+		network.addNode(a);
+		network.addNode(b);
+		a.addDecodedTermination("input", MU.I(1), .005f, false);
+		b.addDecodedTermination("input", MU.I(1), .005f, false);
+		network.addProjection(input.getOrigin(FunctionInput.ORIGIN_NAME), a.getTermination("input"));
+		network.addProjection(a.getOrigin(NEFEnsemble.X), b.getTermination("input"));
+
+		checkMean(network, "b", .5f);
+	}
+
+	/**
+	 * Runs a network array in the batch.
+	 */
+	public void testNetworkArray() throws Exception {
+		NEFEnsembleFactory ef = new NEFEnsembleFactoryImpl();
+		Network network = new NetworkImpl();
+		FunctionInput input = new FunctionInput("input",
+				new Function[]{new ConstantFunction(1, .5f), new ConstantFunction(1, -.3f)}, Units.UNK);
+		network.addNode(input);
+
+		NEFEnsembleImpl[] members = new NEFEnsembleImpl[]{
+				(NEFEnsembleImpl) ef.make("m0", 100, 1), (NEFEnsembleImpl) ef.make("m1", 100, 1)};
+		NetworkArrayImpl array = new NetworkArrayImpl("array", members);
+		array.addDecodedTermination("input", MU.I(2), .005f, false);
+		network.addNode(array);
+		network.addProjection(input.getOrigin(FunctionInput.ORIGIN_NAME), array.getTermination("input"));
+
+		network.exposeOrigin(array.getOrigin(NEFEnsemble.X), "arrayX");
+		Probe probe = network.getSimulator().addProbe("array", NEFEnsemble.X, true);
+		run(network);
+
+		float[][] values = probe.getData().getValues();
+		float[] mean = new float[2];
+		for (int i = 200; i < values.length; i++) {
+			mean[0] += values[i][0] / 100f;
+			mean[1] += values[i][1] / 100f;
+		}
+		assertEquals(.5f, mean[0], .15f);
+		assertEquals(-.3f, mean[1], .15f);
+	}
+
+	private static void checkMean(Network network, String name, float expected) throws Exception {
+		Probe probe = network.getSimulator().addProbe(name, NEFEnsemble.X, true);
+		run(network);
+
+		float[][] values = probe.getData().getValues();
+		assertEquals(300, values.length);
+		float mean = 0;
+		for (int i = 200; i < values.length; i++) {
+			mean += values[i][0] / 100f;
+		}
+		assertEquals(expected, mean, .15f);
+	}
+
+	private static void run(Network network) throws Exception {
+		NodeThreadPool.setNumJavaThreads(1);
+		NEFCPUInterface.setNumThreads(2);
+		NEFGPUInterface.setUseJavaBackend(true);
+		network.run(0, .3f);
+	}
+
+}
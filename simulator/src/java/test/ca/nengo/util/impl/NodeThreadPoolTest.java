@@ -0,0 +1,105 @@
+package ca.nengo.util.impl;
+
+import junit.framework.TestCase;
+
+import ca.nengo.math.Function;
+import ca.nengo.math.impl.ConstantFunction;
+import ca.nengo.model.Network;
+import ca.nengo.model.Node;
+import ca.nengo.model.Units;
+import ca.nengo.model.impl.FunctionInput;
+import ca.nengo.model.impl.NetworkImpl;
+import ca.nengo.model.nef.NEFEnsemble;
+import ca.nengo.model.nef.NEFEnsembleFactory;
+import ca.nengo.model.nef.impl.NEFEnsembleFactoryImpl;
+import ca.nengo.util.MU;
+import ca.nengo.util.Probe;
+
+/**
+ * Unit tests for NodeThreadPool.
+ */
+public class NodeThreadPoolTest extends TestCase {
+
+	public void testBalance() {
+		String[] items = new String[]{"a", "b", "c", "d", "e", "f"};
+		float[] costs = new float[]{1, 1, 100, 1, 1, 2};
+		int[] bounds = NodeThreadPool.balance(items, costs, 2);
+
+		//the expensive item gets a thread to itself, and the rest keep their relative order
+		assertEquals(3, bounds.length);
+		assertEquals(0, bounds[0]);
+		assertEquals(6, bounds[2]);
+		assertEquals(1, bounds[1]);
+		assertEquals("c", items[0]);
+		assertEquals("a", items[1]);
+		assertEquals("b", items[2]);
+		assertEquals("d", items[3]);
+		assertEquals("e", items[4]);
+		assertEquals("f", items[5]);
+
+		//equal costs give an even split
+		Integer[] numbers = new Integer[10];
+		for (int i = 0; i < numbers.length; i++) {
+			numbers[i] = Integer.valueOf(i);
+		}
+		bounds = NodeThreadPool.balance(numbers, new float[10], 3);
+		assertEquals(4, bounds[1] - bounds[0]);
+		assertEquals(3, bounds[2] - bounds[1]);
+		assertEquals(3, bounds[3] - bounds[2]);
+	}
+
+	public void testEstimateCost() throws Exception {
+		NEFEnsembleFactory ef = new NEFEnsembleFactoryImpl();
+		NEFEnsemble small = ef.make("small", 10, 1);
+		NEFEnsemble large = ef.make("large", 100, 2);
+		FunctionInput input = new FunctionInput("input", new Function[]{new ConstantFunction(1, 0)}, Units.UNK);
+
+		assertTrue(NodeThreadPool.estimateCost(large) > NodeThreadPool.estimateCost(small));
+		assertTrue(NodeThreadPool.estimateCost(small) > NodeThreadPool.estimateCost(input));
+	}
+
+	/**
+	 * Checks that a network still runs correctly when work is rebalanced part-way through a run.
+	 */
+	public void testRebalance() throws Exception {
+		int oldThreads = NodeThreadPool.getNumJavaThreads();
+		int oldSteps = NodeThreadPool.getRebalanceSteps();
+
+		try {
+			Network network = makeNetwork();
+			Probe probe = network.getSimulator().addProbe("b", NEFEnsemble.X, true);
+
+			NodeThreadPool.setNumJavaThreads(3);
+			NodeThreadPool.setRebalanceSteps(5);
+			network.run(0, .2f);
+
+			float[][] values = probe.getData().getValues();
+			assertEquals(200, values.length);
+			float mean = 0;
+			for (int i = 100; i < values.length; i++) {
+				mean += values[i][0] / 100f;
+			}
+			assertEquals(.5f, mean, .15f);
+		} finally {
+			NodeThreadPool.setNumJavaThreads(oldThreads);
+			NodeThreadPool.setRebalanceSteps(oldSteps);
+		}
+	}
+
+	private static Network makeNetwork() throws Exception {
+		NEFEnsembleFactory ef = new NEFEnsembleFactoryImpl();
+		Network network = new NetworkImpl();
+		FunctionInput input = new FunctionInput("input", new Function[]{new ConstantFunction(1, .5f)}, Units.UNK);
+		network.addNode(input);
+
+		Node[] ensembles = new Node[]{ef.make("a", 200, 1), ef.make("b", 100, 1), ef.make("c", 50, 1)};
+		for (int i = 0; i < ensembles.length; i++) {
+			NEFEnsemble ensemble = (NEFEnsemble) ensembles[i];
+			network.addNode(ensemble);
+			ensemble.addDecodedTermination("input", MU.I(1), .005f, false);
+			network.addProjection(input.getOrigin(FunctionInput.ORIGIN_NAME), ensemble.getTermination("input"));
+		}
+		return network;
+	}
+
+}
@@ -0,0 +1,129 @@
+package ca.nengo.util.impl;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for PhaseBarrier implementations. The main method benchmarks the per-step
+ * overhead of each implementation (three phases per step, as in NodeThreadPool) with
+ * different numbers of threads.
+ */
+public class PhaseBarrierTest extends TestCase {
+
+	public void testMonitorPhaseBarrier() throws Exception {
+		checkPhases(new MonitorPhaseBarrier(4), 4, 1000);
+	}
+
+	public void testSpinPhaseBarrier() throws Exception {
+		checkPhases(new SpinPhaseBarrier(4), 4, 1000);
+	}
+
+	public void testSpinPhaseBarrierParking() throws Exception {
+		//no spinning, so that every wait parks
+		checkPhases(new SpinPhaseBarrier(4, 0), 4, 1000);
+	}
+
+	public void testRelease() throws Exception {
+		PhaseBarrier[] barriers = new PhaseBarrier[]{new MonitorPhaseBarrier(3), new SpinPhaseBarrier(3, 10)};
+		for (int i = 0; i < barriers.length; i++) {
+			Worker[] workers = startWorkers(barriers[i], 3, new int[3]);
+			barriers[i].runPhase();
+			barriers[i].release();
+			for (int j = 0; j < workers.length; j++) {
+				workers[j].join(5000);
+				assertFalse(workers[j].isAlive());
+			}
+
+			try {
+				barriers[i].runPhase();
+				fail("Should have thrown InterruptedException");
+			} catch (InterruptedException e) {
+			}
+		}
+	}
+
+	//checks that each phase starts only once all workers have finished the previous one
+	private static void checkPhases(PhaseBarrier barrier, int numWorkers, int numPhases) throws Exception {
+		int[] counts = new int[numWorkers];
+		Worker[] workers = startWorkers(barrier, numWorkers, counts);
+
+		for (int i = 1; i <= numPhases; i++) {
+			barrier.runPhase();
+			for (int j = 0; j < numWorkers; j++) {
+				assertEquals(i, counts[j]);
+			}
+		}
+
+		barrier.release();
+		for (int j = 0; j < numWorkers; j++) {
+			workers[j].join(5000);
+			assertFalse(workers[j].isAlive());
+		}
+	}
+
+	private static Worker[] startWorkers(PhaseBarrier barrier, int numWorkers, int[] counts) {
+		Worker[] workers = new Worker[numWorkers];
+		for (int i = 0; i < numWorkers; i++) {
+			workers[i] = new Worker(barrier, i, counts);
+			workers[i].start();
+		}
+		return workers;
+	}
+
+	private static class Worker extends Thread {
+
+		private final PhaseBarrier myBarrier;
+		private final int myIndex;
+		private final int[] myCounts;
+
+		public Worker(PhaseBarrier barrier, int index, int[] counts) {
+			myBarrier = barrier;
+			myIndex = index;
+			myCounts = counts;
+			setDaemon(true);
+		}
+
+		public void run() {
+			try {
+				myBarrier.workerWait(myIndex);
+				while (true) {
+					myCounts[myIndex]++;
+					myBarrier.workerFinished(myIndex);
+				}
+			} catch (InterruptedException e) {
+			}
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+		int steps = 20000;
+
+		System.out.println("threads\tmonitor (us/step)\tspin (us/step)");
+		for (int n = 1; n <= maxThreads; n++) {
+			double monitor = benchmark(new MonitorPhaseBarrier(n), n, steps);
+			double spin = benchmark(new SpinPhaseBarrier(n), n, steps);
+			System.out.println(n + "\t" + monitor + "\t" + spin);
+		}
+	}
+
+	//mean time per step of three empty phases, in microseconds
+	private static double benchmark(PhaseBarrier barrier, int numWorkers, int steps) throws Exception {
+		startWorkers(barrier, numWorkers, new int[numWorkers]);
+
+		for (int i = 0; i < steps / 10; i++) { //warm up
+			barrier.runPhase();
+		}
+
+		long start = System.nanoTime();
+		for (int i = 0; i < steps; i++) {
+			barrier.runPhase();
+			barrier.runPhase();
+			barrier.runPhase();
+		}
+		long elapsed = System.nanoTime() - start;
+
+		barrier.release();
+		return elapsed / 1000d / steps;
+	}
+
+}
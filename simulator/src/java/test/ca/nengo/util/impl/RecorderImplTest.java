@@ -81,6 +81,120 @@ public class RecorderImplTest extends TestCase {
 		ts = myRecorder.getData();
 		assertEquals(1, ts.getValues().length);
 	}
+	
+	public void testView() throws SimulationException {
+		myRecorder.connect(new MockProbeable(1f), "x", true);
+		myRecorder.collect(1);
+		myRecorder.collect(2);
+		TimeSeries ts = myRecorder.getData();
+		
+		//samples collected later don't show up in a view that was already taken
+		myRecorder.collect(3);
+		assertEquals(2, ts.getTimes().length);
+		assertEquals(3, myRecorder.getData().getTimes().length);
+		
+		myRecorder.reset();
+		assertEquals(2, ts.getValues().length);
+		assertEquals(1f, ts.getValues()[1][0], 0f);
+	}
+	
+	public void testFilter() throws SimulationException {
+		ProbeImpl probe = new ProbeImpl();
+		probe.connect(new RampProbeable(0), "x", true);
+		probe.setFilter(.01f);
+		for (int i = 0; i < 100; i++) {
+			probe.collect(i * .001f);
+		}
+		
+		//step response of the filter, which starts at the first sample
+		float[][] values = probe.getData().getValues();
+		assertEquals(100, values.length);
+		for (int i = 0; i < values.length; i++) {
+			assertEquals(1 - Math.exp(-i * .001 / .01), values[i][0], .0001f);
+		}
+	}
+	
+	public void testChangeFilter() throws SimulationException {
+		ProbeImpl probe = new ProbeImpl();
+		probe.connect(new RampProbeable(0, .25f), "x", true);
+		probe.setFilter(.01f);
+		for (int i = 0; i < 3; i++) {
+			probe.collect(i * .25f);
+		}
+		
+		//the same step size with a new time constant
+		probe.setFilter(.1f);
+		probe.connect(new RampProbeable(0, .25f), "x", true);
+		for (int i = 0; i < 2; i++) {
+			probe.collect(i * .25f);
+		}
+		float[][] values = probe.getData().getValues();
+		assertEquals(1 - Math.exp(-.25 / .1), values[1][0], .0001f);
+	}
+	
+	public void testEnvelope() throws SimulationException {
+		ProbeImpl probe = new ProbeImpl();
+		probe.connect(new RampProbeable(1), "x", true);
+		probe.setReduction(ProbeImpl.Reduction.ENVELOPE);
+		probe.setSamplingRate(100);
+		for (int i = 0; i < 1000; i++) {
+			probe.collect(i * .001f);
+		}
+		
+		//each stored value summarizes consecutive samples of the ramp 
+		float[][] mean = probe.getData().getValues();
+		float[][] min = probe.getMinimum().getValues();
+		float[][] max = probe.getMaximum().getValues();
+		assertEquals(100, mean.length, 1);
+		assertEquals(mean.length, min.length);
+		assertEquals(min[0][0], max[0][0], 0f); //the first sample is stored by itself
+		for (int i = 1; i < mean.length; i++) {
+			assertEquals(max[i-1][0] + 1, min[i][0], 0f);
+			assertEquals((min[i][0] + max[i][0]) / 2f, mean[i][0], .0001f);
+			assertEquals(10f, max[i][0] - min[i][0] + 1, 1f);
+		}
+		
+		//only the last value is kept if the probe doesn't record
+		probe.connect(new RampProbeable(1), "x", false);
+		probe.setReduction(ProbeImpl.Reduction.MEAN);
+		for (int i = 0; i < 1000; i++) {
+			probe.collect(i * .001f);
+		}
+		assertEquals(1, probe.getData().getValues().length);
+		assertNull(probe.getMinimum());
+	}
+	
+	//a state x that rises by the given slope with each call to getHistory(...) (or steps to one if the slope is zero)
+	private static class RampProbeable implements Probeable {
+		
+		private float mySlope;
+		private float myStepSize;
+		private int myStep;
+		
+		public RampProbeable(float slope) {
+			this(slope, .001f);
+		}
+		
+		public RampProbeable(float slope, float stepSize) {
+			mySlope = slope;
+			myStepSize = stepSize;
+		}
+
+		public TimeSeries getHistory(String stateName) throws SimulationException {
+			if (!stateName.equals("x")) {
+				throw new SimulationException("No such state");
+			}
+			
+			float value = (mySlope == 0) ? 1 : myStep * mySlope;
+			return new TimeSeries1DImpl(new float[]{myStepSize * myStep++}, new float[]{value}, Units.UNK);
+		}
+
+		public Properties listStates() {
+			Properties result = new Properties();
+			result.setProperty("x", "example state");
+			return result;
+		}
+	}
  
 	private static class MockProbeable implements Probeable {
 
@@ -3,6 +3,10 @@
  */
 package ca.nengo.util.impl;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
 import ca.nengo.util.impl.SpikePatternImpl;
 import junit.framework.TestCase;
 
@@ -42,5 +46,53 @@ public class SpikePatternImplTest extends TestCase {
 			assertTrue(times[i] < (float) i + .0001f);
 		}
 	}
+	
+	/*
+	 * Spikes in arbitrary order, with arbitrary times, come back exactly 
+	 */
+	public void testEncoding() throws CloneNotSupportedException {
+		int n = 1000;
+		SpikePatternImpl sp = new SpikePatternImpl(n);
+		List<List<Float>> expected = new ArrayList<List<Float>>();
+		for (int i = 0; i < n; i++) {
+			expected.add(new ArrayList<Float>());
+		}
+		
+		Random random = new Random(1);
+		for (int step = 0; step < 500; step++) {
+			float time = (step + 1) * .001f;
+			for (int i = 0; i < 20; i++) {
+				int neuron = random.nextInt(n);
+				float spikeTime = (i % 5 == 0) ? time - random.nextFloat() * .001f : time;
+				if (i == 7) {
+					spikeTime = -random.nextFloat() * 1e6f;
+				}
+				sp.addSpike(neuron, spikeTime);
+				expected.get(neuron).add(Float.valueOf(spikeTime));
+			}
+			
+			if (step == 250) { //new spikes are found after the spike times have been read
+				assertEquals(expected.get(3).size(), sp.getSpikeTimes(3).length);
+			}
+		}
+		assertEquals(500 * 20, sp.getNumSpikes());
+		
+		SpikePatternImpl copy = (SpikePatternImpl) sp.clone();
+		sp.addSpike(0, 1f);
+		assertEquals(expected.get(0).size() + 1, sp.getSpikeTimes(0).length);
+		
+		for (int i = 0; i < n; i++) {
+			float[] times = copy.getSpikeTimes(i);
+			assertEquals(expected.get(i).size(), times.length);
+			for (int j = 0; j < times.length; j++) {
+				assertEquals(expected.get(i).get(j).floatValue(), times[j], 0f);
+			}
+		}
+		
+		try {
+			sp.addSpike(n, 1f);
+			fail("Should have thrown exception");
+		} catch (ArrayIndexOutOfBoundsException e) {} //exception is expected
+	}
 
 }